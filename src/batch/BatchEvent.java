@@ -0,0 +1,52 @@
+package batch;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Recorded by JDK Flight Recorder for each run of a {@link BatchProcessor},
+ * lasting as long as the run did.
+ */
+@Name(BatchEvent.NAME)
+@Label("Batch Run")
+@Category({"Chess", "Batch"})
+@Description("A job run over a file of positions")
+@StackTrace(false)
+public class BatchEvent extends Event {
+    public static final String NAME = "chess.Batch";
+
+    @Label("Input")
+    String input;
+
+    @Label("Threads")
+    int threads;
+
+    @Label("Lines")
+    long lines;
+
+    @Label("Errors")
+    long errors;
+
+    @Label("Bytes Read")
+    @DataAmount
+    long bytesRead;
+
+    @Label("Chunks")
+    long chunks;
+
+    @Label("Reader Blocked")
+    @Description("Time the reader waited for a free chunk")
+    @Timespan
+    long readerBlockedNanos;
+
+    @Label("Writer Waited")
+    @Description("Time the writer waited for the next chunk in input order")
+    @Timespan
+    long writerWaitNanos;
+}
@@ -0,0 +1,114 @@
+package batch;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Totals of every {@link BatchProcessor} run in the process, for dashboards
+ * to read over JMX as the MBean {@value #NAME}.
+ * <p>
+ * Runs add to the totals once per chunk rather than once per line, so
+ * counting costs nothing next to processing the chunk.
+ */
+public class BatchMetrics implements BatchMetricsMBean {
+    public static final String NAME = "chess:type=Batch";
+
+    private static final BatchMetrics GLOBAL = new BatchMetrics();
+
+    final LongAdder runs = new LongAdder();
+    final LongAdder active = new LongAdder();
+    final LongAdder lines = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LongAdder bytesRead = new LongAdder();
+    final LongAdder chunks = new LongAdder();
+    // Chunks waiting for a worker
+    final LongAdder queued = new LongAdder();
+    // Nanoseconds from chunks being read to being written
+    final LongAdder chunkNanos = new LongAdder();
+    final LongAdder readerBlockedNanos = new LongAdder();
+    final LongAdder writerWaitNanos = new LongAdder();
+
+    private BatchMetrics() {
+    }
+
+    /**
+     * Returns the totals that every run adds to.
+     *
+     * @return The totals of the process.
+     */
+    public static BatchMetrics global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Publishes the totals to the platform MBean server, if they aren't
+     * already.
+     */
+    public static void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(GLOBAL, new ObjectName(NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // Published already
+        } catch (JMException e) {
+            throw new IllegalStateException("Couldn't register " + NAME, e);
+        }
+    }
+
+    @Override
+    public long getRuns() {
+        return this.runs.sum();
+    }
+
+    @Override
+    public int getActiveRuns() {
+        return (int) this.active.sum();
+    }
+
+    @Override
+    public long getLines() {
+        return this.lines.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return this.errors.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return this.bytesRead.sum();
+    }
+
+    @Override
+    public long getChunks() {
+        return this.chunks.sum();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return (int) this.queued.sum();
+    }
+
+    /**
+     * Returns the mean time from a chunk being read to its output being
+     * written.
+     */
+    @Override
+    public double getMeanChunkLatencyMillis() {
+        final long chunks = this.chunks.sum();
+        return chunks == 0 ? 0 : this.chunkNanos.sum() / 1e6 / chunks;
+    }
+
+    @Override
+    public double getReaderBlockedSeconds() {
+        return this.readerBlockedNanos.sum() / 1e9;
+    }
+
+    @Override
+    public double getWriterWaitSeconds() {
+        return this.writerWaitNanos.sum() / 1e9;
+    }
+}
@@ -0,0 +1,26 @@
+package batch;
+
+/**
+ * The batch measurements published over JMX by {@link BatchMetrics}.
+ */
+public interface BatchMetricsMBean {
+    long getRuns();
+
+    int getActiveRuns();
+
+    long getLines();
+
+    long getErrors();
+
+    long getBytesRead();
+
+    long getChunks();
+
+    int getQueueDepth();
+
+    double getMeanChunkLatencyMillis();
+
+    double getReaderBlockedSeconds();
+
+    double getWriterWaitSeconds();
+}
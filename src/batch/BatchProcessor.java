@@ -0,0 +1,473 @@
+package batch;
+
+import board.Bitboard;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Runs a job over every line of a file of FEN or EPD records, using several
+ * worker threads, and writes one output line per input line in input order.
+ * <p>
+ * The input is memory mapped a window at a time and split into chunks of
+ * whole lines. Each worker keeps its own board and parses lines directly
+ * from the mapped file. The number of chunks in flight is fixed, so memory
+ * use doesn't grow with the input: when the workers or the output fall
+ * behind, the reader waits, which is reported in {@link BatchStats}.
+ * <p>
+ * Blank lines are skipped. A line whose position can't be parsed or
+ * processed gives an output line starting with "error:", and doesn't stop
+ * the run. An {@link Error} thrown by the job does stop it, and is rethrown
+ * by {@code run}.
+ */
+public class BatchProcessor {
+    public static final int DEFAULT_CHUNK_BYTES = 64 * 1024;
+
+    // Bytes of input mapped at once. Lines may not be longer than this.
+    private static final int WINDOW_BYTES = 64 * 1024 * 1024;
+
+    private static final BatchMetrics METRICS = BatchMetrics.global();
+
+    private final int threads;
+    private final int chunkBytes;
+    private final int maxChunks;
+
+    /**
+     * Creates a processor with default chunk sizes.
+     *
+     * @param threads The number of worker threads.
+     */
+    public BatchProcessor(int threads) {
+        this(threads, DEFAULT_CHUNK_BYTES, 4 * threads);
+    }
+
+    /**
+     * Creates a processor.
+     *
+     * @param threads    The number of worker threads.
+     * @param chunkBytes The approximate number of input bytes handed to a
+     *                   worker at once.
+     * @param maxChunks  The most chunks that may be read but not yet written.
+     */
+    public BatchProcessor(int threads, int chunkBytes, int maxChunks) {
+        if (threads < 1 || chunkBytes < 1 || maxChunks < 1) {
+            throw new IllegalArgumentException("Threads, chunk size and chunk count must be positive");
+        }
+        this.threads = threads;
+        this.chunkBytes = chunkBytes;
+        this.maxChunks = maxChunks;
+    }
+
+    /**
+     * Runs a job over a file, writing the results to another file.
+     *
+     * @param input  The file of FEN or EPD records, one per line.
+     * @param output The file to write the results to.
+     * @param job    The job to run on each position.
+     * @return Measurements of the run.
+     * @throws IOException If a file can't be read or written.
+     */
+    public BatchStats run(Path input, Path output, PositionJob job) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(output))) {
+            return run(input, out, job);
+        }
+    }
+
+    /**
+     * Runs a job over a file.
+     *
+     * @param input The file of FEN or EPD records, one per line.
+     * @param out   The stream to write the results to. It isn't closed.
+     * @param job   The job to run on each position.
+     * @return Measurements of the run.
+     * @throws IOException If the input can't be read or the output written.
+     */
+    public BatchStats run(Path input, OutputStream out, PositionJob job) throws IOException {
+        final BatchStats stats = new BatchStats();
+        final BatchEvent event = new BatchEvent();
+        event.begin();
+        final long start = System.nanoTime();
+        METRICS.runs.increment();
+        METRICS.active.increment();
+
+        // Chunks cycle from free, to the workers, to the writer and back to
+        // free. The writer sees them in input order.
+        final BlockingQueue<Chunk> free = new ArrayBlockingQueue<>(this.maxChunks);
+        final BlockingQueue<Chunk> work = new LinkedBlockingQueue<>();
+        final BlockingQueue<Chunk> ordered = new ArrayBlockingQueue<>(this.maxChunks + 1);
+        for (int i = 0; i < this.maxChunks; i++) {
+            free.add(new Chunk());
+        }
+
+        final Thread[] workers = new Thread[this.threads];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(() -> work(work, job), "batch-worker-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+
+        final Chunk end = new Chunk();
+        final IOException[] readError = new IOException[1];
+        final Thread reader = new Thread(() -> {
+            try {
+                read(input, free, work, ordered, stats);
+            } catch (IOException e) {
+                readError[0] = e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                for (int i = 0; i < workers.length; i++) {
+                    work.add(end);
+                }
+                ordered.add(end);
+            }
+        }, "batch-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        try {
+            write(out, free, ordered, end, stats);
+            reader.join();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while processing " + input, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IOException("Job failed while processing " + input, e.getCause());
+        } finally {
+            reader.interrupt();
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+            // Chunks a failed run left behind aren't waiting any more
+            for (Chunk chunk : work) {
+                if (chunk != end) {
+                    METRICS.queued.decrement();
+                }
+            }
+            METRICS.active.decrement();
+        }
+        if (readError[0] != null) {
+            throw readError[0];
+        }
+
+        stats.elapsedNanos = System.nanoTime() - start;
+        if (event.shouldCommit()) {
+            event.input = input.toString();
+            event.threads = this.threads;
+            event.lines = stats.lines;
+            event.errors = stats.errors;
+            event.bytesRead = stats.bytesRead;
+            event.chunks = stats.chunks;
+            event.readerBlockedNanos = stats.readerBlockedNanos;
+            event.writerWaitNanos = stats.writerWaitNanos;
+            event.commit();
+        }
+        return stats;
+    }
+
+    /**
+     * Maps the input a window at a time and splits it into chunks of whole
+     * lines.
+     */
+    private void read(Path input, BlockingQueue<Chunk> free, BlockingQueue<Chunk> work,
+                      BlockingQueue<Chunk> ordered, BatchStats stats) throws IOException, InterruptedException {
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                final int length = (int) Math.min(WINDOW_BYTES, size - position);
+                final ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+                // Only take whole lines, unless this is the end of the file
+                int limit = length;
+                if (position + length < size) {
+                    limit = lastLineEnd(window, length);
+                    if (limit == 0) {
+                        throw new IOException("Line longer than " + WINDOW_BYTES + " bytes at byte " + position + " of " + input);
+                    }
+                }
+
+                int chunkStart = 0;
+                while (chunkStart < limit) {
+                    int chunkEnd = Math.min(chunkStart + this.chunkBytes, limit);
+                    while (chunkEnd < limit && window.get(chunkEnd - 1) != '\n') {
+                        chunkEnd++;
+                    }
+
+                    final long waitStart = System.nanoTime();
+                    final Chunk chunk = free.take();
+                    final long blocked = System.nanoTime() - waitStart;
+                    stats.readerBlockedNanos += blocked;
+                    METRICS.readerBlockedNanos.add(blocked);
+
+                    chunk.reset(window, chunkStart, chunkEnd);
+                    chunk.readTime = System.nanoTime();
+                    ordered.put(chunk);
+                    METRICS.queued.increment();
+                    work.put(chunk);
+                    stats.maxQueueDepth = Math.max(stats.maxQueueDepth, work.size());
+                    stats.chunks++;
+                    METRICS.chunks.increment();
+                    chunkStart = chunkEnd;
+                }
+
+                position += limit;
+                stats.bytesRead += limit;
+                METRICS.bytesRead.add(limit);
+            }
+        }
+    }
+
+    /**
+     * Returns the index just past the last line break in a window, or 0 if
+     * there is none.
+     */
+    private static int lastLineEnd(ByteBuffer window, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (window.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Processes chunks until the end marker is taken.
+     */
+    private static void work(BlockingQueue<Chunk> work, PositionJob job) {
+        final Bitboard board = new Bitboard();
+        final Line line = new Line();
+        try {
+            while (true) {
+                final Chunk chunk = work.take();
+                if (chunk.window == null) {
+                    return;
+                }
+                METRICS.queued.decrement();
+                chunk.process(board, line, job);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes finished chunks in input order, returning each to the free
+     * queue once written. Stops with an ExecutionException at the first
+     * chunk whose job failed.
+     */
+    private static void write(OutputStream out, BlockingQueue<Chunk> free, BlockingQueue<Chunk> ordered,
+                              Chunk end, BatchStats stats) throws IOException, InterruptedException, ExecutionException {
+        byte[] bytes = new byte[DEFAULT_CHUNK_BYTES];
+        while (true) {
+            final Chunk chunk = ordered.take();
+            if (chunk == end) {
+                break;
+            }
+
+            final long waitStart = System.nanoTime();
+            chunk.awaitDone();
+            final long waited = System.nanoTime() - waitStart;
+            stats.writerWaitNanos += waited;
+            METRICS.writerWaitNanos.add(waited);
+
+            final StringBuilder s = chunk.out;
+            if (bytes.length < s.length()) {
+                bytes = new byte[Math.max(s.length(), bytes.length * 2)];
+            }
+            for (int i = 0; i < s.length(); i++) {
+                bytes[i] = (byte) s.charAt(i);
+            }
+            out.write(bytes, 0, s.length());
+
+            stats.lines += chunk.lines;
+            stats.errors += chunk.errors;
+            METRICS.lines.add(chunk.lines);
+            METRICS.errors.add(chunk.errors);
+            METRICS.chunkNanos.add(System.nanoTime() - chunk.readTime);
+            chunk.window = null;
+            free.put(chunk);
+        }
+        out.flush();
+    }
+
+    /**
+     * A run of whole input lines, and the output for them.
+     */
+    private static final class Chunk {
+        private ByteBuffer window;
+        private int start;
+        private int end;
+        // When the chunk was handed to the workers
+        private long readTime;
+
+        private final StringBuilder out = new StringBuilder();
+        private int lines;
+        private int errors;
+        // Guarded by this
+        private boolean done;
+        private Throwable failure;
+
+        void reset(ByteBuffer window, int start, int end) {
+            this.window = window;
+            this.start = start;
+            this.end = end;
+            this.out.setLength(0);
+            this.lines = 0;
+            this.errors = 0;
+            synchronized (this) {
+                this.done = false;
+                this.failure = null;
+            }
+        }
+
+        void process(Bitboard board, Line line, PositionJob job) {
+            Throwable failure = null;
+            try {
+                int lineStart = this.start;
+                while (lineStart < this.end) {
+                    int lineEnd = lineStart;
+                    while (lineEnd < this.end && this.window.get(lineEnd) != '\n') {
+                        lineEnd++;
+                    }
+                    final int next = lineEnd + 1;
+                    if (lineEnd > lineStart && this.window.get(lineEnd - 1) == '\r') {
+                        lineEnd--;
+                    }
+
+                    if (lineEnd > lineStart) {
+                        line.set(this.window, lineStart, lineEnd - lineStart);
+                        processLine(board, line, job);
+                    }
+                    lineStart = next;
+                }
+            } catch (Throwable e) {
+                // An Error from the job, which can't be written as an error
+                // line. The writer passes it on, so the run fails instead of
+                // waiting forever.
+                failure = e;
+            } finally {
+                synchronized (this) {
+                    this.failure = failure;
+                    this.done = true;
+                    notifyAll();
+                }
+            }
+        }
+
+        private void processLine(Bitboard board, Line line, PositionJob job) {
+            final int mark = this.out.length();
+            this.lines++;
+            try {
+                final int fenEnd = board.initFen(line, 0);
+                job.process(board, line, fenEnd, this.out);
+            } catch (RuntimeException e) {
+                // A malformed record, or a position the job can't handle
+                this.errors++;
+                this.out.setLength(mark);
+                this.out.append("error: ").append(e.getMessage() != null ? e.getMessage() : e.toString());
+            }
+            this.out.append('\n');
+        }
+
+        synchronized void awaitDone() throws InterruptedException, ExecutionException {
+            while (!this.done) {
+                wait();
+            }
+            if (this.failure != null) {
+                throw new ExecutionException(this.failure);
+            }
+        }
+    }
+
+    /**
+     * A view of one line of the mapped input as characters, reused for every
+     * line a worker processes.
+     */
+    private static final class Line implements CharSequence {
+        private ByteBuffer buffer;
+        private int offset;
+        private int length;
+
+        void set(ByteBuffer buffer, int offset, int length) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return this.length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= this.length) {
+                throw new IndexOutOfBoundsException("Index " + index + " of a line of length " + this.length);
+            }
+            return (char) (this.buffer.get(this.offset + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder s = new StringBuilder(this.length);
+            for (int i = 0; i < this.length; i++) {
+                s.append(charAt(i));
+            }
+            return s.toString();
+        }
+    }
+
+    /**
+     * Runs a built in job over a file of positions.
+     * <p>
+     * Usage: BatchProcessor (moves | perft DEPTH | eval) INPUT OUTPUT [THREADS]
+     */
+    public static void main(String[] args) throws IOException {
+        int arg = 0;
+        final PositionJob job;
+        switch (args.length > 0 ? args[arg++] : "") {
+            case "moves":
+                job = Jobs.moveCount();
+                break;
+            case "perft":
+                job = Jobs.perft(Integer.parseInt(args[arg++]));
+                break;
+            case "eval":
+                job = Jobs.evaluate();
+                break;
+            default:
+                System.err.println("Usage: BatchProcessor (moves | perft DEPTH | eval) INPUT OUTPUT [THREADS]");
+                return;
+        }
+        final Path input = Paths.get(args[arg++]);
+        final Path output = Paths.get(args[arg++]);
+        final int threads = arg < args.length ? Integer.parseInt(args[arg]) : Runtime.getRuntime().availableProcessors();
+
+        BatchMetrics.register();
+        final BatchStats stats = new BatchProcessor(threads).run(input, output, job);
+        System.err.println(stats);
+    }
+}
@@ -0,0 +1,40 @@
+package batch;
+
+/**
+ * Throughput and backpressure measurements of a batch run.
+ */
+public class BatchStats {
+    // Positions processed, including those that failed
+    public long lines;
+    // Lines whose position couldn't be processed
+    public long errors;
+    // Bytes of input read
+    public long bytesRead;
+    // Groups of lines handed to the workers
+    public long chunks;
+    // Nanoseconds from the start of the run to the last output being written
+    public long elapsedNanos;
+    // Nanoseconds the reader spent waiting for a free chunk, because the
+    // workers or the writer had fallen behind
+    public long readerBlockedNanos;
+    // Nanoseconds the writer spent waiting for the next chunk in input order
+    // to be finished
+    public long writerWaitNanos;
+    // Most chunks waiting for a worker at any time
+    public int maxQueueDepth;
+
+    public double linesPerSecond() {
+        return this.elapsedNanos == 0 ? 0 : this.lines * 1e9 / this.elapsedNanos;
+    }
+
+    public double megabytesPerSecond() {
+        return this.elapsedNanos == 0 ? 0 : this.bytesRead * 1e9 / this.elapsedNanos / (1024 * 1024);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("lines=%d errors=%d chunks=%d time=%.3fs lines/s=%.0f MB/s=%.1f readerBlocked=%.3fs writerWait=%.3fs maxQueue=%d",
+                this.lines, this.errors, this.chunks, this.elapsedNanos / 1e9, linesPerSecond(), megabytesPerSecond(),
+                this.readerBlockedNanos / 1e9, this.writerWaitNanos / 1e9, this.maxQueueDepth);
+    }
+}
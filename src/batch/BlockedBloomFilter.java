@@ -0,0 +1,108 @@
+package batch;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A Bloom filter of signatures, split into blocks of one 64 byte cache line.
+ * Any number of threads may add and look up signatures at once.
+ * <p>
+ * Each signature picks a block, then sets one bit in each of the block's 8
+ * longs, so adding or looking up touches a single cache line. This gives a
+ * few more false positives than an ordinary Bloom filter of the same size,
+ * but is much faster once the filter is larger than the caches. Signatures
+ * that were added are always found.
+ */
+public class BlockedBloomFilter {
+    // Longs per block, and the bits of the hash that pick a bit in each
+    private static final int BLOCK_LONGS = 8;
+    private static final int BIT_SHIFT = 6;
+    private static final int BIT_MASK = 0b111111;
+    // Constants of the final mix of MurmurHash3, which spreads every bit of
+    // a key over the hash
+    private static final long MIX_1 = 0xFF51AFD7ED558CCDL;
+    private static final long MIX_2 = 0xC4CEB9FE1A85EC53L;
+
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[] words;
+    private final int blockMask;
+
+    /**
+     * Creates a filter.
+     *
+     * @param expected   The number of signatures the filter should hold.
+     * @param bitsPerKey The number of bits per expected signature. 10 bits
+     *                   give about 1% false positives.
+     */
+    public BlockedBloomFilter(long expected, int bitsPerKey) {
+        final long bits = Math.max(1, expected) * Math.max(1, bitsPerKey);
+        // Round the number of blocks up to a power of two
+        final long blocks = Long.highestOneBit(Math.max(1, (bits + 511) / 512 - 1)) << 1;
+        if (blocks * BLOCK_LONGS > Integer.MAX_VALUE - BLOCK_LONGS) {
+            throw new IllegalArgumentException("Bloom filter of " + bits + " bits is too large");
+        }
+        this.words = new long[(int) blocks * BLOCK_LONGS];
+        this.blockMask = (int) blocks - 1;
+    }
+
+    /**
+     * Adds a signature.
+     *
+     * @param key The signature.
+     */
+    public void add(long key) {
+        final long hash = hash(key);
+        final int block = block(hash);
+        long bits = hash * MIX_1;
+        for (int i = 0; i < BLOCK_LONGS; i++) {
+            final long bit = 1L << (bits & BIT_MASK);
+            if (((long) WORDS.getOpaque(this.words, block + i) & bit) == 0) {
+                WORDS.getAndBitwiseOr(this.words, block + i, bit);
+            }
+            bits >>>= BIT_SHIFT;
+        }
+    }
+
+    /**
+     * Returns whether a signature may have been added.
+     *
+     * @param key The signature.
+     * @return False if the signature was definitely never added.
+     */
+    public boolean mightContain(long key) {
+        final long hash = hash(key);
+        final int block = block(hash);
+        long bits = hash * MIX_1;
+        for (int i = 0; i < BLOCK_LONGS; i++) {
+            if (((long) WORDS.getAcquire(this.words, block + i) & (1L << (bits & BIT_MASK))) == 0) {
+                return false;
+            }
+            bits >>>= BIT_SHIFT;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the memory taken by the filter.
+     *
+     * @return The size of the filter's array, in bytes.
+     */
+    public long bytes() {
+        return (long) this.words.length * Long.BYTES;
+    }
+
+    private static long hash(long key) {
+        key ^= key >>> 33;
+        key *= MIX_1;
+        key ^= key >>> 33;
+        key *= MIX_2;
+        return key ^ (key >>> 33);
+    }
+
+    private int block(long hash) {
+        // The high bits pick the block, and a second mix of the hash picks
+        // the bits within it
+        return ((int) (hash >>> 32) & this.blockMask) * BLOCK_LONGS;
+    }
+}
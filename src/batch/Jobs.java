@@ -0,0 +1,81 @@
+package batch;
+
+import board.Bitboard;
+import search.Evaluation;
+
+/**
+ * Commonly used batch jobs.
+ */
+public class Jobs {
+    // The buffer each worker generates moves into
+    private static final ThreadLocal<int[]> MOVES = ThreadLocal.withInitial(() -> new int[Bitboard.MAX_MOVES]);
+
+    private Jobs() {
+    }
+
+    /**
+     * Returns a job writing the number of legal moves in each position.
+     *
+     * @return The job.
+     */
+    public static PositionJob moveCount() {
+        return (board, line, fenEnd, out) -> out.append(board.generateMoves(MOVES.get()));
+    }
+
+    /**
+     * Returns a job writing the number of leaf nodes of each position's move
+     * tree to a given depth.
+     *
+     * @param depth The depth of the move tree.
+     * @return The job.
+     */
+    public static PositionJob perft(int depth) {
+        return (board, line, fenEnd, out) -> out.append(perft(board, depth));
+    }
+
+    /**
+     * Returns a job writing the static evaluation of each position, from the
+     * point of view of the player to move.
+     *
+     * @return The job.
+     */
+    public static PositionJob evaluate() {
+        return (board, line, fenEnd, out) -> out.append(Evaluation.evaluate(board));
+    }
+
+    /**
+     * Counts the leaf nodes of a position's move tree. Moves are generated
+     * into buffers, one per ply, so only the moves played allocate.
+     *
+     * @param board The position. It is unchanged when this returns.
+     * @param depth The depth of the move tree.
+     * @return The number of leaf nodes.
+     */
+    public static long perft(Bitboard board, int depth) {
+        final PerftEvent event = new PerftEvent();
+        event.begin();
+        final long nodes = depth <= 0 ? 1 : countLeaves(board, depth, new int[depth][Bitboard.MAX_MOVES]);
+        if (event.shouldCommit()) {
+            event.fen = board.fen();
+            event.depth = depth;
+            event.nodes = nodes;
+            event.commit();
+        }
+        return nodes;
+    }
+
+    private static long countLeaves(Bitboard board, int depth, int[][] buffers) {
+        final int[] moves = buffers[depth - 1];
+        final int count = board.generateMoves(moves);
+        if (depth == 1) {
+            return count;
+        }
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            board.applyMove(board.createMove(moves[i]));
+            nodes += countLeaves(board, depth - 1, buffers);
+            board.undoMove();
+        }
+        return nodes;
+    }
+}
@@ -0,0 +1,30 @@
+package batch;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Recorded by JDK Flight Recorder for each call of {@link Jobs#perft}, lasting
+ * as long as the count did.
+ */
+@Name(PerftEvent.NAME)
+@Label("Perft")
+@Category({"Chess", "Perft"})
+@Description("A count of the leaf nodes of a move tree")
+@StackTrace(false)
+public class PerftEvent extends Event {
+    public static final String NAME = "chess.Perft";
+
+    @Label("Position")
+    String fen;
+
+    @Label("Depth")
+    int depth;
+
+    @Label("Nodes")
+    long nodes;
+}
@@ -0,0 +1,23 @@
+package batch;
+
+import board.Bitboard;
+
+/**
+ * Work done for each position of a batch. Implementations are shared by all
+ * workers, so must be safe to call from several threads at once.
+ */
+public interface PositionJob {
+    /**
+     * Processes one input line.
+     *
+     * @param board  The worker's board, set to the position on the line. It
+     *               may be changed freely.
+     * @param line   The input line, without its line break. Only valid for
+     *               the duration of the call.
+     * @param fenEnd The index in the line just past the FEN record, where
+     *               any EPD operations start.
+     * @param out    The builder to append the output line to, without a line
+     *               break.
+     */
+    void process(Bitboard board, CharSequence line, int fenEnd, StringBuilder out);
+}
@@ -0,0 +1,188 @@
+package batch;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A set of position signatures, for dropping duplicate positions from large
+ * datasets. Any number of threads may add and look up signatures at once.
+ * <p>
+ * Signatures are stored as bare longs in an open addressing table with
+ * linear probing, so an entry takes 8 bytes divided by the load factor,
+ * rather than the 50 or more of a {@code HashSet<Long>}. The table is split
+ * into chunks of {@link #CHUNK_LONGS}, so it may hold more than 2^31 slots.
+ * Slots are claimed with a compare-and-set, so adding never locks. The
+ * table doesn't grow: it is sized for an expected number of entries when
+ * created, and adding fails once it is more than {@link #MAX_LOAD} full and
+ * probing gets long.
+ * <p>
+ * An optional {@link BlockedBloomFilter} can sit in front of the table.
+ * Looking up a signature that was never added then usually only touches the
+ * much smaller filter.
+ */
+public class SignatureSet {
+    // Longs in each chunk of the table (8MB)
+    public static final int CHUNK_LONGS = 1 << 20;
+    // The most a table may be filled, as a fraction
+    public static final double MAX_LOAD = 0.9;
+    // Adding checks whether the table is too full after this many probes
+    private static final int FULL_CHECK_PROBES = 64;
+
+    private static final int MIN_SLOTS = 16;
+    private static final int CHUNK_SHIFT = 20;
+    private static final long CHUNK_MASK = CHUNK_LONGS - 1;
+    // Spreads keys that aren't random over the table
+    private static final long MIX = 0x9E3779B97F4A7C15L;
+    // Marks an empty slot. Zero itself is stored outside the table.
+    private static final long EMPTY = 0;
+
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[][] chunks;
+    private final long mask;
+    private final int shift;
+    private final long maxSize;
+    private final BlockedBloomFilter filter;
+
+    private final LongAdder size = new LongAdder();
+    private volatile boolean containsZero;
+
+    /**
+     * Creates a set without a Bloom filter.
+     *
+     * @param expected The number of signatures the set should hold.
+     */
+    public SignatureSet(long expected) {
+        this(expected, 0);
+    }
+
+    /**
+     * Creates a set.
+     *
+     * @param expected      The number of signatures the set should hold.
+     * @param filterBitsPer The number of Bloom filter bits per expected
+     *                      signature, or 0 for no filter. 10 bits give about
+     *                      1% false positives.
+     */
+    public SignatureSet(long expected, int filterBitsPer) {
+        // Fill the table no more than 3/4 when the expected number of
+        // signatures are added
+        final long slots = Math.max(MIN_SLOTS, Long.highestOneBit(Math.max(1, expected * 4 / 3 - 1)) << 1);
+        this.chunks = new long[(int) Math.max(1, slots >>> CHUNK_SHIFT)][];
+        for (int i = 0; i < this.chunks.length; i++) {
+            this.chunks[i] = new long[(int) Math.min(slots, CHUNK_LONGS)];
+        }
+        this.mask = slots - 1;
+        this.shift = Long.numberOfLeadingZeros(slots) + 1;
+        this.maxSize = (long) (slots * MAX_LOAD);
+        this.filter = filterBitsPer > 0 ? new BlockedBloomFilter(expected, filterBitsPer) : null;
+    }
+
+    /**
+     * Adds a signature.
+     *
+     * @param key The signature.
+     * @return True iff the signature wasn't in the set already.
+     * @throws IllegalStateException If the set is too full to add more
+     *                               signatures.
+     */
+    public boolean add(long key) {
+        if (this.filter != null) {
+            this.filter.add(key);
+        }
+        if (key == EMPTY) {
+            return addZero();
+        }
+
+        long slot = index(key);
+        for (long probes = 1; ; probes++) {
+            final long[] chunk = this.chunks[(int) (slot >>> CHUNK_SHIFT)];
+            final int offset = (int) (slot & CHUNK_MASK);
+            long stored = (long) SLOTS.getAcquire(chunk, offset);
+            if (stored == EMPTY) {
+                if (SLOTS.compareAndSet(chunk, offset, EMPTY, key)) {
+                    this.size.increment();
+                    return true;
+                }
+                // Another thread took the slot. It may have stored this key.
+                stored = (long) SLOTS.getAcquire(chunk, offset);
+            }
+            if (stored == key) {
+                return false;
+            }
+            // Counting the entries is slow, so it's only done once probing
+            // takes long enough to suggest the table is full
+            if (probes % FULL_CHECK_PROBES == 0 && (this.size.sum() >= this.maxSize || probes > this.mask)) {
+                throw new IllegalStateException("Signature set is full at " + this.size.sum() + " entries");
+            }
+            slot = (slot + 1) & this.mask;
+        }
+    }
+
+    /**
+     * Returns whether a signature is in the set.
+     *
+     * @param key The signature.
+     * @return True iff the signature was added.
+     */
+    public boolean contains(long key) {
+        if (this.filter != null && !this.filter.mightContain(key)) {
+            return false;
+        }
+        if (key == EMPTY) {
+            return this.containsZero;
+        }
+
+        long slot = index(key);
+        while (true) {
+            final long stored = (long) SLOTS.getAcquire(this.chunks[(int) (slot >>> CHUNK_SHIFT)], (int) (slot & CHUNK_MASK));
+            if (stored == key) {
+                return true;
+            }
+            if (stored == EMPTY) {
+                return false;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+    }
+
+    /**
+     * Returns the number of signatures in the set.
+     *
+     * @return The number of signatures added.
+     */
+    public long size() {
+        return this.size.sum() + (this.containsZero ? 1 : 0);
+    }
+
+    /**
+     * Returns the number of slots in the table.
+     *
+     * @return The capacity of the table.
+     */
+    public long capacity() {
+        return this.mask + 1;
+    }
+
+    /**
+     * Returns the memory taken by the table and filter.
+     *
+     * @return The size of the set's arrays, in bytes.
+     */
+    public long bytes() {
+        return capacity() * Long.BYTES + (this.filter != null ? this.filter.bytes() : 0);
+    }
+
+    private long index(long key) {
+        return (key * MIX) >>> this.shift;
+    }
+
+    private synchronized boolean addZero() {
+        if (this.containsZero) {
+            return false;
+        }
+        this.containsZero = true;
+        return true;
+    }
+}
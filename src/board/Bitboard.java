@@ -1,9 +1,9 @@
 package board;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Random;
 
 import static board.Piece.*;
 import static board.Piece.Player.BLACK;
@@ -23,6 +23,15 @@ public class Bitboard {
     public static final int NUM_PIECES = 6;
     public static final String PIECES = "PNBRQKpnbrqk";
 
+    // Size of a position written by encode()
+    public static final int ENCODED_BYTES = 32;
+    // Leading bytes of a position written by encode() that hold everything
+    // but the move counters. Positions whose leading bytes are equal have the
+    // same legal moves.
+    public static final int ENCODED_POSITION_BYTES = 26;
+    // Room a buffer of moves needs for any position
+    public static final int MAX_MOVES = 256;
+
     // Offsets determining where in ZOBRIST the zobrist bitstrings for each of
     // the hash components starts
     public static final int CASTLE_OFFSET = 768;
@@ -65,15 +74,54 @@ public class Bitboard {
     // castling is possible. From white's perspective.
     private static final long KINGSIDE_CASTLE_MASK  = 0b01100000L;
     private static final long QUEENSIDE_CASTLE_MASK = 0b00001110L;
-    private static final long ROOK_MASK = 0x8100000000000081L;
 
-    // Random bitstrings used for zobrist hashing
-    private static final long[] ZOBRIST = new long[781];
+    // Codes of the special moves, as packed by Move
+    private static final int DOUBLE_PUSH_CODE      = 0b0001;
+    private static final int KINGSIDE_CASTLE_CODE  = 0b0010;
+    private static final int QUEENSIDE_CASTLE_CODE = 0b0011;
+    private static final int ENPASSANT_CODE        = 0b0101;
+
+    // The castling rights that remain after a move from or to each square.
+    // Moving the king or a rook, or capturing a rook, removes the rights that
+    // depend on that piece.
+    private static final byte[] CASTLING_MASKS = new byte[64];
+
+    // Initial capacity of the undo history
+    private static final int UNDO_CAPACITY = 256;
+
+    // @formatter:off
+    // Layout of an encoded position. Each occupied square, in order, has a
+    // 4 bit index into PIECES, with the first square in the low bits.
+    private static final int ENCODED_OCCUPANCY = 0;
+    private static final int ENCODED_PIECES    = 8;
+    private static final int ENCODED_FLAGS     = 24;
+    private static final int ENCODED_ENPASSANT = 25;
+    private static final int ENCODED_HALFMOVES = ENCODED_POSITION_BYTES;
+    private static final int ENCODED_FULLMOVES = 27;
+    private static final int MAX_ENCODED_PIECES = 32;
+    // @formatter:on
+
+    // For each ASCII character, its index in PIECES plus one, or 0 if it
+    // isn't a piece
+    private static final byte[] PIECE_CODES = new byte[128];
+
+    // Bitstrings used for zobrist hashing. These are the Polyglot keys, so
+    // signatures can be looked up in Polyglot opening books.
+    private static final long[] ZOBRIST = LookupTables.POLYGLOT_RANDOM;
 
     static {
-        Random rand = new Random(0);
-        for(int i = 0; i < ZOBRIST.length; i++) {
-            ZOBRIST[i] = rand.nextLong();
+        for (int i = 0; i < CASTLING_MASKS.length; i++) {
+            CASTLING_MASKS[i] = 0b1111;
+        }
+        CASTLING_MASKS[square(File.E, 0)] = 0b1100;
+        CASTLING_MASKS[square(File.H, 0)] = 0b1110;
+        CASTLING_MASKS[square(File.A, 0)] = 0b1101;
+        CASTLING_MASKS[square(File.E, 7)] = 0b0011;
+        CASTLING_MASKS[square(File.H, 7)] = 0b1011;
+        CASTLING_MASKS[square(File.A, 7)] = 0b0111;
+
+        for (int i = 0; i < PIECES.length(); i++) {
+            PIECE_CODES[PIECES.charAt(i)] = (byte) (i + 1);
         }
     }
     // @formatter:on
@@ -84,8 +132,11 @@ public class Bitboard {
 
     // Bitmaps for each player and their pieces: [player][piece]
     private final long[][] boards;
-    // Moves that have been applied to this board, with the most recent on top
-    private final LinkedList<UndoMove> undoStack;
+    // Moves that have been applied to this board, with the most recent at
+    // undoCount - 1. Entries are reused so applying a move doesn't allocate.
+    private UndoMove[] undoStack;
+    // Number of entries in the undo history
+    private int undoCount;
     // Number of half-moves since the last pawn capture or piece advance
     private byte halfmoveClock;
     // What move the game is one (starts at 1)
@@ -103,6 +154,28 @@ public class Bitboard {
     // The zobrist hash of this board
     private long signature;
 
+    // Squares from which each piece type of the player to move would attack
+    // the enemy king, and the pieces of the player to move whose departure
+    // would uncover an attack on it. Only valid while checkInfoValid is true
+    // and the signature is checkInfoSignature.
+    private final long[] checkSquares;
+    private long discoveryCandidates;
+    // For each discovery candidate, the squares between the enemy king and
+    // the slider it is blocking, plus the slider's square
+    private final long[] discoveryLines;
+    private long checkInfoSignature;
+    private boolean checkInfoValid;
+    // Enemy pieces attacking the king of the player to move, and the pieces
+    // of the player to move that are pinned to their king. Only valid while
+    // pinInfoValid is true and the signature is pinInfoSignature.
+    private long checkers;
+    private long pinned;
+    // For each pinned piece, the squares it can move to without leaving the
+    // line of the pin
+    private final long[] pinLines;
+    private long pinInfoSignature;
+    private boolean pinInfoValid;
+
     public Bitboard(String fen) {
         this();
         init(fen);
@@ -118,8 +191,14 @@ public class Bitboard {
         this.possibleCastling = 0b1111;
         this.enpassantPosition = 0;
         this.whitesTurn = true;
-        this.undoStack = new LinkedList<>();
+        this.undoStack = new UndoMove[UNDO_CAPACITY];
+        this.undoCount = 0;
         this.signature = 0;
+        this.checkSquares = new long[NUM_PIECES];
+        this.discoveryLines = new long[SQUARES];
+        this.checkInfoValid = false;
+        this.pinLines = new long[SQUARES];
+        this.pinInfoValid = false;
     }
 
     /**
@@ -214,13 +293,110 @@ public class Bitboard {
         copy.possibleCastling = this.possibleCastling;
         copy.enpassantPosition = this.enpassantPosition;
         copy.whitesTurn = this.whitesTurn;
-        copy.undoStack.clear();
-        copy.undoStack.addAll(this.undoStack);
+        copy.undoStack = new UndoMove[this.undoStack.length];
+        for (int i = 0; i < this.undoCount; i++) {
+            UndoMove undo = this.undoStack[i];
+            copy.undoStack[i] = new UndoMove(undo.enpassantPosition, undo.halfmoveClock, undo.possibleCastling, undo.move);
+            copy.undoStack[i].signature = undo.signature;
+        }
+        copy.undoCount = this.undoCount;
         copy.signature = this.signature;
 
         return copy;
     }
 
+    /**
+     * Returns the color mirror of this position: the board turned upside down
+     * with every piece changing color, and the other player to move. Castling
+     * rights and the en passant square are mirrored too, so the mirror has
+     * the same moves and the same value for the player to move. Reversing the
+     * bytes of a bitmap mirrors its ranks. The undo history isn't copied.
+     *
+     * @return The mirrored position.
+     */
+    public Bitboard flipped() {
+        final Bitboard flipped = new Bitboard();
+        for (int piece = 0; piece < NUM_PIECES; piece++) {
+            flipped.boards[WHITE][piece] = Long.reverseBytes(this.boards[BLACK][piece]);
+            flipped.boards[BLACK][piece] = Long.reverseBytes(this.boards[WHITE][piece]);
+        }
+        flipped.whitesTurn = !this.whitesTurn;
+        flipped.possibleCastling = flippedCastling();
+        if (this.enpassantPosition != 0) {
+            final int rank = (this.enpassantPosition & RANK_MASK) >>> 4;
+            flipped.enpassantPosition = position(this.enpassantPosition & FILE_MASK, SIZE - 1 - rank);
+        }
+        flipped.halfmoveClock = this.halfmoveClock;
+        flipped.fullmoves = this.fullmoves;
+        flipped.signature = flippedSignature();
+        return flipped;
+    }
+
+    /**
+     * Returns the signature of the color mirror of this position, as given by
+     * {@link #flipped()}, without creating the mirror.
+     *
+     * @return The signature of the mirrored position.
+     */
+    public long flippedSignature() {
+        long signature = 0;
+        for (int color = 0; color < PLAYERS; color++) {
+            for (int piece = 0; piece < NUM_PIECES; piece++) {
+                for (long pieces = this.boards[color][piece]; pieces != 0; pieces &= pieces - 1) {
+                    // XORing a square with 56 mirrors its rank
+                    signature ^= ZOBRIST[pieceZobristIndex(1 - color, piece, Long.numberOfTrailingZeros(pieces) ^ 56)];
+                }
+            }
+        }
+
+        final int castling = flippedCastling();
+        for (int i = 0; i < 4; i++) {
+            if ((castling & (1 << i)) != 0) {
+                signature ^= ZOBRIST[CASTLE_OFFSET + i];
+            }
+        }
+        // The en passant file is hashed in the mirror exactly when it is here
+        if (enpassantHashed()) {
+            signature ^= ZOBRIST[ENPASSANT_OFFSET + (this.enpassantPosition & FILE_MASK)];
+        }
+        if (!this.whitesTurn) {
+            signature ^= ZOBRIST[TURN_OFFSET];
+        }
+        return signature;
+    }
+
+    /**
+     * Returns a signature that is the same for this position and its color
+     * mirror, for caches and datasets that should treat the two as one
+     * entry: the lower, as unsigned numbers, of {@link #signature()} and
+     * {@link #flippedSignature()}. Scores from the point of view of the
+     * player to move can be shared between the two, but moves must be
+     * mirrored.
+     *
+     * @return The canonical signature of this position.
+     */
+    public long canonicalSignature() {
+        final long flipped = flippedSignature();
+        return Long.compareUnsigned(this.signature, flipped) <= 0 ? this.signature : flipped;
+    }
+
+    /**
+     * Returns whether this position's canonical signature is that of its
+     * mirror, that is, whether moves and positions stored under the
+     * canonical signature are mirrored.
+     *
+     * @return True iff {@link #canonicalSignature()} is the mirror's
+     * signature.
+     */
+    public boolean isCanonicalFlipped() {
+        return Long.compareUnsigned(this.signature, flippedSignature()) > 0;
+    }
+
+    private byte flippedCastling() {
+        // White's rights are the low two bits and black's the high two
+        return (byte) (((this.possibleCastling & 0b0011) << 2) | ((this.possibleCastling >>> 2) & 0b0011));
+    }
+
     /**
      * @param fen
      */
@@ -232,6 +408,8 @@ public class Bitboard {
         }
         this.possibleCastling = 0;
         this.signature = 0;
+        this.checkInfoValid = false;
+        this.pinInfoValid = false;
 
         String[] fenParts = fen.split(" ");
         String pieces = fenParts[0];
@@ -299,8 +477,7 @@ public class Bitboard {
             int file = enpassant.charAt(0) - 'a';
             int rank = enpassant.charAt(1) - '1';
             this.enpassantPosition = position(file, rank);
-
-            updateZobrist(ENPASSANT_OFFSET + file);
+            updateEnpassantZobrist();
         }
 
         // Number of half-moves made since the last capture or pawn move
@@ -334,6 +511,10 @@ public class Bitboard {
                 if (piece == Type.EMPTY) {
                     empty++;
                 } else {
+                    if (empty != 0) {
+                        s.append(empty);
+                        empty = 0;
+                    }
                     s.append(piece);
                 }
                 square++;
@@ -360,7 +541,7 @@ public class Bitboard {
         }
 
         s.append(' ');
-        s.append(this.enpassantPosition == 0 ? '-' : new Piece((byte) 0, position(this.enpassantPosition)).toString());
+        s.append(this.enpassantPosition == 0 ? '-' : new Piece((byte) 0, this.enpassantPosition).toString());
 
         s.append(' ');
         s.append(this.halfmoveClock);
@@ -372,210 +553,849 @@ public class Bitboard {
     }
 
     /**
-     * Initializes this bitboard to be the starting position of a game.
+     * Sets this board to the position given by a FEN record, without
+     * allocating. The halfmove and fullmove fields may be left out. The undo
+     * history is cleared.
+     *
+     * @param fen    The characters containing the record.
+     * @param offset The index of the first character of the record.
+     * @return The index just past the last character of the record.
+     * @throws IllegalArgumentException If the record is malformed.
      */
-    public void initStartingBoard() {
-        init("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
+    public int initFen(CharSequence fen, int offset) {
+        return parseFen(fen, null, offset, fen.length());
     }
 
-    public long signature() {
-        return this.signature;
+    /**
+     * Sets this board to the position given by an ASCII encoded FEN record,
+     * without allocating. The buffer's position isn't changed.
+     *
+     * @param fen    The buffer containing the record.
+     * @param offset The index of the first byte of the record.
+     * @return The index just past the last byte of the record.
+     * @throws IllegalArgumentException If the record is malformed.
+     * @see #initFen(CharSequence, int)
+     */
+    public int initFen(ByteBuffer fen, int offset) {
+        return parseFen(null, fen, offset, fen.limit());
     }
 
-    @Override
-    public int hashCode() {
-        return (int) this.signature;
-    }
+    /**
+     * Parses a FEN record from either a character sequence or a byte buffer,
+     * whichever isn't null.
+     */
+    private int parseFen(CharSequence chars, ByteBuffer bytes, int offset, int end) {
+        for (int player = 0; player < PLAYERS; player++) {
+            for (int piece = 0; piece < NUM_PIECES; piece++) {
+                this.boards[player][piece] = 0L;
+            }
+        }
+        this.possibleCastling = 0;
+        this.enpassantPosition = 0;
+        this.signature = 0;
+        this.undoCount = 0;
+        this.checkInfoValid = false;
+        this.pinInfoValid = false;
 
-    private void addPiece(int color, int piece, int square) {
-        this.boards[color][piece] |= (1L << square);
-        updatePieceZobrist(color, piece, square);
-    }
+        int i = offset;
 
-    private void removePiece(int color, int piece, int square) {
-        this.boards[color][piece] &= ~(1L << square);
-        updatePieceZobrist(color, piece, square);
-    }
+        // Board layout
+        int square = SQUARES - SIZE; // A8
+        while (i < end) {
+            final char c = charAt(chars, bytes, i);
+            if (c == ' ') {
+                break;
+            }
+            i++;
+            if (c >= '1' && c <= '8') {
+                square += c - '0';
+            } else if (c == '/') {
+                square -= SIZE * 2;
+            } else {
+                final int code = c < PIECE_CODES.length ? PIECE_CODES[c] - 1 : -1;
+                if (code < 0 || square < 0 || square >= SQUARES) {
+                    throw fenError(chars, bytes, offset, end, i - 1);
+                }
+                final int color = code < NUM_PIECES ? WHITE : BLACK;
+                addPiece(color, code % NUM_PIECES, square);
+                square++;
+            }
+        }
 
-    private void updateZobrist(int index) {
-        this.signature ^= ZOBRIST[index];
-    }
+        // Current player to move
+        i = skipSpace(chars, bytes, i, end, offset);
+        final char turn = charAt(chars, bytes, i);
+        if (turn != 'w' && turn != 'b') {
+            throw fenError(chars, bytes, offset, end, i);
+        }
+        this.whitesTurn = turn == 'w';
+        if (this.whitesTurn) {
+            updateZobrist(TURN_OFFSET);
+        }
+        i++;
 
-    private void updatePieceZobrist(int color, int piece, int square) {
-        // Using same hash layout as polyglot format
-        updateZobrist((((piece << 1) + (1 - color)) << 6) + square);
-    }
+        // Available castling options
+        i = skipSpace(chars, bytes, i, end, offset);
+        if (charAt(chars, bytes, i) == '-') {
+            i++;
+        } else {
+            for (; i < end && charAt(chars, bytes, i) != ' '; i++) {
+                final int right = "KQkq".indexOf(charAt(chars, bytes, i));
+                if (right < 0) {
+                    throw fenError(chars, bytes, offset, end, i);
+                }
+                this.possibleCastling |= 1 << right;
+            }
+            updateCastlingZobrist(this.possibleCastling);
+        }
 
-    private void addKingsideCastling(boolean white) {
-        if (white && (this.possibleCastling & 0b0001) == 0) {
-            this.possibleCastling |= 0b0001;
-            updateZobrist(CASTLE_OFFSET);
-        } else if (!white && (this.possibleCastling & 0b0100) == 0) {
-            this.possibleCastling |= 0b0100;
-            updateZobrist(CASTLE_OFFSET + 2);
+        // En passant square
+        i = skipSpace(chars, bytes, i, end, offset);
+        if (charAt(chars, bytes, i) == '-') {
+            i++;
+        } else {
+            if (i + 1 >= end) {
+                throw fenError(chars, bytes, offset, end, i);
+            }
+            final int file = charAt(chars, bytes, i) - 'a';
+            final int rank = charAt(chars, bytes, i + 1) - '1';
+            if (file < 0 || file >= SIZE || rank < 0 || rank >= SIZE) {
+                throw fenError(chars, bytes, offset, end, i);
+            }
+            this.enpassantPosition = position(file, rank);
+            i += 2;
         }
-    }
+        updateEnpassantZobrist();
 
-    private void addQueensideCastling(boolean white) {
-        if (white && (this.possibleCastling & 0b0010) == 0) {
-            this.possibleCastling |= 0b0010;
-            updateZobrist(CASTLE_OFFSET + 1);
-        } else if (!white && (this.possibleCastling & 0b1000) == 0) {
-            this.possibleCastling |= 0b1000;
-            updateZobrist(CASTLE_OFFSET + 3);
+        // The clocks are optional
+        this.halfmoveClock = 0;
+        this.fullmoves = 1;
+        if (i + 1 < end && charAt(chars, bytes, i) == ' ' && isDigit(charAt(chars, bytes, i + 1))) {
+            int halfmoves = 0;
+            for (i++; i < end && isDigit(charAt(chars, bytes, i)); i++) {
+                halfmoves = halfmoves * 10 + charAt(chars, bytes, i) - '0';
+            }
+            this.halfmoveClock = (byte) halfmoves;
+
+            if (i + 1 < end && charAt(chars, bytes, i) == ' ' && isDigit(charAt(chars, bytes, i + 1))) {
+                int fullmoves = 0;
+                for (i++; i < end && isDigit(charAt(chars, bytes, i)); i++) {
+                    fullmoves = fullmoves * 10 + charAt(chars, bytes, i) - '0';
+                }
+                this.fullmoves = (short) fullmoves;
+            }
         }
+
+        return i;
     }
 
-    private void removeKingsideCastling(boolean white) {
-        if (white && (this.possibleCastling & 0b0001) != 0) {
-            this.possibleCastling &= 0b1110;
-            updateZobrist(CASTLE_OFFSET);
-        } else if (!white && (this.possibleCastling & 0b0100) != 0) {
-            this.possibleCastling &= 0b1011;
-            updateZobrist(CASTLE_OFFSET + 2);
-        }
+    private static char charAt(CharSequence chars, ByteBuffer bytes, int index) {
+        return chars != null ? chars.charAt(index) : (char) (bytes.get(index) & 0xFF);
     }
 
-    private void removeQueensideCastling(boolean white) {
-        if (white && (this.possibleCastling & 0b0010) != 0) {
-            this.possibleCastling &= 0b1101;
-            updateZobrist(CASTLE_OFFSET + 1);
-        } else if (!white && (this.possibleCastling & 0b1000) != 0) {
-            this.possibleCastling &= 0b0111;
-            updateZobrist(CASTLE_OFFSET + 3);
-        }
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
     }
 
-    private void updateCastlingZobrist(byte mask) {
-        if ((mask & 0b0001) != 0) {
-            updateZobrist(CASTLE_OFFSET);
-        }
-        if ((mask & 0b0010) != 0) {
-            updateZobrist(CASTLE_OFFSET + 1);
-        }
-        if ((mask & 0b0100) != 0) {
-            updateZobrist(CASTLE_OFFSET + 2);
-        }
-        if ((mask & 0b1000) != 0) {
-            updateZobrist(CASTLE_OFFSET + 3);
+    /**
+     * Skips the single space that separates two fields.
+     */
+    private static int skipSpace(CharSequence chars, ByteBuffer bytes, int index, int end, int offset) {
+        if (index + 1 >= end || charAt(chars, bytes, index) != ' ') {
+            throw fenError(chars, bytes, offset, end, index);
         }
+        return index + 1;
     }
 
-    public void applyMove(Move move) {
-        this.undoStack.addFirst(new UndoMove(this.enpassantPosition, this.halfmoveClock, this.possibleCastling, move));
+    private static IllegalArgumentException fenError(CharSequence chars, ByteBuffer bytes, int offset, int end, int index) {
+        final StringBuilder record = new StringBuilder();
+        for (int i = offset; i < end && charAt(chars, bytes, i) != '\n'; i++) {
+            record.append(charAt(chars, bytes, i));
+        }
+        return new IllegalArgumentException("Malformed FEN at column " + (index - offset) + ": " + record);
+    }
 
-        final byte color = (byte) (this.whitesTurn ? 0 : 1);
-        final int srcSquare = square(move.src.position);
-        final int destSquare = square(move.dest.position);
-        final byte srcPiece = move.src.type();
-        final byte destPiece = move.dest.type();
+    /**
+     * Appends the FEN record of this position, without allocating beyond
+     * what the builder needs to grow.
+     *
+     * @param s The builder to append to.
+     * @return The given builder.
+     */
+    public StringBuilder appendFen(StringBuilder s) {
+        final long occupancy = occupancy();
+        for (int rank = SIZE - 1; rank >= 0; rank--) {
+            int empty = 0;
+            for (int square = rank * SIZE; square < (rank + 1) * SIZE; square++) {
+                if ((occupancy & (1L << square)) == 0) {
+                    empty++;
+                    continue;
+                }
+                if (empty != 0) {
+                    s.append((char) ('0' + empty));
+                    empty = 0;
+                }
+                s.append(pieceAt(square));
+            }
+            if (empty != 0) {
+                s.append((char) ('0' + empty));
+            }
+            if (rank != 0) {
+                s.append('/');
+            }
+        }
 
-        // Remove the piece from the source square
-        removePiece(color, srcPiece, srcSquare);
+        s.append(' ').append(this.whitesTurn ? 'w' : 'b').append(' ');
+        if (this.possibleCastling == 0) {
+            s.append('-');
+        }
+        for (int right = 0; right < 4; right++) {
+            if ((this.possibleCastling & (1 << right)) != 0) {
+                s.append("KQkq".charAt(right));
+            }
+        }
 
-        if (move.isPromotion()) {
-            // If the piece is a pawn being promoted, put the new piece
-            // on the destination square
-            final byte promotionPiece = move.promotionPiece();
-            addPiece(color, promotionPiece, destSquare);
+        s.append(' ');
+        if (this.enpassantPosition == 0) {
+            s.append('-');
         } else {
-            // Otherwise, put the same piece back on the destination square
-            addPiece(color, srcPiece, destSquare);
+            s.append((char) ('a' + (this.enpassantPosition & FILE_MASK)));
+            s.append((char) ('1' + ((this.enpassantPosition & RANK_MASK) >>> 4)));
         }
-        // If this move is a capture, remove the enemy piece
-        if (move.isCapture() && !move.isEnpassant()) {
-            removePiece(1 - color, destPiece, destSquare);
 
-            if (destPiece == Type.ROOK && ((destSquare & ROOK_MASK) != 0)) {
-                byte rookFile = move.dest.file();
+        return s.append(' ').append(this.halfmoveClock).append(' ').append(this.fullmoves);
+    }
 
-                if (rookFile == File.H) {
-                    removeKingsideCastling(!this.whitesTurn);
-                } else if (rookFile == File.A) {
-                    removeQueensideCastling(!this.whitesTurn);
+    /**
+     * Writes the FEN record of this position as ASCII, without allocating.
+     * The buffer's position isn't changed.
+     *
+     * @param buffer The buffer to write to.
+     * @param offset The index to write the first byte at.
+     * @return The index just past the last byte written.
+     * @see #appendFen(StringBuilder)
+     */
+    public int writeFen(ByteBuffer buffer, int offset) {
+        final long occupancy = occupancy();
+        int i = offset;
+        for (int rank = SIZE - 1; rank >= 0; rank--) {
+            int empty = 0;
+            for (int square = rank * SIZE; square < (rank + 1) * SIZE; square++) {
+                if ((occupancy & (1L << square)) == 0) {
+                    empty++;
+                    continue;
+                }
+                if (empty != 0) {
+                    buffer.put(i++, (byte) ('0' + empty));
+                    empty = 0;
                 }
+                buffer.put(i++, (byte) pieceAt(square));
             }
-        }
-        // If the king moves, no castling is possible
-        if (srcPiece == Type.KING) {
-            removeKingsideCastling(this.whitesTurn);
-            removeQueensideCastling(this.whitesTurn);
-        }
-        // If a rook moves, castling on that side is no longer possible
-        if (srcPiece == Type.ROOK) {
-            byte rookFile = move.src.file();
-
-            if (rookFile == File.H) {
-                removeKingsideCastling(this.whitesTurn);
-            } else if (rookFile == File.A) {
-                removeQueensideCastling(this.whitesTurn);
+            if (empty != 0) {
+                buffer.put(i++, (byte) ('0' + empty));
             }
-        }
-        // If an en passant move, capture the enemy pawn
-        if (move.isEnpassant()) {
-            if (this.whitesTurn) {
-                removePiece(1 - color, Type.PAWN, destSquare - SIZE);
-            } else {
-                removePiece(1 - color, Type.PAWN, destSquare + SIZE);
+            if (rank != 0) {
+                buffer.put(i++, (byte) '/');
             }
         }
 
-        // If this is a castling move, everything can happen as normal. The only
-        // thing left to do now is move the rook into place.
-        if (move.isCastle()) {
-            final int rank = this.whitesTurn ? 0 : 7;
-            final int rookSrcFile;
-            final int rookDestFile;
-            if (move.castleType() == 1) {
-                // King-side castle
-                rookSrcFile = File.H;
-                rookDestFile = File.F;
-                removeKingsideCastling(this.whitesTurn);
-            } else {
-                // Queen-side castle
-                rookSrcFile = File.A;
-                rookDestFile = File.D;
-                removeQueensideCastling(this.whitesTurn);
-            }
-            removePiece(color, Type.ROOK, square(rookSrcFile, rank));
-            addPiece(color, Type.ROOK, square(rookDestFile, rank));
+        buffer.put(i++, (byte) ' ');
+        buffer.put(i++, (byte) (this.whitesTurn ? 'w' : 'b'));
+        buffer.put(i++, (byte) ' ');
+        if (this.possibleCastling == 0) {
+            buffer.put(i++, (byte) '-');
         }
-
-        // Update the half-move clock
-        this.halfmoveClock++;
-        if (srcPiece == PAWN || move.isCapture()) {
-            this.halfmoveClock = 0;
+        for (int right = 0; right < 4; right++) {
+            if ((this.possibleCastling & (1 << right)) != 0) {
+                buffer.put(i++, (byte) "KQkq".charAt(right));
+            }
         }
 
-        // Update en passant square
-        updateZobrist(ENPASSANT_OFFSET + (this.enpassantPosition & FILE_MASK));
-        if (move.isDoublePush()) {
-            byte epFile = move.src.file();
-            updateZobrist(ENPASSANT_OFFSET + epFile);
-
-            int epRank = move.src.rank() + (this.whitesTurn ? 1 : -1);
-            this.enpassantPosition = position(epFile, epRank);
+        buffer.put(i++, (byte) ' ');
+        if (this.enpassantPosition == 0) {
+            buffer.put(i++, (byte) '-');
         } else {
-            this.enpassantPosition = 0;
+            buffer.put(i++, (byte) ('a' + (this.enpassantPosition & FILE_MASK)));
+            buffer.put(i++, (byte) ('1' + ((this.enpassantPosition & RANK_MASK) >>> 4)));
         }
 
-        // Switch turns
-        this.whitesTurn = !this.whitesTurn;
-        updateZobrist(TURN_OFFSET);
+        buffer.put(i++, (byte) ' ');
+        i = writeNumber(buffer, i, this.halfmoveClock);
+        buffer.put(i++, (byte) ' ');
+        return writeNumber(buffer, i, this.fullmoves);
+    }
 
-        // If black's turn just ended, increment the full move clock
-        if (this.whitesTurn) {
-            this.fullmoves++;
+    private static int writeNumber(ByteBuffer buffer, int offset, int value) {
+        int digits = 1;
+        for (int v = value / 10; v != 0; v /= 10) {
+            digits++;
+        }
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            buffer.put(i, (byte) ('0' + value % 10));
+            value /= 10;
         }
+        return offset + digits;
     }
 
-    public void undoMove() {
-        if (this.undoStack.isEmpty()) {
-            return;
+    /**
+     * Writes this position in a fixed size binary form of
+     * {@link #ENCODED_BYTES} bytes. The undo history isn't written.
+     * <p>
+     * The form is the occupancy bitboard, then a 4 bit piece code for each
+     * occupied square, then a byte holding the side to move in bit 0 and the
+     * castling rights in bits 1-4, the en passant file plus one (or 0), the
+     * halfmove clock and the fullmove number. Multi-byte fields are little
+     * endian whatever the buffer's order, and unused bytes are 0. The
+     * buffer's position isn't changed.
+     *
+     * @param buffer The buffer to write to.
+     * @param offset The index to write the first byte at.
+     * @return The index just past the last byte written.
+     * @throws IllegalArgumentException If the position has more than 32
+     *                                  pieces.
+     */
+    public int encode(ByteBuffer buffer, int offset) {
+        final long occupancy = occupancy();
+        if (count(occupancy) > MAX_ENCODED_PIECES) {
+            throw new IllegalArgumentException("Too many pieces to encode: " + fen());
         }
 
-        UndoMove undoMove = this.undoStack.removeFirst();
-
+        long low = 0;
+        long high = 0;
+        int index = 0;
+        for (long remaining = occupancy; remaining != 0; remaining &= remaining - 1, index++) {
+            final long code = pieceCode(Long.numberOfTrailingZeros(remaining));
+            if (index < 16) {
+                low |= code << (index << 2);
+            } else {
+                high |= code << ((index - 16) << 2);
+            }
+        }
+
+        putLittleEndian(buffer, offset + ENCODED_OCCUPANCY, occupancy);
+        putLittleEndian(buffer, offset + ENCODED_PIECES, low);
+        putLittleEndian(buffer, offset + ENCODED_PIECES + Long.BYTES, high);
+        buffer.put(offset + ENCODED_FLAGS, (byte) ((this.whitesTurn ? 0 : 1) | (this.possibleCastling << 1)));
+        buffer.put(offset + ENCODED_ENPASSANT, (byte) (this.enpassantPosition == 0 ? 0 : (this.enpassantPosition & FILE_MASK) + 1));
+        buffer.put(offset + ENCODED_HALFMOVES, this.halfmoveClock);
+        buffer.put(offset + ENCODED_FULLMOVES, (byte) this.fullmoves);
+        buffer.put(offset + ENCODED_FULLMOVES + 1, (byte) (this.fullmoves >>> 8));
+        for (int i = ENCODED_FULLMOVES + 2; i < ENCODED_BYTES; i++) {
+            buffer.put(offset + i, (byte) 0);
+        }
+        return offset + ENCODED_BYTES;
+    }
+
+    /**
+     * Sets this board to a position written by {@link #encode(ByteBuffer, int)}.
+     * The undo history is cleared. The buffer's position isn't changed.
+     *
+     * @param buffer The buffer to read from.
+     * @param offset The index of the first byte of the position.
+     * @return The index just past the last byte read.
+     * @throws IllegalArgumentException If a piece code is invalid.
+     */
+    public int decode(ByteBuffer buffer, int offset) {
+        for (int player = 0; player < PLAYERS; player++) {
+            for (int piece = 0; piece < NUM_PIECES; piece++) {
+                this.boards[player][piece] = 0L;
+            }
+        }
+        this.signature = 0;
+        this.undoCount = 0;
+        this.checkInfoValid = false;
+        this.pinInfoValid = false;
+
+        final long occupancy = getLittleEndian(buffer, offset + ENCODED_OCCUPANCY);
+        long codes = getLittleEndian(buffer, offset + ENCODED_PIECES);
+        int index = 0;
+        for (long remaining = occupancy; remaining != 0; remaining &= remaining - 1, index++) {
+            if (index == 16) {
+                codes = getLittleEndian(buffer, offset + ENCODED_PIECES + Long.BYTES);
+            }
+            final int code = (int) (codes & 0b1111);
+            codes >>>= 4;
+            if (code >= PIECES.length() || index >= MAX_ENCODED_PIECES) {
+                throw new IllegalArgumentException("Invalid encoded position at " + offset);
+            }
+            addPiece(code < NUM_PIECES ? WHITE : BLACK, code % NUM_PIECES, Long.numberOfTrailingZeros(remaining));
+        }
+
+        final int flags = buffer.get(offset + ENCODED_FLAGS);
+        this.whitesTurn = (flags & 1) == 0;
+        if (this.whitesTurn) {
+            updateZobrist(TURN_OFFSET);
+        }
+        this.possibleCastling = (byte) ((flags >>> 1) & 0b1111);
+        updateCastlingZobrist(this.possibleCastling);
+
+        final int enpassantFile = buffer.get(offset + ENCODED_ENPASSANT) - 1;
+        this.enpassantPosition = enpassantFile < 0 ? 0 : position(enpassantFile, this.whitesTurn ? 5 : 2);
+        updateEnpassantZobrist();
+
+        this.halfmoveClock = buffer.get(offset + ENCODED_HALFMOVES);
+        this.fullmoves = (short) ((buffer.get(offset + ENCODED_FULLMOVES) & 0xFF)
+                | (buffer.get(offset + ENCODED_FULLMOVES + 1) << 8));
+        return offset + ENCODED_BYTES;
+    }
+
+    /**
+     * Encodes several positions one after another.
+     *
+     * @param boards The positions to write.
+     * @param from   The index of the first position to write.
+     * @param count  The number of positions to write.
+     * @param buffer The buffer to write to.
+     * @param offset The index to write the first byte at.
+     * @return The index just past the last byte written.
+     * @see #encode(ByteBuffer, int)
+     */
+    public static int encodeAll(Bitboard[] boards, int from, int count, ByteBuffer buffer, int offset) {
+        for (int i = from; i < from + count; i++) {
+            offset = boards[i].encode(buffer, offset);
+        }
+        return offset;
+    }
+
+    /**
+     * Decodes several positions written one after another into existing
+     * boards.
+     *
+     * @param buffer The buffer to read from.
+     * @param offset The index of the first byte of the first position.
+     * @param boards The boards to decode into.
+     * @param from   The index of the first board to decode into.
+     * @param count  The number of positions to read.
+     * @return The index just past the last byte read.
+     * @see #decode(ByteBuffer, int)
+     */
+    public static int decodeAll(ByteBuffer buffer, int offset, Bitboard[] boards, int from, int count) {
+        for (int i = from; i < from + count; i++) {
+            offset = boards[i].decode(buffer, offset);
+        }
+        return offset;
+    }
+
+    /**
+     * Sets this board to a position with the given pieces, no castling rights
+     * or en passant square, and the clocks of a new game. The undo history is
+     * cleared.
+     *
+     * @param colors     The color of each piece.
+     * @param pieces     The type of each piece.
+     * @param squares    The square of each piece.
+     * @param count      The number of pieces.
+     * @param whitesTurn Whether white is to move.
+     */
+    public void initPieces(int[] colors, int[] pieces, int[] squares, int count, boolean whitesTurn) {
+        for (int player = 0; player < PLAYERS; player++) {
+            for (int piece = 0; piece < NUM_PIECES; piece++) {
+                this.boards[player][piece] = 0L;
+            }
+        }
+        this.signature = 0;
+        this.undoCount = 0;
+        this.checkInfoValid = false;
+        this.pinInfoValid = false;
+
+        for (int i = 0; i < count; i++) {
+            addPiece(colors[i], pieces[i], squares[i]);
+        }
+        this.whitesTurn = whitesTurn;
+        if (this.whitesTurn) {
+            updateZobrist(TURN_OFFSET);
+        }
+        this.possibleCastling = 0;
+        this.enpassantPosition = 0;
+        this.halfmoveClock = 0;
+        this.fullmoves = 1;
+    }
+
+    /**
+     * Returns the index into PIECES of the piece on an occupied square.
+     */
+    private int pieceCode(int square) {
+        final long mask = 1L << square;
+        for (int player = 0; player < PLAYERS; player++) {
+            for (int piece = 0; piece < NUM_PIECES; piece++) {
+                if ((this.boards[player][piece] & mask) != 0) {
+                    return piece + player * NUM_PIECES;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static void putLittleEndian(ByteBuffer buffer, int index, long value) {
+        buffer.putLong(index, buffer.order() == ByteOrder.LITTLE_ENDIAN ? value : Long.reverseBytes(value));
+    }
+
+    private static long getLittleEndian(ByteBuffer buffer, int index) {
+        final long value = buffer.getLong(index);
+        return buffer.order() == ByteOrder.LITTLE_ENDIAN ? value : Long.reverseBytes(value);
+    }
+
+    /**
+     * Initializes this bitboard to be the starting position of a game.
+     */
+    public void initStartingBoard() {
+        init("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
+    }
+
+    public long signature() {
+        return this.signature;
+    }
+
+    /**
+     * Identifies how signatures are computed, so that tables of signatures
+     * saved to disk can tell whether they still apply. It changes if any
+     * zobrist bitstring or the way they are combined changes.
+     *
+     * @return A hash of the zobrist bitstrings and of the signatures of a
+     * few positions.
+     */
+    public static long zobristIdentity() {
+        long identity = ZOBRIST.length;
+        for (long bitstring : ZOBRIST) {
+            identity = Long.rotateLeft(identity * 0x9E3779B97F4A7C15L, 27) ^ bitstring;
+        }
+        final Bitboard board = new Bitboard();
+        for (String fen : new String[]{"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+                "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3"}) {
+            board.init(fen);
+            identity = Long.rotateLeft(identity * 0x9E3779B97F4A7C15L, 27) ^ board.signature();
+        }
+        return identity;
+    }
+
+    /**
+     * Returns what the signature of this board would be after applying a
+     * move, without applying it. Useful for fetching transposition table
+     * entries for a child position before moving to it.
+     *
+     * @param move A legal move for the player to move.
+     * @return The signature after the move.
+     */
+    public long signatureAfter(Move move) {
+        final int color = this.whitesTurn ? WHITE : BLACK;
+        final int srcSquare = square(move.src.position);
+        final int destSquare = square(move.dest.position);
+        final byte srcPiece = move.src.type();
+        long signature = this.signature;
+
+        // The moving piece, which may be promoted on arrival
+        signature ^= ZOBRIST[pieceZobristIndex(color, srcPiece, srcSquare)];
+        signature ^= ZOBRIST[pieceZobristIndex(color, move.isPromotion() ? move.promotionPiece() : srcPiece, destSquare)];
+
+        // The captured piece
+        if (move.isEnpassant()) {
+            signature ^= ZOBRIST[pieceZobristIndex(1 - color, PAWN, destSquare + (this.whitesTurn ? -SIZE : SIZE))];
+        } else if (move.isCapture()) {
+            signature ^= ZOBRIST[pieceZobristIndex(1 - color, move.dest.type(), destSquare)];
+        }
+
+        // The rook that moves when castling
+        if (move.isCastle()) {
+            final int rank = this.whitesTurn ? 0 : 7;
+            final boolean kingside = move.castleType() == 1;
+            signature ^= ZOBRIST[pieceZobristIndex(color, Type.ROOK, square(kingside ? File.H : File.A, rank))];
+            signature ^= ZOBRIST[pieceZobristIndex(color, Type.ROOK, square(kingside ? File.F : File.D, rank))];
+        }
+
+        // Castling rights lost
+        final int lostCastling = this.possibleCastling ^ castlingAfter(srcSquare, destSquare);
+        for (int i = 0; i < 4; i++) {
+            if ((lostCastling & (1 << i)) != 0) {
+                signature ^= ZOBRIST[CASTLE_OFFSET + i];
+            }
+        }
+
+        // En passant square, which is only hashed while a pawn of the player
+        // to move can capture onto it. A double push doesn't move any enemy
+        // pawns, so they can be checked before the move.
+        if (enpassantHashed()) {
+            signature ^= ZOBRIST[ENPASSANT_OFFSET + (this.enpassantPosition & FILE_MASK)];
+        }
+        if (move.isDoublePush()) {
+            final long enpassantBoard = 1L << ((srcSquare + destSquare) / 2);
+            if ((this.boards[1 - color][PAWN] & getPawnAttackBitmap(this.whitesTurn, enpassantBoard)) != 0) {
+                signature ^= ZOBRIST[ENPASSANT_OFFSET + move.src.file()];
+            }
+        }
+
+        return signature ^ ZOBRIST[TURN_OFFSET];
+    }
+
+    /**
+     * Returns the bitmap of a player's pieces of a given type.
+     *
+     * @param player The player whose pieces to get.
+     * @param piece  The type of piece to get.
+     * @return The bitmap of the given player's pieces of the given type.
+     */
+    public long pieces(int player, int piece) {
+        return this.boards[player][piece];
+    }
+
+    /**
+     * Returns whether it is white's turn to move.
+     *
+     * @return True iff it is white's turn to move.
+     */
+    public boolean whitesTurn() {
+        return this.whitesTurn;
+    }
+
+    /**
+     * Returns the number of half-moves since the last capture or pawn move.
+     *
+     * @return The number of half-moves since the last capture or pawn move.
+     */
+    public int halfmoveClock() {
+        return this.halfmoveClock;
+    }
+
+    /**
+     * Returns whether either player may still castle, whether or not the
+     * castling is possible right now.
+     *
+     * @return True iff any castling right is left.
+     */
+    public boolean hasCastlingRights() {
+        return this.possibleCastling != 0;
+    }
+
+    /**
+     * Returns whether a pawn of the player to move could capture en passant,
+     * whether or not that capture is legal.
+     *
+     * @return True iff there is a pseudo-legal en passant capture.
+     */
+    public boolean hasEnpassantCapture() {
+        return enpassantHashed();
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) this.signature;
+    }
+
+    private void addPiece(int color, int piece, int square) {
+        this.boards[color][piece] |= (1L << square);
+        updatePieceZobrist(color, piece, square);
+    }
+
+    private void removePiece(int color, int piece, int square) {
+        this.boards[color][piece] &= ~(1L << square);
+        updatePieceZobrist(color, piece, square);
+    }
+
+    private void updateZobrist(int index) {
+        this.signature ^= ZOBRIST[index];
+    }
+
+    private void updatePieceZobrist(int color, int piece, int square) {
+        updateZobrist(pieceZobristIndex(color, piece, square));
+    }
+
+    /**
+     * Returns whether the en passant square is part of the signature. As in
+     * the Polyglot format, it only is if a pawn of the player to move could
+     * capture onto it, whether or not that capture is legal.
+     *
+     * @return True iff the en passant file is hashed into the signature.
+     */
+    private boolean enpassantHashed() {
+        if (this.enpassantPosition == 0) {
+            return false;
+        }
+        final int color = this.whitesTurn ? WHITE : BLACK;
+        final long enpassantBoard = 1L << square(this.enpassantPosition);
+        // The squares a pawn could capture onto the en passant square from
+        // are those an enemy pawn on it would attack
+        return (this.boards[color][PAWN] & getPawnAttackBitmap(!this.whitesTurn, enpassantBoard)) != 0;
+    }
+
+    /**
+     * Toggles the en passant file in the signature, if it is hashed in the
+     * current position. Call it once before the en passant square, the turn
+     * or the pawns change, and once after.
+     */
+    private void updateEnpassantZobrist() {
+        if (enpassantHashed()) {
+            updateZobrist(ENPASSANT_OFFSET + (this.enpassantPosition & FILE_MASK));
+        }
+    }
+
+    private static int pieceZobristIndex(int color, int piece, int square) {
+        // Using same hash layout as polyglot format
+        return (((piece << 1) + (1 - color)) << 6) + square;
+    }
+
+    private void addKingsideCastling(boolean white) {
+        if (white && (this.possibleCastling & 0b0001) == 0) {
+            this.possibleCastling |= 0b0001;
+            updateZobrist(CASTLE_OFFSET);
+        } else if (!white && (this.possibleCastling & 0b0100) == 0) {
+            this.possibleCastling |= 0b0100;
+            updateZobrist(CASTLE_OFFSET + 2);
+        }
+    }
+
+    private void addQueensideCastling(boolean white) {
+        if (white && (this.possibleCastling & 0b0010) == 0) {
+            this.possibleCastling |= 0b0010;
+            updateZobrist(CASTLE_OFFSET + 1);
+        } else if (!white && (this.possibleCastling & 0b1000) == 0) {
+            this.possibleCastling |= 0b1000;
+            updateZobrist(CASTLE_OFFSET + 3);
+        }
+    }
+
+    private byte castlingAfter(int srcSquare, int destSquare) {
+        return (byte) (this.possibleCastling & CASTLING_MASKS[srcSquare] & CASTLING_MASKS[destSquare]);
+    }
+
+    private void updateCastlingZobrist(byte mask) {
+        if ((mask & 0b0001) != 0) {
+            updateZobrist(CASTLE_OFFSET);
+        }
+        if ((mask & 0b0010) != 0) {
+            updateZobrist(CASTLE_OFFSET + 1);
+        }
+        if ((mask & 0b0100) != 0) {
+            updateZobrist(CASTLE_OFFSET + 2);
+        }
+        if ((mask & 0b1000) != 0) {
+            updateZobrist(CASTLE_OFFSET + 3);
+        }
+    }
+
+    /**
+     * Records the current irreversible state in the undo history.
+     *
+     * @param move The move about to be applied, or null for a null move.
+     */
+    private void pushUndo(Move move) {
+        if (this.undoCount == this.undoStack.length) {
+            UndoMove[] grown = new UndoMove[this.undoStack.length * 2];
+            System.arraycopy(this.undoStack, 0, grown, 0, this.undoCount);
+            this.undoStack = grown;
+        }
+        UndoMove undo = this.undoStack[this.undoCount];
+        if (undo == null) {
+            undo = new UndoMove(this.enpassantPosition, this.halfmoveClock, this.possibleCastling, move);
+            this.undoStack[this.undoCount] = undo;
+        }
+        undo.set(this.enpassantPosition, this.halfmoveClock, this.possibleCastling, this.signature, move);
+        this.undoCount++;
+    }
+
+    public void applyMove(Move move) {
+        Counters.increment(Counters.APPLY_MOVE);
+        pushUndo(move);
+
+        final byte color = (byte) (this.whitesTurn ? 0 : 1);
+        final int srcSquare = square(move.src.position);
+        final int destSquare = square(move.dest.position);
+        final byte srcPiece = move.src.type();
+        final byte destPiece = move.dest.type();
+
+        // Whether the en passant square is hashed depends on the pawns, so
+        // remove it from the signature before any of them move
+        updateEnpassantZobrist();
+
+        // Remove the piece from the source square
+        removePiece(color, srcPiece, srcSquare);
+
+        if (move.isPromotion()) {
+            // If the piece is a pawn being promoted, put the new piece
+            // on the destination square
+            final byte promotionPiece = move.promotionPiece();
+            addPiece(color, promotionPiece, destSquare);
+        } else {
+            // Otherwise, put the same piece back on the destination square
+            addPiece(color, srcPiece, destSquare);
+        }
+        // If this move is a capture, remove the enemy piece
+        if (move.isCapture() && !move.isEnpassant()) {
+            removePiece(1 - color, destPiece, destSquare);
+        }
+        // If a king or rook moves from, or a rook is captured on, its
+        // starting square, castling with it is no longer possible
+        final byte castling = castlingAfter(srcSquare, destSquare);
+        updateCastlingZobrist((byte) (this.possibleCastling ^ castling));
+        this.possibleCastling = castling;
+        // If an en passant move, capture the enemy pawn
+        if (move.isEnpassant()) {
+            if (this.whitesTurn) {
+                removePiece(1 - color, Type.PAWN, destSquare - SIZE);
+            } else {
+                removePiece(1 - color, Type.PAWN, destSquare + SIZE);
+            }
+        }
+
+        // If this is a castling move, everything can happen as normal. The only
+        // thing left to do now is move the rook into place.
+        if (move.isCastle()) {
+            final int rank = this.whitesTurn ? 0 : 7;
+            final int rookSrcFile;
+            final int rookDestFile;
+            if (move.castleType() == 1) {
+                // King-side castle
+                rookSrcFile = File.H;
+                rookDestFile = File.F;
+            } else {
+                // Queen-side castle
+                rookSrcFile = File.A;
+                rookDestFile = File.D;
+            }
+            removePiece(color, Type.ROOK, square(rookSrcFile, rank));
+            addPiece(color, Type.ROOK, square(rookDestFile, rank));
+        }
+
+        // Update the half-move clock
+        this.halfmoveClock++;
+        if (srcPiece == PAWN || move.isCapture()) {
+            this.halfmoveClock = 0;
+        }
+
+        // Update en passant square
+        if (move.isDoublePush()) {
+            byte epFile = move.src.file();
+            int epRank = move.src.rank() + (this.whitesTurn ? 1 : -1);
+            this.enpassantPosition = position(epFile, epRank);
+        } else {
+            this.enpassantPosition = 0;
+        }
+
+        // Switch turns
+        this.whitesTurn = !this.whitesTurn;
+        updateZobrist(TURN_OFFSET);
+        updateEnpassantZobrist();
+
+        // If black's turn just ended, increment the full move clock
+        if (this.whitesTurn) {
+            this.fullmoves++;
+        }
+    }
+
+    public void undoMove() {
+        if (this.undoCount == 0) {
+            return;
+        }
+        Counters.increment(Counters.UNDO_MOVE);
+        if (this.undoStack[this.undoCount - 1].isNullMove()) {
+            undoNullMove();
+            return;
+        }
+
+        UndoMove undoMove = this.undoStack[--this.undoCount];
+
+        // Remove the en passant square from the signature while the position
+        // it was hashed in is still on the board
+        updateEnpassantZobrist();
+
         // Switch turns
         this.whitesTurn = !this.whitesTurn;
         updateZobrist(TURN_OFFSET);
@@ -601,16 +1421,6 @@ public class Bitboard {
         // If this move was a capture, put the enemy piece back
         if (undoMove.move.isCapture() && !undoMove.move.isEnpassant()) {
             addPiece(1 - color, destPiece, destSquare);
-
-            if (destPiece == Type.ROOK && ((destSquare & ROOK_MASK) != 0)) {
-                byte rookFile = undoMove.move.dest.file();
-
-                if (rookFile == File.H) {
-                    addKingsideCastling(!this.whitesTurn);
-                } else if (rookFile == File.A) {
-                    addQueensideCastling(!this.whitesTurn);
-                }
-            }
         }
 
         // If it was a castling move, everything can happen as normal. The only
@@ -624,12 +1434,10 @@ public class Bitboard {
                 // King-side castle
                 rookSrcFile = File.H;
                 rookDestFile = File.F;
-                addKingsideCastling(this.whitesTurn);
             } else {
                 // Queen-side castle
                 rookSrcFile = File.A;
                 rookDestFile = File.D;
-                addQueensideCastling(this.whitesTurn);
             }
             removePiece(color, Type.ROOK, square(rookDestFile, rank));
             addPiece(color, Type.ROOK, square(rookSrcFile, rank));
@@ -643,10 +1451,6 @@ public class Bitboard {
             }
         }
 
-        if (undoMove.move.isDoublePush()) {
-            updateZobrist(ENPASSANT_OFFSET + (this.enpassantPosition & FILE_MASK));
-        }
-
         byte oldPossibleCastling = this.possibleCastling;
         this.possibleCastling = undoMove.possibleCastling;
         updateCastlingZobrist((byte) (oldPossibleCastling ^ this.possibleCastling));
@@ -656,7 +1460,63 @@ public class Bitboard {
 
         // Update en passant square
         this.enpassantPosition = undoMove.enpassantPosition;
-        updateZobrist(ENPASSANT_OFFSET + (this.enpassantPosition & FILE_MASK));
+        updateEnpassantZobrist();
+
+        // If it was white's turn, decrement the full move clock
+        if (!this.whitesTurn) {
+            this.fullmoves--;
+        }
+    }
+
+    /**
+     * Passes the turn to the other player without moving a piece.
+     * <p>
+     * Any en passant square is cleared, since the capture is no longer
+     * available once the turn has passed. The null move is recorded in the
+     * undo history, and must be reversed with {@link #undoNullMove()} (or
+     * {@link #undoMove()}) before any earlier move can be undone.
+     */
+    public void applyNullMove() {
+        pushUndo(null);
+
+        // Clear the en passant square
+        updateEnpassantZobrist();
+        this.enpassantPosition = 0;
+
+        this.halfmoveClock++;
+
+        // Switch turns
+        this.whitesTurn = !this.whitesTurn;
+        updateZobrist(TURN_OFFSET);
+
+        // If black's turn just ended, increment the full move clock
+        if (this.whitesTurn) {
+            this.fullmoves++;
+        }
+    }
+
+    /**
+     * Reverses the most recent null move.
+     *
+     * @throws IllegalStateException If the most recent entry in the undo
+     *                               history is not a null move.
+     */
+    public void undoNullMove() {
+        if (this.undoCount == 0 || !this.undoStack[this.undoCount - 1].isNullMove()) {
+            throw new IllegalStateException("Last move was not a null move");
+        }
+
+        UndoMove undoMove = this.undoStack[--this.undoCount];
+
+        // Switch turns
+        this.whitesTurn = !this.whitesTurn;
+        updateZobrist(TURN_OFFSET);
+
+        this.halfmoveClock = undoMove.halfmoveClock;
+
+        // Restore the en passant square
+        this.enpassantPosition = undoMove.enpassantPosition;
+        updateEnpassantZobrist();
 
         // If it was white's turn, decrement the full move clock
         if (!this.whitesTurn) {
@@ -664,55 +1524,480 @@ public class Bitboard {
         }
     }
 
+    /**
+     * Returns whether the current position has occurred before since the
+     * last irreversible move. Positions before a null move are not
+     * considered, since a null move isn't part of the actual game.
+     *
+     * @return True iff the current position is a repetition.
+     */
+    public boolean isRepetition() {
+        // Only positions with the same player to move can be equal, and none
+        // can be equal across a capture or pawn move
+        final int oldest = Math.max(0, this.undoCount - this.halfmoveClock);
+        for (int i = this.undoCount - 1; i >= oldest; i--) {
+            UndoMove undo = this.undoStack[i];
+            if (undo.isNullMove()) {
+                return false;
+            }
+            if (((this.undoCount - i) & 1) == 0 && undo.signature == this.signature) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public List<Move> generateMoves() {
+        Counters.increment(Counters.GENERATE_MOVES);
         final List<Move> pseudoMoves = generatePseudoMoves();
-        final List<Move> moves = new ArrayList<>();
+        final List<Move> moves = new ArrayList<>(pseudoMoves.size());
 
-        final byte color = (byte) (this.whitesTurn ? 0 : 1);
         for (Move move : pseudoMoves) {
-            // Check if a castling move can legally be carried out.
-            if (move.isCastle()) {
-                final byte rank = (byte) (this.whitesTurn ? 0 : 7);
-                final long attackBitmap = generateAttackBitmap(1 - color);
+            if (isLegal(move)) {
+                moves.add(move);
+            }
+        }
 
-                // If the king is in check, it can't castle
-                if ((attackBitmap & this.boards[color][Type.KING]) != 0) {
-                    continue;
-                }
+        return moves;
+    }
 
-                // The file inbetween the king and its castling destination
-                final byte inbetweenFile;
-                if (move.castleType() == 1) {
-                    // King-side castle
-                    inbetweenFile = File.F;
-                } else {
-                    // Queen-side castle
-                    inbetweenFile = File.D;
-                }
+    /**
+     * Generates the legal moves in the current position into a buffer, so
+     * that nothing is allocated. The moves come in the same order as from
+     * {@link #generateMoves()}.
+     *
+     * @param moves Receives each legal move, as given by
+     *              {@link Move#encode()}. It needs room for
+     *              {@link #MAX_MOVES}.
+     * @return The number of legal moves.
+     */
+    public int generateMoves(int[] moves) {
+        Counters.increment(Counters.GENERATE_MOVES);
+        final int pseudoCount = generatePseudoMoves(moves);
+        final long kingBoard = this.boards[this.whitesTurn ? WHITE : BLACK][Type.KING];
 
-                // If the king would pass through check, it can't castle
-                if ((attackBitmap & (1L << square(inbetweenFile, rank))) != 0) {
-                    continue;
-                }
+        int count = 0;
+        for (int i = 0; i < pseudoCount; i++) {
+            final int move = moves[i];
+            final int srcSquare = move & 0b111111;
+            final int code = move >>> 12;
+            final boolean castle = code == KINGSIDE_CASTLE_CODE || code == QUEENSIDE_CASTLE_CODE;
+            if (isLegal(srcSquare, (move >>> 6) & 0b111111, (kingBoard & (1L << srcSquare)) != 0, castle, code == ENPASSANT_CODE)) {
+                moves[count++] = move;
             }
+        }
+        return count;
+    }
 
-            applyMove(move);
-            if (!inCheck(color)) {
-                moves.add(move);
+    /**
+     * Creates the move of the piece on a square to another square in the
+     * current position, as written in coordinate notation. Captures, en
+     * passant, double pushes and castling follow from the pieces involved.
+     * The move isn't checked, so use {@link #isPseudoLegal(Move)} and
+     * {@link #isLegal(Move)} before trusting it.
+     *
+     * @param srcSquare  The square the piece moves from.
+     * @param destSquare The square the piece moves to.
+     * @param promotion  The piece type a pawn promotes to, from
+     *                   {@link Type#KNIGHT} to {@link Type#QUEEN}, or 0.
+     * @return The move, or null if the player to move has no piece on the
+     * source square or the promotion isn't a piece a pawn can become.
+     */
+    public Move createMove(int srcSquare, int destSquare, int promotion) {
+        if (promotion != 0 && (promotion < Type.KNIGHT || promotion > Type.QUEEN)) {
+            return null;
+        }
+        final int color = this.whitesTurn ? WHITE : BLACK;
+        final long srcBoard = 1L << srcSquare;
+        final long destBoard = 1L << destSquare;
+
+        int piece = PAWN;
+        while (piece < NUM_PIECES && (this.boards[color][piece] & srcBoard) == 0) {
+            piece++;
+        }
+        if (piece == NUM_PIECES) {
+            return null;
+        }
+
+        final Piece src = new Piece((byte) piece, position(srcSquare));
+        if (piece == Type.KING && srcSquare % SIZE == File.E && Math.abs(destSquare - srcSquare) == 2) {
+            final boolean kingside = destSquare > srcSquare;
+            final Piece dest = new Piece((byte) Type.EMPTY, position(destSquare));
+            return new Move(src, dest, 0, kingside ? Move.KINGSIDE_CASTLE : Move.QUEENSIDE_CASTLE);
+        }
+
+        int captured = PAWN;
+        while (captured < NUM_PIECES && (this.boards[1 - color][captured] & destBoard) == 0) {
+            captured++;
+        }
+        if (captured == NUM_PIECES) {
+            captured = Type.EMPTY;
+        }
+        final Piece dest = new Piece((byte) captured, position(destSquare));
+        return new Move(src, dest, (byte) promotion, 0, captured != Type.EMPTY);
+    }
+
+    /**
+     * Creates a move packed by {@link Move#encode()} in the current position.
+     * The move isn't checked, so use {@link #isPseudoLegal(Move)} and
+     * {@link #isLegal(Move)} before trusting it.
+     *
+     * @param encoded The packed move.
+     * @return The move, or null if the player to move has no piece on the
+     * source square.
+     */
+    public Move createMove(int encoded) {
+        final int code = (encoded >>> 12) & 0b1111;
+        final int promotion = (code & Move.PROMOTION_MASK) != 0 ? (code & Move.SPECIAL_MASK) + 1 : 0;
+        return createMove(encoded & 0b111111, (encoded >>> 6) & 0b111111, promotion);
+    }
+
+    /**
+     * Returns whether a move could be generated by
+     * {@link #generatePseudoMoves()} in the current position. This is useful
+     * for checking moves from other positions, such as hash moves or killers,
+     * before trusting them.
+     *
+     * @param move The move to check.
+     * @return True iff the moving piece is on its source square, the
+     * destination matches what the move expects to capture and can be
+     * reached by the piece, and any castling or en passant is available.
+     */
+    public boolean isPseudoLegal(Move move) {
+        if (move == null) {
+            return false;
+        }
+
+        final int color = this.whitesTurn ? WHITE : BLACK;
+        final long[] enemyBoards = this.boards[1 - color];
+        final int piece = move.src.type();
+        final long srcBoard = 1L << square(move.src.position);
+        final long destBoard = 1L << square(move.dest.position);
+        final long playerBitmap = playerOccupancy(color);
+        final long enemyBitmap = playerOccupancy(1 - color);
+
+        if (piece < 0 || piece >= NUM_PIECES || (this.boards[color][piece] & srcBoard) == 0) {
+            return false;
+        }
+        if ((playerBitmap & destBoard) != 0) {
+            return false;
+        }
+
+        if (move.isCastle()) {
+            final int rank = this.whitesTurn ? 0 : 7;
+            final boolean kingside = move.castleType() == 1;
+            final int right = (kingside ? 0b0001 : 0b0010) << (this.whitesTurn ? 0 : 2);
+            final long mask = (kingside ? KINGSIDE_CASTLE_MASK : QUEENSIDE_CASTLE_MASK) << (rank * SIZE);
+            final int rookSquare = square(kingside ? File.H : File.A, rank);
+            return piece == Type.KING
+                    && move.src.position == position(File.E, rank)
+                    && move.dest.position == position(kingside ? File.G : File.C, rank)
+                    && (this.possibleCastling & right) != 0
+                    && (this.boards[color][Type.ROOK] & (1L << rookSquare)) != 0
+                    && ((playerBitmap | enemyBitmap) & mask) == 0;
+        }
+
+        if (move.isEnpassant()) {
+            final int capturedSquare = square(move.dest.position) + (this.whitesTurn ? -SIZE : SIZE);
+            return piece == PAWN
+                    && this.enpassantPosition != 0
+                    && move.dest.position == this.enpassantPosition
+                    && (Piece.getPawnAttackBitmap(this.whitesTurn, srcBoard) & destBoard) != 0
+                    && (enemyBoards[PAWN] & (1L << capturedSquare)) != 0;
+        }
+
+        // The destination must hold exactly what the move expects to capture
+        if (move.isCapture()) {
+            final int captured = move.dest.type();
+            if (captured < 0 || captured >= Type.KING || (enemyBoards[captured] & destBoard) == 0) {
+                return false;
             }
-            undoMove();
+        } else if ((enemyBitmap & destBoard) != 0) {
+            return false;
         }
 
-        return moves;
+        final long targets = Piece.getMoveBitmap(true, this.whitesTurn, piece, srcBoard, playerBitmap, enemyBitmap, 0);
+        if ((targets & destBoard) == 0) {
+            return false;
+        }
+
+        // Pawns must promote exactly when they reach the last rank
+        final boolean lastRank = move.dest.rank() == (this.whitesTurn ? 7 : 0);
+        return move.isPromotion() == (piece == PAWN && lastRank);
+    }
+
+    /**
+     * Returns whether a pseudo-legal move is legal, that is, whether it
+     * doesn't leave the player's own king in check. The position isn't
+     * modified.
+     *
+     * @param move A move for which {@link #isPseudoLegal(Move)} is true.
+     * @return True iff the move is legal.
+     */
+    public boolean isLegal(Move move) {
+        return isLegal(square(move.src.position), square(move.dest.position), move.src.type() == Type.KING,
+                move.isCastle(), move.isEnpassant());
+    }
+
+    private boolean isLegal(int srcSquare, int destSquare, boolean king, boolean castle, boolean enpassant) {
+        updatePinInfo();
+
+        final int color = this.whitesTurn ? WHITE : BLACK;
+        final int enemy = 1 - color;
+        final int kingSquare = Long.numberOfTrailingZeros(this.boards[color][Type.KING]);
+        final long srcBoard = 1L << srcSquare;
+        final long destBoard = 1L << destSquare;
+        final long occupancy = occupancy();
+
+        if (castle) {
+            // The king can't castle out of, through or into check
+            final int passSquare = (srcSquare + destSquare) / 2;
+            return this.checkers == 0
+                    && attackersTo(passSquare, occupancy, enemy) == 0
+                    && attackersTo(destSquare, occupancy, enemy) == 0;
+        }
+
+        if (king) {
+            // Sliders can still see through the square the king leaves
+            return attackersTo(destSquare, occupancy ^ srcBoard, enemy) == 0;
+        }
+
+        if (enpassant) {
+            // Two pieces leave the same rank, which ordinary pin detection
+            // doesn't account for
+            final long capturedBoard = 1L << (destSquare + (this.whitesTurn ? -SIZE : SIZE));
+            final long after = occupancy ^ srcBoard ^ destBoard ^ capturedBoard;
+            return (attackersTo(kingSquare, after, enemy) & ~capturedBoard) == 0;
+        }
+
+        if (this.checkers != 0) {
+            // In double check, only the king can move
+            if ((this.checkers & (this.checkers - 1)) != 0) {
+                return false;
+            }
+            // Otherwise, the checker must be captured or blocked
+            final int checkerSquare = Long.numberOfTrailingZeros(this.checkers);
+            if (((between(kingSquare, checkerSquare) | this.checkers) & destBoard) == 0) {
+                return false;
+            }
+        }
+
+        // A pinned piece can only move along the line of the pin
+        return (this.pinned & srcBoard) == 0 || (this.pinLines[srcSquare] & destBoard) != 0;
     }
 
     public boolean inCheck(int player) {
+        Counters.increment(Counters.IN_CHECK);
         long attackBitmap = generateAttackBitmap(1 - player);
 
         return (this.boards[player][Type.KING] & attackBitmap) != 0;
     }
 
+    /**
+     * Returns whether a legal move would put the enemy king in check, without
+     * applying the move.
+     *
+     * @param move A legal move for the player to move.
+     * @return True iff the move gives check.
+     */
+    public boolean givesCheck(Move move) {
+        updateCheckInfo();
+
+        final int color = this.whitesTurn ? WHITE : BLACK;
+        final long[] playerBoards = this.boards[color];
+        final long enemyKing = this.boards[1 - color][Type.KING];
+        final int srcSquare = square(move.src.position);
+        final int destSquare = square(move.dest.position);
+        final long srcBoard = 1L << srcSquare;
+        final long destBoard = 1L << destSquare;
+        final long occupancy = occupancy();
+
+        if (move.isCastle()) {
+            // Only the rook can give check, possibly along the rank the king
+            // just left
+            final int rank = this.whitesTurn ? 0 : 7;
+            final int rookSrc = square(move.castleType() == 1 ? File.H : File.A, rank);
+            final int rookDest = square(move.castleType() == 1 ? File.F : File.D, rank);
+            final long after = occupancy ^ srcBoard ^ destBoard ^ (1L << rookSrc) ^ (1L << rookDest);
+            return (Piece.getAttackBitmap(Type.ROOK, rookDest, after) & enemyKing) != 0;
+        }
+
+        // Direct check from the destination square
+        if (move.isPromotion()) {
+            // The pawn leaving may open a line for the promoted piece
+            final long after = occupancy ^ srcBoard;
+            if ((Piece.getAttackBitmap(move.promotionPiece(), destSquare, after) & enemyKing) != 0) {
+                return true;
+            }
+        } else if ((this.checkSquares[move.src.type()] & destBoard) != 0) {
+            return true;
+        }
+
+        // Discovered check from a slider behind the moving piece
+        if ((this.discoveryCandidates & srcBoard) != 0 && (this.discoveryLines[srcSquare] & destBoard) == 0) {
+            return true;
+        }
+
+        // An en passant capture removes a second piece, which may also
+        // uncover an attack
+        if (move.isEnpassant()) {
+            final int capturedSquare = destSquare + (this.whitesTurn ? -SIZE : SIZE);
+            final long after = occupancy ^ srcBoard ^ destBoard ^ (1L << capturedSquare);
+            final int kingSquare = Long.numberOfTrailingZeros(enemyKing);
+            final long diagonal = playerBoards[Type.BISHOP] | playerBoards[Type.QUEEN];
+            final long straight = playerBoards[Type.ROOK] | playerBoards[Type.QUEEN];
+            return (Piece.getAttackBitmap(Type.BISHOP, kingSquare, after) & diagonal) != 0
+                    || (Piece.getAttackBitmap(Type.ROOK, kingSquare, after) & straight) != 0;
+        }
+
+        return false;
+    }
+
+    /**
+     * Computes the check squares and discovery candidates for the current
+     * position, if they aren't already known.
+     */
+    private void updateCheckInfo() {
+        if (this.checkInfoValid && this.checkInfoSignature == this.signature) {
+            return;
+        }
+        Counters.increment(Counters.CHECK_SQUARES);
+
+        final int color = this.whitesTurn ? WHITE : BLACK;
+        final long enemyKing = this.boards[1 - color][Type.KING];
+        final int kingSquare = Long.numberOfTrailingZeros(enemyKing);
+        final long occupancy = occupancy();
+
+        this.checkSquares[Type.PAWN] = Piece.getPawnAttackBitmap(!this.whitesTurn, enemyKing);
+        this.checkSquares[Type.KNIGHT] = Piece.getAttackBitmap(Type.KNIGHT, kingSquare, occupancy);
+        this.checkSquares[Type.BISHOP] = Piece.getAttackBitmap(Type.BISHOP, kingSquare, occupancy);
+        this.checkSquares[Type.ROOK] = Piece.getAttackBitmap(Type.ROOK, kingSquare, occupancy);
+        this.checkSquares[Type.QUEEN] = this.checkSquares[Type.BISHOP] | this.checkSquares[Type.ROOK];
+        this.checkSquares[Type.KING] = 0;
+
+        this.discoveryCandidates = sliderBlockers(kingSquare, color, playerOccupancy(color), this.discoveryLines);
+
+        this.checkInfoSignature = this.signature;
+        this.checkInfoValid = true;
+    }
+
+    /**
+     * Computes the checkers and pinned pieces for the current position, if
+     * they aren't already known.
+     */
+    private void updatePinInfo() {
+        if (this.pinInfoValid && this.pinInfoSignature == this.signature) {
+            return;
+        }
+        Counters.increment(Counters.PIN_MAPS);
+
+        final int color = this.whitesTurn ? WHITE : BLACK;
+        final int kingSquare = Long.numberOfTrailingZeros(this.boards[color][Type.KING]);
+
+        this.checkers = attackersTo(kingSquare, occupancy(), 1 - color);
+        this.pinned = sliderBlockers(kingSquare, 1 - color, playerOccupancy(color), this.pinLines);
+
+        this.pinInfoSignature = this.signature;
+        this.pinInfoValid = true;
+    }
+
+    /**
+     * Returns a player's pieces that attack a square.
+     *
+     * @param square    The square to check.
+     * @param occupancy The bitmap of pieces that block sliders.
+     * @param player    The attacking player.
+     * @return The bitmap of the player's pieces attacking the square.
+     */
+    private long attackersTo(int square, long occupancy, int player) {
+        final long[] playerBoards = this.boards[player];
+        final long diagonal = playerBoards[Type.BISHOP] | playerBoards[Type.QUEEN];
+        final long straight = playerBoards[Type.ROOK] | playerBoards[Type.QUEEN];
+
+        // A pawn attacks the square iff a pawn of the other color on the
+        // square would attack it
+        return (Piece.getPawnAttackBitmap(player != WHITE, 1L << square) & playerBoards[PAWN])
+                | (Piece.getAttackBitmap(Type.KNIGHT, square, occupancy) & playerBoards[Type.KNIGHT])
+                | (Piece.getAttackBitmap(Type.KING, square, occupancy) & playerBoards[Type.KING])
+                | (Piece.getAttackBitmap(Type.BISHOP, square, occupancy) & diagonal)
+                | (Piece.getAttackBitmap(Type.ROOK, square, occupancy) & straight);
+    }
+
+    /**
+     * Finds the pieces that are the only piece between a king and a slider
+     * that would otherwise attack it.
+     *
+     * @param kingSquare  The square of the king.
+     * @param sliderColor The color of the sliders.
+     * @param blockerMask The pieces that may be counted as blockers.
+     * @param lines       Filled in for each blocker with the squares between
+     *                    the king and the slider, plus the slider's square.
+     * @return The bitmap of blockers.
+     */
+    private long sliderBlockers(int kingSquare, int sliderColor, long blockerMask, long[] lines) {
+        final long[] sliderBoards = this.boards[sliderColor];
+        final long occupancy = occupancy();
+        final long diagonalRays = Piece.getAttackBitmap(Type.BISHOP, kingSquare, 0);
+        final long straightRays = Piece.getAttackBitmap(Type.ROOK, kingSquare, 0);
+
+        long snipers = (diagonalRays & (sliderBoards[Type.BISHOP] | sliderBoards[Type.QUEEN]))
+                | (straightRays & (sliderBoards[Type.ROOK] | sliderBoards[Type.QUEEN]));
+        long blockers = 0;
+        while (snipers != 0) {
+            final int sniperSquare = Long.numberOfTrailingZeros(snipers);
+            final long between = between(kingSquare, sniperSquare);
+            final long inbetween = between & occupancy;
+
+            // Exactly one piece in the way
+            if (inbetween != 0 && (inbetween & (inbetween - 1)) == 0 && (inbetween & blockerMask) != 0) {
+                blockers |= inbetween;
+                lines[Long.numberOfTrailingZeros(inbetween)] = between | (1L << sniperSquare);
+            }
+
+            // Remove LS1B
+            snipers &= snipers - 1;
+        }
+        return blockers;
+    }
+
+    /**
+     * Returns the squares strictly between two squares on the same rank, file
+     * or diagonal.
+     *
+     * @param a The first square.
+     * @param b The second square.
+     * @return The bitmap of squares between them, or 0 if they aren't aligned.
+     */
+    private static long between(int a, int b) {
+        final long aBoard = 1L << a;
+        final long bBoard = 1L << b;
+        final int piece = (Piece.getAttackBitmap(Type.ROOK, a, 0) & bBoard) != 0 ? Type.ROOK : Type.BISHOP;
+        if ((Piece.getAttackBitmap(piece, a, 0) & bBoard) == 0) {
+            return 0;
+        }
+        return Piece.getAttackBitmap(piece, a, bBoard) & Piece.getAttackBitmap(piece, b, aBoard);
+    }
+
+    private long playerOccupancy(int player) {
+        final long[] playerBoards = this.boards[player];
+        long bitmap = 0;
+        for (int i = 0; i < NUM_PIECES; i++) {
+            bitmap |= playerBoards[i];
+        }
+        return bitmap;
+    }
+
+    /**
+     * Returns the bitmap of every piece on the board.
+     *
+     * @return The bitmap of all occupied squares.
+     */
+    public long occupancy() {
+        return playerOccupancy(WHITE) | playerOccupancy(BLACK);
+    }
+
     public List<Move> generatePseudoMoves() {
+        Counters.increment(Counters.GENERATE_PSEUDO_MOVES);
         final byte color = (byte) (this.whitesTurn ? 0 : 1);
         final long[] playerBoards = this.boards[color];
         final long[] enemyBoards = this.boards[1 - color];
@@ -809,7 +2094,88 @@ public class Bitboard {
         return moves;
     }
 
+    /**
+     * Generates the pseudo-legal moves in the current position into a
+     * buffer, so that nothing is allocated. The moves come in the same order
+     * as from {@link #generatePseudoMoves()}.
+     *
+     * @param moves Receives each pseudo-legal move, as given by
+     *              {@link Move#encode()}. It needs room for
+     *              {@link #MAX_MOVES}.
+     * @return The number of pseudo-legal moves.
+     */
+    public int generatePseudoMoves(int[] moves) {
+        Counters.increment(Counters.GENERATE_PSEUDO_MOVES);
+        final byte color = (byte) (this.whitesTurn ? 0 : 1);
+        final long[] playerBoards = this.boards[color];
+        final long[] enemyBoards = this.boards[1 - color];
+
+        long playerBitmap = 0;
+        long enemyBitmap = 0;
+        for (int i = 0; i < NUM_PIECES; i++) {
+            playerBitmap |= playerBoards[i];
+            enemyBitmap |= enemyBoards[i];
+        }
+        final long blockers = playerBitmap | enemyBitmap;
+        final long enpassantBoard = (this.enpassantPosition == 0) ? 0 : 1L << (square(this.enpassantPosition));
+
+        int count = 0;
+        for (int piece = 0; piece < playerBoards.length; piece++) {
+            long pieceBoard = playerBoards[piece];
+            while (pieceBoard != 0) {
+                final long nextPieceSquare = ls1b(pieceBoard);
+                final int srcSquare = Long.numberOfTrailingZeros(pieceBoard);
+                long pieceMovesBoard = Piece.getMoveBitmap(true, this.whitesTurn, piece, nextPieceSquare, playerBitmap, enemyBitmap, enpassantBoard);
+
+                while (pieceMovesBoard != 0) {
+                    final long nextDestSquare = ls1b(pieceMovesBoard);
+                    final int destSquare = Long.numberOfTrailingZeros(pieceMovesBoard);
+                    final boolean isCapture = (nextDestSquare & enemyBitmap & ~enemyBoards[Type.KING]) != 0;
+                    final int move = srcSquare | (destSquare << 6);
+
+                    // The codes match those Move works out for itself
+                    if (piece != Type.PAWN) {
+                        moves[count++] = move | ((isCapture ? Move.CAPTURE_MASK : 0) << 12);
+                    } else if (destSquare < SIZE || destSquare >= SQUARES - SIZE) {
+                        final int promotion = (Move.PROMOTION_MASK | (isCapture ? Move.CAPTURE_MASK : 0)) << 12;
+                        moves[count++] = move | promotion | ((Type.QUEEN - 1) << 12);
+                        moves[count++] = move | promotion | ((Type.ROOK - 1) << 12);
+                        moves[count++] = move | promotion | ((Type.KNIGHT - 1) << 12);
+                        moves[count++] = move | promotion | ((Type.BISHOP - 1) << 12);
+                    } else if (Math.abs(destSquare - srcSquare) == 2 * SIZE) {
+                        moves[count++] = move | (DOUBLE_PUSH_CODE << 12);
+                    } else if (!isCapture && (srcSquare & 0b111) != (destSquare & 0b111)) {
+                        moves[count++] = move | (ENPASSANT_CODE << 12);
+                    } else {
+                        moves[count++] = move | ((isCapture ? Move.CAPTURE_MASK : 0) << 12);
+                    }
+
+                    pieceMovesBoard &= pieceMovesBoard - 1;
+                }
+
+                pieceBoard &= ~nextPieceSquare;
+            }
+        }
+
+        // Determine castling moves
+        final boolean canKingsideCastle = this.whitesTurn ? (this.possibleCastling & 0b0001) != 0 : (this.possibleCastling & 0b0100) != 0;
+        final boolean canQueensideCastle = this.whitesTurn ? (this.possibleCastling & 0b0010) != 0 : (this.possibleCastling & 0b1000) != 0;
+        final int rank = this.whitesTurn ? 0 : 7;
+        final long kingsideMask = KINGSIDE_CASTLE_MASK << (this.whitesTurn ? 0 : 7 * SIZE);
+        final long queensideMask = QUEENSIDE_CASTLE_MASK << (this.whitesTurn ? 0 : 7 * SIZE);
+        final int kingSquare = square(File.E, rank);
+        if (canKingsideCastle && (kingsideMask & blockers) == 0) {
+            moves[count++] = kingSquare | (square(File.G, rank) << 6) | (KINGSIDE_CASTLE_CODE << 12);
+        }
+        if (canQueensideCastle && (queensideMask & blockers) == 0) {
+            moves[count++] = kingSquare | (square(File.C, rank) << 6) | (QUEENSIDE_CASTLE_CODE << 12);
+        }
+
+        return count;
+    }
+
     private long generateAttackBitmap(int player) {
+        Counters.increment(Counters.ATTACK_MAPS);
         final long[] playerBoards = this.boards[player];
         final long[] enemyBoards = this.boards[1 - player];
 
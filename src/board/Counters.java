@@ -0,0 +1,154 @@
+package board;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counts calls to the board's hot paths, to see where time goes in
+ * production without attaching a profiler.
+ * <p>
+ * Counting is off unless the JVM is started with
+ * {@code -Dchess.counters=true}. The switch is a constant, so when it is off
+ * the JIT compiles the counting out entirely. When it is on, each thread
+ * counts into its own array with plain writes, so counting never contends,
+ * and {@link #snapshot()} adds up every thread's counts when asked. The
+ * counts of a thread that is counting at that moment may be slightly
+ * behind.
+ */
+public final class Counters {
+    // Whether counting is compiled in
+    public static final boolean ENABLED = Boolean.getBoolean("chess.counters");
+
+    // @formatter:off
+    // What is counted. CHECK_SQUARES and PIN_MAPS count computations, not
+    // lookups answered by the cached result
+    public static final int GENERATE_PSEUDO_MOVES = 0;
+    public static final int GENERATE_MOVES        = 1;
+    public static final int APPLY_MOVE            = 2;
+    public static final int UNDO_MOVE             = 3;
+    public static final int IN_CHECK              = 4;
+    public static final int ATTACK_MAPS           = 5;
+    public static final int CHECK_SQUARES         = 6;
+    public static final int PIN_MAPS              = 7;
+    public static final int COUNT                 = 8;
+    // @formatter:on
+
+    private static final String[] NAMES = {
+            "generatePseudoMoves", "generateMoves", "applyMove", "undoMove", "inCheck", "attackMaps", "checkSquares",
+            "pinMaps",
+    };
+
+    // Every thread's counts, and the counts of threads that have died.
+    // Guarded by THREADS.
+    private static final List<ThreadCounts> THREADS = new ArrayList<>();
+    private static final long[] RETIRED = new long[COUNT];
+
+    private static final ThreadLocal<long[]> LOCAL = ThreadLocal.withInitial(() -> {
+        final long[] counts = new long[COUNT];
+        synchronized (THREADS) {
+            THREADS.add(new ThreadCounts(Thread.currentThread(), counts));
+        }
+        return counts;
+    });
+
+    private Counters() {
+    }
+
+    /**
+     * Counts one call on the current thread.
+     *
+     * @param counter What is counted, such as {@link #APPLY_MOVE}.
+     */
+    static void increment(int counter) {
+        if (ENABLED) {
+            LOCAL.get()[counter]++;
+        }
+    }
+
+    /**
+     * Adds up the counts of every thread.
+     *
+     * @return The total for each counter, indexed by counter.
+     */
+    public static long[] snapshot() {
+        final long[] totals = new long[COUNT];
+        synchronized (THREADS) {
+            // Threads that have died are folded into one array, so they
+            // don't pile up
+            THREADS.removeIf(thread -> {
+                final Thread owner = thread.owner.get();
+                if (owner != null && owner.isAlive()) {
+                    return false;
+                }
+                for (int i = 0; i < COUNT; i++) {
+                    RETIRED[i] += thread.counts[i];
+                }
+                return true;
+            });
+            for (int i = 0; i < COUNT; i++) {
+                totals[i] = RETIRED[i];
+            }
+            for (ThreadCounts thread : THREADS) {
+                for (int i = 0; i < COUNT; i++) {
+                    totals[i] += thread.counts[i];
+                }
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Sets every count to 0. Calls being counted meanwhile may be kept.
+     */
+    public static void reset() {
+        synchronized (THREADS) {
+            for (int i = 0; i < COUNT; i++) {
+                RETIRED[i] = 0;
+            }
+            for (ThreadCounts thread : THREADS) {
+                for (int i = 0; i < COUNT; i++) {
+                    thread.counts[i] = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the name of a counter.
+     *
+     * @param counter The counter, such as {@link #APPLY_MOVE}.
+     * @return The name of the method or work it counts.
+     */
+    public static String name(int counter) {
+        return NAMES[counter];
+    }
+
+    /**
+     * Describes the totals of every counter.
+     *
+     * @return The totals, as name=count pairs.
+     */
+    public static String describe() {
+        final long[] totals = snapshot();
+        final StringBuilder s = new StringBuilder();
+        for (int i = 0; i < COUNT; i++) {
+            s.append(i == 0 ? "" : " ").append(NAMES[i]).append('=').append(totals[i]);
+        }
+        return s.toString();
+    }
+
+    /**
+     * The counts of one thread. The thread is only weakly held, so that
+     * counting doesn't keep it from being collected.
+     */
+    private static class ThreadCounts {
+        private final WeakReference<Thread> owner;
+        private final long[] counts;
+
+        private ThreadCounts(Thread owner, long[] counts) {
+            this.owner = new WeakReference<>(owner);
+            this.counts = counts;
+        }
+    }
+}
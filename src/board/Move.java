@@ -165,11 +165,37 @@ public class Move implements Comparable<Move> {
         return (byte) ((this.code & SPECIAL_MASK) + 1);
     }
 
+    /**
+     * Packs this move into 16 bits: the source square in bits 0-5, the
+     * destination square in bits 6-11 and the move code in bits 12-15. The
+     * pieces involved aren't stored, since they follow from the position the
+     * move is played in.
+     *
+     * @return The packed move. Never 0 for a real move.
+     */
+    public int encode() {
+        return Bitboard.square(this.src.position) | (Bitboard.square(this.dest.position) << 6) | (this.code << 12);
+    }
+
     @Override
     public int compareTo(Move o) {
         return o.score - this.score;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Move)) {
+            return false;
+        }
+        Move other = (Move) o;
+        return this.src.position == other.src.position && this.dest.position == other.dest.position && this.code == other.code;
+    }
+
+    @Override
+    public int hashCode() {
+        return (this.src.position << 16) | ((this.dest.position & 0xFF) << 8) | this.code;
+    }
+
     @Override
     public String toString() {
         String promotion = "";
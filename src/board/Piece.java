@@ -127,6 +127,49 @@ public class Piece {
         }
     }
 
+    /**
+     * Returns the squares attacked by a knight, bishop, rook, queen or king on
+     * a given square. Attacks stop at, but include, the first occupied
+     * square in each direction.
+     *
+     * @param piece     The type of piece.
+     * @param square    The square the piece is on.
+     * @param occupancy The bitmap of all pieces on the board.
+     * @return The bitmap of squares the piece attacks.
+     */
+    public static long getAttackBitmap(int piece, int square, long occupancy) {
+        final long pieceBoard = 1L << square;
+        switch (piece) {
+            case Type.KNIGHT:
+                return LookupTables.KNIGHT[square];
+            case Type.BISHOP:
+                return getBishopBitmap(pieceBoard, 0, occupancy);
+            case Type.ROOK:
+                return getRookBitmap(pieceBoard, 0, occupancy);
+            case Type.QUEEN:
+                return getQueenBitmap(pieceBoard, 0, occupancy);
+            case Type.KING:
+                return LookupTables.KING[square];
+            default:
+                return 0L;
+        }
+    }
+
+    /**
+     * Returns the squares attacked by a set of pawns.
+     *
+     * @param isWhite    Whether the pawns are white.
+     * @param pieceBoard The bitmap of the pawns.
+     * @return The bitmap of squares the pawns attack.
+     */
+    public static long getPawnAttackBitmap(boolean isWhite, long pieceBoard) {
+        if (isWhite) {
+            return ((pieceBoard << (8 - 1)) & ~Bitboard.getFile(File.H)) | ((pieceBoard << (8 + 1)) & ~Bitboard.getFile(File.A));
+        } else {
+            return ((pieceBoard >>> (8 - 1)) & ~Bitboard.getFile(File.A)) | ((pieceBoard >>> (8 + 1)) & ~Bitboard.getFile(File.H));
+        }
+    }
+
     /**
      * @param isWhite
      * @param pieceBoard
@@ -1,15 +1,38 @@
 package board;
 
+/**
+ * The state needed to reverse a move applied to a {@link Bitboard}.
+ * <p>
+ * Instances are owned by a board's undo history and reused between moves, so
+ * they should not be held on to after the move they describe is undone.
+ */
 public class UndoMove {
-    public final Move move;
-    public final byte enpassantPosition;
-    public final byte halfmoveClock;
-    public final byte possibleCastling;
+    // The move that was applied, or null if this was a null move
+    public Move move;
+    public byte enpassantPosition;
+    public byte halfmoveClock;
+    public byte possibleCastling;
+    // The zobrist hash of the board before the move was applied
+    public long signature;
 
     public UndoMove(byte enpassantPosition, byte halfmoveClock, byte possibleCastling, Move move) {
+        set(enpassantPosition, halfmoveClock, possibleCastling, 0, move);
+    }
+
+    void set(byte enpassantPosition, byte halfmoveClock, byte possibleCastling, long signature, Move move) {
         this.move = move;
         this.enpassantPosition = enpassantPosition;
         this.halfmoveClock = halfmoveClock;
         this.possibleCastling = possibleCastling;
+        this.signature = signature;
+    }
+
+    /**
+     * Returns whether this entry records a null move.
+     *
+     * @return True iff this entry records a null move.
+     */
+    public boolean isNullMove() {
+        return this.move == null;
     }
 }
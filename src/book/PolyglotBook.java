@@ -0,0 +1,252 @@
+package book;
+
+import board.Bitboard;
+import board.Move;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * An opening book in the Polyglot format, read directly from a memory mapped
+ * file.
+ * <p>
+ * A book is an array of 16 byte big-endian entries sorted by key: the
+ * position's signature, the move, a weight and a learn value. Nothing is read
+ * when a book is opened. Lookups binary search the mapped file, so only the
+ * pages an entry's search touches are ever loaded, and books larger than
+ * memory work. Files over 2GB are mapped as several regions, each holding a
+ * whole number of entries.
+ * <p>
+ * Keys are {@link Bitboard#signature()}, which uses the Polyglot hashing
+ * scheme.
+ */
+public class PolyglotBook implements Closeable {
+    public static final int ENTRY_BYTES = 16;
+
+    // Each region holds 2^REGION_SHIFT entries (1GB), so an entry's region
+    // and offset within it are a shift and a mask
+    private static final int REGION_SHIFT = 26;
+    private static final long REGION_MASK = (1L << REGION_SHIFT) - 1;
+
+    // @formatter:off
+    // Offsets of the fields of an entry
+    private static final int KEY_OFFSET    = 0;
+    private static final int MOVE_OFFSET   = 8;
+    private static final int WEIGHT_OFFSET = 10;
+    private static final int LEARN_OFFSET  = 12;
+
+    // Layout of a move
+    private static final int DEST_SHIFT      = 0;
+    private static final int SRC_SHIFT       = 6;
+    private static final int PROMOTION_SHIFT = 12;
+    private static final int SQUARE_MASK     = 0b111111;
+    private static final int PROMOTION_MASK  = 0b111;
+    // @formatter:on
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] regions;
+    private final long size;
+
+    /**
+     * Opens a book. The file is mapped, not read.
+     *
+     * @param path The book file.
+     * @throws IOException If the file can't be opened or mapped, or its
+     *                     length isn't a whole number of entries.
+     */
+    public PolyglotBook(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        final long bytes = this.channel.size();
+        if (bytes % ENTRY_BYTES != 0) {
+            this.channel.close();
+            throw new IOException("Not a Polyglot book: " + path + " is " + bytes + " bytes long");
+        }
+
+        this.size = bytes / ENTRY_BYTES;
+        final int count = (int) ((this.size + REGION_MASK) >>> REGION_SHIFT);
+        this.regions = new MappedByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            final long start = ((long) i << REGION_SHIFT) * ENTRY_BYTES;
+            final long length = Math.min(bytes - start, (REGION_MASK + 1) * ENTRY_BYTES);
+            this.regions[i] = this.channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        }
+    }
+
+    /**
+     * Returns the number of entries in this book.
+     *
+     * @return The number of entries in this book.
+     */
+    public long size() {
+        return this.size;
+    }
+
+    public long key(long index) {
+        return region(index).getLong(offset(index) + KEY_OFFSET);
+    }
+
+    /**
+     * Returns the move of an entry, in the Polyglot encoding: the destination
+     * square in bits 0-5, the source square in bits 6-11 and the promotion
+     * piece type in bits 12-14. Castling moves go from the king's square to
+     * the rook's.
+     *
+     * @param index The index of the entry.
+     * @return The raw move of the entry.
+     */
+    public int move(long index) {
+        return region(index).getShort(offset(index) + MOVE_OFFSET) & 0xFFFF;
+    }
+
+    public int weight(long index) {
+        return region(index).getShort(offset(index) + WEIGHT_OFFSET) & 0xFFFF;
+    }
+
+    public int learn(long index) {
+        return region(index).getInt(offset(index) + LEARN_OFFSET);
+    }
+
+    /**
+     * Finds the entries for a position. They are stored next to each other,
+     * so the rest follow the first until {@link #key(long)} changes.
+     *
+     * @param key The signature of the position.
+     * @return The index of the first entry for the position, or -1 if the
+     * position isn't in the book.
+     */
+    public long find(long key) {
+        long low = 0;
+        long high = this.size;
+        // Find the first entry whose key isn't below the given key. Keys are
+        // sorted as unsigned numbers.
+        while (low < high) {
+            final long mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(key(mid), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return (low < this.size && key(low) == key) ? low : -1;
+    }
+
+    /**
+     * Returns the book move with the highest weight for a position.
+     *
+     * @param board The position.
+     * @return The best book move, or null if the position isn't in the book or
+     * none of its moves are legal.
+     */
+    public Move bestMove(Bitboard board) {
+        final long key = board.signature();
+        long best = -1;
+        for (long i = find(key); i >= 0 && i < this.size && key(i) == key; i++) {
+            if (best < 0 || weight(i) > weight(best)) {
+                best = i;
+            }
+        }
+        return best < 0 ? null : toMove(board, move(best));
+    }
+
+    /**
+     * Picks a book move for a position, with each move chosen in proportion
+     * to its weight.
+     *
+     * @param board  The position.
+     * @param random The source of randomness.
+     * @return The chosen book move, or null if the position isn't in the book
+     * or none of its moves are legal.
+     */
+    public Move randomMove(Bitboard board, Random random) {
+        final long key = board.signature();
+        final long first = find(key);
+        if (first < 0) {
+            return null;
+        }
+
+        long total = 0;
+        long end = first;
+        for (; end < this.size && key(end) == key; end++) {
+            total += weight(end);
+        }
+        if (total == 0) {
+            return toMove(board, move(first));
+        }
+
+        long pick = (long) (random.nextDouble() * total);
+        for (long i = first; i < end; i++) {
+            pick -= weight(i);
+            if (pick < 0) {
+                return toMove(board, move(i));
+            }
+        }
+        return toMove(board, move(end - 1));
+    }
+
+    /**
+     * Converts a move in the Polyglot encoding to the matching legal move.
+     *
+     * @param board The position the move is played in.
+     * @param move  The move, as given by {@link #move(long)}.
+     * @return The legal move, or null if there is no matching legal move.
+     */
+    public static Move toMove(Bitboard board, int move) {
+        final int src = (move >>> SRC_SHIFT) & SQUARE_MASK;
+        final int dest = (move >>> DEST_SHIFT) & SQUARE_MASK;
+        final int promotion = (move >>> PROMOTION_SHIFT) & PROMOTION_MASK;
+
+        for (Move m : board.generateMoves()) {
+            if (Bitboard.square(m.src.position) != src || m.promotionPiece() != promotion) {
+                continue;
+            }
+            int mDest = Bitboard.square(m.dest.position);
+            if (m.isCastle()) {
+                // Castling is written as the king capturing its own rook
+                mDest = (mDest & ~0b111) | (m.castleType() == Move.KINGSIDE_CASTLE ? Bitboard.File.H : Bitboard.File.A);
+            }
+            if (mDest == dest) {
+                return m;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Converts a move to the Polyglot encoding.
+     *
+     * @param move The move.
+     * @return The move, encoded as in {@link #move(long)}.
+     */
+    public static int fromMove(Move move) {
+        final int src = Bitboard.square(move.src.position);
+        int dest = Bitboard.square(move.dest.position);
+        if (move.isCastle()) {
+            dest = (dest & ~0b111) | (move.castleType() == Move.KINGSIDE_CASTLE ? Bitboard.File.H : Bitboard.File.A);
+        }
+        return (dest << DEST_SHIFT) | (src << SRC_SHIFT) | (move.promotionPiece() << PROMOTION_SHIFT);
+    }
+
+    /**
+     * Closes the file. The mapping itself is released once this book is
+     * garbage collected.
+     *
+     * @throws IOException If the file can't be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    private MappedByteBuffer region(long index) {
+        return this.regions[(int) (index >>> REGION_SHIFT)];
+    }
+
+    private static int offset(long index) {
+        return (int) (index & REGION_MASK) * ENTRY_BYTES;
+    }
+}
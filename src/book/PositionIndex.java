@@ -0,0 +1,253 @@
+package book;
+
+import board.Bitboard;
+import board.Move;
+import pgn.San;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An opening explorer: for each position, the moves played from it in a
+ * collection of games and how those games ended. Written by
+ * {@link PositionIndexBuilder} and read directly from a memory mapped file.
+ * <p>
+ * The file is a header followed by fixed size entries sorted by position
+ * signature, as an unsigned number, and then by move. Each entry holds one
+ * move of one position with its game counts. Lookups binary search the
+ * mapped file without copying anything, so indexes larger than memory work
+ * and only the pages a search touches are loaded.
+ */
+public class PositionIndex implements Closeable {
+    public static final int ENTRY_BYTES = 32;
+    // Identifies index files, and their version in the low byte
+    public static final long MAGIC = 0x504F534944580001L;
+
+    // Each region holds 2^REGION_SHIFT entries (1GB)
+    private static final int REGION_SHIFT = 25;
+    private static final long REGION_MASK = (1L << REGION_SHIFT) - 1;
+
+    // @formatter:off
+    // Offsets of the fields of the header, which takes the place of the
+    // first entry
+    static final int MAGIC_OFFSET = 0;
+    static final int COUNT_OFFSET = 8;
+
+    // Offsets of the fields of an entry
+    static final int KEY_OFFSET        = 0;
+    static final int MOVE_OFFSET       = 8;
+    static final int GAMES_OFFSET      = 12;
+    static final int WHITE_WINS_OFFSET = 16;
+    static final int DRAWS_OFFSET      = 20;
+    static final int BLACK_WINS_OFFSET = 24;
+    // @formatter:on
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] regions;
+    private final long size;
+
+    /**
+     * Opens an index. The file is mapped, not read.
+     *
+     * @param path The index file.
+     * @throws IOException If the file can't be opened or mapped, or isn't an
+     *                     index.
+     */
+    public PositionIndex(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        final long bytes = this.channel.size();
+        final long entries = bytes / ENTRY_BYTES;
+        if (bytes % ENTRY_BYTES != 0 || entries < 1) {
+            this.channel.close();
+            throw new IOException("Not a position index: " + path + " is " + bytes + " bytes long");
+        }
+
+        final int count = (int) ((entries + REGION_MASK) >>> REGION_SHIFT);
+        this.regions = new MappedByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            final long start = ((long) i << REGION_SHIFT) * ENTRY_BYTES;
+            final long length = Math.min(bytes - start, (REGION_MASK + 1) * ENTRY_BYTES);
+            this.regions[i] = this.channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        }
+
+        final MappedByteBuffer header = this.regions[0];
+        if (header.getLong(MAGIC_OFFSET) != MAGIC || header.getLong(COUNT_OFFSET) != entries - 1) {
+            this.channel.close();
+            throw new IOException("Not a position index, or a different version: " + path);
+        }
+        this.size = entries - 1;
+    }
+
+    /**
+     * Returns the number of entries in this index.
+     *
+     * @return The number of entries in this index.
+     */
+    public long size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the position of an entry, as given by {@link Bitboard#signature()}.
+     *
+     * @param index The index of the entry.
+     * @return The signature of the entry's position.
+     */
+    public long key(long index) {
+        return region(index).getLong(offset(index) + KEY_OFFSET);
+    }
+
+    /**
+     * Returns the move of an entry, as given by {@link Move#encode()}.
+     *
+     * @param index The index of the entry.
+     * @return The packed move.
+     */
+    public int move(long index) {
+        return region(index).getShort(offset(index) + MOVE_OFFSET) & 0xFFFF;
+    }
+
+    /**
+     * Returns the number of games in which an entry's move was played from
+     * its position, including games with an unknown result.
+     *
+     * @param index The index of the entry.
+     * @return The number of games.
+     */
+    public int games(long index) {
+        return region(index).getInt(offset(index) + GAMES_OFFSET);
+    }
+
+    /**
+     * Returns the number of games in which an entry's move was played from
+     * its position and white won.
+     *
+     * @param index The index of the entry.
+     * @return The number of games white won.
+     */
+    public int whiteWins(long index) {
+        return region(index).getInt(offset(index) + WHITE_WINS_OFFSET);
+    }
+
+    /**
+     * Returns the number of games in which an entry's move was played from
+     * its position and the game was drawn.
+     *
+     * @param index The index of the entry.
+     * @return The number of drawn games.
+     */
+    public int draws(long index) {
+        return region(index).getInt(offset(index) + DRAWS_OFFSET);
+    }
+
+    /**
+     * Returns the number of games in which an entry's move was played from
+     * its position and black won.
+     *
+     * @param index The index of the entry.
+     * @return The number of games black won.
+     */
+    public int blackWins(long index) {
+        return region(index).getInt(offset(index) + BLACK_WINS_OFFSET);
+    }
+
+    /**
+     * Finds the entries for a position. They are stored next to each other,
+     * so the rest follow the first until {@link #key(long)} changes.
+     *
+     * @param key The signature of the position.
+     * @return The index of the first entry for the position, or -1 if the
+     * position isn't in the index.
+     */
+    public long find(long key) {
+        final long index = lowerBound(key);
+        return (index < this.size && key(index) == key) ? index : -1;
+    }
+
+    /**
+     * Finds the first entry whose key isn't below a given key, as unsigned
+     * numbers.
+     *
+     * @param key The key to search for.
+     * @return The index of the entry, or {@link #size()} if there is none.
+     */
+    public long lowerBound(long key) {
+        long low = 0;
+        long high = this.size;
+        while (low < high) {
+            final long mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(key(mid), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Converts a packed move from this index to the matching legal move.
+     *
+     * @param board The position the move is played in.
+     * @param move  The move, as given by {@link #move(long)}.
+     * @return The legal move, or null if it isn't legal in the position.
+     */
+    public static Move toMove(Bitboard board, int move) {
+        final int code = move >>> 12;
+        final int promotion = (code & Move.PROMOTION_MASK) != 0 ? (code & Move.SPECIAL_MASK) + 1 : 0;
+        final Move result = board.createMove(move & 0b111111, (move >>> 6) & 0b111111, promotion);
+        if (result == null || result.encode() != move || !board.isPseudoLegal(result) || !board.isLegal(result)) {
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * Closes the file. The mapping itself is released once this index is
+     * garbage collected.
+     *
+     * @throws IOException If the file can't be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    private MappedByteBuffer region(long index) {
+        // The header comes first
+        return this.regions[(int) ((index + 1) >>> REGION_SHIFT)];
+    }
+
+    private static int offset(long index) {
+        return (int) ((index + 1) & REGION_MASK) * ENTRY_BYTES;
+    }
+
+    /**
+     * Prints the moves played from a position, with their scores.
+     *
+     * @param args The index file and the position's FEN.
+     * @throws IOException If the index can't be read.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: PositionIndex INDEX FEN");
+            return;
+        }
+        final Bitboard board = new Bitboard(args[1]);
+        try (PositionIndex index = new PositionIndex(Paths.get(args[0]))) {
+            final long key = board.signature();
+            System.out.printf("%-8s %10s %7s %7s %7s\n", "Move", "Games", "White", "Draw", "Black");
+            for (long i = index.find(key); i >= 0 && i < index.size() && index.key(i) == key; i++) {
+                final Move move = toMove(board, index.move(i));
+                final int games = index.games(i);
+                System.out.printf("%-8s %10d %6.1f%% %6.1f%% %6.1f%%\n", move == null ? "?" : San.format(board, move), games,
+                        100.0 * index.whiteWins(i) / games, 100.0 * index.draws(i) / games, 100.0 * index.blackWins(i) / games);
+            }
+        }
+    }
+}
@@ -0,0 +1,694 @@
+package book;
+
+import board.Bitboard;
+import board.Move;
+import pgn.PgnReader;
+import pgn.PgnVisitor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Builds a {@link PositionIndex} from PGN files.
+ * <p>
+ * The build has two phases, both spread over a pool of threads. First, the
+ * input files are split at game boundaries and each part is replayed on its
+ * own thread. Every move of a game up to a ply limit is recorded with the
+ * position's signature and the game's result. When a thread's buffer fills,
+ * it is sorted, equal moves are added together, and the result is written to
+ * a temporary run file. Second, the key space is cut into partitions, and
+ * each partition of every run is merged on its own thread. Partitions cover
+ * ranges of keys in order, so the index is the header followed by the
+ * partitions one after another.
+ * <p>
+ * Memory use is bounded by the run size and the number of threads, not by
+ * the size of the input.
+ */
+public class PositionIndexBuilder {
+    public static final int DEFAULT_MAX_PLIES = 50;
+    public static final int DEFAULT_RUN_ENTRIES = 1 << 22;
+
+    // Runs are mapped whole, so must stay under 2GB
+    private static final int MAX_RUN_ENTRIES = 1 << 25;
+    // Files are only split into parts at least this long
+    private static final long MIN_SPLIT_BYTES = 16 * 1024 * 1024;
+    private static final int PARTITIONS_PER_THREAD = 4;
+    private static final int WRITE_BUFFER_BYTES = 1024 * PositionIndex.ENTRY_BYTES;
+
+    // @formatter:off
+    // Results recorded with each move
+    private static final int WHITE_WINS = 0;
+    private static final int DRAW       = 1;
+    private static final int BLACK_WINS = 2;
+    private static final int UNKNOWN    = 3;
+    private static final int RESULT_BITS = 2;
+    // @formatter:on
+
+    private final int threads;
+    private final int maxPlies;
+    private final int runEntries;
+    private final Path tempDirectory;
+
+    // Totals of the last build
+    private final LongAdder games = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder moves = new LongAdder();
+
+    /**
+     * Creates a builder that records the first {@link #DEFAULT_MAX_PLIES}
+     * plies of each game, and keeps temporary files in the system's
+     * temporary directory.
+     *
+     * @param threads The number of threads to use.
+     */
+    public PositionIndexBuilder(int threads) {
+        this(threads, DEFAULT_MAX_PLIES, DEFAULT_RUN_ENTRIES, Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * Creates a builder.
+     *
+     * @param threads       The number of threads to use.
+     * @param maxPlies      The number of plies of each game to record.
+     * @param runEntries    The number of moves each thread holds in memory
+     *                      before writing a run. Each takes 12 bytes.
+     * @param tempDirectory The directory to keep runs in.
+     */
+    public PositionIndexBuilder(int threads, int maxPlies, int runEntries, Path tempDirectory) {
+        if (threads < 1 || maxPlies < 0 || runEntries < 1 || runEntries > MAX_RUN_ENTRIES) {
+            throw new IllegalArgumentException("Threads and run size must be positive, and runs at most " + MAX_RUN_ENTRIES + " entries");
+        }
+        this.threads = threads;
+        this.maxPlies = maxPlies;
+        this.runEntries = runEntries;
+        this.tempDirectory = tempDirectory;
+    }
+
+    /**
+     * Builds an index of all games in a set of PGN files.
+     *
+     * @param inputs The PGN files.
+     * @param output The index file to write.
+     * @return The number of entries in the index.
+     * @throws IOException If a file can't be read or written.
+     */
+    public long build(List<Path> inputs, Path output) throws IOException {
+        this.games.reset();
+        this.errors.reset();
+        this.moves.reset();
+
+        final List<Path> runs = Collections.synchronizedList(new ArrayList<>());
+        final List<Path> parts = new ArrayList<>();
+        final ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+        try {
+            // Replay the games, writing sorted runs
+            final List<Future<?>> reads = new ArrayList<>();
+            for (Path input : inputs) {
+                final long[] splits = split(input);
+                for (int i = 0; i + 1 < splits.length; i++) {
+                    final long start = splits[i];
+                    final long end = splits[i + 1];
+                    reads.add(pool.submit(() -> {
+                        read(input, start, end, runs);
+                        return null;
+                    }));
+                }
+            }
+            await(reads);
+
+            // Merge each partition of the runs
+            final MappedByteBuffer[] mapped = new MappedByteBuffer[runs.size()];
+            for (int i = 0; i < mapped.length; i++) {
+                try (FileChannel channel = FileChannel.open(runs.get(i), StandardOpenOption.READ)) {
+                    mapped[i] = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+            }
+            final int partitions = this.threads * PARTITIONS_PER_THREAD;
+            final List<Future<Long>> merges = new ArrayList<>();
+            for (int p = 0; p < partitions; p++) {
+                final Path part = Files.createTempFile(this.tempDirectory, "index", ".part");
+                parts.add(part);
+                final long low = boundary(p, partitions);
+                final boolean last = p == partitions - 1;
+                final long high = last ? 0 : boundary(p + 1, partitions);
+                merges.add(pool.submit(() -> merge(mapped, low, high, last, part)));
+            }
+            long entries = 0;
+            for (Future<Long> merge : merges) {
+                entries += get(merge);
+            }
+
+            // Join the header and the partitions
+            try (FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                final ByteBuffer header = ByteBuffer.allocate(PositionIndex.ENTRY_BYTES);
+                header.putLong(PositionIndex.MAGIC_OFFSET, PositionIndex.MAGIC);
+                header.putLong(PositionIndex.COUNT_OFFSET, entries);
+                while (header.hasRemaining()) {
+                    out.write(header);
+                }
+                for (Path part : parts) {
+                    try (FileChannel in = FileChannel.open(part, StandardOpenOption.READ)) {
+                        long position = 0;
+                        while (position < in.size()) {
+                            position += in.transferTo(position, in.size() - position, out);
+                        }
+                    }
+                }
+            }
+            return entries;
+        } finally {
+            pool.shutdownNow();
+            for (Path path : runs) {
+                Files.deleteIfExists(path);
+            }
+            for (Path path : parts) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of games read by the last build, including
+     * malformed ones.
+     *
+     * @return The number of games read.
+     */
+    public long games() {
+        return this.games.sum();
+    }
+
+    /**
+     * Returns the number of games the last build skipped because they were
+     * malformed.
+     *
+     * @return The number of malformed games.
+     */
+    public long errors() {
+        return this.errors.sum();
+    }
+
+    /**
+     * Returns the number of moves the last build recorded.
+     *
+     * @return The number of moves recorded.
+     */
+    public long moves() {
+        return this.moves.sum();
+    }
+
+    /**
+     * Replays the games in part of a file, writing its moves as runs.
+     */
+    private void read(Path input, long start, long end, List<Path> runs) throws IOException {
+        final Collector collector = new Collector(runs);
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            final PgnReader reader = new PgnReader(new RangeInputStream(channel, start, end));
+            reader.readAll(collector);
+            this.games.add(reader.games());
+            this.errors.add(reader.errors());
+        }
+        collector.spill();
+    }
+
+    /**
+     * Finds where to split a file so that each part holds whole games. A game
+     * starts at a '[' after a blank line.
+     *
+     * @return The offsets of the parts, starting with 0 and ending with the
+     * file's length.
+     */
+    private long[] split(Path input) throws IOException {
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final int count = (int) Math.max(1, Math.min(this.threads, size / MIN_SPLIT_BYTES));
+            final long[] splits = new long[count + 1];
+            splits[count] = size;
+
+            final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            for (int i = 1; i < count; i++) {
+                long position = Math.max(size * i / count, splits[i - 1]);
+                // The last two characters other than carriage returns
+                int previous = 0;
+                int beforePrevious = 0;
+                search:
+                while (position < size) {
+                    buffer.clear();
+                    final int read = channel.read(buffer, position);
+                    for (int j = 0; j < read; j++) {
+                        final byte c = buffer.get(j);
+                        if (c == '[' && previous == '\n' && beforePrevious == '\n') {
+                            position += j;
+                            break search;
+                        }
+                        if (c != '\r') {
+                            beforePrevious = previous;
+                            previous = c;
+                        }
+                    }
+                    position += read;
+                }
+                splits[i] = Math.min(position, size);
+            }
+            return splits;
+        }
+    }
+
+    /**
+     * Returns the lowest key in a partition. Partitions split the keys, as
+     * unsigned numbers, into equal ranges.
+     */
+    private static long boundary(int partition, int partitions) {
+        return Long.divideUnsigned(-1L, partitions) * partition;
+    }
+
+    /**
+     * Merges the entries of every run with keys in a range into a partition
+     * file.
+     *
+     * @return The number of entries written.
+     */
+    private static long merge(MappedByteBuffer[] runs, long low, long high, boolean last, Path part) throws IOException {
+        final PriorityQueue<RunCursor> queue = new PriorityQueue<>(Math.max(1, runs.length));
+        for (MappedByteBuffer run : runs) {
+            final int size = run.capacity() / PositionIndex.ENTRY_BYTES;
+            final RunCursor cursor = new RunCursor(run, lowerBound(run, size, low), last ? size : lowerBound(run, size, high));
+            if (cursor.index < cursor.end) {
+                queue.add(cursor);
+            }
+        }
+
+        long entries = 0;
+        final long[] counts = new long[4];
+        try (EntryWriter writer = new EntryWriter(part)) {
+            while (!queue.isEmpty()) {
+                final RunCursor cursor = queue.poll();
+                final long key = cursor.key();
+                final int move = cursor.move();
+                Arrays.fill(counts, 0);
+                cursor.addCounts(counts);
+                advance(queue, cursor);
+
+                // Add in the same move from other runs
+                while (!queue.isEmpty() && queue.peek().key() == key && queue.peek().move() == move) {
+                    final RunCursor same = queue.poll();
+                    same.addCounts(counts);
+                    advance(queue, same);
+                }
+                writer.write(key, move, counts);
+                entries++;
+            }
+        }
+        return entries;
+    }
+
+    private static void advance(PriorityQueue<RunCursor> queue, RunCursor cursor) {
+        cursor.index++;
+        if (cursor.index < cursor.end) {
+            queue.add(cursor);
+        }
+    }
+
+    private static int lowerBound(MappedByteBuffer run, int size, long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(run.getLong(mid * PositionIndex.ENTRY_BYTES + PositionIndex.KEY_OFFSET), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Sorts moves by key, as unsigned numbers, and then by value.
+     */
+    static void sort(long[] keys, int[] values, int from, int to) {
+        while (to - from > 16) {
+            // Order the first, middle and last entries, and use the middle
+            // one as the pivot
+            final int mid = (from + to - 1) >>> 1;
+            if (less(keys, values, mid, from)) {
+                swap(keys, values, mid, from);
+            }
+            if (less(keys, values, to - 1, from)) {
+                swap(keys, values, to - 1, from);
+            }
+            if (less(keys, values, to - 1, mid)) {
+                swap(keys, values, to - 1, mid);
+            }
+            final long pivotKey = keys[mid];
+            final int pivotValue = values[mid];
+
+            int i = from - 1;
+            int j = to;
+            while (true) {
+                do {
+                    i++;
+                } while (compare(keys[i], values[i], pivotKey, pivotValue) < 0);
+                do {
+                    j--;
+                } while (compare(keys[j], values[j], pivotKey, pivotValue) > 0);
+                if (i >= j) {
+                    break;
+                }
+                swap(keys, values, i, j);
+            }
+
+            // Recurse into the smaller side, so the stack stays shallow
+            if (j + 1 - from < to - j - 1) {
+                sort(keys, values, from, j + 1);
+                from = j + 1;
+            } else {
+                sort(keys, values, j + 1, to);
+                to = j + 1;
+            }
+        }
+
+        for (int i = from + 1; i < to; i++) {
+            for (int j = i; j > from && less(keys, values, j, j - 1); j--) {
+                swap(keys, values, j, j - 1);
+            }
+        }
+    }
+
+    private static boolean less(long[] keys, int[] values, int a, int b) {
+        return compare(keys[a], values[a], keys[b], values[b]) < 0;
+    }
+
+    private static int compare(long keyA, int valueA, long keyB, int valueB) {
+        final int order = Long.compareUnsigned(keyA, keyB);
+        return order != 0 ? order : Integer.compare(valueA, valueB);
+    }
+
+    private static void swap(long[] keys, int[] values, int a, int b) {
+        final long key = keys[a];
+        keys[a] = keys[b];
+        keys[b] = key;
+        final int value = values[a];
+        values[a] = values[b];
+        values[b] = value;
+    }
+
+    /**
+     * Records the moves of the games read on one thread.
+     */
+    private final class Collector implements PgnVisitor {
+        private final List<Path> runs;
+        // Signatures and values (move and result) of recorded moves
+        private final long[] keys = new long[PositionIndexBuilder.this.runEntries];
+        private final int[] values = new int[PositionIndexBuilder.this.runEntries];
+        private int count;
+
+        // The moves of the current game, recorded once its result is known
+        private long[] gameKeys = new long[64];
+        private int[] gameMoves = new int[64];
+        private int plies;
+
+        Collector(List<Path> runs) {
+            this.runs = runs;
+        }
+
+        @Override
+        public void startGame(long game) {
+            this.plies = 0;
+        }
+
+        @Override
+        public void move(Bitboard board, Move move) {
+            if (this.plies >= PositionIndexBuilder.this.maxPlies) {
+                return;
+            }
+            if (this.plies == this.gameKeys.length) {
+                this.gameKeys = Arrays.copyOf(this.gameKeys, this.plies * 2);
+                this.gameMoves = Arrays.copyOf(this.gameMoves, this.plies * 2);
+            }
+            this.gameKeys[this.plies] = board.signature();
+            this.gameMoves[this.plies] = move.encode();
+            this.plies++;
+        }
+
+        @Override
+        public void endGame(Bitboard board, String result) {
+            final int code;
+            switch (result) {
+                case PgnReader.WHITE_WINS:
+                    code = WHITE_WINS;
+                    break;
+                case PgnReader.DRAW:
+                    code = DRAW;
+                    break;
+                case PgnReader.BLACK_WINS:
+                    code = BLACK_WINS;
+                    break;
+                default:
+                    code = UNKNOWN;
+            }
+
+            try {
+                for (int i = 0; i < this.plies; i++) {
+                    if (this.count == this.keys.length) {
+                        spill();
+                    }
+                    this.keys[this.count] = this.gameKeys[i];
+                    this.values[this.count] = (this.gameMoves[i] << RESULT_BITS) | code;
+                    this.count++;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            PositionIndexBuilder.this.moves.add(this.plies);
+        }
+
+        /**
+         * Sorts the buffered moves and writes them as a run, with equal moves
+         * added together.
+         */
+        void spill() throws IOException {
+            if (this.count == 0) {
+                return;
+            }
+            sort(this.keys, this.values, 0, this.count);
+
+            final Path run = Files.createTempFile(PositionIndexBuilder.this.tempDirectory, "index", ".run");
+            this.runs.add(run);
+            try (EntryWriter writer = new EntryWriter(run)) {
+                final long[] counts = new long[4];
+                int i = 0;
+                while (i < this.count) {
+                    final long key = this.keys[i];
+                    final int move = this.values[i] >>> RESULT_BITS;
+                    Arrays.fill(counts, 0);
+                    for (; i < this.count && this.keys[i] == key && this.values[i] >>> RESULT_BITS == move; i++) {
+                        counts[this.values[i] & UNKNOWN]++;
+                    }
+                    writer.write(key, move, counts);
+                }
+            }
+            this.count = 0;
+        }
+    }
+
+    /**
+     * Writes entries to a file through a buffer.
+     */
+    private static final class EntryWriter implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+
+        EntryWriter(Path path) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        /**
+         * Writes an entry.
+         *
+         * @param counts The number of games with each result, indexed by
+         *               result code. Counts are capped at the largest int.
+         */
+        void write(long key, int move, long[] counts) throws IOException {
+            if (!this.buffer.hasRemaining()) {
+                flush();
+            }
+            final int games = cap(counts[WHITE_WINS] + counts[DRAW] + counts[BLACK_WINS] + counts[UNKNOWN]);
+            final int offset = this.buffer.position();
+            this.buffer.putLong(offset + PositionIndex.KEY_OFFSET, key);
+            this.buffer.putShort(offset + PositionIndex.MOVE_OFFSET, (short) move);
+            this.buffer.putShort(offset + PositionIndex.MOVE_OFFSET + 2, (short) 0);
+            this.buffer.putInt(offset + PositionIndex.GAMES_OFFSET, games);
+            this.buffer.putInt(offset + PositionIndex.WHITE_WINS_OFFSET, cap(counts[WHITE_WINS]));
+            this.buffer.putInt(offset + PositionIndex.DRAWS_OFFSET, cap(counts[DRAW]));
+            this.buffer.putInt(offset + PositionIndex.BLACK_WINS_OFFSET, cap(counts[BLACK_WINS]));
+            this.buffer.putInt(offset + PositionIndex.BLACK_WINS_OFFSET + 4, 0);
+            this.buffer.position(offset + PositionIndex.ENTRY_BYTES);
+        }
+
+        private static int cap(long count) {
+            return (int) Math.min(count, Integer.MAX_VALUE);
+        }
+
+        private void flush() throws IOException {
+            this.buffer.flip();
+            while (this.buffer.hasRemaining()) {
+                this.channel.write(this.buffer);
+            }
+            this.buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                this.channel.close();
+            }
+        }
+    }
+
+    /**
+     * The next entry to merge from a run.
+     */
+    private static final class RunCursor implements Comparable<RunCursor> {
+        private final MappedByteBuffer run;
+        private final int end;
+        private int index;
+
+        RunCursor(MappedByteBuffer run, int index, int end) {
+            this.run = run;
+            this.index = index;
+            this.end = end;
+        }
+
+        long key() {
+            return this.run.getLong(this.index * PositionIndex.ENTRY_BYTES + PositionIndex.KEY_OFFSET);
+        }
+
+        int move() {
+            return this.run.getShort(this.index * PositionIndex.ENTRY_BYTES + PositionIndex.MOVE_OFFSET) & 0xFFFF;
+        }
+
+        /**
+         * Adds this entry's game counts, by result code. Games with an
+         * unknown result are the ones not counted in any other result.
+         */
+        void addCounts(long[] counts) {
+            final int offset = this.index * PositionIndex.ENTRY_BYTES;
+            final int white = this.run.getInt(offset + PositionIndex.WHITE_WINS_OFFSET);
+            final int draws = this.run.getInt(offset + PositionIndex.DRAWS_OFFSET);
+            final int black = this.run.getInt(offset + PositionIndex.BLACK_WINS_OFFSET);
+            counts[WHITE_WINS] += white;
+            counts[DRAW] += draws;
+            counts[BLACK_WINS] += black;
+            counts[UNKNOWN] += this.run.getInt(offset + PositionIndex.GAMES_OFFSET) - white - draws - black;
+        }
+
+        @Override
+        public int compareTo(RunCursor o) {
+            final int order = Long.compareUnsigned(key(), o.key());
+            return order != 0 ? order : Integer.compare(move(), o.move());
+        }
+    }
+
+    /**
+     * Reads part of a file without moving the channel's position, so several
+     * parts can be read at once.
+     */
+    private static final class RangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+
+        RangeInputStream(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (this.position >= this.end) {
+                return -1;
+            }
+            final int length = (int) Math.min(len, this.end - this.position);
+            final int read = this.channel.read(ByteBuffer.wrap(b, off, length), this.position);
+            if (read > 0) {
+                this.position += read;
+            }
+            return read;
+        }
+    }
+
+    private static void await(List<Future<?>> futures) throws IOException {
+        for (Future<?> future : futures) {
+            get(future);
+        }
+    }
+
+    private static <T> T get(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while building the index", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException("Failed to build the index", e.getCause());
+        }
+    }
+
+    /**
+     * Builds an index from PGN files.
+     *
+     * @param args The index file to write, followed by the PGN files.
+     * @throws IOException If a file can't be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: PositionIndexBuilder OUTPUT INPUT...");
+            return;
+        }
+        final List<Path> inputs = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            inputs.add(Paths.get(args[i]));
+        }
+
+        final PositionIndexBuilder builder = new PositionIndexBuilder(Runtime.getRuntime().availableProcessors());
+        final long start = System.nanoTime();
+        final long entries = builder.build(inputs, Paths.get(args[0]));
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("games=%d errors=%d moves=%d entries=%d seconds=%.1f games/s=%.0f\n",
+                builder.games(), builder.errors(), builder.moves(), entries, seconds, builder.games() / seconds);
+    }
+}
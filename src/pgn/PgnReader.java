@@ -0,0 +1,405 @@
+package pgn;
+
+import board.Bitboard;
+import board.Move;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads games in portable game notation (PGN) from a stream, one game at a
+ * time, and replays their moves on a single board.
+ * <p>
+ * The input is never held in memory, so files of any size can be read. Only
+ * the main line of each game is played: comments, variations, numeric
+ * annotation glyphs and escaped lines are skipped, as is anything between
+ * a result and the next game's tags or moves. Games may start from a FEN
+ * tag. A game that is malformed or has an illegal move is reported to
+ * the visitor and skipped, and reading carries on with the next one.
+ * <p>
+ * Moves are read into a reused buffer and resolved with {@link San}, so
+ * nothing but tag names and values is allocated per game.
+ */
+public class PgnReader {
+    // @formatter:off
+    public static final String WHITE_WINS = "1-0";
+    public static final String BLACK_WINS = "0-1";
+    public static final String DRAW       = "1/2-1/2";
+    public static final String UNKNOWN    = "*";
+    // @formatter:on
+
+    private static final String STARTING_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_BYTES];
+    private int position;
+    private int limit;
+    // The line of the input being read, starting at 1
+    private long line = 1;
+
+    private final Bitboard board = new Bitboard();
+    // The current movetext token
+    private final StringBuilder token = new StringBuilder();
+    // Holds tag names and values while they are read
+    private byte[] text = new byte[256];
+
+    private long games;
+    private long plies;
+    private long errors;
+
+    /**
+     * Creates a reader. The stream is read in large blocks, so it needn't be
+     * buffered.
+     *
+     * @param in The stream to read from.
+     */
+    public PgnReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads every remaining game.
+     *
+     * @param visitor The visitor to pass the games to.
+     * @throws IOException If the stream can't be read.
+     */
+    public void readAll(PgnVisitor visitor) throws IOException {
+        while (readGame(visitor)) {
+            // Keep reading
+        }
+    }
+
+    /**
+     * Reads the next game.
+     *
+     * @param visitor The visitor to pass the game to.
+     * @return False if the end of the input was reached before any game.
+     * @throws IOException If the stream can't be read.
+     */
+    public boolean readGame(PgnVisitor visitor) throws IOException {
+        int c = skipToGame();
+        if (c < 0) {
+            return false;
+        }
+
+        this.games++;
+        visitor.startGame(this.games);
+        String error = null;
+        String fen = STARTING_FEN;
+
+        // Tag pairs
+        while (c == '[') {
+            read();
+            final String name = readTagName();
+            if (name == null || skipWhitespace() != '"') {
+                error = error("Malformed tag");
+                skipLine();
+            } else {
+                read();
+                final String value = readTagValue();
+                if (skipWhitespace() == ']') {
+                    read();
+                }
+                visitor.tag(name, value);
+                if (name.equals("FEN")) {
+                    fen = value;
+                }
+            }
+            c = skipWhitespace();
+        }
+
+        if (error == null) {
+            try {
+                this.board.initFen(fen, 0);
+            } catch (IllegalArgumentException e) {
+                error = error(e.getMessage());
+            }
+        }
+
+        // Movetext, up to the result or the next game's tags
+        String result = UNKNOWN;
+        while (c >= 0 && c != '[') {
+            if (c == '{') {
+                skipPast('}');
+            } else if (c == ';' || c == '%') {
+                skipLine();
+            } else if (c == '(') {
+                skipVariation();
+            } else if (c == ')' || c == '.') {
+                read();
+            } else {
+                readToken();
+                final String tokenResult = result();
+                if (tokenResult != null) {
+                    result = tokenResult;
+                    break;
+                }
+                if (c != '$' && error == null) {
+                    // Anything but a numeric annotation glyph is a move
+                    error = playToken(visitor);
+                }
+            }
+            c = skipWhitespace();
+        }
+
+        if (error != null) {
+            this.errors++;
+            visitor.error(this.games, error);
+        } else {
+            visitor.endGame(this.board, result);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of games read so far, including malformed ones.
+     *
+     * @return The number of games read.
+     */
+    public long games() {
+        return this.games;
+    }
+
+    /**
+     * Returns the number of moves played so far.
+     *
+     * @return The number of moves played.
+     */
+    public long plies() {
+        return this.plies;
+    }
+
+    /**
+     * Returns the number of games that were skipped because of an error.
+     *
+     * @return The number of malformed games.
+     */
+    public long errors() {
+        return this.errors;
+    }
+
+    /**
+     * Plays the move in the current token, after any move number.
+     *
+     * @return An error message, or null if the move was played.
+     */
+    private String playToken(PgnVisitor visitor) {
+        final int length = this.token.length();
+
+        // Skip a move number such as "12." or "12...", which may be joined
+        // to the move. Castling with zeros isn't a move number.
+        int start = 0;
+        while (start < length && Character.isDigit(this.token.charAt(start))) {
+            start++;
+        }
+        if (start < length && this.token.charAt(start) == '.') {
+            while (start < length && this.token.charAt(start) == '.') {
+                start++;
+            }
+        } else if (start == length) {
+            // A move number without a dot
+            return null;
+        } else {
+            start = 0;
+        }
+        if (start == length) {
+            return null;
+        }
+
+        final Move move;
+        try {
+            move = San.parse(this.board, this.token, start, length);
+        } catch (IllegalArgumentException e) {
+            return error(e.getMessage());
+        }
+        visitor.move(this.board, move);
+        this.board.applyMove(move);
+        this.plies++;
+        return null;
+    }
+
+    private String error(String message) {
+        return "line " + this.line + ": " + message;
+    }
+
+    /**
+     * Returns the game result in the current token.
+     *
+     * @return The result, or null if the token isn't a result.
+     */
+    private String result() {
+        if (isToken(WHITE_WINS)) {
+            return WHITE_WINS;
+        } else if (isToken(BLACK_WINS)) {
+            return BLACK_WINS;
+        } else if (isToken(DRAW)) {
+            return DRAW;
+        } else if (isToken(UNKNOWN)) {
+            return UNKNOWN;
+        }
+        return null;
+    }
+
+    private boolean isToken(String s) {
+        if (this.token.length() != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (this.token.charAt(i) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a movetext token into the token buffer. A token ends at
+     * whitespace or at a character that starts something else.
+     */
+    private void readToken() throws IOException {
+        this.token.setLength(0);
+        this.token.append((char) read());
+        int c;
+        while ((c = peek()) > ' ' && c != '{' && c != '}' && c != '(' && c != ')' && c != ';' && c != '[' && c != '$') {
+            this.token.append((char) read());
+        }
+    }
+
+    private String readTagName() throws IOException {
+        int length = 0;
+        int c = skipWhitespace();
+        while (c > ' ' && c != '"' && c != ']') {
+            appendText(length++, read());
+            c = peek();
+        }
+        return length == 0 ? null : new String(this.text, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a tag value up to its closing quote, which is consumed.
+     */
+    private String readTagValue() throws IOException {
+        int length = 0;
+        int c;
+        while ((c = read()) >= 0 && c != '"' && c != '\n') {
+            if (c == '\\' && (peek() == '"' || peek() == '\\')) {
+                c = read();
+            }
+            appendText(length++, c);
+        }
+        return new String(this.text, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private void appendText(int index, int c) {
+        if (index == this.text.length) {
+            final byte[] grown = new byte[this.text.length * 2];
+            System.arraycopy(this.text, 0, grown, 0, this.text.length);
+            this.text = grown;
+        }
+        this.text[index] = (byte) c;
+    }
+
+    /**
+     * Skips a variation, including any variations and comments inside it.
+     */
+    private void skipVariation() throws IOException {
+        int depth = 0;
+        int c;
+        while ((c = read()) >= 0) {
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                if (--depth == 0) {
+                    return;
+                }
+            } else if (c == '{') {
+                skipPast('}');
+            } else if (c == ';') {
+                skipLine();
+            }
+        }
+    }
+
+    private void skipPast(int end) throws IOException {
+        int c;
+        while ((c = read()) >= 0 && c != end) {
+            // Skip
+        }
+    }
+
+    private void skipLine() throws IOException {
+        skipPast('\n');
+    }
+
+    /**
+     * Skips what can't start a game, such as a comment or a stray
+     * parenthesis after the last game's result, so that a game only starts
+     * at a tag or a movetext token.
+     *
+     * @return The next character, which isn't consumed, or -1 at the end of
+     * the input.
+     */
+    private int skipToGame() throws IOException {
+        int c;
+        while ((c = skipWhitespace()) >= 0) {
+            if (c == '{') {
+                skipPast('}');
+            } else if (c == ';' || c == '%') {
+                skipLine();
+            } else if (c == '(') {
+                skipVariation();
+            } else if (c == ')' || c == '.' || c == '}') {
+                read();
+            } else if (c == '$') {
+                readToken();
+            } else {
+                return c;
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Skips whitespace.
+     *
+     * @return The next character, which isn't consumed, or -1 at the end of
+     * the input.
+     */
+    private int skipWhitespace() throws IOException {
+        int c;
+        while ((c = peek()) >= 0 && c <= ' ') {
+            read();
+        }
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (this.position == this.limit && !fill()) {
+            return -1;
+        }
+        return this.buffer[this.position] & 0xFF;
+    }
+
+    private int read() throws IOException {
+        if (this.position == this.limit && !fill()) {
+            return -1;
+        }
+        final int c = this.buffer[this.position++] & 0xFF;
+        if (c == '\n') {
+            this.line++;
+        }
+        return c;
+    }
+
+    private boolean fill() throws IOException {
+        final int read = this.in.read(this.buffer, 0, this.buffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        this.position = 0;
+        this.limit = read;
+        return true;
+    }
+}
@@ -0,0 +1,58 @@
+package pgn;
+
+import board.Bitboard;
+import board.Move;
+
+/**
+ * Receives the games read by a {@link PgnReader}, in order. Every method does
+ * nothing by default, so implementations only override what they need.
+ */
+public interface PgnVisitor {
+    /**
+     * Called when a game starts, before its tags.
+     *
+     * @param game The number of the game in the input, starting at 1.
+     */
+    default void startGame(long game) {
+    }
+
+    /**
+     * Called for each tag pair of a game.
+     *
+     * @param name  The tag name.
+     * @param value The tag value, with escapes removed.
+     */
+    default void tag(String name, String value) {
+    }
+
+    /**
+     * Called for each move of a game's main line, before it is played.
+     * Variations are skipped.
+     *
+     * @param board The position the move is played in. It must not be
+     *              changed.
+     * @param move  The legal move.
+     */
+    default void move(Bitboard board, Move move) {
+    }
+
+    /**
+     * Called when a game ends without errors.
+     *
+     * @param board  The final position. It must not be changed.
+     * @param result The game's result: "1-0", "0-1", "1/2-1/2" or "*".
+     */
+    default void endGame(Bitboard board, String result) {
+    }
+
+    /**
+     * Called instead of {@link #endGame(Bitboard, String)} when a game is
+     * malformed or has an illegal move. The rest of the game is skipped and
+     * reading continues with the next game.
+     *
+     * @param game    The number of the game in the input, starting at 1.
+     * @param message What was wrong, with the line it was found on.
+     */
+    default void error(long game, String message) {
+    }
+}
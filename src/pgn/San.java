@@ -0,0 +1,257 @@
+package pgn;
+
+import board.Bitboard;
+import board.Move;
+import board.Piece;
+import board.Piece.Type;
+
+/**
+ * Reads and writes moves in standard algebraic notation (SAN), such as
+ * "Nbd7", "exd6", "e8=Q+" or "O-O-O".
+ * <p>
+ * Moves are resolved without generating the position's move list. The
+ * squares a piece could have come from are found by looking back along its
+ * attacks from the destination square, and only those candidates are
+ * checked for legality. Usually there is just one.
+ */
+public class San {
+    // Piece letters, indexed by piece type
+    private static final String PIECE_LETTERS = "PNBRQK";
+
+    private San() {
+    }
+
+    /**
+     * Finds the legal move written in SAN in a position. Check and mate
+     * marks and annotations such as "!?" are ignored, as are "0-0" castling
+     * and promotions without an '='.
+     *
+     * @param board The position the move is played in.
+     * @param san   The move.
+     * @return The legal move.
+     * @throws IllegalArgumentException If the move isn't well formed, or
+     *                                  doesn't match exactly one legal move.
+     */
+    public static Move parse(Bitboard board, CharSequence san) {
+        return parse(board, san, 0, san.length());
+    }
+
+    /**
+     * Finds the legal move written in SAN in part of a sequence of
+     * characters, without copying it.
+     *
+     * @param board The position the move is played in.
+     * @param san   The characters holding the move.
+     * @param start The index of the first character of the move.
+     * @param end   The index just past the last character of the move.
+     * @return The legal move.
+     * @throws IllegalArgumentException If the move isn't well formed, or
+     *                                  doesn't match exactly one legal move.
+     * @see #parse(Bitboard, CharSequence)
+     */
+    public static Move parse(Bitboard board, CharSequence san, int start, int end) {
+        // Drop check and mate marks and annotations
+        while (end > start && "+#!?".indexOf(san.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        if (end - start < 2) {
+            throw sanError("Malformed move", san, start, end);
+        }
+
+        final boolean white = board.whitesTurn();
+        final int color = white ? Piece.Player.WHITE : Piece.Player.BLACK;
+        final char first = san.charAt(start);
+
+        if (first == 'O' || first == '0') {
+            final int length = end - start;
+            if ((length != 3 && length != 5) || san.charAt(start + 1) != '-' || san.charAt(start + 2) != first
+                    || (length == 5 && (san.charAt(start + 3) != '-' || san.charAt(start + 4) != first))) {
+                throw sanError("Malformed move", san, start, end);
+            }
+            final int kingSquare = Bitboard.square(Bitboard.File.E, white ? 0 : 7);
+            final Move move = board.createMove(kingSquare, kingSquare + (length == 3 ? 2 : -2), 0);
+            if (move == null || !move.isCastle() || !board.isPseudoLegal(move) || !board.isLegal(move)) {
+                throw sanError("Illegal move", san, start, end);
+            }
+            return move;
+        }
+
+        // The promotion piece, with or without an '='
+        int promotion = 0;
+        final int promotionIndex = PIECE_LETTERS.indexOf(san.charAt(end - 1));
+        if (promotionIndex >= Type.KNIGHT && promotionIndex <= Type.QUEEN) {
+            promotion = promotionIndex;
+            end--;
+            if (end > start && san.charAt(end - 1) == '=') {
+                end--;
+            }
+        }
+        if (end - start < 2) {
+            throw sanError("Malformed move", san, start, end);
+        }
+
+        final int destFile = san.charAt(end - 2) - 'a';
+        final int destRank = san.charAt(end - 1) - '1';
+        if (destFile < 0 || destFile >= Bitboard.SIZE || destRank < 0 || destRank >= Bitboard.SIZE) {
+            throw sanError("Malformed move", san, start, end);
+        }
+        final int dest = Bitboard.square(destFile, destRank);
+
+        int piece = PIECE_LETTERS.indexOf(first);
+        int i = start;
+        if (piece > Type.PAWN) {
+            i++;
+        } else {
+            piece = Type.PAWN;
+        }
+
+        // Any disambiguation and capture marks between the piece and the
+        // destination
+        int fromFile = -1;
+        int fromRank = -1;
+        for (; i < end - 2; i++) {
+            final char c = san.charAt(i);
+            if (c >= 'a' && c <= 'h') {
+                fromFile = c - 'a';
+            } else if (c >= '1' && c <= '8') {
+                fromRank = c - '1';
+            } else if (c != 'x' && c != ':' && c != '-') {
+                throw sanError("Malformed move", san, start, end);
+            }
+        }
+
+        long candidates = board.pieces(color, piece);
+        if (piece != Type.PAWN) {
+            // Pieces attack the squares they could come from
+            candidates &= Piece.getAttackBitmap(piece, dest, board.occupancy());
+        } else if (fromFile >= 0 && fromFile != destFile) {
+            // Pawns capture from the squares an enemy pawn would attack
+            candidates &= Piece.getPawnAttackBitmap(!white, 1L << dest);
+        } else {
+            // Pawns push from one or two squares behind
+            final int forward = white ? Bitboard.SIZE : -Bitboard.SIZE;
+            final int single = dest - forward;
+            if (single < 0 || single >= 64) {
+                throw sanError("Illegal move", san, start, end);
+            }
+            long origins = 1L << single;
+            if (destRank == (white ? 3 : 4) && (board.occupancy() & (1L << single)) == 0) {
+                origins |= 1L << (single - forward);
+            }
+            candidates &= origins;
+        }
+        if (fromFile >= 0) {
+            candidates &= Bitboard.getFile(fromFile);
+        }
+        if (fromRank >= 0) {
+            candidates &= Bitboard.getRank(fromRank);
+        }
+
+        Move found = null;
+        while (candidates != 0) {
+            final int src = Long.numberOfTrailingZeros(candidates);
+            candidates &= candidates - 1;
+
+            final Move move = board.createMove(src, dest, promotion);
+            if (board.isPseudoLegal(move) && board.isLegal(move)) {
+                if (found != null) {
+                    throw sanError("Ambiguous move", san, start, end);
+                }
+                found = move;
+            }
+        }
+        if (found == null) {
+            throw sanError("Illegal move", san, start, end);
+        }
+        return found;
+    }
+
+    /**
+     * Writes a legal move in SAN, with the shortest disambiguation and a
+     * check or mate mark where needed.
+     *
+     * @param board The position the move is played in. It is unchanged when
+     *              this returns.
+     * @param move  The legal move.
+     * @return The move in SAN.
+     */
+    public static String format(Bitboard board, Move move) {
+        return append(board, move, new StringBuilder(8)).toString();
+    }
+
+    /**
+     * Appends a legal move in SAN to a builder.
+     *
+     * @param board The position the move is played in. It is unchanged when
+     *              this returns.
+     * @param move  The legal move.
+     * @param s     The builder to append to.
+     * @return The builder.
+     * @see #format(Bitboard, Move)
+     */
+    public static StringBuilder append(Bitboard board, Move move, StringBuilder s) {
+        final int src = Bitboard.square(move.src.position);
+        final int dest = Bitboard.square(move.dest.position);
+        final int piece = move.src.type();
+
+        if (move.isCastle()) {
+            s.append(move.castleType() == Move.KINGSIDE_CASTLE ? "O-O" : "O-O-O");
+        } else {
+            if (piece == Type.PAWN) {
+                if (move.isCapture()) {
+                    s.append((char) ('a' + src % Bitboard.SIZE)).append('x');
+                }
+            } else {
+                s.append(PIECE_LETTERS.charAt(piece));
+
+                // Other pieces of the same type that can legally move to the
+                // destination too
+                final int color = board.whitesTurn() ? Piece.Player.WHITE : Piece.Player.BLACK;
+                long others = board.pieces(color, piece) & Piece.getAttackBitmap(piece, dest, board.occupancy()) & ~(1L << src);
+                boolean ambiguous = false;
+                boolean sameFile = false;
+                boolean sameRank = false;
+                while (others != 0) {
+                    final int other = Long.numberOfTrailingZeros(others);
+                    others &= others - 1;
+
+                    final Move otherMove = board.createMove(other, dest, 0);
+                    if (board.isPseudoLegal(otherMove) && board.isLegal(otherMove)) {
+                        ambiguous = true;
+                        sameFile |= other % Bitboard.SIZE == src % Bitboard.SIZE;
+                        sameRank |= other / Bitboard.SIZE == src / Bitboard.SIZE;
+                    }
+                }
+                if (ambiguous) {
+                    if (!sameFile || sameRank) {
+                        s.append((char) ('a' + src % Bitboard.SIZE));
+                    }
+                    if (sameFile) {
+                        s.append((char) ('1' + src / Bitboard.SIZE));
+                    }
+                }
+
+                if (move.isCapture()) {
+                    s.append('x');
+                }
+            }
+
+            s.append((char) ('a' + dest % Bitboard.SIZE)).append((char) ('1' + dest / Bitboard.SIZE));
+            if (move.isPromotion()) {
+                s.append('=').append(PIECE_LETTERS.charAt(move.promotionPiece()));
+            }
+        }
+
+        if (board.givesCheck(move)) {
+            board.applyMove(move);
+            final boolean mate = board.generateMoves().isEmpty();
+            board.undoMove();
+            s.append(mate ? '#' : '+');
+        }
+        return s;
+    }
+
+    private static IllegalArgumentException sanError(String message, CharSequence san, int start, int end) {
+        return new IllegalArgumentException(message + ": " + san.subSequence(start, end));
+    }
+}
@@ -0,0 +1,32 @@
+package search;
+
+/**
+ * A snapshot of how well a cache is doing.
+ */
+public class CacheStats {
+    // Lookups that found a usable entry
+    public long hits;
+    // Lookups that found nothing, or an entry that wasn't good enough
+    public long misses;
+    // Entries stored, including replacements of an entry for the same key
+    public long stores;
+    // Entries dropped to make room for others
+    public long evictions;
+    // Entries not stored because they were used less than any they would
+    // have replaced
+    public long rejections;
+    // Entries held, and the most the cache can hold
+    public long size;
+    public long capacity;
+
+    public double hitRatio() {
+        final long lookups = this.hits + this.misses;
+        return lookups == 0 ? 0 : (double) this.hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d misses=%d hitRatio=%.3f stores=%d evictions=%d rejections=%d size=%d/%d",
+                this.hits, this.misses, hitRatio(), this.stores, this.evictions, this.rejections, this.size, this.capacity);
+    }
+}
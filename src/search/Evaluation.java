@@ -0,0 +1,106 @@
+package search;
+
+import board.Bitboard;
+
+import static board.Piece.PLAYERS;
+import static board.Piece.Player.WHITE;
+import static board.Piece.Type.KING;
+import static board.Piece.Type.PAWN;
+
+/**
+ * A static evaluation of a position, based on material and piece placement.
+ */
+public class Evaluation {
+    // Value of each piece type, in centipawns
+    public static final int[] PIECE_VALUES = {100, 320, 330, 500, 900, 0};
+
+    // @formatter:off
+    // Bonuses for each square, from white's perspective. Indexed by LERF
+    // square, so the first row is the first rank.
+    private static final int[] PAWN_SQUARES = {
+         0,  0,   0,   0,   0,   0,  0,  0,
+         5, 10,  10, -20, -20,  10, 10,  5,
+         5, -5, -10,   0,   0, -10, -5,  5,
+         0,  0,   0,  20,  20,   0,  0,  0,
+         5,  5,  10,  25,  25,  10,  5,  5,
+        10, 10,  20,  30,  30,  20, 10, 10,
+        50, 50,  50,  50,  50,  50, 50, 50,
+         0,  0,   0,   0,   0,   0,  0,  0,
+    };
+    private static final int[] MINOR_SQUARES = {
+        -50, -40, -30, -30, -30, -30, -40, -50,
+        -40, -20,   0,   5,   5,   0, -20, -40,
+        -30,   5,  10,  15,  15,  10,   5, -30,
+        -30,   0,  15,  20,  20,  15,   0, -30,
+        -30,   5,  15,  20,  20,  15,   5, -30,
+        -30,   0,  10,  15,  15,  10,   0, -30,
+        -40, -20,   0,   0,   0,   0, -20, -40,
+        -50, -40, -30, -30, -30, -30, -40, -50,
+    };
+    private static final int[] KING_SQUARES = {
+         20,  30,  10,   0,   0,  10,  30,  20,
+         20,  20,   0,   0,   0,   0,  20,  20,
+        -10, -20, -20, -20, -20, -20, -20, -10,
+        -20, -30, -30, -40, -40, -30, -30, -20,
+        -30, -40, -40, -50, -50, -40, -40, -30,
+        -30, -40, -40, -50, -50, -40, -40, -30,
+        -30, -40, -40, -50, -50, -40, -40, -30,
+        -30, -40, -40, -50, -50, -40, -40, -30,
+    };
+    // @formatter:on
+
+    private static final int[][] PIECE_SQUARES = {
+            PAWN_SQUARES, MINOR_SQUARES, MINOR_SQUARES, null, null, KING_SQUARES
+    };
+
+    /**
+     * Evaluates a position.
+     *
+     * @param board The position to evaluate.
+     * @return The score of the position in centipawns, from the perspective of
+     * the player to move.
+     */
+    public static int evaluate(Bitboard board) {
+        int score = 0;
+
+        for (int player = 0; player < PLAYERS; player++) {
+            final int sign = player == WHITE ? 1 : -1;
+            // Flips the rank of a square to view it from black's perspective
+            final int flip = player == WHITE ? 0 : 0b111000;
+
+            for (int piece = PAWN; piece <= KING; piece++) {
+                long pieceBoard = board.pieces(player, piece);
+                final int[] squares = PIECE_SQUARES[piece];
+
+                score += sign * PIECE_VALUES[piece] * Long.bitCount(pieceBoard);
+                if (squares == null) {
+                    continue;
+                }
+                while (pieceBoard != 0) {
+                    score += sign * squares[Long.numberOfTrailingZeros(pieceBoard) ^ flip];
+                    // Remove LS1B
+                    pieceBoard &= pieceBoard - 1;
+                }
+            }
+        }
+
+        return board.whitesTurn() ? score : -score;
+    }
+
+    /**
+     * Returns whether a player has any pieces other than pawns and their king.
+     * Zugzwang is common in positions where this is false.
+     *
+     * @param board  The position to check.
+     * @param player The player to check.
+     * @return True iff the player has a knight, bishop, rook or queen.
+     */
+    public static boolean hasNonPawnMaterial(Bitboard board, int player) {
+        for (int piece = PAWN + 1; piece < KING; piece++) {
+            if (board.pieces(player, piece) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,115 @@
+package search;
+
+import java.util.Arrays;
+
+/**
+ * Estimates how often keys have been seen recently, in a fixed amount of
+ * memory, for caches that only keep what is used most.
+ * <p>
+ * This is a count-min sketch of 4 bit counters, sixteen to a long. A key
+ * increments one counter in each of four longs, and its frequency is the
+ * smallest of them, so collisions only ever overestimate. Once there have
+ * been ten increments per key the sketch was sized for, every counter is
+ * halved, so keys that were popular long ago fade away.
+ * <p>
+ * Any number of threads may use a sketch at once without locking. Increments
+ * racing on the same long may be lost, which only makes the estimate a
+ * little low.
+ */
+public class FrequencySketch {
+    // The largest count a counter holds
+    public static final int MAX_FREQUENCY = 15;
+
+    private static final int HASHES = 4;
+    // @formatter:off
+    private static final long[] SEEDS = {
+            0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL,
+            0x165667B19E3779F9L, 0xD6E8FEB86659FD93L,
+    };
+    // @formatter:on
+    // Halves each counter in a long
+    private static final long HALF_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int mask;
+    private final int sampleSize;
+    // Increments since the counters were last halved. Races may lose some,
+    // which only delays the next halving a little.
+    private int additions;
+
+    /**
+     * Creates a sketch.
+     *
+     * @param capacity The number of keys to track, usually the capacity of
+     *                 the cache.
+     */
+    public FrequencySketch(int capacity) {
+        final int longs = Integer.highestOneBit(Math.max(8, Math.min(capacity, 1 << 29)) * 2 - 1);
+        this.table = new long[longs];
+        this.mask = longs - 1;
+        this.sampleSize = 10 * Math.max(1, Math.min(capacity, 1 << 27));
+    }
+
+    /**
+     * Counts one more use of a key.
+     *
+     * @param key The key.
+     */
+    public void increment(long key) {
+        boolean added = false;
+        for (int i = 0; i < HASHES; i++) {
+            final long hash = hash(key, i);
+            final int index = (int) hash & this.mask;
+            final int shift = (int) (hash >>> 60) << 2;
+            final long word = this.table[index];
+            if (((word >>> shift) & MAX_FREQUENCY) < MAX_FREQUENCY) {
+                this.table[index] = word + (1L << shift);
+                added = true;
+            }
+        }
+        if (added && ++this.additions >= this.sampleSize) {
+            halve();
+        }
+    }
+
+    /**
+     * Returns how often a key has been used recently.
+     *
+     * @param key The key.
+     * @return The estimated number of uses, from 0 to {@link #MAX_FREQUENCY}.
+     */
+    public int frequency(long key) {
+        int frequency = MAX_FREQUENCY;
+        for (int i = 0; i < HASHES; i++) {
+            final long hash = hash(key, i);
+            final int shift = (int) (hash >>> 60) << 2;
+            frequency = Math.min(frequency, (int) ((this.table[(int) hash & this.mask] >>> shift) & MAX_FREQUENCY));
+        }
+        return frequency;
+    }
+
+    /**
+     * Forgets every key.
+     */
+    public void clear() {
+        Arrays.fill(this.table, 0);
+        this.additions = 0;
+    }
+
+    private void halve() {
+        this.additions = 0;
+        for (int i = 0; i < this.table.length; i++) {
+            this.table[i] = (this.table[i] >>> 1) & HALF_MASK;
+        }
+    }
+
+    /**
+     * Returns one of the key's hashes. The low bits pick a long, and the top
+     * four a counter in it.
+     */
+    private static long hash(long key, int i) {
+        long hash = (key + SEEDS[i]) * SEEDS[0];
+        hash ^= hash >>> 32;
+        return hash * SEEDS[i];
+    }
+}
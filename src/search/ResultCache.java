@@ -0,0 +1,260 @@
+package search;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of finished analyses, keyed by
+ * {@link board.Bitboard#signature()}, so a position asked about again need
+ * not be searched again. A lookup for some depth is answered by any result
+ * searched at least that deep.
+ * <p>
+ * Entries are laid out like those of a {@link TranspositionTable}: two longs,
+ * the key XORed with the data and then the data, in buckets of
+ * {@link #BUCKET_SIZE} that span one cache line. Lookups don't lock, and a
+ * torn entry reads as a miss. Stores lock one of {@link #STRIPES} stripes of
+ * buckets.
+ * <p>
+ * Which entries are kept is decided by how often their positions are asked
+ * about, as estimated by a {@link FrequencySketch} that every lookup counts
+ * in. When a bucket is full, a new entry replaces the least asked about
+ * entry in it, unless the new position is asked about even less. A scan of
+ * positions that are each only seen once then can't flush out the popular
+ * ones, while positions that stop being asked about fade as the sketch
+ * ages.
+ */
+public class ResultCache {
+    public static final int BUCKET_SIZE = 4;
+    public static final int STRIPES = 64;
+
+    // Longs per entry, and per bucket
+    private static final int ENTRY_LONGS = 2;
+    private static final int BUCKET_LONGS = BUCKET_SIZE * ENTRY_LONGS;
+
+    // @formatter:off
+    // Layout of an entry's data
+    private static final int MOVE_SHIFT  = 0;
+    private static final int DEPTH_SHIFT = 16;
+    private static final int SCORE_SHIFT = 32;
+    private static final long MOVE_MASK  = 0xFFFF;
+    private static final long DEPTH_MASK = 0xFF;
+    // Set in every entry, so that no data is 0
+    private static final long PRESENT    = 1L << 24;
+    // @formatter:on
+
+    // Identifies the layout above in snapshots
+    private static final long LAYOUT = TableSnapshot.layout("ResultCache", ENTRY_LONGS,
+            MOVE_SHIFT, DEPTH_SHIFT, SCORE_SHIFT, MOVE_MASK, DEPTH_MASK, PRESENT);
+
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[] table;
+    private final int bucketMask;
+    private final Object[] locks;
+    private final FrequencySketch sketch;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder size = new LongAdder();
+
+    /**
+     * Creates a cache of at most a given number of entries.
+     *
+     * @param capacity The maximum number of entries. It is rounded down to a
+     *                 power of two buckets.
+     */
+    public ResultCache(int capacity) {
+        final int buckets = Integer.highestOneBit(Math.max(1, Math.min(capacity / BUCKET_SIZE, 1 << 26)));
+        this.table = new long[buckets * BUCKET_LONGS];
+        this.bucketMask = buckets - 1;
+        this.locks = new Object[Math.min(STRIPES, buckets)];
+        for (int i = 0; i < this.locks.length; i++) {
+            this.locks[i] = new Object();
+        }
+        this.sketch = new FrequencySketch(capacity());
+    }
+
+    /**
+     * Returns the number of entries the cache can hold.
+     *
+     * @return The capacity of the cache.
+     */
+    public int capacity() {
+        return this.table.length / ENTRY_LONGS;
+    }
+
+    /**
+     * Looks up the result for a position, and counts the lookup towards
+     * keeping the position cached.
+     *
+     * @param key   The signature of the position.
+     * @param depth The depth the result must have been searched to.
+     * @return The entry's data, or 0 if the position isn't cached at that
+     * depth or deeper.
+     */
+    public long get(long key, int depth) {
+        this.sketch.increment(key);
+        final int bucket = bucket(key);
+        for (int i = bucket; i < bucket + BUCKET_LONGS; i += ENTRY_LONGS) {
+            final long data = (long) SLOTS.getAcquire(this.table, i + 1);
+            if (data != 0 && ((long) SLOTS.getAcquire(this.table, i) ^ data) == key) {
+                if (depth(data) >= depth) {
+                    this.hits.increment();
+                    return data;
+                }
+                break;
+            }
+        }
+        this.misses.increment();
+        return 0;
+    }
+
+    /**
+     * Stores the result of analysing a position. A deeper result already
+     * stored for it is kept instead.
+     *
+     * @param key   The signature of the position.
+     * @param move  The best move, as given by {@link board.Move#encode()}.
+     * @param score The score of the position.
+     * @param depth The depth that was searched.
+     */
+    public void put(long key, int move, int score, int depth) {
+        final long data = ((move & MOVE_MASK) << MOVE_SHIFT)
+                | ((Math.max(depth, 0) & DEPTH_MASK) << DEPTH_SHIFT)
+                | PRESENT
+                | ((long) score << SCORE_SHIFT);
+        final int bucket = bucket(key);
+        synchronized (this.locks[(bucket / BUCKET_LONGS) & (this.locks.length - 1)]) {
+            int victim = -1;
+            int victimFrequency = Integer.MAX_VALUE;
+            for (int i = bucket; i < bucket + BUCKET_LONGS; i += ENTRY_LONGS) {
+                final long old = this.table[i + 1];
+                if (old == 0) {
+                    // Entries are never removed one by one, so the rest of
+                    // the bucket is empty too
+                    write(i, key, data);
+                    this.size.increment();
+                    return;
+                }
+                final long oldKey = this.table[i] ^ old;
+                if (oldKey == key) {
+                    if (depth(old) <= depth) {
+                        write(i, key, data);
+                    }
+                    return;
+                }
+                final int frequency = this.sketch.frequency(oldKey);
+                if (frequency < victimFrequency) {
+                    victimFrequency = frequency;
+                    victim = i;
+                }
+            }
+            // Ties go to the new entry, so that a cache of positions that are
+            // all seen once still turns over
+            if (this.sketch.frequency(key) < victimFrequency) {
+                this.rejections.increment();
+                return;
+            }
+            write(victim, key, data);
+            this.evictions.increment();
+        }
+    }
+
+    /**
+     * Removes all entries. Not atomic with respect to concurrent stores.
+     */
+    public void clear() {
+        for (int stripe = 0; stripe < this.locks.length; stripe++) {
+            synchronized (this.locks[stripe]) {
+                for (int bucket = stripe; bucket <= this.bucketMask; bucket += this.locks.length) {
+                    Arrays.fill(this.table, bucket * BUCKET_LONGS, (bucket + 1) * BUCKET_LONGS, 0);
+                }
+            }
+        }
+        this.sketch.clear();
+        this.size.reset();
+    }
+
+    /**
+     * Writes every entry to a file, to be loaded by a later run. It may be
+     * called while the cache is in use. Entries stored meanwhile may be
+     * lost.
+     *
+     * @param path The file to write. It is replaced atomically.
+     * @throws IOException If the file can't be written.
+     */
+    public void save(Path path) throws IOException {
+        TableSnapshot.write(path, LAYOUT, this.table);
+    }
+
+    /**
+     * Replaces the entries with those saved to a file. How often each was
+     * used isn't saved, so they all start out as rarely used. Not safe while
+     * the cache is in use.
+     *
+     * @param path The file written by {@link #save(Path)}.
+     * @throws IOException If the file can't be read, or was saved by a
+     *                     version with another entry layout or other zobrist
+     *                     bitstrings.
+     */
+    public void load(Path path) throws IOException {
+        clear();
+        TableSnapshot.read(path, LAYOUT, this.table,
+                (key, data) -> put(key, move(data), score(data), depth(data)));
+        long entries = 0;
+        for (int i = 1; i < this.table.length; i += ENTRY_LONGS) {
+            if (this.table[i] != 0) {
+                entries++;
+            }
+        }
+        this.size.reset();
+        this.size.add(entries);
+    }
+
+    /**
+     * Returns how well the cache is doing.
+     *
+     * @return A snapshot of the counters so far.
+     */
+    public CacheStats stats() {
+        final CacheStats stats = new CacheStats();
+        stats.hits = this.hits.sum();
+        stats.misses = this.misses.sum();
+        stats.stores = this.stores.sum();
+        stats.evictions = this.evictions.sum();
+        stats.rejections = this.rejections.sum();
+        stats.size = this.size.sum();
+        stats.capacity = capacity();
+        return stats;
+    }
+
+    public static int move(long data) {
+        return (int) ((data >>> MOVE_SHIFT) & MOVE_MASK);
+    }
+
+    public static int depth(long data) {
+        return (int) ((data >>> DEPTH_SHIFT) & DEPTH_MASK);
+    }
+
+    public static int score(long data) {
+        return (int) (data >> SCORE_SHIFT);
+    }
+
+    private void write(int index, long key, long data) {
+        // The data is written last, so a reader that sees it sees its key
+        SLOTS.setRelease(this.table, index, key ^ data);
+        SLOTS.setRelease(this.table, index + 1, data);
+        this.stores.increment();
+    }
+
+    private int bucket(long key) {
+        return (int) (key & this.bucketMask) * BUCKET_LONGS;
+    }
+}
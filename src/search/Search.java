@@ -0,0 +1,696 @@
+package search;
+
+import board.Bitboard;
+import board.Move;
+import tablebase.Material;
+import tablebase.Tablebase;
+import tablebase.Tablebases;
+
+import java.util.List;
+
+import static board.Piece.Type;
+
+/**
+ * An iterative deepening alpha-beta search over a {@link Bitboard}.
+ * <p>
+ * Each pruning and reduction technique can be switched on or off through a
+ * bit mask of features, so their effect on node counts and time to depth can
+ * be measured separately. Null move pruning, futility pruning, razoring and
+ * transposition table cutoffs only apply away from the principal variation,
+ * at nodes reached through a move other than the first one searched. That
+ * doesn't depend on the window, so each of them also works without
+ * principal variation search.
+ */
+public class Search {
+    // Feature flags
+    public static final int PVS                  = 0b000001;
+    public static final int ASPIRATION           = 0b000010;
+    public static final int LATE_MOVE_REDUCTIONS = 0b000100;
+    public static final int NULL_MOVE            = 0b001000;
+    public static final int FUTILITY             = 0b010000;
+    public static final int RAZORING             = 0b100000;
+    public static final int ALL_FEATURES         = 0b111111;
+    public static final int NO_FEATURES          = 0;
+
+    // Score of being checkmated at the root. Mates further away score less.
+    public static final int MATE = 100000;
+    public static final int INFINITY = MATE + 1;
+    // Scores beyond this are mates
+    public static final int MATE_BOUND = MATE - SearchStats.MAX_DEPTH * 4;
+
+    private static final int MAX_PLY = SearchStats.MAX_DEPTH * 2;
+
+    // The first depth searched with an aspiration window, and its half width
+    private static final int ASPIRATION_DEPTH = 4;
+    private static final int ASPIRATION_WINDOW = 25;
+    // Margins by remaining depth for futility pruning and razoring
+    private static final int[] FUTILITY_MARGINS = {0, 200, 500};
+    private static final int[] RAZOR_MARGINS = {0, 300, 400, 600};
+
+    // Scores used to order moves
+    private static final int HASH_SCORE = 1 << 21;
+    private static final int PV_SCORE = 1 << 20;
+    private static final int CAPTURE_SCORE = 1 << 16;
+    private static final int KILLER_SCORE = 1 << 12;
+
+    private final Bitboard board;
+    private final int features;
+    private final SearchStats stats;
+    private final TranspositionTable table;
+
+    // Triangular principal variation table
+    private final Move[][] pv;
+    private final int[] pvLength;
+    // The principal variation of the last completed iteration
+    private final Move[] lastPv;
+    private int lastPvLength;
+    private boolean followingPv;
+    // Quiet moves that caused a beta cutoff, two per ply
+    private final Move[][] killers;
+    // Move ordering scores, one buffer per ply
+    private final int[][] orderScores;
+
+    // Endgame tables probed at nodes with few enough pieces, or null
+    private Tablebases tablebases;
+    // Told about each completed iteration, or null
+    private Listener listener;
+
+    // Decides when to stop, and whether the current iteration was abandoned
+    private TimeManager timeManager;
+    private boolean aborted;
+
+    // The process totals, and what this search has added to them so far
+    private final SearchMetrics metrics = SearchMetrics.global();
+    private long reportedNodes;
+    private long reportedProbes;
+    private long reportedHits;
+    private long reportedTime;
+
+    // Keeps prefetch loads from being optimized away. It belongs to this
+    // search, since the table may be shared between threads.
+    private long prefetchSink;
+
+    // Published as soon as a root move is proven best, so other threads can
+    // read them while the search is running
+    private volatile Move bestMove;
+    private volatile int bestScore;
+
+    /**
+     * Creates a search over a board with all features enabled.
+     *
+     * @param board The board to search. It is modified during the search, but
+     *              restored before the search returns.
+     */
+    public Search(Bitboard board) {
+        this(board, ALL_FEATURES);
+    }
+
+    /**
+     * Creates a search over a board.
+     *
+     * @param board    The board to search. It is modified during the search,
+     *                 but restored before the search returns.
+     * @param features A bit mask of the features to enable.
+     */
+    public Search(Bitboard board, int features) {
+        this(board, features, new TranspositionTable(TranspositionTable.DEFAULT_MEGABYTES));
+    }
+
+    /**
+     * Creates a search over a board.
+     *
+     * @param board    The board to search. It is modified during the search,
+     *                 but restored before the search returns.
+     * @param features A bit mask of the features to enable.
+     * @param table    The transposition table to use, which may be shared with
+     *                 other searches.
+     */
+    public Search(Bitboard board, int features, TranspositionTable table) {
+        this.board = board;
+        this.features = features;
+        this.table = table;
+        this.stats = new SearchStats();
+        this.pv = new Move[MAX_PLY + 1][MAX_PLY + 1];
+        this.pvLength = new int[MAX_PLY + 1];
+        this.lastPv = new Move[MAX_PLY + 1];
+        this.killers = new Move[MAX_PLY + 1][2];
+        this.orderScores = new int[MAX_PLY + 1][];
+    }
+
+    /**
+     * Sets the endgame tables to probe. Nodes below the root whose material
+     * has a table are scored from it instead of being searched, unless
+     * castling rights are left or an en passant capture is possible, which
+     * the tables don't know about.
+     *
+     * @param tablebases The tables, or null to probe none.
+     */
+    public void setTablebases(Tablebases tablebases) {
+        this.tablebases = tablebases;
+    }
+
+    /**
+     * Sets the listener told about each completed iteration. It is called on
+     * the searching thread.
+     *
+     * @param listener The listener, or null for none.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Searches the board to a given depth.
+     *
+     * @param maxDepth The depth to search to.
+     * @return The best move found, or null if there are no legal moves.
+     */
+    public Move search(int maxDepth) {
+        return search(maxDepth, TimeManager.infinite());
+    }
+
+    /**
+     * Searches the board until a given depth is reached or the time manager
+     * stops the search. If the search is stopped partway through an
+     * iteration, the best move proven so far in that iteration is kept.
+     * The time manager's clock starts now, unless another search using it
+     * has already started it.
+     *
+     * @param maxDepth    The depth to search to.
+     * @param timeManager Decides when to stop the search.
+     * @return The best move found, or null if there are no legal moves.
+     */
+    public Move search(int maxDepth, TimeManager timeManager) {
+        maxDepth = Math.min(maxDepth, SearchStats.MAX_DEPTH);
+        timeManager.begin();
+        this.timeManager = timeManager;
+        this.aborted = false;
+        this.stats.reset();
+        this.table.newSearch();
+        this.bestScore = 0;
+        // Make sure there is always a move to play, however early the search
+        // is stopped
+        final List<Move> rootMoves = this.board.generateMoves();
+        this.bestMove = rootMoves.isEmpty() ? null : rootMoves.get(0);
+        this.lastPvLength = 0;
+        for (Move[] plyKillers : this.killers) {
+            plyKillers[0] = null;
+            plyKillers[1] = null;
+        }
+
+        final long start = System.nanoTime();
+        int score = 0;
+        this.metrics.searchStarted(this.table);
+        this.reportedNodes = 0;
+        this.reportedProbes = 0;
+        this.reportedHits = 0;
+        this.reportedTime = start;
+        try {
+            for (int depth = 1; depth <= maxDepth && timeManager.canStartIteration(); depth++) {
+                final SearchIterationEvent event = new SearchIterationEvent();
+                event.begin();
+                this.followingPv = true;
+                if (enabled(ASPIRATION) && depth >= ASPIRATION_DEPTH) {
+                    score = aspirationSearch(depth, score);
+                } else {
+                    score = negamax(depth, 0, -INFINITY, INFINITY, true, true);
+                }
+                if (this.aborted) {
+                    break;
+                }
+
+                this.lastPvLength = this.pvLength[0];
+                System.arraycopy(this.pv[0], 0, this.lastPv, 0, this.lastPvLength);
+                if (this.lastPvLength > 0) {
+                    this.bestMove = this.lastPv[0];
+                }
+                this.bestScore = score;
+
+                this.stats.completedDepth = depth;
+                this.stats.depthNodes[depth] = this.stats.nodes;
+                this.stats.depthTimes[depth] = System.nanoTime() - start;
+                if (depth > 1) {
+                    this.metrics.addIteration(this.stats.depthNodes[depth] - this.stats.depthNodes[depth - 1],
+                            this.stats.depthNodes[depth - 1] - (depth > 2 ? this.stats.depthNodes[depth - 2] : 0));
+                }
+                report();
+                if (event.shouldCommit()) {
+                    event.depth = depth;
+                    event.score = score;
+                    event.nodes = this.stats.nodes - (depth > 1 ? this.stats.depthNodes[depth - 1] : 0);
+                    event.totalNodes = this.stats.nodes;
+                    event.bestMove = this.bestMove == null ? null : this.bestMove.toString();
+                    event.hashFull = this.table.fillPermille();
+                    event.commit();
+                }
+                if (this.listener != null) {
+                    this.listener.iterationComplete(this, depth);
+                }
+            }
+        } finally {
+            report();
+            this.metrics.searchEnded();
+        }
+
+        return this.bestMove;
+    }
+
+    /**
+     * Adds the work done since the last report to the process totals.
+     */
+    private void report() {
+        final long now = System.nanoTime();
+        this.metrics.add(this.stats.nodes - this.reportedNodes, this.stats.hashProbes - this.reportedProbes,
+                this.stats.hashHits - this.reportedHits, now - this.reportedTime);
+        this.reportedNodes = this.stats.nodes;
+        this.reportedProbes = this.stats.hashProbes;
+        this.reportedHits = this.stats.hashHits;
+        this.reportedTime = now;
+    }
+
+    /**
+     * Returns the best move found so far. Safe to call from any thread while
+     * the search is running.
+     *
+     * @return The best move found so far.
+     */
+    public Move bestMove() {
+        return this.bestMove;
+    }
+
+    /**
+     * Returns the score of the best move found so far.
+     *
+     * @return The score in centipawns, from the perspective of the player to
+     * move.
+     */
+    public int bestScore() {
+        return this.bestScore;
+    }
+
+    /**
+     * Returns the principal variation found by the last search.
+     *
+     * @return The expected line of play, starting with the best move.
+     */
+    public Move[] principalVariation() {
+        Move[] line = new Move[this.lastPvLength];
+        System.arraycopy(this.lastPv, 0, line, 0, this.lastPvLength);
+        return line;
+    }
+
+    public SearchStats stats() {
+        return this.stats;
+    }
+
+    private boolean enabled(int feature) {
+        return (this.features & feature) != 0;
+    }
+
+    /**
+     * Searches the root with a narrow window around the previous score,
+     * widening it each time the score falls outside of it.
+     */
+    private int aspirationSearch(int depth, int previousScore) {
+        int window = ASPIRATION_WINDOW;
+        int alpha = Math.max(previousScore - window, -INFINITY);
+        int beta = Math.min(previousScore + window, INFINITY);
+
+        while (true) {
+            int score = negamax(depth, 0, alpha, beta, true, true);
+            if (this.aborted) {
+                return score;
+            }
+            if (score <= alpha && alpha > -INFINITY) {
+                alpha = Math.max(score - window, -INFINITY);
+            } else if (score >= beta && beta < INFINITY) {
+                beta = Math.min(score + window, INFINITY);
+            } else {
+                return score;
+            }
+            this.stats.aspirationFailures++;
+            this.followingPv = true;
+            window *= 4;
+        }
+    }
+
+    private int negamax(int depth, int ply, int alpha, int beta, boolean pvNode, boolean nullAllowed) {
+        if (depth <= 0) {
+            return quiesce(ply, alpha, beta);
+        }
+        this.stats.nodes++;
+        this.pvLength[ply] = ply;
+
+        if (this.timeManager.check(this.stats.nodes)) {
+            this.aborted = true;
+            return 0;
+        }
+        if (ply > 0 && (this.board.isRepetition() || this.board.halfmoveClock() >= 100)) {
+            return 0;
+        }
+        if (ply >= MAX_PLY) {
+            return Evaluation.evaluate(this.board);
+        }
+        // Tables don't know about castling or en passant, so their value is
+        // only exact without either
+        if (ply > 0 && this.tablebases != null && Bitboard.count(this.board.occupancy()) <= Material.MAX_PIECES
+                && !this.board.hasCastlingRights() && !this.board.hasEnpassantCapture()) {
+            final int value = this.tablebases.probe(this.board);
+            if (value != Tablebase.UNKNOWN) {
+                this.stats.tablebaseHits++;
+                if (value == Tablebase.DRAW) {
+                    return 0;
+                }
+                final int mate = MATE - ply - Tablebase.plies(value);
+                return Tablebase.isWin(value) ? mate : -mate;
+            }
+        }
+
+        final int color = this.board.whitesTurn() ? 0 : 1;
+        final boolean inCheck = this.board.inCheck(color);
+        if (inCheck) {
+            // Search forcing lines a little deeper
+            depth++;
+        }
+
+        final long key = this.board.signature();
+        final long entry = this.table.probe(key);
+        this.stats.hashProbes++;
+        if (entry != 0) {
+            this.stats.hashHits++;
+        }
+        final int hashMove = TranspositionTable.move(entry);
+        if (entry != 0 && !pvNode && TranspositionTable.depth(entry) >= depth) {
+            final int score = fromTable(TranspositionTable.score(entry), ply);
+            final int bound = TranspositionTable.bound(entry);
+            if (bound == TranspositionTable.EXACT
+                    || (bound == TranspositionTable.LOWER_BOUND && score >= beta)
+                    || (bound == TranspositionTable.UPPER_BOUND && score <= alpha)) {
+                this.stats.hashCutoffs++;
+                return score;
+            }
+        }
+
+        final int staticEval = inCheck ? -INFINITY : Evaluation.evaluate(this.board);
+
+        if (!pvNode && !inCheck) {
+            // Razoring: if the position is hopeless even after a generous
+            // margin, check that captures can't save it and give up
+            if (enabled(RAZORING) && depth < RAZOR_MARGINS.length && staticEval + RAZOR_MARGINS[depth] <= alpha) {
+                int score = quiesce(ply, alpha, alpha + 1);
+                if (this.aborted) {
+                    return 0;
+                }
+                if (score <= alpha) {
+                    this.stats.razorCutoffs++;
+                    return score;
+                }
+            }
+
+            // Null move pruning: if passing the turn still fails high, a real
+            // move almost certainly would too
+            if (enabled(NULL_MOVE) && nullAllowed && depth >= 3 && staticEval >= beta
+                    && Evaluation.hasNonPawnMaterial(this.board, color)) {
+                final int reduction = depth > 6 ? 3 : 2;
+                this.board.applyNullMove();
+                int score = -negamax(depth - 1 - reduction, ply + 1, -beta, -beta + 1, false, false);
+                this.board.undoNullMove();
+                if (this.aborted) {
+                    return 0;
+                }
+                if (score >= beta) {
+                    this.stats.nullMoveCutoffs++;
+                    // Don't trust mate scores from a null move search
+                    return score >= MATE_BOUND ? beta : score;
+                }
+            }
+        }
+
+        // Futility pruning: near the horizon, quiet moves are unlikely to
+        // make up a large deficit
+        final boolean futile = enabled(FUTILITY) && !pvNode && !inCheck && depth < FUTILITY_MARGINS.length
+                && staticEval + FUTILITY_MARGINS[depth] <= alpha;
+
+        // Legality is only checked for moves that are actually tried, since a
+        // cutoff often makes checking the rest unnecessary
+        final List<Move> moves = this.board.generatePseudoMoves();
+        final int[] scores = orderMoves(moves, ply, hashMove);
+
+        final int originalAlpha = alpha;
+        Move bestNodeMove = null;
+        int best = -INFINITY;
+        int legal = 0;
+        int searched = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            final Move move = nextMove(moves, scores, i);
+            if (!this.board.isLegal(move)) {
+                continue;
+            }
+            legal++;
+
+            final boolean quiet = !move.isCapture() && !move.isPromotion();
+            final boolean killer = move.equals(this.killers[ply][0]) || move.equals(this.killers[ply][1]);
+
+            final boolean givesCheck = quiet && (futile || enabled(LATE_MOVE_REDUCTIONS)) && this.board.givesCheck(move);
+
+            if (futile && searched > 0 && quiet && !givesCheck) {
+                this.stats.futilityPrunes++;
+                continue;
+            }
+
+            // Start loading the child's table entry while the move is made
+            this.prefetchSink += this.table.prefetch(this.board.signatureAfter(move));
+            this.board.applyMove(move);
+
+            int score;
+            if (searched == 0) {
+                score = -negamax(depth - 1, ply + 1, -beta, -alpha, pvNode, true);
+            } else {
+                // Late move reductions: moves ordered late are rarely best, so
+                // search them less deeply unless they turn out to be good
+                int reduction = 0;
+                if (enabled(LATE_MOVE_REDUCTIONS) && depth >= 3 && searched >= 3 && quiet && !killer && !inCheck && !givesCheck) {
+                    reduction = searched >= 6 ? 2 : 1;
+                    this.stats.lateMoveReductions++;
+                }
+
+                if (enabled(PVS)) {
+                    // Principal variation search: prove the move is worse
+                    // than the best so far with a zero window
+                    score = -negamax(depth - 1 - reduction, ply + 1, -alpha - 1, -alpha, false, true);
+                    if (reduction > 0 && score > alpha) {
+                        this.stats.lateMoveResearches++;
+                        score = -negamax(depth - 1, ply + 1, -alpha - 1, -alpha, false, true);
+                    }
+                    if (score > alpha && score < beta) {
+                        this.stats.pvsResearches++;
+                        score = -negamax(depth - 1, ply + 1, -beta, -alpha, pvNode, true);
+                    }
+                } else {
+                    // Later moves are searched with the full window, but
+                    // away from the principal variation
+                    score = -negamax(depth - 1 - reduction, ply + 1, -beta, -alpha, false, true);
+                    if (reduction > 0 && score > alpha) {
+                        this.stats.lateMoveResearches++;
+                        score = -negamax(depth - 1, ply + 1, -beta, -alpha, false, true);
+                    }
+                }
+            }
+
+            this.board.undoMove();
+            if (this.aborted) {
+                return 0;
+            }
+            searched++;
+
+            if (score > best) {
+                best = score;
+                bestNodeMove = move;
+                if (score > alpha) {
+                    alpha = score;
+                    updatePv(ply, move);
+                    if (ply == 0) {
+                        this.bestMove = move;
+                        this.bestScore = score;
+                    }
+                }
+                if (score >= beta) {
+                    if (quiet && !killer) {
+                        this.killers[ply][1] = this.killers[ply][0];
+                        this.killers[ply][0] = move;
+                    }
+                    break;
+                }
+            }
+        }
+
+        if (legal == 0) {
+            return inCheck ? -MATE + ply : 0;
+        }
+        if (searched > 0) {
+            final int bound = best >= beta ? TranspositionTable.LOWER_BOUND
+                    : best > originalAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER_BOUND;
+            this.table.store(key, bestNodeMove.encode(), toTable(best, ply), depth, bound);
+        }
+        return best;
+    }
+
+    /**
+     * Converts a mate score relative to the root into one relative to the
+     * current node, so it stays correct when found through a transposition.
+     */
+    private static int toTable(int score, int ply) {
+        if (score >= MATE_BOUND) {
+            return score + ply;
+        } else if (score <= -MATE_BOUND) {
+            return score - ply;
+        }
+        return score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        if (score >= MATE_BOUND) {
+            return score - ply;
+        } else if (score <= -MATE_BOUND) {
+            return score + ply;
+        }
+        return score;
+    }
+
+    private int quiesce(int ply, int alpha, int beta) {
+        this.stats.nodes++;
+        this.stats.quiescenceNodes++;
+        this.pvLength[ply] = ply;
+
+        if (this.timeManager.check(this.stats.nodes)) {
+            this.aborted = true;
+            return 0;
+        }
+
+        final int standPat = Evaluation.evaluate(this.board);
+        if (standPat >= beta || ply >= MAX_PLY) {
+            return standPat;
+        }
+        if (standPat > alpha) {
+            alpha = standPat;
+        }
+
+        final List<Move> moves = this.board.generatePseudoMoves();
+        final int[] scores = orderMoves(moves, ply, 0);
+
+        int best = standPat;
+        for (int i = 0; i < moves.size(); i++) {
+            final Move move = nextMove(moves, scores, i);
+            if (!move.isCapture() && !move.isPromotion()) {
+                // Only captures and promotions are ordered before quiet moves
+                break;
+            }
+
+            if (!this.board.isLegal(move)) {
+                continue;
+            }
+            this.board.applyMove(move);
+            int score = -quiesce(ply + 1, -beta, -alpha);
+            this.board.undoMove();
+            if (this.aborted) {
+                return 0;
+            }
+
+            if (score > best) {
+                best = score;
+                if (score > alpha) {
+                    alpha = score;
+                }
+                if (score >= beta) {
+                    break;
+                }
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Scores moves for ordering: the transposition table move first, then the
+     * principal variation, then captures by most valuable victim and least
+     * valuable attacker, then killers.
+     */
+    private int[] orderMoves(List<Move> moves, int ply, int hashMove) {
+        int[] scores = this.orderScores[ply];
+        if (scores == null || scores.length < moves.size()) {
+            scores = new int[Math.max(moves.size(), 64)];
+            this.orderScores[ply] = scores;
+        }
+
+        final Move pvMove = this.followingPv && ply < this.lastPvLength ? this.lastPv[ply] : null;
+        this.followingPv = false;
+        for (int i = 0; i < moves.size(); i++) {
+            final Move move = moves.get(i);
+            int score = 0;
+            if (hashMove != 0 && move.encode() == hashMove) {
+                score = HASH_SCORE;
+                if (move.equals(pvMove)) {
+                    this.followingPv = true;
+                }
+            } else if (move.equals(pvMove)) {
+                score = PV_SCORE;
+                // Keep following the principal variation down this move
+                this.followingPv = true;
+            } else if (move.isCapture() || move.isPromotion()) {
+                final int victim = move.isEnpassant() ? Type.PAWN : move.dest.type();
+                score = CAPTURE_SCORE + (victim == Type.EMPTY ? 0 : Evaluation.PIECE_VALUES[victim]) - move.src.type();
+                if (move.isPromotion()) {
+                    score += Evaluation.PIECE_VALUES[move.promotionPiece()];
+                }
+            } else if (move.equals(this.killers[ply][0])) {
+                score = KILLER_SCORE + 1;
+            } else if (move.equals(this.killers[ply][1])) {
+                score = KILLER_SCORE;
+            }
+            scores[i] = score;
+        }
+        return scores;
+    }
+
+    /**
+     * Swaps the highest scored move at or after an index into that index.
+     */
+    private static Move nextMove(List<Move> moves, int[] scores, int index) {
+        int best = index;
+        for (int i = index + 1; i < moves.size(); i++) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        if (best != index) {
+            int score = scores[index];
+            scores[index] = scores[best];
+            scores[best] = score;
+            moves.set(best, moves.set(index, moves.get(best)));
+        }
+        return moves.get(index);
+    }
+
+    private void updatePv(int ply, Move move) {
+        this.pv[ply][ply] = move;
+        final int childLength = this.pvLength[ply + 1];
+        for (int i = ply + 1; i < childLength; i++) {
+            this.pv[ply][i] = this.pv[ply + 1][i];
+        }
+        this.pvLength[ply] = Math.max(childLength, ply + 1);
+    }
+
+    /**
+     * Told about the progress of a search.
+     */
+    public interface Listener {
+        /**
+         * Called when an iteration completes. The best move, score, principal
+         * variation and stats of the search are those of the iteration.
+         *
+         * @param search The search.
+         * @param depth  The depth of the iteration.
+         */
+        void iterationComplete(Search search, int depth);
+    }
+}
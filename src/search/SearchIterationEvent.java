@@ -0,0 +1,43 @@
+package search;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Recorded by JDK Flight Recorder for each completed iteration of a
+ * {@link Search}, lasting as long as the iteration did.
+ */
+@Name(SearchIterationEvent.NAME)
+@Label("Search Iteration")
+@Category({"Chess", "Search"})
+@Description("One completed iteration of iterative deepening")
+@StackTrace(false)
+public class SearchIterationEvent extends Event {
+    public static final String NAME = "chess.SearchIteration";
+
+    @Label("Depth")
+    int depth;
+
+    @Label("Score")
+    @Description("Centipawns for the player to move, or beyond the mate bound for a forced mate")
+    int score;
+
+    @Label("Nodes")
+    @Description("Nodes visited by this iteration")
+    long nodes;
+
+    @Label("Total Nodes")
+    @Description("Nodes visited by the search so far")
+    long totalNodes;
+
+    @Label("Best Move")
+    String bestMove;
+
+    @Label("Hash Full")
+    @Description("Entries per thousand of the transposition table used by this search")
+    int hashFull;
+}
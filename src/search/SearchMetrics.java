@@ -0,0 +1,161 @@
+package search;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Totals of every {@link Search} in the process, for dashboards to read over
+ * JMX as the MBean {@value #NAME}.
+ * <p>
+ * Searches count into their own {@link SearchStats} with plain writes, and
+ * only add what they have counted to these totals when an iteration
+ * completes and when they end. The totals are {@link LongAdder}s, so
+ * searches on different threads don't contend when they do.
+ */
+public class SearchMetrics implements SearchMetricsMBean {
+    public static final String NAME = "chess:type=Search";
+
+    private static final SearchMetrics GLOBAL = new SearchMetrics();
+
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder active = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final LongAdder hashProbes = new LongAdder();
+    private final LongAdder hashHits = new LongAdder();
+    // Sum and number of the branching factors of completed iterations
+    private final DoubleAdder branching = new DoubleAdder();
+    private final LongAdder branchingSamples = new LongAdder();
+
+    // The table most recently searched with
+    private volatile TranspositionTable table;
+
+    private SearchMetrics() {
+    }
+
+    /**
+     * Returns the totals that every search adds to.
+     *
+     * @return The totals of the process.
+     */
+    public static SearchMetrics global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Publishes the totals to the platform MBean server, if they aren't
+     * already.
+     */
+    public static void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(GLOBAL, new ObjectName(NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // Published already
+        } catch (JMException e) {
+            throw new IllegalStateException("Couldn't register " + NAME, e);
+        }
+    }
+
+    void searchStarted(TranspositionTable table) {
+        this.searches.increment();
+        this.active.increment();
+        this.table = table;
+    }
+
+    void searchEnded() {
+        this.active.decrement();
+    }
+
+    /**
+     * Adds work done since the last report.
+     *
+     * @param nodes      Nodes visited.
+     * @param hashProbes Transposition table lookups.
+     * @param hashHits   Lookups that found an entry.
+     * @param nanos      Time spent searching.
+     */
+    void add(long nodes, long hashProbes, long hashHits, long nanos) {
+        this.nodes.add(nodes);
+        this.hashProbes.add(hashProbes);
+        this.hashHits.add(hashHits);
+        this.nanos.add(nanos);
+    }
+
+    /**
+     * Adds the branching factor of a completed iteration.
+     *
+     * @param nodes         Nodes visited by the iteration.
+     * @param previousNodes Nodes visited by the iteration before it.
+     */
+    void addIteration(long nodes, long previousNodes) {
+        if (previousNodes > 0) {
+            this.branching.add((double) nodes / previousNodes);
+            this.branchingSamples.increment();
+        }
+    }
+
+    @Override
+    public long getSearches() {
+        return this.searches.sum();
+    }
+
+    @Override
+    public int getActiveSearches() {
+        return (int) this.active.sum();
+    }
+
+    @Override
+    public long getNodes() {
+        return this.nodes.sum();
+    }
+
+    /**
+     * Returns the speed of one search thread, over all searches so far. The
+     * rate of the whole process is the rate {@link #getNodes()} grows at.
+     */
+    @Override
+    public double getNodesPerSecond() {
+        final long nanos = this.nanos.sum();
+        return nanos == 0 ? 0 : this.nodes.sum() * 1e9 / nanos;
+    }
+
+    /**
+     * Returns the mean ratio of the nodes of an iteration to those of the
+     * iteration before it.
+     */
+    @Override
+    public double getAverageBranchingFactor() {
+        final long samples = this.branchingSamples.sum();
+        return samples == 0 ? 0 : this.branching.sum() / samples;
+    }
+
+    @Override
+    public long getHashProbes() {
+        return this.hashProbes.sum();
+    }
+
+    @Override
+    public long getHashHits() {
+        return this.hashHits.sum();
+    }
+
+    @Override
+    public double getHashHitRate() {
+        final long probes = this.hashProbes.sum();
+        return probes == 0 ? 0 : (double) this.hashHits.sum() / probes;
+    }
+
+    /**
+     * Returns the fill of the table most recently searched with, as given by
+     * {@link TranspositionTable#fillPermille()}.
+     */
+    @Override
+    public int getHashFillPermille() {
+        final TranspositionTable table = this.table;
+        return table == null ? 0 : table.fillPermille();
+    }
+}
@@ -0,0 +1,24 @@
+package search;
+
+/**
+ * The search measurements published over JMX by {@link SearchMetrics}.
+ */
+public interface SearchMetricsMBean {
+    long getSearches();
+
+    int getActiveSearches();
+
+    long getNodes();
+
+    double getNodesPerSecond();
+
+    double getAverageBranchingFactor();
+
+    long getHashProbes();
+
+    long getHashHits();
+
+    double getHashHitRate();
+
+    int getHashFillPermille();
+}
@@ -0,0 +1,73 @@
+package search;
+
+/**
+ * Counters collected while searching, used to measure how much each search
+ * feature contributes.
+ */
+public class SearchStats {
+    // The deepest iteration that can be recorded
+    public static final int MAX_DEPTH = 64;
+
+    // Nodes visited, including quiescence nodes
+    public long nodes;
+    // Nodes visited in the quiescence search
+    public long quiescenceNodes;
+    // The deepest iteration that was completed
+    public int completedDepth;
+    // Total nodes visited and nanoseconds elapsed when each iteration ended
+    public final long[] depthNodes = new long[MAX_DEPTH + 1];
+    public final long[] depthTimes = new long[MAX_DEPTH + 1];
+
+    // Transposition table lookups, and those that found an entry
+    public long hashProbes;
+    public long hashHits;
+    // Nodes whose score was taken from the transposition table
+    public long hashCutoffs;
+    // Zero window searches that failed high and were searched again
+    public long pvsResearches;
+    // Aspiration windows that the score fell outside of
+    public long aspirationFailures;
+    // Moves searched at reduced depth
+    public long lateMoveReductions;
+    // Reduced moves that beat alpha and were searched again
+    public long lateMoveResearches;
+    // Nodes cut off by a null move search
+    public long nullMoveCutoffs;
+    // Quiet moves skipped near the horizon
+    public long futilityPrunes;
+    // Nodes cut off by a quiescence search before searching any moves
+    public long razorCutoffs;
+    // Nodes scored from an endgame table
+    public long tablebaseHits;
+
+    /**
+     * Clears all counters.
+     */
+    public void reset() {
+        this.nodes = 0;
+        this.quiescenceNodes = 0;
+        this.completedDepth = 0;
+        for (int i = 0; i <= MAX_DEPTH; i++) {
+            this.depthNodes[i] = 0;
+            this.depthTimes[i] = 0;
+        }
+        this.hashProbes = 0;
+        this.hashHits = 0;
+        this.hashCutoffs = 0;
+        this.pvsResearches = 0;
+        this.aspirationFailures = 0;
+        this.lateMoveReductions = 0;
+        this.lateMoveResearches = 0;
+        this.nullMoveCutoffs = 0;
+        this.futilityPrunes = 0;
+        this.razorCutoffs = 0;
+        this.tablebaseHits = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("nodes=%d qnodes=%d depth=%d hashProbes=%d hashHits=%d hashCutoffs=%d pvsResearches=%d aspirationFailures=%d lmr=%d lmrResearches=%d nullCutoffs=%d futilityPrunes=%d razorCutoffs=%d tablebaseHits=%d",
+                this.nodes, this.quiescenceNodes, this.completedDepth, this.hashProbes, this.hashHits, this.hashCutoffs, this.pvsResearches, this.aspirationFailures,
+                this.lateMoveReductions, this.lateMoveResearches, this.nullMoveCutoffs, this.futilityPrunes, this.razorCutoffs, this.tablebaseHits);
+    }
+}
@@ -0,0 +1,159 @@
+package search;
+
+import board.Bitboard;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Saves the entries of a {@link TranspositionTable} or a {@link ResultCache}
+ * to a file and loads them back, so a restarted engine doesn't start cold.
+ * <p>
+ * The file is a header followed by the table's longs as they are in memory,
+ * little endian. The header records a fingerprint of the entry layout and
+ * {@link Bitboard#zobristIdentity()}. A snapshot that doesn't match both is
+ * refused, since its data or its keys would be misread. Loading maps the
+ * file and copies it in regions of {@link #REGION_LONGS}, straight into the
+ * table if it is the same size, or entry by entry otherwise.
+ */
+final class TableSnapshot {
+    // Identifies snapshot files, and their version in the low byte
+    static final long MAGIC = 0x534E415053_000001L;
+    // Longs mapped at a time (1GB)
+    static final int REGION_LONGS = 1 << 27;
+
+    // @formatter:off
+    // Offsets of the fields of the header
+    static final int MAGIC_OFFSET   = 0;
+    static final int LAYOUT_OFFSET  = 8;
+    static final int ZOBRIST_OFFSET = 16;
+    static final int LONGS_OFFSET   = 24;
+    static final int HEADER_BYTES   = 64;
+    // @formatter:on
+
+    /**
+     * Receives the entries of a snapshot that doesn't fit a table as is.
+     */
+    interface Entries {
+        void put(long key, long data);
+    }
+
+    private TableSnapshot() {
+    }
+
+    /**
+     * Returns a fingerprint of an entry layout.
+     *
+     * @param name   The kind of table.
+     * @param fields The constants that define where each field of an entry
+     *               is.
+     * @return A hash of the name and constants.
+     */
+    static long layout(String name, long... fields) {
+        long layout = name.hashCode();
+        for (long field : fields) {
+            layout = Long.rotateLeft(layout * 0x9E3779B97F4A7C15L, 27) ^ field;
+        }
+        return layout;
+    }
+
+    /**
+     * Writes a table's longs to a file, replacing it atomically. Entries
+     * being written by other threads meanwhile may be torn, and then read as
+     * misses once loaded.
+     *
+     * @param path   The file to write.
+     * @param layout The fingerprint of the table's entry layout.
+     * @param table  The table's longs, in pairs of key XOR data and data.
+     * @throws IOException If the file can't be written.
+     */
+    static void write(Path path, long layout, long[] table) throws IOException {
+        final Path directory = path.toAbsolutePath().getParent();
+        final Path temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                final ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putLong(MAGIC_OFFSET, MAGIC);
+                buffer.putLong(LAYOUT_OFFSET, layout);
+                buffer.putLong(ZOBRIST_OFFSET, Bitboard.zobristIdentity());
+                buffer.putLong(LONGS_OFFSET, table.length);
+                buffer.position(HEADER_BYTES);
+                for (long value : table) {
+                    if (!buffer.hasRemaining()) {
+                        write(channel, buffer);
+                    }
+                    buffer.putLong(value);
+                }
+                write(channel, buffer);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Loads a snapshot into a table.
+     *
+     * @param path    The snapshot file.
+     * @param layout  The fingerprint of the table's entry layout.
+     * @param table   The table's longs. They are overwritten if the snapshot
+     *                is of a table of the same size.
+     * @param entries Receives each entry instead, if the snapshot is of a
+     *                table of another size.
+     * @throws IOException If the file can't be read, isn't a snapshot, or
+     *                     was written with another layout or other zobrist
+     *                     bitstrings.
+     */
+    static void read(Path path, long layout, long[] table, Entries entries) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long bytes = channel.size();
+            if (bytes < HEADER_BYTES) {
+                throw new IOException("Not a table snapshot: " + path);
+            }
+            final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            final long longs = header.getLong(LONGS_OFFSET);
+            if (header.getLong(MAGIC_OFFSET) != MAGIC || longs < 0 || longs % 2 != 0 || bytes != HEADER_BYTES + longs * Long.BYTES) {
+                throw new IOException("Not a table snapshot: " + path);
+            }
+            if (header.getLong(LAYOUT_OFFSET) != layout) {
+                throw new IOException("Snapshot has another entry layout: " + path);
+            }
+            if (header.getLong(ZOBRIST_OFFSET) != Bitboard.zobristIdentity()) {
+                throw new IOException("Snapshot was written with other zobrist bitstrings: " + path);
+            }
+
+            final boolean sameSize = longs == table.length;
+            for (long start = 0; start < longs; start += REGION_LONGS) {
+                final int length = (int) Math.min(REGION_LONGS, longs - start);
+                final LongBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + start * Long.BYTES,
+                        (long) length * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+                if (sameSize) {
+                    region.get(table, (int) start, length);
+                    continue;
+                }
+                for (int i = 0; i < length; i += 2) {
+                    final long data = region.get(i + 1);
+                    if (data != 0) {
+                        entries.put(region.get(i) ^ data, data);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,215 @@
+package search;
+
+/**
+ * Decides when a search should stop.
+ * <p>
+ * A search finishes its current iteration but doesn't start a new one once
+ * the soft limit has passed, and abandons the current iteration as soon as
+ * the hard limit passes or {@link #stop()} is called. The clock is only read
+ * every few nodes to keep the check cheap, while the stop flag is read on
+ * every node so that a stop is noticed almost immediately. A node limit can
+ * also be set. Any number of searches on different threads can share one
+ * time manager.
+ * <p>
+ * The clock starts when the first search using the time manager begins, or
+ * when {@link #start()} is called, whichever comes first, so limits don't
+ * include time spent before searching.
+ */
+public class TimeManager {
+    // How often the clock is read, in nodes. Must be a power of two.
+    public static final int DEFAULT_CHECK_INTERVAL = 256;
+    // Moves assumed to be left in the game when the clock doesn't say
+    public static final int DEFAULT_MOVES_TO_GO = 30;
+    // Time kept back from the clock to cover communication delays
+    public static final long MOVE_OVERHEAD_MILLIS = 20;
+
+    private static final long NO_LIMIT = Long.MAX_VALUE;
+
+    private final long softLimit;
+    private final long hardLimit;
+    private final int checkMask;
+
+    // Nodes a search may visit before it stops them all
+    private long nodeLimit = NO_LIMIT;
+
+    // Guarded by this for writes, so that only the first search starts the
+    // clock
+    private volatile boolean started;
+    private volatile long startTime;
+    private volatile long softDeadline = NO_LIMIT;
+    private volatile long hardDeadline = NO_LIMIT;
+    private volatile boolean stopped;
+
+    /**
+     * Creates a time manager.
+     *
+     * @param softMillis Milliseconds after which no new iteration is started,
+     *                   or a negative number for no limit.
+     * @param hardMillis Milliseconds after which the search is abandoned, or a
+     *                   negative number for no limit.
+     */
+    public TimeManager(long softMillis, long hardMillis) {
+        this(softMillis, hardMillis, DEFAULT_CHECK_INTERVAL);
+    }
+
+    /**
+     * Creates a time manager.
+     *
+     * @param softMillis    Milliseconds after which no new iteration is
+     *                      started, or a negative number for no limit.
+     * @param hardMillis    Milliseconds after which the search is abandoned,
+     *                      or a negative number for no limit.
+     * @param checkInterval How often to read the clock, in nodes. Must be a
+     *                      power of two.
+     */
+    public TimeManager(long softMillis, long hardMillis, int checkInterval) {
+        if (Integer.bitCount(checkInterval) != 1) {
+            throw new IllegalArgumentException("Check interval must be a power of two: " + checkInterval);
+        }
+        this.softLimit = softMillis < 0 ? NO_LIMIT : softMillis * 1_000_000;
+        this.hardLimit = hardMillis < 0 ? NO_LIMIT : hardMillis * 1_000_000;
+        this.checkMask = checkInterval - 1;
+    }
+
+    /**
+     * Creates a time manager that only stops when told to.
+     *
+     * @return A time manager without any time limits.
+     */
+    public static TimeManager infinite() {
+        return new TimeManager(-1, -1);
+    }
+
+    /**
+     * Creates a time manager with a fixed time for the move. The full time is
+     * used as both the soft and the hard limit.
+     *
+     * @param millis Milliseconds to spend on the move.
+     * @return A time manager for the move.
+     */
+    public static TimeManager moveTime(long millis) {
+        return new TimeManager(millis, millis);
+    }
+
+    /**
+     * Creates a time manager that budgets a player's remaining clock time.
+     *
+     * @param remainingMillis Milliseconds left on the player's clock.
+     * @param incrementMillis Milliseconds added to the clock after each move.
+     * @param movesToGo       Moves until the next time control, or 0 if
+     *                        unknown.
+     * @return A time manager for the move.
+     */
+    public static TimeManager forClock(long remainingMillis, long incrementMillis, int movesToGo) {
+        if (movesToGo <= 0) {
+            movesToGo = DEFAULT_MOVES_TO_GO;
+        }
+        long available = Math.max(1, remainingMillis - MOVE_OVERHEAD_MILLIS);
+        long soft = available / movesToGo + incrementMillis * 3 / 4;
+        // Allow running over the soft limit to finish an iteration, but never
+        // use more than a fraction of what's left
+        long hard = Math.min(soft * 4, available / 2);
+        soft = Math.min(soft, hard);
+        return new TimeManager(soft, hard);
+    }
+
+    /**
+     * Stops the searches using this time manager once one of them has visited
+     * a number of nodes. Each search counts only its own nodes, but the first
+     * to reach the limit stops every search, as {@link #stop()} does, so the
+     * total over all threads may be up to the limit times their number.
+     *
+     * @param nodes The number of nodes, or a negative number for no limit.
+     * @return This time manager.
+     */
+    public TimeManager limitNodes(long nodes) {
+        this.nodeLimit = nodes < 0 ? NO_LIMIT : nodes;
+        return this;
+    }
+
+    /**
+     * Restarts the clock and clears any earlier stop.
+     */
+    public synchronized void start() {
+        this.startTime = System.nanoTime();
+        this.softDeadline = this.softLimit == NO_LIMIT ? NO_LIMIT : this.startTime + this.softLimit;
+        this.hardDeadline = this.hardLimit == NO_LIMIT ? NO_LIMIT : this.startTime + this.hardLimit;
+        this.stopped = false;
+        this.started = true;
+    }
+
+    /**
+     * Starts the clock, unless it is already running. Called by each search
+     * as it begins. Unlike {@link #start()}, an earlier stop is kept, so a
+     * search that begins after its time manager was stopped returns at once.
+     */
+    public void begin() {
+        if (this.started) {
+            return;
+        }
+        synchronized (this) {
+            if (!this.started) {
+                final boolean stopped = this.stopped;
+                start();
+                this.stopped = stopped;
+            }
+        }
+    }
+
+    /**
+     * Tells every search using this time manager to stop as soon as possible.
+     * Safe to call from any thread.
+     */
+    public void stop() {
+        this.stopped = true;
+    }
+
+    /**
+     * Returns whether the search has been told to stop, or has run out of
+     * time.
+     *
+     * @return True iff the search should stop.
+     */
+    public boolean stopped() {
+        return this.stopped;
+    }
+
+    /**
+     * Checks whether the search should stop, reading the clock only every
+     * check interval nodes.
+     *
+     * @param nodes The number of nodes the calling search has visited.
+     * @return True iff the search should stop.
+     */
+    public boolean check(long nodes) {
+        if (this.stopped) {
+            return true;
+        }
+        if (nodes >= this.nodeLimit) {
+            this.stopped = true;
+        } else if ((nodes & this.checkMask) == 0 && this.hardDeadline != NO_LIMIT && System.nanoTime() - this.hardDeadline >= 0) {
+            this.stopped = true;
+        }
+        return this.stopped;
+    }
+
+    /**
+     * Returns whether a new iteration should be started.
+     *
+     * @return True iff the search hasn't stopped and the soft limit hasn't
+     * passed.
+     */
+    public boolean canStartIteration() {
+        return !this.stopped && (this.softDeadline == NO_LIMIT || System.nanoTime() - this.softDeadline < 0);
+    }
+
+    /**
+     * Returns the time since the clock was started.
+     *
+     * @return The elapsed time in milliseconds, or 0 if the clock hasn't
+     * started.
+     */
+    public long elapsedMillis() {
+        return this.started ? (System.nanoTime() - this.startTime) / 1_000_000 : 0;
+    }
+}
@@ -0,0 +1,249 @@
+package search;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A hash table of search results, keyed by {@link board.Bitboard#signature()}.
+ * <p>
+ * Entries are two longs: the key XORed with the data, then the data. An entry
+ * is only trusted if XORing the two gives back the key, so a torn write from
+ * another thread reads as a miss instead of as a wrong result. Entries are
+ * grouped into buckets of {@link #BUCKET_SIZE}, which together span one 64
+ * byte cache line.
+ */
+public class TranspositionTable {
+    // Kinds of score stored in an entry
+    public static final int EXACT = 1;
+    public static final int LOWER_BOUND = 2;
+    public static final int UPPER_BOUND = 3;
+
+    public static final int BUCKET_SIZE = 4;
+    public static final int DEFAULT_MEGABYTES = 4;
+    // The largest table whose longs still fit in one array
+    public static final int MAX_MEGABYTES = 8192;
+
+    // Longs per entry, and per bucket
+    private static final int ENTRY_LONGS = 2;
+    private static final int BUCKET_LONGS = BUCKET_SIZE * ENTRY_LONGS;
+
+    // @formatter:off
+    // Layout of an entry's data
+    private static final int MOVE_SHIFT  = 0;
+    private static final int DEPTH_SHIFT = 16;
+    private static final int BOUND_SHIFT = 24;
+    private static final int AGE_SHIFT   = 26;
+    private static final int SCORE_SHIFT = 32;
+    private static final long MOVE_MASK  = 0xFFFF;
+    private static final long DEPTH_MASK = 0xFF;
+    private static final long BOUND_MASK = 0b11;
+    private static final long AGE_MASK   = 0b111111;
+    // @formatter:on
+
+    // Identifies the layout above in snapshots
+    private static final long LAYOUT = TableSnapshot.layout("TranspositionTable", ENTRY_LONGS,
+            MOVE_SHIFT, DEPTH_SHIFT, BOUND_SHIFT, AGE_SHIFT, SCORE_SHIFT, MOVE_MASK, DEPTH_MASK, BOUND_MASK, AGE_MASK);
+
+    private final long[] table;
+    private final int bucketMask;
+    // Incremented for every new search, so stale entries are replaced first
+    private int age;
+
+    /**
+     * Creates a table of at most a given size.
+     *
+     * @param megabytes The maximum size of the table, in megabytes.
+     * @throws IllegalArgumentException If the size is over
+     *                                  {@link #MAX_MEGABYTES}.
+     */
+    public TranspositionTable(int megabytes) {
+        if (megabytes > MAX_MEGABYTES) {
+            throw new IllegalArgumentException("Transposition table can't be larger than " + MAX_MEGABYTES + "MB: " + megabytes);
+        }
+        long longs = Math.max(1L, megabytes) * 1024 * 1024 / Long.BYTES;
+        // Round the number of buckets down to a power of two
+        int buckets = Integer.highestOneBit((int) (longs / BUCKET_LONGS));
+        this.table = new long[buckets * BUCKET_LONGS];
+        this.bucketMask = buckets - 1;
+        this.age = 0;
+    }
+
+    /**
+     * Returns the number of entries the table can hold.
+     *
+     * @return The capacity of the table.
+     */
+    public int capacity() {
+        return this.table.length / ENTRY_LONGS;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        Arrays.fill(this.table, 0);
+        this.age = 0;
+    }
+
+    /**
+     * Marks the start of a new search. Entries from earlier searches are
+     * replaced before entries from this one.
+     */
+    public void newSearch() {
+        this.age = (this.age + 1) & (int) AGE_MASK;
+    }
+
+    /**
+     * Touches the bucket for a key, so that its cache line is likely to have
+     * been loaded from memory by the time it is probed. Call it as early as
+     * the key is known, for example with
+     * {@link board.Bitboard#signatureAfter(board.Move)} before making a move.
+     * The caller should keep the value returned, in a field of its own, so
+     * the load isn't optimized away without every thread writing to the
+     * table.
+     *
+     * @param key The signature that will be probed.
+     * @return The first long of the bucket, of no use beyond keeping the
+     * load.
+     */
+    public long prefetch(long key) {
+        return this.table[bucket(key)];
+    }
+
+    /**
+     * Looks up the entry for a position.
+     *
+     * @param key The signature of the position.
+     * @return The entry's data, or 0 if there is no entry for the position.
+     */
+    public long probe(long key) {
+        final int bucket = bucket(key);
+        for (int i = bucket; i < bucket + BUCKET_LONGS; i += ENTRY_LONGS) {
+            final long data = this.table[i + 1];
+            if ((this.table[i] ^ data) == key && data != 0) {
+                return data;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Stores a search result, replacing the least useful entry in the bucket
+     * if the position isn't already present.
+     *
+     * @param key   The signature of the position.
+     * @param move  The best move found, as given by {@link board.Move#encode()},
+     *              or 0 if there is none.
+     * @param score The score found.
+     * @param depth The depth that was searched.
+     * @param bound Whether the score is {@link #EXACT}, a
+     *              {@link #LOWER_BOUND} or an {@link #UPPER_BOUND}.
+     */
+    public void store(long key, int move, int score, int depth, int bound) {
+        final int bucket = bucket(key);
+
+        int replace = bucket;
+        int replaceValue = Integer.MAX_VALUE;
+        for (int i = bucket; i < bucket + BUCKET_LONGS; i += ENTRY_LONGS) {
+            final long data = this.table[i + 1];
+            if (data == 0) {
+                replace = i;
+                break;
+            }
+            if ((this.table[i] ^ data) == key) {
+                // Keep the old best move rather than forgetting it
+                if (move == 0) {
+                    move = move(data);
+                }
+                replace = i;
+                break;
+            }
+            // Prefer replacing shallow entries and entries from old searches
+            final int stale = ((this.age - age(data)) & (int) AGE_MASK) != 0 ? 256 : 0;
+            final int value = depth(data) - stale;
+            if (value < replaceValue) {
+                replaceValue = value;
+                replace = i;
+            }
+        }
+
+        final long data = ((move & MOVE_MASK) << MOVE_SHIFT)
+                | ((Math.max(depth, 0) & DEPTH_MASK) << DEPTH_SHIFT)
+                | ((bound & BOUND_MASK) << BOUND_SHIFT)
+                | ((this.age & AGE_MASK) << AGE_SHIFT)
+                | ((long) score << SCORE_SHIFT);
+        this.table[replace] = key ^ data;
+        this.table[replace + 1] = data;
+    }
+
+    /**
+     * Returns the fraction of entries used by the current search.
+     *
+     * @return The number of entries per thousand used by the current search,
+     * estimated from the first thousand buckets.
+     */
+    public int fillPermille() {
+        final int buckets = Math.min(1000, this.bucketMask + 1);
+        int used = 0;
+        for (int i = 0; i < buckets * BUCKET_LONGS; i += ENTRY_LONGS) {
+            final long data = this.table[i + 1];
+            if (data != 0 && age(data) == this.age) {
+                used++;
+            }
+        }
+        return used * 1000 / (buckets * BUCKET_SIZE);
+    }
+
+    /**
+     * Writes every entry to a file, to be loaded by a later run. It may be
+     * called while searches are using the table. Entries written meanwhile
+     * may be lost.
+     *
+     * @param path The file to write. It is replaced atomically.
+     * @throws IOException If the file can't be written.
+     */
+    public void save(Path path) throws IOException {
+        TableSnapshot.write(path, LAYOUT, this.table);
+    }
+
+    /**
+     * Replaces the entries with those saved to a file. A table of another
+     * size is loaded entry by entry, keeping the most useful of those that
+     * land in the same bucket. Not safe while searches are using the table.
+     *
+     * @param path The file written by {@link #save(Path)}.
+     * @throws IOException If the file can't be read, or was saved by a
+     *                     version with another entry layout or other zobrist
+     *                     bitstrings.
+     */
+    public void load(Path path) throws IOException {
+        clear();
+        TableSnapshot.read(path, LAYOUT, this.table,
+                (key, data) -> store(key, move(data), score(data), depth(data), bound(data)));
+    }
+
+    public static int move(long data) {
+        return (int) ((data >>> MOVE_SHIFT) & MOVE_MASK);
+    }
+
+    public static int depth(long data) {
+        return (int) ((data >>> DEPTH_SHIFT) & DEPTH_MASK);
+    }
+
+    public static int bound(long data) {
+        return (int) ((data >>> BOUND_SHIFT) & BOUND_MASK);
+    }
+
+    public static int score(long data) {
+        return (int) (data >> SCORE_SHIFT);
+    }
+
+    private static int age(long data) {
+        return (int) ((data >>> AGE_SHIFT) & AGE_MASK);
+    }
+
+    private int bucket(long key) {
+        return ((int) key & this.bucketMask) * BUCKET_LONGS;
+    }
+}
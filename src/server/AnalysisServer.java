@@ -0,0 +1,623 @@
+package server;
+
+import board.Bitboard;
+import board.Move;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import search.ResultCache;
+import search.Search;
+import search.SearchMetrics;
+import search.SearchStats;
+import search.TimeManager;
+import search.TranspositionTable;
+
+import javax.management.JMException;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Serves position analysis over HTTP, for tools that need an engine without
+ * speaking UCI.
+ * <p>
+ * {@code GET /analyse?fen=FEN&depth=N&movetime=MS&nodes=N} searches a
+ * position and streams one JSON line per completed iteration, then a last
+ * line with the best move. {@code GET /stats} describes the load on the
+ * server, as given by {@link #stats()}.
+ * <p>
+ * Connections are served by a pool of threads that mostly wait, in front of
+ * a fixed number of search workers with a bounded queue. Each worker keeps
+ * its own board and search, and they share one transposition table. When
+ * the queue is full, requests are turned away with status 503 rather than
+ * piling up. A request for a position and limits that are already queued or
+ * being searched joins that analysis, and is sent every line it has produced
+ * so far and every line after. An analysis whose clients have all gone is
+ * stopped, and one that fails, even with an Error, still sends its clients
+ * an error line.
+ * <p>
+ * {@code GET /moves?fen=FEN} lists the legal moves in a position, from a
+ * {@link MoveListCache}, without going through the workers.
+ * <p>
+ * Finished analyses are kept in a {@link ResultCache}. A request limited only
+ * by depth, for a position already analysed at least that deep, is answered
+ * at once with a single best move line.
+ */
+public class AnalysisServer {
+    public static final int DEFAULT_DEPTH = 8;
+    public static final long MAX_MOVE_MILLIS = 60_000;
+    public static final int DEFAULT_CACHE_ENTRIES = 1 << 16;
+    public static final int DEFAULT_MOVE_CACHE_ENTRIES = 1 << 16;
+    // Names of the files save() writes
+    public static final String TABLE_SNAPSHOT = "table.snapshot";
+    public static final String CACHE_SNAPSHOT = "results.snapshot";
+    // The JMX name of a running server's metrics, followed by its port
+    public static final String METRICS_NAME = "chess:type=AnalysisServer,port=";
+
+    private final HttpServer http;
+    private final ExecutorService connections;
+    private final ThreadPoolExecutor workers;
+    private final ThreadLocal<Worker> worker;
+    private final TranspositionTable table;
+    private final ResultCache cache;
+    private final MoveListCache moveCache = new MoveListCache(DEFAULT_MOVE_CACHE_ENTRIES);
+
+    // Analyses queued or running, by position and limits
+    private final Map<String, Analysis> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder cached = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * Creates a server with a result cache of the default size. It doesn't
+     * accept connections until started.
+     *
+     * @param address       The address to listen on. Port 0 picks a free
+     *                      port.
+     * @param workers       The number of positions searched at once.
+     * @param maxQueued     The most positions waiting for a worker.
+     * @param hashMegabytes The size of the transposition table.
+     * @throws IOException If the address can't be bound.
+     */
+    public AnalysisServer(InetSocketAddress address, int workers, int maxQueued, int hashMegabytes) throws IOException {
+        this(address, workers, maxQueued, hashMegabytes, new ResultCache(DEFAULT_CACHE_ENTRIES));
+    }
+
+    /**
+     * Creates a server. It doesn't accept connections until started.
+     *
+     * @param address       The address to listen on. Port 0 picks a free
+     *                      port.
+     * @param workers       The number of positions searched at once.
+     * @param maxQueued     The most positions waiting for a worker.
+     * @param hashMegabytes The size of the transposition table.
+     * @param cache         The cache to answer repeated requests from, and
+     *                      to store finished analyses in.
+     * @throws IOException If the address can't be bound.
+     */
+    public AnalysisServer(InetSocketAddress address, int workers, int maxQueued, int hashMegabytes, ResultCache cache) throws IOException {
+        if (workers < 1 || maxQueued < 1 || hashMegabytes < 1) {
+            throw new IllegalArgumentException("Workers, queue length and hash size must be positive");
+        }
+        if (hashMegabytes > TranspositionTable.MAX_MEGABYTES) {
+            throw new IllegalArgumentException("Hash size can't be over " + TranspositionTable.MAX_MEGABYTES + "MB: " + hashMegabytes);
+        }
+        this.cache = cache;
+        this.workers = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxQueued), threadFactory("analysis-worker-"));
+        this.table = new TranspositionTable(hashMegabytes);
+        this.worker = ThreadLocal.withInitial(() -> new Worker(this.table));
+        this.connections = Executors.newCachedThreadPool(threadFactory("analysis-connection-"));
+
+        this.http = HttpServer.create(address, 0);
+        this.http.setExecutor(this.connections);
+        this.http.createContext("/analyse", exchange -> {
+            try (exchange) {
+                analyse(exchange);
+            }
+        });
+        this.http.createContext("/moves", exchange -> {
+            try (exchange) {
+                moves(exchange);
+            }
+        });
+        this.http.createContext("/stats", exchange -> {
+            try (exchange) {
+                send(exchange, 200, stats() + "\n");
+            }
+        });
+    }
+
+    /**
+     * Starts accepting connections, and publishes the server's
+     * {@link ServerMetrics} to the platform MBean server.
+     */
+    public void start() {
+        this.http.start();
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new ServerMetrics(this, this.table), metricsName());
+        } catch (JMException e) {
+            throw new IllegalStateException("Couldn't register " + metricsName(), e);
+        }
+    }
+
+    /**
+     * Stops accepting connections, stops every analysis, and closes open
+     * connections.
+     */
+    public void stop() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName());
+        } catch (JMException e) {
+            // Never started
+        }
+        this.http.stop(0);
+        for (Analysis analysis : this.inFlight.values()) {
+            analysis.time.stop();
+        }
+        this.workers.shutdownNow();
+        this.connections.shutdownNow();
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return The port.
+     */
+    public int port() {
+        return this.http.getAddress().getPort();
+    }
+
+    /**
+     * Returns the name the server's metrics are published under while it
+     * runs.
+     *
+     * @return {@link #METRICS_NAME} followed by the port.
+     */
+    public ObjectName metricsName() {
+        try {
+            return new ObjectName(METRICS_NAME + port());
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Saves the transposition table and the result cache, so that a later
+     * server can start with them. Analyses may carry on meanwhile.
+     *
+     * @param directory The directory to write {@link #TABLE_SNAPSHOT} and
+     *                  {@link #CACHE_SNAPSHOT} to.
+     * @throws IOException If a file can't be written.
+     */
+    public void save(Path directory) throws IOException {
+        this.table.save(directory.resolve(TABLE_SNAPSHOT));
+        this.cache.save(directory.resolve(CACHE_SNAPSHOT));
+    }
+
+    /**
+     * Loads the transposition table and the result cache saved by another
+     * server. Call it before starting the server.
+     *
+     * @param directory The directory {@link #save(Path)} wrote to.
+     * @throws IOException If a file can't be read, or was saved by a version
+     *                     that computes signatures or lays out entries
+     *                     differently.
+     */
+    public void load(Path directory) throws IOException {
+        this.table.load(directory.resolve(TABLE_SNAPSHOT));
+        this.cache.load(directory.resolve(CACHE_SNAPSHOT));
+    }
+
+    /**
+     * Returns the load on the server.
+     *
+     * @return A snapshot of the counters and latencies so far.
+     */
+    public ServerStats stats() {
+        final ServerStats stats = new ServerStats();
+        stats.requests = this.requests.sum();
+        stats.coalesced = this.coalesced.sum();
+        stats.cached = this.cached.sum();
+        stats.rejected = this.rejected.sum();
+        stats.completed = this.completed.sum();
+        stats.queueDepth = this.workers.getQueue().size();
+        stats.running = this.workers.getActiveCount();
+        stats.latencyP50 = this.latency.percentile(50);
+        stats.latencyP90 = this.latency.percentile(90);
+        stats.latencyP99 = this.latency.percentile(99);
+        stats.latencyMax = this.latency.percentile(100);
+        stats.cache = this.cache.stats();
+        stats.moveCache = this.moveCache.stats();
+        return stats;
+    }
+
+    /**
+     * Handles an analysis request, on a connection thread.
+     */
+    private void analyse(HttpExchange exchange) throws IOException {
+        final long start = System.nanoTime();
+        this.requests.increment();
+        final Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+        final String fen = query.get("fen");
+        final Bitboard board = new Bitboard();
+        final long signature;
+        final int depth;
+        final long moveTime;
+        final long nodes;
+        try {
+            if (fen == null) {
+                throw new IllegalArgumentException("Missing fen");
+            }
+            board.initFen(fen, 0);
+            signature = board.signature();
+            final boolean limited = query.containsKey("depth") || query.containsKey("movetime") || query.containsKey("nodes");
+            depth = (int) Math.max(1, Math.min(SearchStats.MAX_DEPTH, number(query, "depth", limited ? SearchStats.MAX_DEPTH : DEFAULT_DEPTH)));
+            moveTime = Math.min(MAX_MOVE_MILLIS, number(query, "movetime", MAX_MOVE_MILLIS));
+            nodes = number(query, "nodes", -1);
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, e.getMessage() + "\n");
+            return;
+        }
+
+        if (!query.containsKey("movetime") && !query.containsKey("nodes")) {
+            final long data = this.cache.get(signature, depth);
+            final Move best = data == 0 ? null : find(board, ResultCache.move(data));
+            if (best != null) {
+                this.cached.increment();
+                exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+                send(exchange, 200, result(best, ResultCache.depth(data), ResultCache.score(data), 0, new Move[]{best}, true) + "\n");
+                this.latency.record(System.nanoTime() - start);
+                return;
+            }
+        }
+
+        final String key = Long.toHexString(signature) + " " + depth + " " + moveTime + " " + nodes;
+        Analysis analysis = null;
+        while (analysis == null) {
+            final Analysis existing = this.inFlight.get(key);
+            if (existing != null) {
+                if (existing.subscribe()) {
+                    this.coalesced.increment();
+                    analysis = existing;
+                }
+                continue;
+            }
+            final Analysis created = new Analysis(key, fen, signature, depth, moveTime, nodes);
+            created.subscribe();
+            if (this.inFlight.putIfAbsent(key, created) != null) {
+                continue;
+            }
+            try {
+                this.workers.execute(created);
+            } catch (RejectedExecutionException e) {
+                this.rejected.increment();
+                // Requests that joined in the meantime are told too
+                created.finish("{\"error\":\"busy\"}");
+                send(exchange, 503, "Too many analyses queued\n");
+                return;
+            }
+            analysis = created;
+        }
+
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+            exchange.sendResponseHeaders(200, 0);
+            analysis.stream(exchange.getResponseBody());
+            this.latency.record(System.nanoTime() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            analysis.unsubscribe();
+        }
+    }
+
+    /**
+     * Lists the legal moves in a position, on a connection thread.
+     */
+    private void moves(HttpExchange exchange) throws IOException {
+        final String fen = query(exchange.getRequestURI().getRawQuery()).get("fen");
+        final Bitboard board = new Bitboard();
+        try {
+            if (fen == null) {
+                throw new IllegalArgumentException("Missing fen");
+            }
+            board.initFen(fen, 0);
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, e.getMessage() + "\n");
+            return;
+        }
+        final int[] moves = new int[MoveListCache.MAX_MOVES];
+        final int count = this.moveCache.legalMoves(board, moves);
+        final StringBuilder s = new StringBuilder("{\"moves\":[");
+        for (int i = 0; i < count; i++) {
+            s.append(i == 0 ? "\"" : ",\"").append(board.createMove(moves[i]).toString().toLowerCase()).append('"');
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        send(exchange, 200, s.append("]}\n").toString());
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        if (!exchange.getResponseHeaders().containsKey("Content-Type")) {
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        }
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static Map<String, String> query(String query) {
+        final Map<String, String> parameters = new HashMap<>();
+        if (query == null) {
+            return parameters;
+        }
+        for (String parameter : query.split("&")) {
+            final int equals = parameter.indexOf('=');
+            if (equals > 0) {
+                parameters.put(URLDecoder.decode(parameter.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    private static long number(Map<String, String> query, String name, long fallback) {
+        final String value = query.get(name);
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + name + "=" + value);
+        }
+    }
+
+    private static ThreadFactory threadFactory(String prefix) {
+        final AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Finds the legal move in a position that has been packed by
+     * {@link Move#encode()}.
+     *
+     * @return The move, or null if no legal move packs that way.
+     */
+    private static Move find(Bitboard board, int encoded) {
+        for (Move move : board.generateMoves()) {
+            if (move.encode() == encoded) {
+                return move;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes a search's result at the end of an iteration, or its best move,
+     * as a line of JSON.
+     */
+    private static String result(Search search, int depth, boolean last) {
+        return result(search.bestMove(), depth, search.bestScore(), search.stats().nodes, search.principalVariation(), last);
+    }
+
+    private static String result(Move best, int depth, int score, long nodes, Move[] pv, boolean last) {
+        final StringBuilder s = new StringBuilder("{");
+        if (last) {
+            s.append("\"bestmove\":").append(best == null ? "null" : "\"" + best.toString().toLowerCase() + "\"").append(',');
+        }
+        s.append("\"depth\":").append(depth);
+        if (score >= Search.MATE_BOUND) {
+            s.append(",\"mate\":").append((Search.MATE - score + 1) / 2);
+        } else if (score <= -Search.MATE_BOUND) {
+            s.append(",\"mate\":").append(-(Search.MATE + score) / 2);
+        } else {
+            s.append(",\"cp\":").append(score);
+        }
+        s.append(",\"nodes\":").append(nodes).append(",\"pv\":[");
+        for (int i = 0; i < pv.length; i++) {
+            s.append(i == 0 ? "\"" : ",\"").append(pv[i].toString().toLowerCase()).append('"');
+        }
+        return s.append("]}").toString();
+    }
+
+    /**
+     * The board and search a worker thread reuses for every analysis.
+     */
+    private static class Worker {
+        private final Bitboard board = new Bitboard();
+        private final Search search;
+
+        private Worker(TranspositionTable table) {
+            this.search = new Search(this.board, Search.ALL_FEATURES, table);
+        }
+    }
+
+    /**
+     * One search, and the lines it has produced for the requests waiting on
+     * it.
+     */
+    private class Analysis implements Runnable {
+        private final String key;
+        private final String fen;
+        private final long signature;
+        private final int depth;
+        private final TimeManager time;
+
+        // Guarded by this
+        private final List<String> lines = new ArrayList<>();
+        private int subscribers;
+        private boolean done;
+        private boolean cancelled;
+
+        private Analysis(String key, String fen, long signature, int depth, long moveTime, long nodes) {
+            this.key = key;
+            this.fen = fen;
+            this.signature = signature;
+            this.depth = depth;
+            this.time = TimeManager.moveTime(moveTime).limitNodes(nodes);
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (this.cancelled) {
+                    return;
+                }
+                // The time limit counts from the start of the search, not
+                // from the request
+                this.time.start();
+            }
+            try {
+                final Worker worker = AnalysisServer.this.worker.get();
+                try {
+                    worker.board.initFen(this.fen, 0);
+                    worker.search.setListener((search, depth) -> publish(result(search, depth, false)));
+                    final Move best = worker.search.search(this.depth, this.time);
+                    final int completedDepth = worker.search.stats().completedDepth;
+                    if (best != null && completedDepth > 0) {
+                        AnalysisServer.this.cache.put(this.signature, best.encode(), worker.search.bestScore(),
+                                completedDepth);
+                    }
+                    AnalysisServer.this.completed.increment();
+                    finish(result(worker.search, completedDepth, true));
+                } finally {
+                    worker.search.setListener(null);
+                }
+            } catch (Throwable e) {
+                // Whatever went wrong, the waiting requests are answered and
+                // later ones start a new analysis instead of joining this one
+                finish("{\"error\":\"" + e.getClass().getSimpleName() + "\"}");
+                if (e instanceof Error) {
+                    throw (Error) e;
+                }
+            }
+        }
+
+        /**
+         * Adds a request to those waiting for this analysis.
+         *
+         * @return False iff the analysis was stopped and can't be joined.
+         */
+        private synchronized boolean subscribe() {
+            if (this.cancelled) {
+                return false;
+            }
+            this.subscribers++;
+            return true;
+        }
+
+        /**
+         * Removes a request, stopping the analysis if no others wait for it.
+         */
+        private synchronized void unsubscribe() {
+            this.subscribers--;
+            if (this.subscribers == 0 && !this.done) {
+                this.cancelled = true;
+                this.time.stop();
+                AnalysisServer.this.inFlight.remove(this.key, this);
+            }
+        }
+
+        private synchronized void publish(String line) {
+            this.lines.add(line);
+            notifyAll();
+        }
+
+        private synchronized void finish(String line) {
+            this.lines.add(line);
+            this.done = true;
+            AnalysisServer.this.inFlight.remove(this.key, this);
+            notifyAll();
+        }
+
+        /**
+         * Writes every line of this analysis as it is produced, until the
+         * last.
+         */
+        private void stream(OutputStream out) throws IOException, InterruptedException {
+            int sent = 0;
+            while (true) {
+                final List<String> batch;
+                final boolean last;
+                synchronized (this) {
+                    while (this.lines.size() == sent && !this.done) {
+                        wait();
+                    }
+                    batch = new ArrayList<>(this.lines.subList(sent, this.lines.size()));
+                    last = this.done;
+                }
+                for (String line : batch) {
+                    out.write(line.getBytes(StandardCharsets.UTF_8));
+                    out.write('\n');
+                }
+                out.flush();
+                sent += batch.size();
+                if (last) {
+                    return;
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: AnalysisServer PORT [WORKERS] [QUEUE] [HASH_MB] [SNAPSHOT_DIR]");
+            return;
+        }
+        final int workers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        final int queue = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        final int hash = args.length > 3 ? Integer.parseInt(args[3]) : TranspositionTable.DEFAULT_MEGABYTES;
+        final AnalysisServer server = new AnalysisServer(new InetSocketAddress(Integer.parseInt(args[0])), workers, queue, hash);
+        if (args.length > 4) {
+            // Start warm from the last run, and save again on the way out
+            final Path snapshots = Paths.get(args[4]);
+            if (Files.exists(snapshots.resolve(TABLE_SNAPSHOT))) {
+                try {
+                    server.load(snapshots);
+                } catch (IOException e) {
+                    System.err.println("Starting cold: " + e.getMessage());
+                }
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    server.save(snapshots);
+                } catch (IOException e) {
+                    System.err.println("Couldn't save snapshots: " + e.getMessage());
+                }
+            }));
+        }
+        SearchMetrics.register();
+        server.start();
+        System.out.println("Listening on port " + server.port());
+    }
+}
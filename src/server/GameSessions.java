@@ -0,0 +1,310 @@
+package server;
+
+import board.Bitboard;
+import board.Move;
+import uci.UciEngine;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of many games being played at once, for a game server.
+ * <p>
+ * A game is stored as its current position in the form of
+ * {@link Bitboard#encode(ByteBuffer, int)}, the position it started from, and
+ * its moves packed by {@link Move#encode()} into a growing array of shorts,
+ * which takes a few hundred bytes rather than the kilobytes of a
+ * {@link Bitboard} and its undo history. Moves are checked on a board that
+ * belongs to the calling thread, which is set to the game's position, moved
+ * and packed back, so no board is shared between threads and none is
+ * allocated per game.
+ * <p>
+ * Any number of threads may use the games at once. Each game is guarded by
+ * one of a fixed number of striped locks, chosen by its id, so threads
+ * playing different games rarely wait for each other.
+ * <p>
+ * Legal moves may be looked up in a {@link MoveListCache}, since many games
+ * pass through the same opening positions.
+ */
+public class GameSessions {
+    public static final int DEFAULT_STRIPES = 256;
+
+    // Moves a game's history has room for before it grows
+    private static final int INITIAL_MOVES = 16;
+    private static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    // The board and buffer each thread checks moves with
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final Map<Long, Game> games = new ConcurrentHashMap<>();
+    private final Object[] locks;
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final MoveListCache moveCache;
+
+    /**
+     * Creates an empty set of games with {@link #DEFAULT_STRIPES} locks.
+     */
+    public GameSessions() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * Creates an empty set of games that generates legal moves afresh every
+     * time.
+     *
+     * @param stripes The number of locks to share between games. It is
+     *                rounded up to a power of two.
+     */
+    public GameSessions(int stripes) {
+        this(stripes, null);
+    }
+
+    /**
+     * Creates an empty set of games.
+     *
+     * @param stripes   The number of locks to share between games. It is
+     *                  rounded up to a power of two.
+     * @param moveCache The cache to look up legal moves in, or null to
+     *                  generate them every time.
+     */
+    public GameSessions(int stripes, MoveListCache moveCache) {
+        this.moveCache = moveCache;
+        this.locks = new Object[Integer.highestOneBit(Math.max(1, stripes) * 2 - 1)];
+        for (int i = 0; i < this.locks.length; i++) {
+            this.locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Starts a game from the starting position.
+     *
+     * @return The id of the game.
+     */
+    public long create() {
+        return create(START);
+    }
+
+    /**
+     * Starts a game from a position.
+     *
+     * @param fen The position, in FEN.
+     * @return The id of the game.
+     * @throws IllegalArgumentException If the FEN is malformed.
+     */
+    public long create(String fen) {
+        final Scratch scratch = SCRATCH.get();
+        scratch.board.initFen(fen, 0);
+        final Game game = new Game();
+        scratch.save(game.start);
+        System.arraycopy(game.start, 0, game.position, 0, Bitboard.ENCODED_BYTES);
+
+        final long id = this.nextId.getAndIncrement();
+        this.games.put(id, game);
+        return id;
+    }
+
+    /**
+     * Ends a game and forgets it.
+     *
+     * @param id The id of the game.
+     * @return False iff there was no such game.
+     */
+    public boolean close(long id) {
+        return this.games.remove(id) != null;
+    }
+
+    /**
+     * Returns the number of games being played.
+     *
+     * @return The number of games.
+     */
+    public int size() {
+        return this.games.size();
+    }
+
+    /**
+     * Plays a move in a game, if it is legal.
+     *
+     * @param id   The id of the game.
+     * @param move The move in coordinate notation, such as "e7e8q".
+     * @return True iff the move was legal and has been played.
+     * @throws IllegalArgumentException If there is no such game.
+     */
+    public boolean play(long id, String move) {
+        final Game game = game(id);
+        synchronized (lock(id)) {
+            final Scratch scratch = SCRATCH.get();
+            scratch.load(game.position);
+            return play(game, scratch, UciEngine.parseMove(scratch.board, move));
+        }
+    }
+
+    /**
+     * Plays a move in a game, if it is legal.
+     *
+     * @param id   The id of the game.
+     * @param move The move, as given by {@link Move#encode()}.
+     * @return True iff the move was legal and has been played.
+     * @throws IllegalArgumentException If there is no such game.
+     */
+    public boolean play(long id, int move) {
+        final Game game = game(id);
+        synchronized (lock(id)) {
+            final Scratch scratch = SCRATCH.get();
+            scratch.load(game.position);
+            final Move created = scratch.board.createMove(move);
+            final boolean legal = created != null && scratch.board.isPseudoLegal(created) && scratch.board.isLegal(created);
+            return play(game, scratch, legal ? created : null);
+        }
+    }
+
+    /**
+     * Takes back the last move of a game, by playing the game again from the
+     * start without it.
+     *
+     * @param id The id of the game.
+     * @return False iff no moves had been played.
+     * @throws IllegalArgumentException If there is no such game.
+     */
+    public boolean takeBack(long id) {
+        final Game game = game(id);
+        synchronized (lock(id)) {
+            if (game.moveCount == 0) {
+                return false;
+            }
+            game.moveCount--;
+            final Scratch scratch = SCRATCH.get();
+            scratch.load(game.start);
+            for (int i = 0; i < game.moveCount; i++) {
+                scratch.board.applyMove(scratch.board.createMove(game.moves[i] & 0xFFFF));
+            }
+            scratch.save(game.position);
+            return true;
+        }
+    }
+
+    /**
+     * Returns the legal moves in a game's current position.
+     *
+     * @param id The id of the game.
+     * @return Each legal move, as given by {@link Move#encode()}.
+     * @throws IllegalArgumentException If there is no such game.
+     */
+    public int[] legalMoves(long id) {
+        final Game game = game(id);
+        final Scratch scratch = SCRATCH.get();
+        synchronized (lock(id)) {
+            scratch.load(game.position);
+        }
+        final int count = this.moveCache != null
+                ? this.moveCache.legalMoves(scratch.board, scratch.moves)
+                : scratch.board.generateMoves(scratch.moves);
+        return Arrays.copyOf(scratch.moves, count);
+    }
+
+    /**
+     * Returns a game's current position.
+     *
+     * @param id The id of the game.
+     * @return The position, in FEN.
+     * @throws IllegalArgumentException If there is no such game.
+     */
+    public String fen(long id) {
+        final Game game = game(id);
+        final Scratch scratch = SCRATCH.get();
+        synchronized (lock(id)) {
+            scratch.load(game.position);
+        }
+        return scratch.board.fen();
+    }
+
+    /**
+     * Returns the number of moves played in a game.
+     *
+     * @param id The id of the game.
+     * @return The number of moves.
+     * @throws IllegalArgumentException If there is no such game.
+     */
+    public int moveCount(long id) {
+        final Game game = game(id);
+        synchronized (lock(id)) {
+            return game.moveCount;
+        }
+    }
+
+    /**
+     * Returns the moves played in a game.
+     *
+     * @param id The id of the game.
+     * @return Each move in order, as given by {@link Move#encode()}.
+     * @throws IllegalArgumentException If there is no such game.
+     */
+    public int[] history(long id) {
+        final Game game = game(id);
+        synchronized (lock(id)) {
+            final int[] moves = new int[game.moveCount];
+            for (int i = 0; i < moves.length; i++) {
+                moves[i] = game.moves[i] & 0xFFFF;
+            }
+            return moves;
+        }
+    }
+
+    private boolean play(Game game, Scratch scratch, Move move) {
+        if (move == null) {
+            return false;
+        }
+        scratch.board.applyMove(move);
+        scratch.save(game.position);
+        if (game.moveCount == game.moves.length) {
+            game.moves = Arrays.copyOf(game.moves, game.moves.length * 2);
+        }
+        game.moves[game.moveCount++] = (short) move.encode();
+        return true;
+    }
+
+    private Game game(long id) {
+        final Game game = this.games.get(id);
+        if (game == null) {
+            throw new IllegalArgumentException("No game " + id);
+        }
+        return game;
+    }
+
+    private Object lock(long id) {
+        return this.locks[(int) (id ^ (id >>> 32)) & (this.locks.length - 1)];
+    }
+
+    /**
+     * One game. Guarded by its lock.
+     */
+    private static class Game {
+        private final byte[] start = new byte[Bitboard.ENCODED_BYTES];
+        private final byte[] position = new byte[Bitboard.ENCODED_BYTES];
+        private short[] moves = new short[INITIAL_MOVES];
+        private int moveCount;
+    }
+
+    /**
+     * A board and buffers confined to one thread, which games are unpacked
+     * into to be checked or moved.
+     */
+    private static class Scratch {
+        private final Bitboard board = new Bitboard();
+        private final ByteBuffer buffer = ByteBuffer.allocate(Bitboard.ENCODED_BYTES);
+        private final int[] moves = new int[MoveListCache.MAX_MOVES];
+
+        private void load(byte[] position) {
+            this.buffer.put(0, position);
+            this.board.decode(this.buffer, 0);
+        }
+
+        private void save(byte[] position) {
+            this.board.encode(this.buffer, 0);
+            this.buffer.get(0, position);
+        }
+    }
+}
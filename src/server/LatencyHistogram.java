@@ -0,0 +1,93 @@
+package server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies in buckets that grow exponentially, so percentiles can be
+ * read at any time without keeping every sample. Each power of two is split
+ * into four buckets, so a percentile is at most 19% above the true value.
+ * Recording is lock free and safe from any thread.
+ */
+public class LatencyHistogram {
+    // Buckets per power of two, as a shift
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int BUCKETS = (Long.SIZE + 1) << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos The latency in nanoseconds.
+     */
+    public void record(long nanos) {
+        this.counts.incrementAndGet(bucket(Math.max(0, nanos)));
+    }
+
+    /**
+     * Returns the number of latencies recorded.
+     *
+     * @return The number of latencies.
+     */
+    public long count() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += this.counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns an upper bound of a percentile of the latencies recorded.
+     *
+     * @param percentile The percentile, from 0 to 100.
+     * @return The largest latency in the bucket holding the percentile, in
+     * nanoseconds, or 0 if nothing was recorded.
+     */
+    public long percentile(double percentile) {
+        final long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = this.counts.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    /**
+     * Returns the bucket of a latency: the position of its highest bit, then
+     * the next bits below it.
+     */
+    private static int bucket(long nanos) {
+        if (nanos < (1 << SUB_BUCKET_BITS)) {
+            return (int) nanos;
+        }
+        final int high = Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos);
+        final int sub = (int) (nanos >>> (high - SUB_BUCKET_BITS)) & ((1 << SUB_BUCKET_BITS) - 1);
+        return ((high - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) | sub;
+    }
+
+    /**
+     * Returns the largest latency that falls in a bucket.
+     */
+    private static long upperBound(int bucket) {
+        if (bucket < (1 << SUB_BUCKET_BITS)) {
+            return bucket;
+        }
+        final int high = (bucket >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+        final long sub = bucket & ((1 << SUB_BUCKET_BITS) - 1);
+        final long lowest = (1L << high) | (sub << (high - SUB_BUCKET_BITS));
+        return lowest + (1L << (high - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,207 @@
+package server;
+
+import board.Bitboard;
+import board.Move;
+import search.CacheStats;
+import search.FrequencySketch;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of the legal moves in positions, for answering the same
+ * popular positions over and over without generating and checking their
+ * moves each time.
+ * <p>
+ * Entries are immutable: a position's signature, the leading
+ * {@link Bitboard#ENCODED_POSITION_BYTES} of its encoded form, and its legal
+ * moves packed by {@link Move#encode()} into shorts. A lookup only trusts an
+ * entry whose encoded position matches, so two positions that share a
+ * signature never get each other's moves. Entries sit in buckets of
+ * {@link #BUCKET_SIZE} and are replaced with a compare-and-set, so neither
+ * lookups nor stores lock. Like {@link search.ResultCache}, a full bucket
+ * drops the entry whose position is asked about least, as counted by a
+ * {@link FrequencySketch}, unless the new position is asked about even less.
+ */
+public class MoveListCache {
+    public static final int BUCKET_SIZE = 4;
+    // Room a buffer of moves needs for any position
+    public static final int MAX_MOVES = Bitboard.MAX_MOVES;
+
+    // The buffer each thread encodes positions into
+    private static final ThreadLocal<ByteBuffer> SCRATCH = ThreadLocal.withInitial(
+            () -> ByteBuffer.allocate(Bitboard.ENCODED_BYTES));
+
+    private final AtomicReferenceArray<Entry> entries;
+    private final int bucketMask;
+    private final FrequencySketch sketch;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder size = new LongAdder();
+
+    /**
+     * Creates a cache of at most a given number of positions.
+     *
+     * @param capacity The maximum number of positions. It is rounded down to
+     *                 a power of two buckets.
+     */
+    public MoveListCache(int capacity) {
+        final int buckets = Integer.highestOneBit(Math.max(1, Math.min(capacity / BUCKET_SIZE, 1 << 26)));
+        this.entries = new AtomicReferenceArray<>(buckets * BUCKET_SIZE);
+        this.bucketMask = buckets - 1;
+        this.sketch = new FrequencySketch(capacity());
+    }
+
+    /**
+     * Returns the number of positions the cache can hold.
+     *
+     * @return The capacity of the cache.
+     */
+    public int capacity() {
+        return this.entries.length();
+    }
+
+    /**
+     * Finds the legal moves in a position, from the cache if it is there, or
+     * by generating them and caching them otherwise.
+     *
+     * @param board The position. It isn't changed.
+     * @param moves Receives each legal move, as given by
+     *              {@link Move#encode()}. It needs room for
+     *              {@link #MAX_MOVES}.
+     * @return The number of legal moves.
+     */
+    public int legalMoves(Bitboard board, int[] moves) {
+        final long key = board.signature();
+        final ByteBuffer position = SCRATCH.get();
+        board.encode(position, 0);
+        this.sketch.increment(key);
+
+        final int bucket = bucket(key);
+        for (int i = bucket; i < bucket + BUCKET_SIZE; i++) {
+            final Entry entry = this.entries.get(i);
+            if (entry != null && entry.key == key && entry.matches(position)) {
+                this.hits.increment();
+                return entry.copyTo(moves);
+            }
+        }
+        this.misses.increment();
+
+        final short[] encoded = new short[board.generateMoves(moves)];
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = (short) moves[i];
+        }
+        final Entry entry = new Entry(key, Arrays.copyOf(position.array(), Bitboard.ENCODED_POSITION_BYTES), encoded);
+        store(bucket, entry);
+        return entry.copyTo(moves);
+    }
+
+    /**
+     * Removes all entries. Not atomic with respect to concurrent lookups.
+     */
+    public void clear() {
+        for (int i = 0; i < this.entries.length(); i++) {
+            this.entries.set(i, null);
+        }
+        this.sketch.clear();
+        this.size.reset();
+    }
+
+    /**
+     * Returns how well the cache is doing.
+     *
+     * @return A snapshot of the counters so far.
+     */
+    public CacheStats stats() {
+        final CacheStats stats = new CacheStats();
+        stats.hits = this.hits.sum();
+        stats.misses = this.misses.sum();
+        stats.stores = this.stores.sum();
+        stats.evictions = this.evictions.sum();
+        stats.rejections = this.rejections.sum();
+        stats.size = this.size.sum();
+        stats.capacity = capacity();
+        return stats;
+    }
+
+    private void store(int bucket, Entry entry) {
+        int victim = -1;
+        Entry victimEntry = null;
+        int victimFrequency = Integer.MAX_VALUE;
+        for (int i = bucket; i < bucket + BUCKET_SIZE; i++) {
+            final Entry old = this.entries.get(i);
+            if (old == null) {
+                if (this.entries.compareAndSet(i, null, entry)) {
+                    this.size.increment();
+                    this.stores.increment();
+                    return;
+                }
+                // Another thread took the slot, so it can't be the victim
+                continue;
+            }
+            if (old.key == entry.key) {
+                // Another position with the same signature
+                if (this.entries.compareAndSet(i, old, entry)) {
+                    this.stores.increment();
+                }
+                return;
+            }
+            final int frequency = this.sketch.frequency(old.key);
+            if (frequency < victimFrequency) {
+                victimFrequency = frequency;
+                victim = i;
+                victimEntry = old;
+            }
+        }
+        if (victim < 0) {
+            return;
+        }
+        // Ties go to the new entry, so that a cache of positions that are
+        // all seen once still turns over
+        if (this.sketch.frequency(entry.key) < victimFrequency) {
+            this.rejections.increment();
+            return;
+        }
+        if (this.entries.compareAndSet(victim, victimEntry, entry)) {
+            this.evictions.increment();
+            this.stores.increment();
+        }
+    }
+
+    private int bucket(long key) {
+        return (int) (key & this.bucketMask) * BUCKET_SIZE;
+    }
+
+    /**
+     * The legal moves of one position.
+     */
+    private static class Entry {
+        private final long key;
+        private final byte[] position;
+        private final short[] moves;
+
+        private Entry(long key, byte[] position, short[] moves) {
+            this.key = key;
+            this.position = position;
+            this.moves = moves;
+        }
+
+        private boolean matches(ByteBuffer position) {
+            return Arrays.equals(this.position, 0, Bitboard.ENCODED_POSITION_BYTES,
+                    position.array(), 0, Bitboard.ENCODED_POSITION_BYTES);
+        }
+
+        private int copyTo(int[] moves) {
+            for (int i = 0; i < this.moves.length; i++) {
+                moves[i] = this.moves[i] & 0xFFFF;
+            }
+            return this.moves.length;
+        }
+    }
+}
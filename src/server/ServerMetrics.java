@@ -0,0 +1,88 @@
+package server;
+
+import search.TranspositionTable;
+
+/**
+ * The load on one {@link AnalysisServer}, for dashboards to read over JMX.
+ * Each attribute is read from the server's own counters when it is asked
+ * for, so serving requests costs nothing extra.
+ */
+public class ServerMetrics implements ServerMetricsMBean {
+    private final AnalysisServer server;
+    private final TranspositionTable table;
+
+    ServerMetrics(AnalysisServer server, TranspositionTable table) {
+        this.server = server;
+        this.table = table;
+    }
+
+    @Override
+    public long getRequests() {
+        return this.server.stats().requests;
+    }
+
+    @Override
+    public long getCoalesced() {
+        return this.server.stats().coalesced;
+    }
+
+    @Override
+    public long getCached() {
+        return this.server.stats().cached;
+    }
+
+    @Override
+    public long getRejected() {
+        return this.server.stats().rejected;
+    }
+
+    @Override
+    public long getCompleted() {
+        return this.server.stats().completed;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return this.server.stats().queueDepth;
+    }
+
+    @Override
+    public int getRunningAnalyses() {
+        return this.server.stats().running;
+    }
+
+    @Override
+    public double getLatencyP50Millis() {
+        return this.server.stats().latencyP50 / 1e6;
+    }
+
+    @Override
+    public double getLatencyP90Millis() {
+        return this.server.stats().latencyP90 / 1e6;
+    }
+
+    @Override
+    public double getLatencyP99Millis() {
+        return this.server.stats().latencyP99 / 1e6;
+    }
+
+    @Override
+    public double getLatencyMaxMillis() {
+        return this.server.stats().latencyMax / 1e6;
+    }
+
+    @Override
+    public double getResultCacheHitRate() {
+        return this.server.stats().cache.hitRatio();
+    }
+
+    @Override
+    public double getMoveCacheHitRate() {
+        return this.server.stats().moveCache.hitRatio();
+    }
+
+    @Override
+    public int getHashFillPermille() {
+        return this.table.fillPermille();
+    }
+}
@@ -0,0 +1,34 @@
+package server;
+
+/**
+ * The server measurements published over JMX by {@link ServerMetrics}.
+ */
+public interface ServerMetricsMBean {
+    long getRequests();
+
+    long getCoalesced();
+
+    long getCached();
+
+    long getRejected();
+
+    long getCompleted();
+
+    int getQueueDepth();
+
+    int getRunningAnalyses();
+
+    double getLatencyP50Millis();
+
+    double getLatencyP90Millis();
+
+    double getLatencyP99Millis();
+
+    double getLatencyMaxMillis();
+
+    double getResultCacheHitRate();
+
+    double getMoveCacheHitRate();
+
+    int getHashFillPermille();
+}
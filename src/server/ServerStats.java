@@ -0,0 +1,38 @@
+package server;
+
+import search.CacheStats;
+
+/**
+ * A snapshot of the load on an {@link AnalysisServer}.
+ */
+public class ServerStats {
+    // Analysis requests received, including rejected ones
+    public long requests;
+    // Requests answered by joining an identical analysis already in flight
+    public long coalesced;
+    // Requests answered from the result cache
+    public long cached;
+    // Requests turned away because the queue was full
+    public long rejected;
+    // Analyses that ran to the end
+    public long completed;
+    // Analyses waiting for a worker, and being searched
+    public int queueDepth;
+    public int running;
+    // Percentiles of the time from a request arriving to its last line being
+    // sent, in nanoseconds
+    public long latencyP50;
+    public long latencyP90;
+    public long latencyP99;
+    public long latencyMax;
+    // The result cache, and the cache of legal moves
+    public CacheStats cache;
+    public CacheStats moveCache;
+
+    @Override
+    public String toString() {
+        return String.format("requests=%d coalesced=%d cached=%d rejected=%d completed=%d queue=%d running=%d p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms cache: %s moves: %s",
+                this.requests, this.coalesced, this.cached, this.rejected, this.completed, this.queueDepth, this.running,
+                this.latencyP50 / 1e6, this.latencyP90 / 1e6, this.latencyP99 / 1e6, this.latencyMax / 1e6, this.cache, this.moveCache);
+    }
+}
@@ -0,0 +1,336 @@
+package tablebase;
+
+import board.Bitboard;
+import board.Piece.Player;
+import board.Piece.Type;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The pieces of an endgame, such as "KQvKR", and the compact index of their
+ * placements used by tablebases.
+ * <p>
+ * Pieces are kept in slots: the white king, the black king, then white's
+ * other pieces and black's other pieces, each strongest first. A position's
+ * index packs the square of each piece in slot order, 6 bits each, below the
+ * player to move. Boards may be mirrored left to right without changing
+ * their value, since no castling rights are left, so only positions with the
+ * white king on files a-d are indexed, and the king's square takes 5 bits.
+ * Identical pieces are indexed in order of their squares. The rest of the
+ * index space is unused.
+ */
+public final class Material {
+    public static final int MAX_PIECES = 4;
+
+    // Piece letters, indexed by piece type
+    private static final String LETTERS = "PNBRQK";
+    private static final int SQUARE_BITS = 6;
+
+    private final String name;
+    // The color and type of the piece in each slot
+    final int[] colors;
+    final int[] types;
+    final int count;
+
+    private Material(int[] whiteTypes, int whiteCount, int[] blackTypes, int blackCount) {
+        this.count = whiteCount + blackCount;
+        this.colors = new int[this.count];
+        this.types = new int[this.count];
+        int slot = 0;
+        this.colors[slot] = Player.WHITE;
+        this.types[slot++] = Type.KING;
+        this.colors[slot] = Player.BLACK;
+        this.types[slot++] = Type.KING;
+
+        final StringBuilder white = new StringBuilder("K");
+        final StringBuilder black = new StringBuilder("K");
+        for (int type = Type.QUEEN; type >= Type.PAWN; type--) {
+            for (int i = 0; i < whiteTypes[type]; i++) {
+                this.colors[slot] = Player.WHITE;
+                this.types[slot++] = type;
+                white.append(LETTERS.charAt(type));
+            }
+        }
+        for (int type = Type.QUEEN; type >= Type.PAWN; type--) {
+            for (int i = 0; i < blackTypes[type]; i++) {
+                this.colors[slot] = Player.BLACK;
+                this.types[slot++] = type;
+                black.append(LETTERS.charAt(type));
+            }
+        }
+        this.name = white + "v" + black;
+    }
+
+    /**
+     * Reads a material name such as "KQvKR": white's pieces, a 'v', then
+     * black's, each side starting with its king.
+     *
+     * @param name The material name.
+     * @return The material.
+     * @throws IllegalArgumentException If the name isn't well formed or has
+     *                                  more than {@link #MAX_PIECES} pieces.
+     */
+    public static Material parse(String name) {
+        final int split = name.indexOf('v');
+        if (split < 1 || name.charAt(0) != 'K' || split + 1 >= name.length() || name.charAt(split + 1) != 'K') {
+            throw new IllegalArgumentException("Malformed material: " + name);
+        }
+        final int[] white = new int[Type.KING];
+        final int[] black = new int[Type.KING];
+        for (int i = 1; i < name.length(); i++) {
+            if (i == split || i == split + 1) {
+                continue;
+            }
+            final int type = LETTERS.indexOf(name.charAt(i));
+            if (type < 0 || type == Type.KING) {
+                throw new IllegalArgumentException("Malformed material: " + name);
+            }
+            (i < split ? white : black)[type]++;
+        }
+        return of(white, black);
+    }
+
+    /**
+     * Returns the material of a position.
+     *
+     * @param board The position.
+     * @return The position's material, or null if it has more than
+     * {@link #MAX_PIECES} pieces or not one king on each side.
+     */
+    public static Material of(Bitboard board) {
+        if (Long.bitCount(board.occupancy()) > MAX_PIECES
+                || Long.bitCount(board.pieces(Player.WHITE, Type.KING)) != 1
+                || Long.bitCount(board.pieces(Player.BLACK, Type.KING)) != 1) {
+            return null;
+        }
+        final int[] white = new int[Type.KING];
+        final int[] black = new int[Type.KING];
+        for (int type = Type.PAWN; type < Type.KING; type++) {
+            white[type] = Long.bitCount(board.pieces(Player.WHITE, type));
+            black[type] = Long.bitCount(board.pieces(Player.BLACK, type));
+        }
+        return of(white, black);
+    }
+
+    private static Material of(int[] white, int[] black) {
+        int whiteCount = 1;
+        int blackCount = 1;
+        for (int type = Type.PAWN; type < Type.KING; type++) {
+            whiteCount += white[type];
+            blackCount += black[type];
+        }
+        if (whiteCount + blackCount > MAX_PIECES) {
+            throw new IllegalArgumentException("Tablebases have at most " + MAX_PIECES + " pieces");
+        }
+        return new Material(white, whiteCount, black, blackCount);
+    }
+
+    /**
+     * Returns the same pieces with the colors swapped.
+     *
+     * @return The flipped material.
+     */
+    public Material flipped() {
+        final int split = this.name.indexOf('v');
+        return parse(this.name.substring(split + 1) + "v" + this.name.substring(0, split));
+    }
+
+    /**
+     * Returns the material left after each kind of capture or promotion, all
+     * of whose tables are needed to generate this one.
+     *
+     * @return The materials that can follow this one, in any orientation.
+     */
+    Set<Material> successors() {
+        final Set<Material> successors = new LinkedHashSet<>();
+        for (int slot = 2; slot < this.count; slot++) {
+            successors.add(changed(slot, -1, -1));
+            if (this.types[slot] != Type.PAWN) {
+                continue;
+            }
+            for (int promotion = Type.KNIGHT; promotion <= Type.QUEEN; promotion++) {
+                successors.add(changed(slot, promotion, -1));
+                for (int captured = 2; captured < this.count; captured++) {
+                    if (this.colors[captured] != this.colors[slot]) {
+                        successors.add(changed(slot, promotion, captured));
+                    }
+                }
+            }
+        }
+        return successors;
+    }
+
+    /**
+     * Returns this material with the piece in one slot removed or changed
+     * into another type, and optionally another piece captured.
+     */
+    private Material changed(int slot, int type, int captured) {
+        final int[][] counts = new int[2][Type.KING];
+        for (int i = 2; i < this.count; i++) {
+            if (i != slot && i != captured) {
+                counts[this.colors[i]][this.types[i]]++;
+            }
+        }
+        if (type >= 0) {
+            counts[this.colors[slot]][type]++;
+        }
+        return of(counts[Player.WHITE], counts[Player.BLACK]);
+    }
+
+    /**
+     * Returns whether this is the orientation tablebases are generated for:
+     * white has at least as many pieces as black, and if as many, pieces at
+     * least as strong. Positions with the other orientation are probed with
+     * their colors flipped.
+     *
+     * @return True iff tables for this material are generated as is.
+     */
+    public boolean isCanonical() {
+        final int split = this.name.indexOf('v');
+        final String white = this.name.substring(0, split);
+        final String black = this.name.substring(split + 1);
+        if (white.length() != black.length()) {
+            return white.length() > black.length();
+        }
+        for (int i = 1; i < white.length(); i++) {
+            final int order = LETTERS.indexOf(white.charAt(i)) - LETTERS.indexOf(black.charAt(i));
+            if (order != 0) {
+                return order > 0;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether this material has only the kings, which is always a
+     * draw and needs no table.
+     *
+     * @return True iff there are no pieces but the kings.
+     */
+    public boolean isBareKings() {
+        return this.count == 2;
+    }
+
+    /**
+     * Returns the number of pieces, including the kings.
+     *
+     * @return The number of pieces.
+     */
+    public int count() {
+        return this.count;
+    }
+
+    /**
+     * Returns the size of the index space, including unused indexes.
+     *
+     * @return One more than the largest index.
+     */
+    public long size() {
+        return 2L << (SQUARE_BITS - 1 + SQUARE_BITS * (this.count - 1));
+    }
+
+    /**
+     * Returns the index of a position with this material.
+     *
+     * @param board The position. Its material must be this one.
+     * @return The position's index.
+     */
+    public long index(Bitboard board) {
+        return index(board, false);
+    }
+
+    /**
+     * Returns the index of the color mirror of a position, as given by
+     * {@link Bitboard#flipped()}, without creating the mirror.
+     *
+     * @param board The position. Its material must be this one flipped.
+     * @return The index of the mirrored position.
+     */
+    public long flippedIndex(Bitboard board) {
+        return index(board, true);
+    }
+
+    private long index(Bitboard board, boolean flip) {
+        final int[] squares = new int[MAX_PIECES];
+        // XORing a square with 56 mirrors its rank
+        final int mirror = flip ? 56 : 0;
+        int slot = 0;
+        while (slot < this.count) {
+            final int color = flip ? 1 - this.colors[slot] : this.colors[slot];
+            long pieces = board.pieces(color, this.types[slot]);
+            // Identical pieces fill consecutive slots, and index() puts them
+            // in square order
+            for (; pieces != 0; pieces &= pieces - 1) {
+                squares[slot++] = Long.numberOfTrailingZeros(pieces) ^ mirror;
+            }
+        }
+        return index(squares, board.whitesTurn() != flip ? Player.WHITE : Player.BLACK);
+    }
+
+    /**
+     * Returns the index of a placement of this material's pieces, mirroring
+     * and ordering the squares as needed. The squares aren't changed.
+     *
+     * @param squares The square of the piece in each slot.
+     * @param player  The player to move.
+     * @return The position's index.
+     */
+    long index(int[] squares, int player) {
+        // Mirror the board if the white king is on files e-h
+        final int mirror = (squares[0] & 0b100) != 0 ? 0b111 : 0;
+        long index = player;
+        index = (index << (SQUARE_BITS - 1)) | (((squares[0] ^ mirror) >>> 3) << 2) | ((squares[0] ^ mirror) & 0b11);
+        for (int slot = 1; slot < this.count; slot++) {
+            int square = squares[slot] ^ mirror;
+            if (slot + 1 < this.count && sameType(slot, slot + 1)) {
+                // Identical pieces go in square order
+                final int next = squares[slot + 1] ^ mirror;
+                if (next < square) {
+                    index = (index << SQUARE_BITS) | next;
+                    index = (index << SQUARE_BITS) | square;
+                    slot++;
+                    continue;
+                }
+            }
+            index = (index << SQUARE_BITS) | square;
+        }
+        return index;
+    }
+
+    /**
+     * Finds the placement of this material's pieces at an index.
+     *
+     * @param index   The index.
+     * @param squares Filled with the square of the piece in each slot.
+     * @return The player to move.
+     */
+    int squares(long index, int[] squares) {
+        for (int slot = this.count - 1; slot > 0; slot--) {
+            squares[slot] = (int) (index & 0b111111);
+            index >>>= SQUARE_BITS;
+        }
+        final int king = (int) (index & 0b11111);
+        squares[0] = ((king >>> 2) << 3) | (king & 0b11);
+        return (int) (index >>> (SQUARE_BITS - 1));
+    }
+
+    boolean sameType(int slot, int other) {
+        return this.colors[slot] == this.colors[other] && this.types[slot] == this.types[other];
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Material && ((Material) o).name.equals(this.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return this.name;
+    }
+}
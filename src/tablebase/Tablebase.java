@@ -0,0 +1,243 @@
+package tablebase;
+
+import board.Bitboard;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The distance to mate of every position with some material, written by
+ * {@link TablebaseGenerator} and read directly from a memory mapped file.
+ * <p>
+ * A value of {@link #DRAW} means the position is drawn with best play.
+ * Otherwise the value is one more than the number of plies to mate, so the
+ * player to move wins if it is even and is mated if it is odd. The file is a
+ * header followed by the value at each index of the {@link Material}, packed
+ * into as few bits as the largest value needs, so a probe reads one word at
+ * a computed offset. Unused indexes hold {@link #DRAW}.
+ */
+public class Tablebase implements Closeable {
+    public static final int DRAW = 0;
+    // Returned when there is no table for a position
+    public static final int UNKNOWN = -1;
+    // Identifies tablebase files, and their version in the low byte
+    public static final long MAGIC = 0x544142415345_0001L;
+
+    // @formatter:off
+    // Offsets of the fields of the header
+    static final int MAGIC_OFFSET    = 0;
+    static final int BITS_OFFSET     = 8;
+    static final int MAX_OFFSET      = 12;
+    static final int SIZE_OFFSET     = 16;
+    static final int MATERIAL_OFFSET = 24;
+    static final int HEADER_BYTES    = 64;
+    // @formatter:on
+
+    private final Material material;
+    private final FileChannel channel;
+    private final MappedByteBuffer data;
+    private final int bits;
+    private final int mask;
+    private final int max;
+
+    /**
+     * Opens a tablebase. The file is mapped, not read.
+     *
+     * @param path The tablebase file.
+     * @throws IOException If the file can't be opened or mapped, or isn't a
+     *                     tablebase.
+     */
+    public Tablebase(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            if (this.channel.size() < HEADER_BYTES || this.channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a tablebase: " + path + " is " + this.channel.size() + " bytes long");
+            }
+            this.data = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, this.channel.size());
+            this.data.order(ByteOrder.LITTLE_ENDIAN);
+            if (this.data.getLong(MAGIC_OFFSET) != MAGIC) {
+                throw new IOException("Not a tablebase, or a different version: " + path);
+            }
+
+            final byte[] name = new byte[HEADER_BYTES - MATERIAL_OFFSET];
+            this.data.get(MATERIAL_OFFSET, name);
+            int length = 0;
+            while (length < name.length && name[length] != 0) {
+                length++;
+            }
+            this.material = Material.parse(new String(name, 0, length, StandardCharsets.US_ASCII));
+            this.bits = this.data.getInt(BITS_OFFSET);
+            this.mask = (1 << this.bits) - 1;
+            this.max = this.data.getInt(MAX_OFFSET);
+            if (this.data.getLong(SIZE_OFFSET) != this.material.size()
+                    || this.channel.size() != fileBytes(this.material.size(), this.bits)) {
+                throw new IOException("Truncated tablebase: " + path);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            this.channel.close();
+            throw e instanceof IOException ? (IOException) e : new IOException("Not a tablebase: " + path, e);
+        }
+    }
+
+    /**
+     * Returns the material of the positions in this table.
+     *
+     * @return The material.
+     */
+    public Material material() {
+        return this.material;
+    }
+
+    /**
+     * Returns the largest value in this table, one more than the longest
+     * distance to mate.
+     *
+     * @return The largest value.
+     */
+    public int max() {
+        return this.max;
+    }
+
+    /**
+     * Returns the value of a position. En passant captures aren't
+     * considered.
+     *
+     * @param board The position. Its material must be this table's.
+     * @return The position's value.
+     */
+    public int probe(Bitboard board) {
+        return get(this.material.index(board));
+    }
+
+    /**
+     * Returns the value at an index.
+     *
+     * @param index An index of this table's material.
+     * @return The value.
+     */
+    public int get(long index) {
+        final long bit = index * this.bits;
+        return (int) (this.data.getLong(HEADER_BYTES + (int) (bit >>> 3)) >>> (bit & 7)) & this.mask;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /**
+     * Returns whether a value means the player to move wins.
+     *
+     * @param value A value from a table.
+     * @return True iff the player to move can force mate.
+     */
+    public static boolean isWin(int value) {
+        return value > 0 && (value & 1) == 0;
+    }
+
+    /**
+     * Returns whether a value means the player to move is mated.
+     *
+     * @param value A value from a table.
+     * @return True iff the other player can force mate.
+     */
+    public static boolean isLoss(int value) {
+        return (value & 1) != 0;
+    }
+
+    /**
+     * Returns the number of plies to mate of a won or lost position.
+     *
+     * @param value A value from a table, which isn't {@link #DRAW}.
+     * @return The number of plies, with best play from both sides, until
+     * the losing player is mated.
+     */
+    public static int plies(int value) {
+        return value - 1;
+    }
+
+    /**
+     * Returns the value of a position that is won or lost in some number of
+     * plies.
+     *
+     * @param plies The number of plies to mate. Odd if the player to move
+     *              wins.
+     * @return The value.
+     */
+    public static int value(int plies) {
+        return plies + 1;
+    }
+
+    /**
+     * Writes a table.
+     *
+     * @param path     The file to write.
+     * @param material The material of the positions.
+     * @param values   The value at each index.
+     * @throws IOException If the file can't be written.
+     */
+    static void write(Path path, Material material, byte[] values) throws IOException {
+        int max = 0;
+        for (byte value : values) {
+            max = Math.max(max, value & 0xFF);
+        }
+        final int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(max));
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putLong(MAGIC_OFFSET, MAGIC);
+            buffer.putInt(BITS_OFFSET, bits);
+            buffer.putInt(MAX_OFFSET, max);
+            buffer.putLong(SIZE_OFFSET, values.length);
+            buffer.put(MATERIAL_OFFSET, material.toString().getBytes(StandardCharsets.US_ASCII));
+            buffer.position(HEADER_BYTES);
+
+            long word = 0;
+            int filled = 0;
+            for (byte value : values) {
+                word |= (long) (value & 0xFF) << filled;
+                filled += bits;
+                if (filled >= Long.SIZE) {
+                    buffer.putLong(word);
+                    filled -= Long.SIZE;
+                    word = filled == 0 ? 0 : (value & 0xFF) >>> (bits - filled);
+                    if (!buffer.hasRemaining()) {
+                        write(channel, buffer);
+                    }
+                }
+            }
+            // The last word, and padding so probes can always read a whole
+            // word
+            buffer.putLong(word);
+            write(channel, buffer);
+            final ByteBuffer padding = ByteBuffer.allocate((int) (fileBytes(values.length, bits) - channel.position()));
+            while (padding.hasRemaining()) {
+                channel.write(padding);
+            }
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Returns the length of a table file, with room to read a whole word at
+     * the last value.
+     */
+    private static long fileBytes(long size, int bits) {
+        return HEADER_BYTES + ((size * bits + Long.SIZE - 1) / Long.SIZE + 1) * Long.BYTES;
+    }
+}
@@ -0,0 +1,371 @@
+package tablebase;
+
+import board.Bitboard;
+import board.Move;
+import board.Piece;
+import board.Piece.Player;
+import board.Piece.Type;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Works out the distance to mate of every position with some material by
+ * retrograde analysis, spread over a pool of threads.
+ * <p>
+ * First every position is set up on a {@link Bitboard} and its legal moves
+ * are generated. Mates are found, moves that capture or promote are looked
+ * up in the smaller tables, and each position counts the moves that aren't
+ * known to lose. Then positions are resolved one ply at a time: every
+ * position resolved at the last ply is unmoved to find the positions that
+ * lead to it. A predecessor of a lost position is won one ply later, and a
+ * predecessor whose last move turns out to lose is lost one ply later.
+ * Positions still unresolved at the end are drawn.
+ * <p>
+ * Each ply is one pass over the whole table, split into ranges of indexes
+ * that threads take in turn. Threads only ever set a position's value from
+ * unresolved to the same result, so the only shared update is the atomic
+ * decrement of move counts.
+ */
+public class TablebaseGenerator {
+    // Indexes handed to a thread at a time
+    private static final int CHUNK = 1 << 14;
+    // The largest value a byte can hold
+    private static final int MAX_VALUE = 0xFF;
+
+    private static final VarHandle COUNTS = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    private final Tablebases tables;
+    private final int threads;
+
+    /**
+     * Creates a generator.
+     *
+     * @param tables  The tables to look up positions after captures and
+     *                promotions in. They must all be there.
+     * @param threads The number of threads to use.
+     */
+    public TablebaseGenerator(Tablebases tables, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be positive");
+        }
+        this.tables = tables;
+        this.threads = threads;
+    }
+
+    /**
+     * Works out the value of every position with some material.
+     *
+     * @param material The material, in any orientation.
+     * @return The value at each index of the material, as described by
+     * {@link Tablebase}.
+     * @throws IllegalStateException If the table for a capture or promotion
+     *                               is missing.
+     */
+    public byte[] generate(Material material) {
+        final Generation generation = new Generation(material);
+        final ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+        try {
+            run(pool, material, generation::setUp);
+            for (int plies = 0; plies <= generation.last.get(); plies++) {
+                final int value = Tablebase.value(plies);
+                // Wins by a capture or promotion at this ply come first, as
+                // the unmoves of this ply may find slower ones
+                run(pool, material, (from, to) -> generation.resolvePending(from, to, value));
+                run(pool, material, (from, to) -> generation.unmove(from, to, value));
+            }
+            return generation.values;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs a task over every index of a material, in chunks spread over the
+     * pool.
+     */
+    private void run(ExecutorService pool, Material material, RangeTask task) {
+        final long size = material.size();
+        final AtomicLong next = new AtomicLong();
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < this.threads; t++) {
+            futures.add(pool.submit(() -> {
+                for (long from = next.getAndAdd(CHUNK); from < size; from = next.getAndAdd(CHUNK)) {
+                    task.run((int) from, (int) Math.min(size, from + CHUNK));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while generating " + material, e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException("Failed to generate " + material, e.getCause());
+            }
+        }
+    }
+
+    private interface RangeTask {
+        void run(int from, int to);
+    }
+
+    /**
+     * The state of one table while it is generated.
+     */
+    private class Generation {
+        private final Material material;
+        // The value of each position, or 0 while unresolved
+        private final byte[] values;
+        // The number of moves of each position not yet known to lose
+        private final byte[] counts;
+        // The fastest win by a capture or promotion, or, if none, the
+        // slowest loss by one
+        private final byte[] pending;
+        // The largest number of plies a position has been resolved at or
+        // will be
+        private final AtomicLong last = new AtomicLong();
+
+        private Generation(Material material) {
+            final int size = (int) material.size();
+            this.material = material;
+            this.values = new byte[size];
+            this.counts = new byte[size];
+            this.pending = new byte[size];
+        }
+
+        /**
+         * Finds the mates, the results of captures and promotions, and the
+         * move counts of a range of positions.
+         */
+        private void setUp(int from, int to) {
+            final Bitboard board = new Bitboard();
+            final int[] squares = new int[Material.MAX_PIECES];
+            int last = 0;
+            for (int index = from; index < to; index++) {
+                final int player = this.material.squares(index, squares);
+                if (!isValid(index, squares, player)) {
+                    continue;
+                }
+                board.initPieces(this.material.colors, this.material.types, squares, this.material.count, player == Player.WHITE);
+                final List<Move> moves = board.generateMoves();
+                if (moves.isEmpty()) {
+                    if (board.inCheck(player)) {
+                        this.values[index] = (byte) Tablebase.value(0);
+                    }
+                    continue;
+                }
+
+                int count = 0;
+                int win = Integer.MAX_VALUE;
+                int loss = -1;
+                for (Move move : moves) {
+                    if (!move.isCapture() && !move.isPromotion()) {
+                        count++;
+                        continue;
+                    }
+                    board.applyMove(move);
+                    final int value = TablebaseGenerator.this.tables.probe(board);
+                    board.undoMove();
+                    if (value == Tablebase.UNKNOWN) {
+                        throw new IllegalStateException("No table to generate " + this.material + " from, after "
+                                + move + " in " + board.fen());
+                    }
+                    if (value == Tablebase.DRAW) {
+                        count++;
+                    } else if (Tablebase.isLoss(value)) {
+                        win = Math.min(win, Tablebase.plies(value) + 1);
+                    } else {
+                        loss = Math.max(loss, Tablebase.plies(value) + 1);
+                    }
+                }
+
+                this.counts[index] = (byte) count;
+                if (win != Integer.MAX_VALUE) {
+                    this.pending[index] = value(win);
+                    last = Math.max(last, win);
+                } else if (loss >= 0) {
+                    if (count == 0) {
+                        // Every move is a losing capture or promotion
+                        this.values[index] = value(loss);
+                    } else {
+                        this.pending[index] = value(loss);
+                    }
+                    last = Math.max(last, loss);
+                }
+            }
+            this.last.accumulateAndGet(last, Math::max);
+        }
+
+        /**
+         * Resolves the positions in a range that are won by a capture or
+         * promotion at some ply, unless they were already won faster.
+         */
+        private void resolvePending(int from, int to, int value) {
+            for (int index = from; index < to; index++) {
+                if (this.values[index] == 0 && (this.pending[index] & MAX_VALUE) == value && Tablebase.isWin(value)) {
+                    this.values[index] = (byte) value;
+                }
+            }
+        }
+
+        /**
+         * Finds the predecessors of the positions in a range that were
+         * resolved at some ply, and updates them.
+         */
+        private void unmove(int from, int to, int value) {
+            final int[] squares = new int[Material.MAX_PIECES];
+            final int plies = Tablebase.plies(value) + 1;
+            final boolean lost = Tablebase.isLoss(value);
+            int last = 0;
+            for (int index = from; index < to; index++) {
+                if ((this.values[index] & MAX_VALUE) != value) {
+                    continue;
+                }
+                // The player who moved into this position
+                final int player = 1 - this.material.squares(index, squares);
+                long occupancy = 0;
+                for (int slot = 0; slot < this.material.count; slot++) {
+                    occupancy |= 1L << squares[slot];
+                }
+
+                for (int slot = 0; slot < this.material.count; slot++) {
+                    if (this.material.colors[slot] != player) {
+                        continue;
+                    }
+                    final int square = squares[slot];
+                    for (long sources = sources(slot, square, occupancy); sources != 0; sources &= sources - 1) {
+                        squares[slot] = Long.numberOfTrailingZeros(sources);
+                        if (!attacks(squares, player)) {
+                            last = Math.max(last, update((int) this.material.index(squares, player), plies, lost));
+                        }
+                    }
+                    squares[slot] = square;
+                }
+            }
+            this.last.accumulateAndGet(last, Math::max);
+        }
+
+        /**
+         * Updates a predecessor of a position resolved one ply earlier.
+         *
+         * @return The number of plies the predecessor was resolved at, or 0
+         * if it is still unresolved.
+         */
+        private int update(int index, int plies, boolean successorLost) {
+            if (this.values[index] != 0) {
+                return 0;
+            }
+            if (successorLost) {
+                this.values[index] = value(plies);
+                return plies;
+            }
+            if (decrement(index) != 0) {
+                return 0;
+            }
+            // Every move loses, the slowest of them perhaps a capture
+            final int pending = this.pending[index] & MAX_VALUE;
+            final int loss = pending == 0 ? plies : Math.max(plies, Tablebase.plies(pending));
+            this.values[index] = value(loss);
+            return loss;
+        }
+
+        /**
+         * Atomically decrements a move count.
+         *
+         * @return The new count.
+         */
+        private int decrement(int index) {
+            // Not getAndAdd: once C2 compiles it on a byte array (seen on
+            // 17.0.9), it returns the old count without narrowing it to a
+            // byte, and TablebaseTest fails
+            byte count;
+            do {
+                count = (byte) COUNTS.getVolatile(this.counts, index);
+            } while (!COUNTS.compareAndSet(this.counts, index, count, (byte) (count - 1)));
+            return count - 1;
+        }
+
+        /**
+         * Returns the squares the piece in a slot could have moved from,
+         * without capturing.
+         */
+        private long sources(int slot, int square, long occupancy) {
+            final int type = this.material.types[slot];
+            if (type != Type.PAWN) {
+                return Piece.getAttackBitmap(type, square, occupancy) & ~occupancy;
+            }
+            final boolean white = this.material.colors[slot] == Player.WHITE;
+            final long pawn = 1L << square;
+            final long single = (white ? pawn >>> 8 : pawn << 8) & ~occupancy;
+            // Pawns never stand on their first rank
+            long sources = single & ~Bitboard.getRank(white ? 0 : 7);
+            if ((pawn & Bitboard.getRank(white ? 3 : 4)) != 0) {
+                sources |= (white ? single >>> 8 : single << 8) & ~occupancy;
+            }
+            return sources;
+        }
+
+        /**
+         * Returns whether a placement is a position that can be reached with
+         * the player to move, and is the one stored at its index.
+         */
+        private boolean isValid(int index, int[] squares, int player) {
+            long occupancy = 0;
+            for (int slot = 0; slot < this.material.count; slot++) {
+                final long square = 1L << squares[slot];
+                if ((occupancy & square) != 0) {
+                    return false;
+                }
+                if (this.material.types[slot] == Type.PAWN && (square & (Bitboard.getRank(0) | Bitboard.getRank(7))) != 0) {
+                    return false;
+                }
+                occupancy |= square;
+            }
+            return this.material.index(squares, player) == index && !attacks(squares, player);
+        }
+
+        /**
+         * Returns whether a player attacks the other player's king.
+         */
+        private boolean attacks(int[] squares, int player) {
+            long occupancy = 0;
+            for (int slot = 0; slot < this.material.count; slot++) {
+                occupancy |= 1L << squares[slot];
+            }
+            // The kings are in the first two slots
+            final long king = 1L << squares[1 - player];
+            for (int slot = 0; slot < this.material.count; slot++) {
+                if (this.material.colors[slot] != player) {
+                    continue;
+                }
+                final int type = this.material.types[slot];
+                final long attacks = type == Type.PAWN
+                        ? Piece.getPawnAttackBitmap(player == Player.WHITE, 1L << squares[slot])
+                        : Piece.getAttackBitmap(type, squares[slot], occupancy);
+                if ((attacks & king) != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private byte value(int plies) {
+            if (Tablebase.value(plies) > MAX_VALUE) {
+                throw new IllegalStateException("Mate in " + plies + " plies is too long for " + this.material);
+            }
+            return (byte) Tablebase.value(plies);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package tablebase;
+
+import board.Bitboard;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The tablebases in a directory, one file per material, opened as they are
+ * first probed. Tables are only kept for one orientation of each material,
+ * and positions with the other are probed at the index of their color
+ * mirror.
+ */
+public class Tablebases implements Closeable {
+    public static final String EXTENSION = ".tb";
+
+    private final Path directory;
+    // Opened tables, and materials known to have none
+    private final Map<Material, Optional<Tablebase>> tables = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a set of tablebases. Nothing is read until a table is needed.
+     *
+     * @param directory The directory the tables are in.
+     */
+    public Tablebases(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the value of a position, as described by {@link Tablebase}.
+     * Castling rights and en passant captures aren't considered.
+     *
+     * @param board The position.
+     * @return The position's value, or {@link Tablebase#UNKNOWN} if there is
+     * no table for its material.
+     */
+    public int probe(Bitboard board) {
+        Material material = Material.of(board);
+        if (material == null) {
+            return Tablebase.UNKNOWN;
+        }
+        if (material.isBareKings()) {
+            return Tablebase.DRAW;
+        }
+        if (material.isCanonical()) {
+            final Tablebase table = table(material);
+            return table == null ? Tablebase.UNKNOWN : table.probe(board);
+        }
+        material = material.flipped();
+        final Tablebase table = table(material);
+        return table == null ? Tablebase.UNKNOWN : table.get(material.flippedIndex(board));
+    }
+
+    /**
+     * Returns the table for some material, opening it if needed.
+     *
+     * @param material The material, in the orientation tables are generated
+     *                 for.
+     * @return The table, or null if there is none.
+     * @see Material#isCanonical()
+     */
+    public Tablebase table(Material material) {
+        return this.tables.computeIfAbsent(material, m -> {
+            final Path path = path(m);
+            if (!Files.exists(path)) {
+                return Optional.empty();
+            }
+            try {
+                return Optional.of(new Tablebase(path));
+            } catch (IOException e) {
+                return Optional.empty();
+            }
+        }).orElse(null);
+    }
+
+    /**
+     * Generates the table for some material, and first any tables it needs
+     * that aren't in the directory yet.
+     *
+     * @param material The material, in any orientation.
+     * @param threads  The number of threads to use.
+     * @return The table, or null for bare kings, which need none.
+     * @throws IOException If a table can't be written.
+     */
+    public Tablebase generate(Material material, int threads) throws IOException {
+        if (!material.isCanonical()) {
+            material = material.flipped();
+        }
+        if (material.isBareKings()) {
+            return null;
+        }
+        final Tablebase existing = table(material);
+        if (existing != null) {
+            return existing;
+        }
+        for (Material successor : material.successors()) {
+            generate(successor, threads);
+        }
+
+        final byte[] values = new TablebaseGenerator(this, threads).generate(material);
+        final Path path = path(material);
+        final Path temp = Files.createTempFile(this.directory, material.toString(), ".tmp");
+        try {
+            Tablebase.write(temp, material, values);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        final Tablebase table = new Tablebase(path);
+        this.tables.put(material, Optional.of(table));
+        return table;
+    }
+
+    private Path path(Material material) {
+        return this.directory.resolve(material + EXTENSION);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Optional<Tablebase> table : this.tables.values()) {
+            if (table.isPresent()) {
+                table.get().close();
+            }
+        }
+        this.tables.clear();
+    }
+
+    /**
+     * Generates tables, and any they need, into a directory.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: Tablebases DIRECTORY MATERIAL... [-threads N]");
+            return;
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        final Path directory = Paths.get(args[0]);
+        Files.createDirectories(directory);
+        try (Tablebases tables = new Tablebases(directory)) {
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("-threads") && i + 1 < args.length) {
+                    threads = Integer.parseInt(args[++i]);
+                    continue;
+                }
+                final long start = System.nanoTime();
+                final Tablebase table = tables.generate(Material.parse(args[i]), threads);
+                System.out.printf("%-8s longest mate %3d plies, %6.1f s\n", args[i],
+                        table == null ? 0 : Tablebase.plies(table.max()), (System.nanoTime() - start) / 1e9);
+            }
+        }
+    }
+}
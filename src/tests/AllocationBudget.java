@@ -0,0 +1,68 @@
+package tests;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.LongSupplier;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures how many bytes work allocates on the current thread, so that
+ * allocation creeping into a hot path fails the tests instead of going
+ * unnoticed.
+ * <p>
+ * Budgets are in bytes per node, where the work says what a node is. Each
+ * has a default that can be overridden with
+ * {@code -Dchess.allocation.NAME=BYTES}, for instance to tighten it after an
+ * improvement, or to loosen it on a JVM whose JIT removes fewer allocations.
+ */
+public final class AllocationBudget {
+    private static final String PROPERTY_PREFIX = "chess.allocation.";
+    // Runs before measuring, so that the work is compiled as it would be in
+    // a long-running process
+    private static final int WARMUP = 5;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private AllocationBudget() {
+    }
+
+    /**
+     * Returns the bytes a piece of work allocates per node, once it has been
+     * run enough times to be compiled.
+     *
+     * @param work Does the work and returns the number of nodes it visited.
+     * @return Bytes allocated by the current thread per node.
+     */
+    public static double bytesPerNode(LongSupplier work) {
+        for (int i = 0; i < WARMUP; i++) {
+            work.getAsLong();
+        }
+        final long id = Thread.currentThread().getId();
+        // Whatever reading the counter costs is taken off again
+        final long overhead = -THREADS.getThreadAllocatedBytes(id) + THREADS.getThreadAllocatedBytes(id);
+        final long before = THREADS.getThreadAllocatedBytes(id);
+        final long nodes = work.getAsLong();
+        final long bytes = THREADS.getThreadAllocatedBytes(id) - before - overhead;
+        return (double) Math.max(0, bytes) / Math.max(1, nodes);
+    }
+
+    /**
+     * Fails if a piece of work allocates more than its budget.
+     *
+     * @param name          The name of the budget, which is also the name of
+     *                      the property that overrides it.
+     * @param defaultBudget Bytes per node allowed unless overridden.
+     * @param work          Does the work and returns the number of nodes it
+     *                      visited.
+     */
+    public static void assertWithin(String name, double defaultBudget, LongSupplier work) {
+        assertTrue("Thread allocation measurement is not supported",
+                THREADS.isThreadAllocatedMemorySupported() && THREADS.isThreadAllocatedMemoryEnabled());
+        final String property = System.getProperty(PROPERTY_PREFIX + name);
+        final double budget = property == null ? defaultBudget : Double.parseDouble(property);
+        final double used = bytesPerNode(work);
+        assertTrue(String.format("%s allocates %.3f bytes per node, over its budget of %.3f", name, used, budget),
+                used <= budget);
+    }
+}
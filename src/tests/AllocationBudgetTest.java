@@ -0,0 +1,88 @@
+package tests;
+
+import batch.Jobs;
+import board.Bitboard;
+import board.Move;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds the hot paths of the board to their allocation budgets. Making and
+ * unmaking moves and generating moves into a buffer must not allocate at
+ * all, and perft may only allocate the moves it plays.
+ */
+public class AllocationBudgetTest {
+    private static final String[] POSITIONS = {
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            "r3k2r/Pppp1ppp/1b3nbN/nP6/BBPNP3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+            "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+    };
+    private static final int ITERATIONS = 200_000;
+
+    // @formatter:off
+    // Default budgets, in bytes per node. Reading the allocation counter
+    // isn't exact to the byte, so those meant to be zero allow a little.
+    private static final double APPLY_UNDO_BUDGET = 0.01;
+    private static final double MOVEGEN_BUDGET    = 0.01;
+    private static final double PERFT_BUDGET      = 4;
+    // @formatter:on
+
+    @Test
+    public void applyAndUndoDontAllocate() {
+        final Bitboard[] boards = boards();
+        final List<List<Move>> moves = new ArrayList<>();
+        for (Bitboard board : boards) {
+            moves.add(board.generateMoves());
+        }
+        AllocationBudget.assertWithin("applyUndo", APPLY_UNDO_BUDGET, () -> {
+            long nodes = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                final Bitboard board = boards[i % boards.length];
+                final List<Move> legal = moves.get(i % boards.length);
+                board.applyMove(legal.get(i % legal.size()));
+                board.undoMove();
+                nodes++;
+            }
+            return nodes;
+        });
+    }
+
+    @Test
+    public void moveGenerationIntoBufferDoesntAllocate() {
+        final Bitboard[] boards = boards();
+        final int[] buffer = new int[Bitboard.MAX_MOVES];
+        AllocationBudget.assertWithin("movegen", MOVEGEN_BUDGET, () -> {
+            long nodes = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                boards[i % boards.length].generateMoves(buffer);
+                nodes++;
+            }
+            return nodes;
+        });
+    }
+
+    @Test
+    public void perftOnlyAllocatesMovesPlayed() {
+        final Bitboard[] boards = boards();
+        AllocationBudget.assertWithin("perft", PERFT_BUDGET, () -> {
+            long nodes = 0;
+            for (Bitboard board : boards) {
+                nodes += Jobs.perft(board, 3);
+            }
+            return nodes;
+        });
+    }
+
+    private static Bitboard[] boards() {
+        final Bitboard[] boards = new Bitboard[POSITIONS.length];
+        for (int i = 0; i < boards.length; i++) {
+            boards[i] = new Bitboard();
+            boards[i].initFen(POSITIONS[i], 0);
+        }
+        return boards;
+    }
+}
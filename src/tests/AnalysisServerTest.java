@@ -0,0 +1,181 @@
+package tests;
+
+import org.junit.Test;
+import server.AnalysisServer;
+import server.ServerStats;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the analysis server on a local port and queries it over HTTP.
+ */
+public class AnalysisServerTest {
+    private static final String MATE_IN_ONE = "6k1/5ppp/8/8/8/8/5PPP/R5K1 w - - 0 1";
+    private static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    public void streamsIterationsThenBestMove() throws Exception {
+        final AnalysisServer server = start(2, 4);
+        try {
+            final HttpResponse<String> response = get(server, "/analyse?depth=4&fen=" + encode(MATE_IN_ONE));
+            assertEquals(200, response.statusCode());
+            final List<String> lines = response.body().lines().collect(Collectors.toList());
+            assertEquals(5, lines.size());
+            for (int depth = 1; depth <= 4; depth++) {
+                assertTrue(lines.get(depth - 1), lines.get(depth - 1).startsWith("{\"depth\":" + depth + ","));
+            }
+            assertTrue(lines.get(3), lines.get(3).contains("\"mate\":1,"));
+            assertTrue(lines.get(4), lines.get(4).startsWith("{\"bestmove\":\"a1a8\",\"depth\":4,\"mate\":1,"));
+
+            assertEquals(400, get(server, "/analyse?fen=" + encode("8/8/8 w")).statusCode());
+            assertEquals(400, get(server, "/moves?fen=" + encode("8/8/8 w")).statusCode());
+            assertEquals(400, get(server, "/analyse?depth=x&fen=" + encode(START)).statusCode());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void listsLegalMoves() throws Exception {
+        final AnalysisServer server = start(1, 1);
+        try {
+            final String path = "/moves?fen=" + encode("4k3/1P6/8/8/8/8/8/4K2R w K - 0 1");
+            for (int i = 0; i < 2; i++) {
+                final String body = get(server, path).body();
+                assertTrue(body, body.startsWith("{\"moves\":[\""));
+                assertTrue(body, body.contains("\"e1g1\"") && body.contains("\"b7b8n\""));
+                assertEquals(6 + 9 + 4, body.split(",").length);
+            }
+            assertEquals(1, server.stats().moveCache.hits);
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void answersRepeatsFromCache() throws Exception {
+        final AnalysisServer server = start(1, 4);
+        try {
+            final String path = "/analyse?fen=" + encode(MATE_IN_ONE) + "&depth=";
+            final List<String> searched = get(server, path + 4).body().lines().collect(Collectors.toList());
+            assertEquals(5, searched.size());
+
+            // As deep or shallower is answered with the deeper result
+            for (int depth : new int[]{4, 2}) {
+                final String cached = get(server, path + depth).body();
+                assertTrue(cached, cached.startsWith("{\"bestmove\":\"a1a8\",\"depth\":4,\"mate\":1,"));
+                assertEquals(1, cached.lines().count());
+            }
+            // Deeper is searched again, as are requests limited by time
+            assertEquals(6, get(server, path + 5).body().lines().count());
+            assertEquals(2, get(server, "/analyse?movetime=10000&fen=" + encode(MATE_IN_ONE) + "&depth=1").body().lines().count());
+
+            final ServerStats stats = server.stats();
+            assertEquals(2, stats.cached);
+            assertEquals(3, stats.completed);
+            assertEquals(2, stats.cache.hits);
+            assertEquals(2, stats.cache.misses);
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void coalescesIdenticalRequests() throws Exception {
+        final AnalysisServer server = start(1, 4);
+        try {
+            final String path = "/analyse?movetime=500&fen=" + encode(START);
+            final List<CompletableFuture<HttpResponse<String>>> responses = List.of(getAsync(server, path),
+                    getAsync(server, path), getAsync(server, path));
+            String body = null;
+            for (CompletableFuture<HttpResponse<String>> response : responses) {
+                assertEquals(200, response.get().statusCode());
+                // Every request sees every line, however late it joined
+                if (body == null) {
+                    body = response.get().body();
+                } else {
+                    assertEquals(body, response.get().body());
+                }
+            }
+            final ServerStats stats = server.stats();
+            assertEquals(3, stats.requests);
+            assertEquals(2, stats.coalesced);
+            assertEquals(1, stats.completed);
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void rejectsWhenQueueIsFull() throws Exception {
+        final AnalysisServer server = start(1, 1);
+        try {
+            // One running and one queued, both different from the third
+            final CompletableFuture<HttpResponse<String>> running = getAsync(server, "/analyse?movetime=400&fen=" + encode(START));
+            Thread.sleep(100);
+            final CompletableFuture<HttpResponse<String>> queued = getAsync(server, "/analyse?movetime=200&fen=" + encode(START));
+            Thread.sleep(100);
+            assertEquals(1, server.stats().queueDepth);
+            assertEquals(1, server.stats().running);
+            assertEquals(503, get(server, "/analyse?depth=2&fen=" + encode(START)).statusCode());
+            assertEquals(200, running.get().statusCode());
+            assertEquals(200, queued.get().statusCode());
+
+            final String stats = get(server, "/stats").body();
+            assertTrue(stats, stats.startsWith("requests=3 coalesced=0 cached=0 rejected=1 completed=2 "));
+            assertTrue(stats, stats.contains(" p99="));
+            assertTrue(server.stats().latencyP50 >= 200_000_000L);
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void rejectsOversizedHash() throws Exception {
+        try {
+            new AnalysisServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1, 1, 16384);
+            fail("A 16GB table can't be indexed");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("8192MB"));
+        }
+    }
+
+    private static AnalysisServer start(int workers, int maxQueued) throws Exception {
+        final AnalysisServer server = new AnalysisServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                workers, maxQueued, 1);
+        server.start();
+        return server;
+    }
+
+    private HttpResponse<String> get(AnalysisServer server, String path) throws Exception {
+        return this.client.send(request(server, path), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private CompletableFuture<HttpResponse<String>> getAsync(AnalysisServer server, String path) {
+        return this.client.sendAsync(request(server, path), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static HttpRequest request(AnalysisServer server, String path) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + server.port() + path)).build();
+    }
+
+    private static String encode(String text) {
+        return URLEncoder.encode(text, StandardCharsets.UTF_8);
+    }
+}
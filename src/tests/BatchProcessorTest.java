@@ -0,0 +1,100 @@
+package tests;
+
+import batch.BatchProcessor;
+import batch.BatchStats;
+import batch.Jobs;
+import board.Bitboard;
+import board.Move;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that batch jobs give one result per line, in input order.
+ */
+public class BatchProcessorTest {
+    @Test
+    public void resultsAreInInputOrder() throws IOException {
+        // Positions along random games, with a malformed line and some EPD
+        // operations mixed in
+        Random random = new Random(0);
+        List<String> lines = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int game = 0; game < 20; game++) {
+            Bitboard board = new Bitboard();
+            board.initStartingBoard();
+            for (int ply = 0; ply < 100; ply++) {
+                List<Move> moves = board.generateMoves();
+                lines.add(ply % 7 == 0 ? board.fen() + " ;D1 " + moves.size() : board.fen());
+                expected.add(String.valueOf(moves.size()));
+                if (moves.isEmpty()) {
+                    break;
+                }
+                board.applyMove(moves.get(random.nextInt(moves.size())));
+            }
+            if (game == 10) {
+                lines.add("not a position");
+                expected.add(null);
+            }
+        }
+
+        Path input = Files.createTempFile("batch", ".epd");
+        Path output = Files.createTempFile("batch", ".out");
+        try {
+            Files.write(input, lines, StandardCharsets.US_ASCII);
+            // Small chunks and few of them, so the reader has to wait
+            int[][] configs = {{1, 1 << 16, 4}, {4, 100, 2}, {8, 1, 3}};
+            for (int[] config : configs) {
+                BatchStats stats = new BatchProcessor(config[0], config[1], config[2]).run(input, output, Jobs.moveCount());
+
+                List<String> results = Files.readAllLines(output, StandardCharsets.US_ASCII);
+                assertEquals(expected.size(), results.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    if (expected.get(i) == null) {
+                        assertTrue(results.get(i), results.get(i).startsWith("error:"));
+                    } else {
+                        assertEquals(lines.get(i), expected.get(i), results.get(i));
+                    }
+                }
+                assertEquals(lines.size(), stats.lines);
+                assertEquals(1, stats.errors);
+                assertEquals(Files.size(input), stats.bytesRead);
+            }
+        } finally {
+            Files.delete(input);
+            Files.delete(output);
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void errorFromJobFailsRun() throws IOException {
+        Path input = Files.createTempFile("positions", ".epd");
+        try {
+            Files.write(input, List.of("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+                    "4k3/8/8/8/8/8/8/4K3 w - - 0 1"), StandardCharsets.UTF_8);
+            new BatchProcessor(1).run(input, new ByteArrayOutputStream(), (board, line, fenEnd, out) -> {
+                // Only the second position has no pawns
+                if (board.pieces(0, 0) == 0) {
+                    throw new StackOverflowError("deep");
+                }
+                out.append("ok");
+            });
+            fail("The error should stop the run");
+        } catch (StackOverflowError e) {
+            assertEquals("deep", e.getMessage());
+        } finally {
+            Files.delete(input);
+        }
+    }
+}
@@ -0,0 +1,428 @@
+package tests;
+
+import batch.Jobs;
+import board.Bitboard;
+import board.Move;
+import org.junit.Test;
+import search.Evaluation;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks board operations other than move generation.
+ */
+public class BitboardTest {
+    private static final String KIWIPETE = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+
+    @Test
+    public void nullMoveRestoresPosition() {
+        Bitboard board = new Bitboard("rnbqkbnr/ppp1pppp/8/3pP3/8/8/PPPP1PPP/RNBQKBNR w KQkq d6 0 3");
+        String fen = board.fen();
+        long signature = board.signature();
+
+        board.applyNullMove();
+        assertEquals("rnbqkbnr/ppp1pppp/8/3pP3/8/8/PPPP1PPP/RNBQKBNR b KQkq - 1 3", board.fen());
+        assertNotEquals(signature, board.signature());
+
+        board.undoNullMove();
+        assertEquals(fen, board.fen());
+        assertEquals(signature, board.signature());
+    }
+
+    @Test
+    public void nullMoveInsideMoveSequence() {
+        Bitboard board = new Bitboard(KIWIPETE);
+        String fen = board.fen();
+        long signature = board.signature();
+
+        List<Move> moves = board.generateMoves();
+        board.applyMove(moves.get(0));
+        board.applyNullMove();
+        List<Move> replies = board.generateMoves();
+        board.applyMove(replies.get(0));
+        board.undoMove();
+        // undoMove also reverses a null move
+        board.undoMove();
+        board.undoMove();
+
+        assertEquals(fen, board.fen());
+        assertEquals(signature, board.signature());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void undoNullMoveRequiresNullMove() {
+        Bitboard board = new Bitboard(KIWIPETE);
+        board.applyMove(board.generateMoves().get(0));
+        board.undoNullMove();
+    }
+
+    @Test
+    public void repetition() {
+        Bitboard board = new Bitboard();
+        board.initStartingBoard();
+
+        String[] shuffle = {"g1f3", "g8f6", "f3g1", "f6g8"};
+        for (String move : shuffle) {
+            assertFalse(board.isRepetition());
+            board.applyMove(find(board, move));
+        }
+        assertTrue(board.isRepetition());
+
+        // Positions before a null move don't count
+        board.applyNullMove();
+        board.applyNullMove();
+        assertFalse(board.isRepetition());
+    }
+
+    @Test
+    public void signaturesArePolyglotKeys() {
+        // The test positions from the Polyglot book format specification
+        String[] moves = {"e2e4", "d7d5", "e4e5", "f7f5", "e1e2", "e8f7"};
+        long[] keys = {
+                0x823c9b50fd114196L, 0x0756b94461c50fb0L, 0x662fafb965db29d4L,
+                0x22a48b5a8e47ff78L, 0x652a607ca3f242c1L, 0x00fdd303c946bdd9L,
+        };
+        checkPolyglotKeys(0x463b96181691fc9cL, moves, keys);
+
+        moves = new String[]{"a2a4", "b7b5", "h2h4", "b5b4", "c2c4", "b4c3", "a1a3"};
+        keys = new long[]{
+                0, 0, 0, 0, 0x3c8123ea7b067637L, 0, 0x5c3f9b829b279560L,
+        };
+        checkPolyglotKeys(0x463b96181691fc9cL, moves, keys);
+    }
+
+    private static void checkPolyglotKeys(long startKey, String[] moves, long[] keys) {
+        Bitboard board = new Bitboard();
+        board.initStartingBoard();
+        assertEquals(startKey, board.signature());
+        for (int i = 0; i < moves.length; i++) {
+            board.applyMove(find(board, moves[i]));
+            if (keys[i] != 0) {
+                assertEquals(board.fen(), keys[i], board.signature());
+                // Reaching a position from its FEN gives the same key
+                assertEquals(board.fen(), keys[i], new Bitboard(board.fen()).signature());
+            }
+        }
+        for (int i = moves.length - 1; i >= 0; i--) {
+            board.undoMove();
+        }
+        assertEquals(startKey, board.signature());
+    }
+
+    @Test
+    public void fenParserMatchesInit() {
+        String[] positions = {
+                KIWIPETE,
+                "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+                "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+                "rnbqkbnr/ppp1pppp/8/3pP3/8/8/PPPP1PPP/RNBQKBNR w KQkq d6 0 3",
+                "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 110",
+        };
+        StringBuilder lines = new StringBuilder();
+        for (String fen : positions) {
+            lines.append(fen).append('\n');
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.US_ASCII));
+        ByteBuffer written = ByteBuffer.allocate(bytes.capacity());
+
+        Bitboard board = new Bitboard();
+        int charOffset = 0;
+        int byteOffset = 0;
+        int writeOffset = 0;
+        StringBuilder appended = new StringBuilder();
+        for (String fen : positions) {
+            Bitboard expected = new Bitboard(fen);
+
+            charOffset = board.initFen(lines, charOffset) + 1;
+            assertEquals(fen, board.fen());
+            assertEquals(expected.signature(), board.signature());
+
+            byteOffset = board.initFen(bytes, byteOffset) + 1;
+            assertEquals(fen, board.fen());
+            assertEquals(expected.signature(), board.signature());
+
+            appended.setLength(0);
+            assertEquals(fen, board.appendFen(appended).toString());
+            writeOffset = board.writeFen(written, writeOffset);
+            written.put(writeOffset++, (byte) '\n');
+        }
+        assertEquals(bytes, written);
+
+        // The clocks are optional
+        board.initFen("8/8/8/8/8/8/8/K1k5 b - -", 0);
+        assertEquals("8/8/8/8/8/8/8/K1k5 b - - 0 1", board.fen());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fenParserRejectsMalformedRecords() {
+        new Bitboard().initFen("rnbqkbnr/ppppxppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1", 0);
+    }
+
+    @Test
+    public void encodingRoundTrips() {
+        String[] starts = {
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+                KIWIPETE,
+                "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+                "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+        };
+        // Positions along random games from each start
+        Random random = new Random(0);
+        List<Bitboard> positions = new ArrayList<>();
+        for (String fen : starts) {
+            for (int game = 0; game < 20; game++) {
+                Bitboard board = new Bitboard(fen);
+                for (int ply = 0; ply < 200; ply++) {
+                    positions.add(new Bitboard(board.fen()));
+                    List<Move> moves = board.generateMoves();
+                    if (moves.isEmpty()) {
+                        break;
+                    }
+                    board.applyMove(moves.get(random.nextInt(moves.size())));
+                }
+            }
+        }
+
+        Bitboard decoded = new Bitboard();
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            ByteBuffer buffer = ByteBuffer.allocate(Bitboard.ENCODED_BYTES * positions.size()).order(order);
+            Bitboard[] boards = positions.toArray(new Bitboard[0]);
+            assertEquals(buffer.capacity(), Bitboard.encodeAll(boards, 0, boards.length, buffer, 0));
+
+            for (int i = 0; i < boards.length; i++) {
+                decoded.decode(buffer, i * Bitboard.ENCODED_BYTES);
+                assertEquals(boards[i].fen(), decoded.fen());
+                assertEquals(boards[i].fen(), boards[i].signature(), decoded.signature());
+            }
+
+            // The encoding doesn't depend on the buffer's byte order
+            ByteBuffer copy = ByteBuffer.allocate(buffer.capacity());
+            Bitboard[] copies = new Bitboard[boards.length];
+            for (int i = 0; i < copies.length; i++) {
+                copies[i] = new Bitboard();
+            }
+            Bitboard.decodeAll(buffer, 0, copies, 0, copies.length);
+            Bitboard.encodeAll(copies, 0, copies.length, copy, 0);
+            assertEquals(ByteBuffer.wrap(buffer.array()), copy);
+        }
+    }
+
+    @Test
+    public void flippedPositionsMirror() {
+        Bitboard board = new Bitboard("r3k2r/8/8/3pP3/8/8/8/R3K1R1 w Qkq d6 0 1");
+        Bitboard flipped = board.flipped();
+        assertEquals("r3k1r1/8/8/8/3Pp3/8/8/R3K2R b KQq d3 0 1", flipped.fen());
+        assertEquals(new Bitboard(flipped.fen()).signature(), flipped.signature());
+        assertEquals(board.canonicalSignature(), flipped.canonicalSignature());
+        assertNotEquals(board.isCanonicalFlipped(), flipped.isCanonicalFlipped());
+
+        Random random = new Random(0);
+        for (String fen : new String[]{KIWIPETE, "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1"}) {
+            for (int game = 0; game < 20; game++) {
+                board = new Bitboard(fen);
+                for (int ply = 0; ply < 100; ply++) {
+                    flipped = board.flipped();
+                    assertEquals(board.fen(), flipped.flipped().fen());
+                    assertEquals(board.flippedSignature(), flipped.signature());
+                    assertEquals(board.fen(), new Bitboard(flipped.fen()).signature(), flipped.signature());
+                    assertEquals(board.canonicalSignature(), flipped.canonicalSignature());
+                    assertEquals(Jobs.perft(board, 2), Jobs.perft(flipped, 2));
+                    assertEquals(Evaluation.evaluate(board), Evaluation.evaluate(flipped));
+
+                    List<Move> moves = board.generateMoves();
+                    if (moves.isEmpty()) {
+                        break;
+                    }
+                    board.applyMove(moves.get(random.nextInt(moves.size())));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void givesCheckMatchesApplyingMove() {
+        String[] positions = {
+                KIWIPETE,
+                "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+                "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+                "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+                // En passant uncovering a check or a pin, and castling with check
+                "8/8/8/R2pP2k/8/8/8/4K3 w - d6 0 1",
+                "8/8/8/K2pP2q/8/8/8/4k3 w - d6 0 1",
+                "5k2/8/8/8/8/8/8/4K2R w K - 0 1",
+                "3k4/8/8/8/8/8/8/R3K3 w Q - 0 1",
+        };
+        for (String fen : positions) {
+            checkGivesCheck(new Bitboard(fen), 3);
+        }
+    }
+
+    private static void checkGivesCheck(Bitboard board, int depth) {
+        if (depth == 0) {
+            return;
+        }
+        final int enemy = board.whitesTurn() ? 1 : 0;
+        for (Move move : board.generateMoves()) {
+            boolean predicted = board.givesCheck(move);
+            board.applyMove(move);
+            assertEquals(board.fen() + " after " + move, board.inCheck(enemy), predicted);
+            checkGivesCheck(board, depth - 1);
+            board.undoMove();
+        }
+    }
+
+    @Test
+    public void bufferedGenerationMatchesLists() {
+        String[] positions = {
+                KIWIPETE,
+                "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+                "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+                "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+                "8/8/8/R2pP2k/8/8/8/4K3 w - d6 0 1",
+        };
+        for (String fen : positions) {
+            checkBufferedGeneration(new Bitboard(fen), 3, new int[Bitboard.MAX_MOVES]);
+        }
+    }
+
+    private static void checkBufferedGeneration(Bitboard board, int depth, int[] buffer) {
+        final List<Move> pseudoMoves = board.generatePseudoMoves();
+        assertEquals(board.fen(), pseudoMoves.size(), board.generatePseudoMoves(buffer));
+        for (int i = 0; i < pseudoMoves.size(); i++) {
+            assertEquals(board.fen() + " " + pseudoMoves.get(i), pseudoMoves.get(i).encode(), buffer[i]);
+        }
+
+        final List<Move> moves = board.generateMoves();
+        assertEquals(board.fen(), moves.size(), board.generateMoves(buffer));
+        for (int i = 0; i < moves.size(); i++) {
+            assertEquals(board.fen() + " " + moves.get(i), moves.get(i).encode(), buffer[i]);
+        }
+
+        if (depth > 1) {
+            for (Move move : moves) {
+                board.applyMove(move);
+                checkBufferedGeneration(board, depth - 1, buffer);
+                board.undoMove();
+            }
+        }
+    }
+
+    @Test
+    public void capturingRookRemovesCastling() {
+        Bitboard board = new Bitboard("r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1");
+        board.applyMove(find(board, "a1a8"));
+        assertEquals("R3k2r/8/8/8/8/8/8/4K2R b Kk - 0 1", board.fen());
+        board.undoMove();
+
+        // A rook moving off the h-file elsewhere doesn't affect castling
+        board = new Bitboard("r3k2r/8/8/8/7R/8/8/R3K3 w Qkq - 0 1");
+        board.applyMove(find(board, "h4h8"));
+        assertEquals("r3k2R/8/8/8/8/8/8/R3K3 b Qq - 0 1", board.fen());
+    }
+
+    @Test
+    public void signatureAfterMatchesApplyingMove() {
+        String[] positions = {
+                KIWIPETE,
+                "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+                "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+                "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+                "rnbqkbnr/ppp1pppp/8/3pP3/8/8/PPPP1PPP/RNBQKBNR w KQkq d6 0 3",
+        };
+        for (String fen : positions) {
+            checkSignatureAfter(new Bitboard(fen), 3);
+        }
+    }
+
+    private static void checkSignatureAfter(Bitboard board, int depth) {
+        if (depth == 0) {
+            return;
+        }
+        for (Move move : board.generateMoves()) {
+            long predicted = board.signatureAfter(move);
+            board.applyMove(move);
+            assertEquals(board.fen() + " after " + move, board.signature(), predicted);
+            checkSignatureAfter(board, depth - 1);
+            board.undoMove();
+        }
+    }
+
+    @Test
+    public void pseudoLegalityMatchesGeneratedMoves() {
+        String[] positions = {
+                KIWIPETE,
+                "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+                "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+                "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+                "8/8/8/K2pP2q/8/8/8/4k3 w - d6 0 1",
+        };
+        for (String fen : positions) {
+            Bitboard board = new Bitboard(fen);
+            // Moves from neighbouring positions make good candidates, since
+            // they are often almost valid
+            List<Move> candidates = new ArrayList<>(board.generatePseudoMoves());
+            checkPseudoLegality(board, 3, candidates);
+        }
+    }
+
+    private static void checkPseudoLegality(Bitboard board, int depth, List<Move> candidates) {
+        final int color = board.whitesTurn() ? 0 : 1;
+        final List<Move> pseudoMoves = board.generatePseudoMoves();
+        final Set<String> generated = new HashSet<>();
+        for (Move move : pseudoMoves) {
+            generated.add(describe(move));
+        }
+
+        for (Move move : candidates) {
+            assertEquals(board.fen() + " " + move, generated.contains(describe(move)), board.isPseudoLegal(move));
+        }
+        for (Move move : pseudoMoves) {
+            assertTrue(board.isPseudoLegal(move));
+            if (move.isCastle()) {
+                // Passing through check isn't visible after the move, and
+                // castling is already covered by the perft counts
+                continue;
+            }
+
+            boolean legal = board.isLegal(move);
+            board.applyMove(move);
+            assertEquals(board.fen() + " after " + move, !board.inCheck(color), legal);
+            board.undoMove();
+        }
+
+        if (depth > 1) {
+            final List<Move> nextCandidates = new ArrayList<>(candidates);
+            nextCandidates.addAll(pseudoMoves);
+            for (Move move : board.generateMoves()) {
+                board.applyMove(move);
+                checkPseudoLegality(board, depth - 1, nextCandidates);
+                board.undoMove();
+            }
+        }
+    }
+
+    private static String describe(Move move) {
+        return move + " " + move.src.type() + " " + move.dest.type() + " " + move.code;
+    }
+
+    static Move find(Bitboard board, String move) {
+        for (Move m : board.generateMoves()) {
+            if (m.toString().equals(move)) {
+                return m;
+            }
+        }
+        throw new IllegalArgumentException("Illegal move: " + move);
+    }
+}
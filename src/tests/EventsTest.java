@@ -0,0 +1,158 @@
+package tests;
+
+import batch.BatchEvent;
+import batch.BatchProcessor;
+import batch.Jobs;
+import batch.PerftEvent;
+import board.Bitboard;
+import board.Counters;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import search.Search;
+import search.SearchIterationEvent;
+import search.TimeManager;
+import search.TranspositionTable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Records flight recorder events while searching, counting and running
+ * batches, and checks the hot-path counters.
+ */
+public class EventsTest {
+    private static final String KIWIPETE = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        this.directory = Files.createTempDirectory("events");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(this.directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void searchRecordsEachIteration() throws IOException {
+        final Bitboard board = new Bitboard();
+        board.initStartingBoard();
+        final Search search = new Search(board, Search.ALL_FEATURES, new TranspositionTable(1));
+
+        final List<RecordedEvent> events = record(SearchIterationEvent.NAME, () -> {
+            final TimeManager time = TimeManager.moveTime(60_000);
+            time.start();
+            search.search(4, time);
+        });
+        assertEquals(4, events.size());
+        long total = 0;
+        for (int i = 0; i < events.size(); i++) {
+            final RecordedEvent event = events.get(i);
+            assertEquals(i + 1, event.getInt("depth"));
+            total += event.getLong("nodes");
+            assertEquals(total, event.getLong("totalNodes"));
+            assertTrue(event.getString("bestMove") != null);
+        }
+        assertEquals(search.stats().nodes, total);
+    }
+
+    @Test
+    public void perftRecordsOneEventPerCount() throws IOException {
+        final Bitboard board = new Bitboard();
+        board.initFen(KIWIPETE, 0);
+
+        final List<RecordedEvent> events = record(PerftEvent.NAME, () -> Jobs.perft(board, 2));
+        assertEquals(1, events.size());
+        assertEquals(2, events.get(0).getInt("depth"));
+        assertEquals(2039, events.get(0).getLong("nodes"));
+        assertEquals(KIWIPETE, events.get(0).getString("fen"));
+    }
+
+    @Test
+    public void batchRecordsItsStats() throws IOException {
+        final Path input = this.directory.resolve("positions.epd");
+        final Path output = this.directory.resolve("counts.txt");
+        Files.write(input, List.of(KIWIPETE, "8/8/8 w", KIWIPETE), StandardCharsets.UTF_8);
+
+        final List<RecordedEvent> events = record(BatchEvent.NAME,
+                () -> new BatchProcessor(1).run(input, output, Jobs.moveCount()));
+        assertEquals(1, events.size());
+        assertEquals(3, events.get(0).getLong("lines"));
+        assertEquals(1, events.get(0).getLong("errors"));
+        assertEquals(1, events.get(0).getInt("threads"));
+        assertEquals(Files.size(input), events.get(0).getLong("bytesRead"));
+    }
+
+    @Test
+    public void countersAddUpAcrossThreads() throws InterruptedException {
+        Counters.reset();
+        final Thread[] threads = new Thread[2];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                final Bitboard board = new Bitboard();
+                board.initFen(KIWIPETE, 0);
+                Jobs.perft(board, 2);
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        final long[] counts = Counters.snapshot();
+        assertEquals(Counters.COUNT, counts.length);
+        if (!Counters.ENABLED) {
+            for (long count : counts) {
+                assertEquals(0, count);
+            }
+            return;
+        }
+        // Each thread plays the 48 root moves, and only counts the replies
+        assertEquals(2 * 48, counts[Counters.APPLY_MOVE]);
+        assertEquals(counts[Counters.APPLY_MOVE], counts[Counters.UNDO_MOVE]);
+        assertTrue(counts[Counters.GENERATE_PSEUDO_MOVES] > 0);
+        Counters.reset();
+        assertEquals(0, Counters.snapshot()[Counters.APPLY_MOVE]);
+    }
+
+    /**
+     * Records one kind of event while running some work.
+     *
+     * @return The events of that kind, in the order they ended.
+     */
+    private List<RecordedEvent> record(String name, Work work) throws IOException {
+        final Path file = this.directory.resolve(name + ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(name).withThreshold(Duration.ZERO);
+            recording.start();
+            work.run();
+            recording.stop();
+            recording.dump(file);
+        }
+        final List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        events.removeIf(event -> !event.getEventType().getName().equals(name));
+        events.sort(Comparator.comparing(RecordedEvent::getEndTime));
+        return events;
+    }
+
+    private interface Work {
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,97 @@
+package tests;
+
+import board.Bitboard;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Measures how many FEN records per second are parsed and written by the
+ * allocation-free methods, compared with the String based ones.
+ */
+public class FenBench {
+    private static final int ROUNDS = 5;
+    private static final int RECORDS = 1_000_000;
+
+    public static void main(String[] args) {
+        final int records = args.length > 0 ? Integer.parseInt(args[0]) : RECORDS;
+
+        // The bench positions, one per line, as text and as ASCII bytes
+        StringBuilder text = new StringBuilder();
+        for (String fen : SearchBench.POSITIONS) {
+            text.append(fen).append('\n');
+        }
+        final ByteBuffer bytes = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.US_ASCII));
+        final ByteBuffer out = ByteBuffer.allocate(bytes.capacity() * 2);
+
+        System.out.printf("%-26s %14s\n", "Method", "Records/s");
+        for (int round = 0; round < ROUNDS; round++) {
+            final boolean last = round == ROUNDS - 1;
+            long sink = 0;
+
+            long start = System.nanoTime();
+            for (int i = 0; i < records; i++) {
+                sink += new Bitboard(SearchBench.POSITIONS[i % SearchBench.POSITIONS.length]).signature();
+            }
+            report(last, "new Bitboard(String)", records, start);
+
+            Bitboard board = new Bitboard();
+            start = System.nanoTime();
+            int offset = 0;
+            for (int i = 0; i < records; i++) {
+                offset = board.initFen(text, offset) + 1;
+                if (offset >= text.length()) {
+                    offset = 0;
+                }
+                sink += board.signature();
+            }
+            report(last, "initFen(CharSequence)", records, start);
+
+            start = System.nanoTime();
+            offset = 0;
+            for (int i = 0; i < records; i++) {
+                offset = board.initFen(bytes, offset) + 1;
+                if (offset >= bytes.limit()) {
+                    offset = 0;
+                }
+                sink += board.signature();
+            }
+            report(last, "initFen(ByteBuffer)", records, start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < records; i++) {
+                sink += board.fen().length();
+            }
+            report(last, "fen()", records, start);
+
+            StringBuilder s = new StringBuilder(128);
+            start = System.nanoTime();
+            for (int i = 0; i < records; i++) {
+                s.setLength(0);
+                sink += board.appendFen(s).length();
+            }
+            report(last, "appendFen(StringBuilder)", records, start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < records; i++) {
+                sink += board.writeFen(out, 0);
+            }
+            report(last, "writeFen(ByteBuffer)", records, start);
+
+            if (sink == 42) {
+                System.out.println();
+            }
+        }
+    }
+
+    /**
+     * Prints the rate of a timed loop, only for the final round so that the
+     * earlier ones serve as warmup.
+     */
+    private static void report(boolean print, String name, int records, long start) {
+        if (print) {
+            final double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%-26s %14.0f\n", name, records / seconds);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package tests;
+
+import board.Bitboard;
+import server.GameSessions;
+
+import java.lang.ref.Reference;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how many moves per second {@link GameSessions} checks and plays
+ * across many live games, and how much memory each game takes compared with
+ * keeping a {@link Bitboard} per game.
+ */
+public class GameSessionBench {
+    private static final int SESSIONS = 10_000;
+    // Moves played in every game before measuring memory
+    private static final int OPENING_PLIES = 40;
+    private static final long MILLIS = 5000;
+
+    public static void main(String[] args) throws InterruptedException {
+        final int sessions = args.length > 0 ? Integer.parseInt(args[0]) : SESSIONS;
+        final int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        final Runtime runtime = Runtime.getRuntime();
+
+        System.gc();
+        long before = runtime.totalMemory() - runtime.freeMemory();
+        final GameSessions games = new GameSessions();
+        final long[] ids = new long[sessions];
+        final Random random = new Random(1);
+        for (int i = 0; i < sessions; i++) {
+            ids[i] = games.create();
+            for (int ply = 0; ply < OPENING_PLIES; ply++) {
+                playRandom(games, ids[i], random);
+            }
+        }
+        System.gc();
+        final double bytesPerGame = (double) (runtime.totalMemory() - runtime.freeMemory() - before) / sessions;
+
+        // The same games as boards, each with its undo history
+        System.gc();
+        before = runtime.totalMemory() - runtime.freeMemory();
+        final Bitboard[] boards = new Bitboard[sessions];
+        for (int i = 0; i < sessions; i++) {
+            boards[i] = new Bitboard();
+            boards[i].initStartingBoard();
+            for (int move : games.history(ids[i])) {
+                boards[i].applyMove(boards[i].createMove(move));
+            }
+        }
+        System.gc();
+        final double bytesPerBoard = (double) (runtime.totalMemory() - runtime.freeMemory() - before) / sessions;
+
+        final AtomicLong moves = new AtomicLong();
+        final Thread[] workers = new Thread[threads];
+        final long end = System.nanoTime() + MILLIS * 1_000_000;
+        for (int t = 0; t < threads; t++) {
+            final Random threadRandom = new Random(t);
+            workers[t] = new Thread(() -> {
+                long played = 0;
+                while (System.nanoTime() < end) {
+                    if (playRandom(games, ids[threadRandom.nextInt(ids.length)], threadRandom)) {
+                        played++;
+                    }
+                }
+                moves.addAndGet(played);
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        System.out.printf("%8s %8s %14s %14s %14s\n", "Games", "Threads", "Moves/s", "Bytes/game", "Bytes/board");
+        System.out.printf("%8d %8d %14.0f %14.0f %14.0f\n", sessions, threads, moves.get() * 1000.0 / MILLIS,
+                bytesPerGame, bytesPerBoard);
+        Reference.reachabilityFence(boards);
+    }
+
+    /**
+     * Plays a random legal move in a game, or takes the last move back if
+     * the game is over or has gone on long enough.
+     *
+     * @return True iff a move was played.
+     */
+    private static boolean playRandom(GameSessions games, long id, Random random) {
+        final int[] legal = games.legalMoves(id);
+        if (legal.length == 0 || games.moveCount(id) >= 200) {
+            games.takeBack(id);
+            return false;
+        }
+        return games.play(id, legal[random.nextInt(legal.length)]);
+    }
+}
@@ -0,0 +1,144 @@
+package tests;
+
+import board.Bitboard;
+import board.Move;
+import org.junit.Test;
+import server.GameSessions;
+import server.MoveListCache;
+import uci.UciEngine;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Plays games through the session manager and checks them against a board.
+ */
+public class GameSessionsTest {
+    @Test
+    public void playsAndTakesBackMoves() {
+        final GameSessions sessions = new GameSessions();
+        final long id = sessions.create();
+        final Bitboard expected = new Bitboard();
+        expected.initStartingBoard();
+        final String start = expected.fen();
+
+        for (String move : new String[]{"e2e4", "d7d5", "e4d5", "g8f6", "f1b5", "c7c6", "d5c6", "d8d2", "b1d2"}) {
+            assertTrue(move, sessions.play(id, move));
+            expected.applyMove(UciEngine.parseMove(expected, move));
+            assertEquals(expected.fen(), sessions.fen(id));
+        }
+        assertFalse(sessions.play(id, "e1g1"));
+        assertFalse(sessions.play(id, "a7a4"));
+        assertEquals(9, sessions.history(id).length);
+
+        expected.undoMove();
+        assertTrue(sessions.takeBack(id));
+        assertEquals(expected.fen(), sessions.fen(id));
+        assertEquals(8, sessions.history(id).length);
+        while (sessions.takeBack(id)) {
+            // Back to the start
+        }
+        assertEquals(start, sessions.fen(id));
+
+        assertTrue(sessions.close(id));
+        assertFalse(sessions.close(id));
+        try {
+            sessions.fen(id);
+            fail("Read a closed game");
+        } catch (IllegalArgumentException e) {
+            assertEquals("No game " + id, e.getMessage());
+        }
+    }
+
+    @Test
+    public void rejectsUnknownPromotions() {
+        final GameSessions sessions = new GameSessions();
+        final String fen = new Bitboard("8/4P2k/8/8/8/8/8/K7 w - - 0 1").fen();
+        final long id = sessions.create(fen);
+        assertFalse(sessions.play(id, "e7e8k"));
+        assertFalse(sessions.play(id, "e7e8x"));
+        assertEquals(fen, sessions.fen(id));
+        assertTrue(sessions.play(id, "e7e8n"));
+        assertEquals(new Bitboard("4N3/7k/8/8/8/8/8/K7 b - - 0 1").fen(), sessions.fen(id));
+    }
+
+    @Test
+    public void playsEncodedMovesFromPositions() {
+        final GameSessions sessions = new GameSessions(4);
+        final long id = sessions.create("r3k2r/1P6/8/3pP3/8/8/8/R3K2R w KQkq d6 0 1");
+        final Bitboard expected = new Bitboard("r3k2r/1P6/8/3pP3/8/8/8/R3K2R w KQkq d6 0 1");
+        final List<Move> moves = expected.generateMoves();
+        final int[] legal = sessions.legalMoves(id);
+        assertEquals(moves.size(), legal.length);
+
+        // En passant, castling and promotion with capture all round trip
+        for (String text : new String[]{"e5d6", "e8g8", "b7a8n", "f8f1", "e1f1"}) {
+            final Move move = UciEngine.parseMove(expected, text);
+            assertTrue(text, sessions.play(id, move.encode()));
+            expected.applyMove(move);
+            assertEquals(expected.fen(), sessions.fen(id));
+        }
+        assertFalse(sessions.play(id, 0));
+    }
+
+    @Test
+    public void threadsPlayManyGames() throws Exception {
+        final MoveListCache moveCache = new MoveListCache(1024);
+        final GameSessions sessions = new GameSessions(8, moveCache);
+        final long[] ids = new long[64];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = sessions.create();
+        }
+        final int threads = 4;
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            final Future<?>[] futures = new Future<?>[threads];
+            for (int t = 0; t < threads; t++) {
+                final Random random = new Random(t);
+                futures[t] = pool.submit(() -> {
+                    for (int i = 0; i < 5000; i++) {
+                        // Games are shared between threads, so a move may be
+                        // played by another thread first and then be illegal
+                        final long id = ids[random.nextInt(ids.length)];
+                        final int[] legal = sessions.legalMoves(id);
+                        if (legal.length == 0 || random.nextInt(8) == 0) {
+                            sessions.takeBack(id);
+                        } else {
+                            sessions.play(id, legal[random.nextInt(legal.length)]);
+                        }
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        // Each game's position follows from replaying its history
+        for (long id : ids) {
+            final Bitboard board = new Bitboard();
+            board.initStartingBoard();
+            for (int move : sessions.history(id)) {
+                final Move created = board.createMove(move);
+                assertTrue(board.isPseudoLegal(created) && board.isLegal(created));
+                board.applyMove(created);
+            }
+            assertEquals(board.fen(), sessions.fen(id));
+            final int[] expected = board.generateMoves().stream().mapToInt(Move::encode).toArray();
+            assertArrayEquals(expected, sessions.legalMoves(id));
+        }
+        assertEquals(ids.length, sessions.size());
+        assertTrue(moveCache.stats().hits > 0);
+    }
+}
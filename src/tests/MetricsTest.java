@@ -0,0 +1,121 @@
+package tests;
+
+import batch.BatchMetrics;
+import batch.BatchProcessor;
+import batch.Jobs;
+import board.Bitboard;
+import org.junit.Test;
+import search.Search;
+import search.SearchMetrics;
+import search.TimeManager;
+import search.TranspositionTable;
+import server.AnalysisServer;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reads the search, batch and server metrics through the platform MBean
+ * server, as a dashboard would.
+ */
+public class MetricsTest {
+    private final MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+
+    @Test
+    public void searchesAddToTotals() throws Exception {
+        SearchMetrics.register();
+        final ObjectName name = new ObjectName(SearchMetrics.NAME);
+        final long searches = (Long) this.mbeans.getAttribute(name, "Searches");
+        final long nodes = (Long) this.mbeans.getAttribute(name, "Nodes");
+        final long probes = (Long) this.mbeans.getAttribute(name, "HashProbes");
+
+        final Bitboard board = new Bitboard();
+        board.initStartingBoard();
+        final Search search = new Search(board, Search.ALL_FEATURES, new TranspositionTable(1));
+        final TimeManager time = TimeManager.moveTime(60_000);
+        time.start();
+        search.search(5, time);
+
+        assertEquals(searches + 1, (long) (Long) this.mbeans.getAttribute(name, "Searches"));
+        assertEquals(0, (int) (Integer) this.mbeans.getAttribute(name, "ActiveSearches"));
+        assertEquals(nodes + search.stats().nodes, (long) (Long) this.mbeans.getAttribute(name, "Nodes"));
+        assertEquals(probes + search.stats().hashProbes, (long) (Long) this.mbeans.getAttribute(name, "HashProbes"));
+        assertTrue(search.stats().hashHits > 0);
+
+        final double hitRate = (Double) this.mbeans.getAttribute(name, "HashHitRate");
+        assertTrue(hitRate > 0 && hitRate < 1);
+        assertTrue((Double) this.mbeans.getAttribute(name, "NodesPerSecond") > 0);
+        assertTrue((Double) this.mbeans.getAttribute(name, "AverageBranchingFactor") > 1);
+        assertTrue((Integer) this.mbeans.getAttribute(name, "HashFillPermille") > 0);
+    }
+
+    @Test
+    public void searchCountsAsActiveWhileRunning() throws Exception {
+        final Bitboard board = new Bitboard();
+        board.initStartingBoard();
+        final Search search = new Search(board, Search.ALL_FEATURES, new TranspositionTable(1));
+        final int[] active = new int[1];
+        search.setListener((s, depth) -> active[0] = SearchMetrics.global().getActiveSearches());
+        final TimeManager time = TimeManager.moveTime(60_000);
+        time.start();
+        search.search(2, time);
+        assertEquals(1, active[0]);
+        assertEquals(0, SearchMetrics.global().getActiveSearches());
+    }
+
+    @Test
+    public void batchRunsAddToTotals() throws Exception {
+        BatchMetrics.register();
+        final ObjectName name = new ObjectName(BatchMetrics.NAME);
+        final long runs = (Long) this.mbeans.getAttribute(name, "Runs");
+        final long lines = (Long) this.mbeans.getAttribute(name, "Lines");
+        final long errors = (Long) this.mbeans.getAttribute(name, "Errors");
+        final long chunks = (Long) this.mbeans.getAttribute(name, "Chunks");
+
+        final Path input = Files.createTempFile("positions", ".epd");
+        try {
+            final String position = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1\n";
+            Files.write(input, (String.join("", Collections.nCopies(999, position)) + "8/8/8 w\n").getBytes(StandardCharsets.US_ASCII));
+            new BatchProcessor(2, 4096, 4).run(input, new ByteArrayOutputStream(), Jobs.moveCount());
+
+            assertEquals(runs + 1, (long) (Long) this.mbeans.getAttribute(name, "Runs"));
+            assertEquals(lines + 1000, (long) (Long) this.mbeans.getAttribute(name, "Lines"));
+            assertEquals(errors + 1, (long) (Long) this.mbeans.getAttribute(name, "Errors"));
+            assertTrue((Long) this.mbeans.getAttribute(name, "Chunks") > chunks + 1);
+            assertEquals(0, (int) (Integer) this.mbeans.getAttribute(name, "QueueDepth"));
+            assertEquals(0, (int) (Integer) this.mbeans.getAttribute(name, "ActiveRuns"));
+            assertTrue((Double) this.mbeans.getAttribute(name, "MeanChunkLatencyMillis") > 0);
+        } finally {
+            Files.delete(input);
+        }
+    }
+
+    @Test
+    public void serverPublishesWhileRunning() throws Exception {
+        final AnalysisServer server = new AnalysisServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1, 4, 1);
+        server.start();
+        final ObjectName name = server.metricsName();
+        try {
+            assertTrue(this.mbeans.isRegistered(name));
+            assertEquals(0L, this.mbeans.getAttribute(name, "Requests"));
+            assertEquals(0, this.mbeans.getAttribute(name, "QueueDepth"));
+            assertEquals(0.0, this.mbeans.getAttribute(name, "ResultCacheHitRate"));
+            assertEquals(0.0, this.mbeans.getAttribute(name, "LatencyP99Millis"));
+        } finally {
+            server.stop();
+        }
+        assertFalse(this.mbeans.isRegistered(name));
+    }
+}
@@ -0,0 +1,87 @@
+package tests;
+
+import board.Bitboard;
+import board.Move;
+import org.junit.Test;
+import search.CacheStats;
+import server.MoveListCache;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the cache of legal moves against move generation.
+ */
+public class MoveListCacheTest {
+    @Test
+    public void matchesGeneratedMoves() {
+        final MoveListCache cache = new MoveListCache(1 << 14);
+        final Random random = new Random(5);
+        final Bitboard board = new Bitboard();
+        final int[] moves = new int[MoveListCache.MAX_MOVES];
+        int positions = 0;
+        for (int game = 0; game < 50; game++) {
+            board.initStartingBoard();
+            for (int ply = 0; ply < 60; ply++) {
+                final List<Move> legal = board.generateMoves();
+                final int[] expected = legal.stream().mapToInt(Move::encode).toArray();
+                // The first lookup of a position generates, the second hits
+                for (int lookup = 0; lookup < 2; lookup++) {
+                    assertArrayEquals(expected, Arrays.copyOf(moves, cache.legalMoves(board, moves)));
+                }
+                positions++;
+                if (legal.isEmpty()) {
+                    break;
+                }
+                board.applyMove(legal.get(random.nextInt(legal.size())));
+            }
+        }
+        final CacheStats stats = cache.stats();
+        assertTrue(stats.toString(), stats.hits >= positions * 0.95);
+        assertTrue(stats.toString(), stats.size <= cache.capacity());
+    }
+
+    @Test
+    public void verifiesPositionsSharingSignatures() {
+        final MoveListCache cache = new MoveListCache(64);
+        final int[] moves = new int[MoveListCache.MAX_MOVES];
+        // En passant isn't part of the signature when no pawn can capture,
+        // but it is part of the encoded position
+        final Bitboard first = new Bitboard("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1");
+        final Bitboard second = new Bitboard("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq - 0 1");
+        assertEquals(first.signature(), second.signature());
+        cache.legalMoves(first, moves);
+        cache.legalMoves(second, moves);
+        assertEquals(0, cache.stats().hits);
+        assertEquals(2, cache.stats().misses);
+
+        // The move counters don't matter
+        cache.legalMoves(new Bitboard("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq - 7 30"), moves);
+        assertEquals(1, cache.stats().hits);
+    }
+
+    @Test
+    public void staysWithinCapacity() {
+        final MoveListCache cache = new MoveListCache(16);
+        final Random random = new Random(9);
+        final Bitboard board = new Bitboard();
+        final int[] moves = new int[MoveListCache.MAX_MOVES];
+        board.initStartingBoard();
+        for (int ply = 0; ply < 500; ply++) {
+            final int count = cache.legalMoves(board, moves);
+            if (count == 0 || board.halfmoveClock() > 40) {
+                board.initStartingBoard();
+                continue;
+            }
+            board.applyMove(board.createMove(moves[random.nextInt(count)]));
+        }
+        final CacheStats stats = cache.stats();
+        assertEquals(16, stats.capacity);
+        assertTrue(stats.toString(), stats.size <= 16 && stats.evictions > 0);
+    }
+}
@@ -0,0 +1,119 @@
+package tests;
+
+import batch.Jobs;
+import board.Bitboard;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the perft counts of every position in perftsuite.epd, running
+ * positions in parallel.
+ * <p>
+ * Only depths up to the system property perft.depth (default 4) are checked,
+ * and checks not started within perft.seconds (default 60, 0 for no limit)
+ * are skipped. Cheap checks run first, so a time limit only drops the
+ * deepest ones. perft.threads sets the number of threads. Nightly builds
+ * check every depth with -Dperft.depth=7 -Dperft.seconds=0.
+ */
+public class PerftSuiteTest {
+    private static final String SUITE = "perftsuite.epd";
+    private static final int DEFAULT_DEPTH = 4;
+    private static final int DEFAULT_SECONDS = 60;
+
+    @Test
+    public void perftSuite() throws IOException, InterruptedException {
+        final int maxDepth = Integer.getInteger("perft.depth", DEFAULT_DEPTH);
+        final int seconds = Integer.getInteger("perft.seconds", DEFAULT_SECONDS);
+        final int threads = Integer.getInteger("perft.threads", Runtime.getRuntime().availableProcessors());
+
+        final List<Check> checks = new ArrayList<>();
+        for (Check check : load()) {
+            if (check.depth <= maxDepth) {
+                checks.add(check);
+            }
+        }
+        checks.sort(Comparator.comparingLong(check -> check.nodes));
+
+        final long start = System.nanoTime();
+        final long deadline = seconds == 0 ? Long.MAX_VALUE : start + TimeUnit.SECONDS.toNanos(seconds);
+        final Queue<String> failures = new ConcurrentLinkedQueue<>();
+        final AtomicLong skipped = new AtomicLong();
+        final AtomicLong nodes = new AtomicLong();
+        final ThreadLocal<Bitboard> boards = ThreadLocal.withInitial(Bitboard::new);
+
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (Check check : checks) {
+            pool.execute(() -> {
+                if (System.nanoTime() > deadline) {
+                    skipped.incrementAndGet();
+                    return;
+                }
+                final Bitboard board = boards.get();
+                board.initFen(check.fen, 0);
+                final long count = Jobs.perft(board, check.depth);
+                nodes.addAndGet(count);
+                if (count != check.nodes) {
+                    failures.add(String.format("%s depth %d: expected %d, got %d", check.fen, check.depth, check.nodes, count));
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+        final double time = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Perft suite: %d checks, %d skipped, %d nodes in %.3fs (%.0f nodes/s)\n",
+                checks.size(), skipped.get(), nodes.get(), time, nodes.get() / time);
+        assertTrue(String.join("\n", failures), failures.isEmpty());
+    }
+
+    /**
+     * Reads the expected counts from the suite, in the form
+     * "FEN ;D1 20 ;D2 400". Lines starting with # are comments.
+     */
+    private static List<Check> load() throws IOException {
+        final List<Check> checks = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                PerftSuiteTest.class.getResourceAsStream(SUITE), StandardCharsets.US_ASCII))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                final String[] fields = line.split(";");
+                if (line.startsWith("#") || fields.length < 2) {
+                    continue;
+                }
+                final String fen = fields[0].trim();
+                for (int i = 1; i < fields.length; i++) {
+                    final String[] count = fields[i].trim().split(" ");
+                    checks.add(new Check(fen, Integer.parseInt(count[0].substring(1)), Long.parseLong(count[1])));
+                }
+            }
+        }
+        return checks;
+    }
+
+    private static class Check {
+        final String fen;
+        final int depth;
+        final long nodes;
+
+        Check(String fen, int depth, long nodes) {
+            this.fen = fen;
+            this.depth = depth;
+            this.nodes = nodes;
+        }
+    }
+}
@@ -1,9 +1,7 @@
 package tests;
 
+import batch.Jobs;
 import board.Bitboard;
-import board.Move;
-
-import java.util.List;
 
 /**
  * PERFormance Test.
@@ -18,14 +16,14 @@ public class PerftTimingTest {
         board.initStartingBoard();
 
         for (int i = 0; i < WARMUP; i++) {
-            perft(board, DEPTH);
+            Jobs.perft(board, DEPTH);
             System.out.println("WARMUP: " + i);
         }
 
         long start = System.currentTimeMillis();
         for (int i = 0; i < TRIALS; i++) {
             long trialStart = System.currentTimeMillis();
-            int nodes = perft(board, DEPTH);
+            long nodes = Jobs.perft(board, DEPTH);
             long trialTime = System.currentTimeMillis() - trialStart;
 
             System.out.printf("Nodes: %d, Time: %.3f\n", nodes, trialTime / 1000.0);
@@ -33,24 +31,6 @@ public class PerftTimingTest {
         long time = System.currentTimeMillis() - start;
 
         System.out.printf("Average: %.3fs\n", time / 1000.0 / TRIALS);
-    }
-
-    private static int perft(Bitboard board, int depth) {
-        if (depth <= 0) {
-            return 1;
-        }
-
-        List<Move> moves = board.generateMoves();
-        if (depth == 1) {
-            return moves.size();
-        }
-
-        int nodes = 0;
-        for (Move m : moves) {
-            board.applyMove(m);
-            nodes += perft(board, depth - 1);
-            board.undoMove();
-        }
-        return nodes;
+        System.out.printf("Allocated: %.2f bytes/node\n", AllocationBudget.bytesPerNode(() -> Jobs.perft(board, DEPTH)));
     }
 }
@@ -0,0 +1,79 @@
+package tests;
+
+import board.Bitboard;
+import board.Move;
+import pgn.PgnReader;
+import pgn.PgnVisitor;
+import pgn.San;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures how many plies per second are replayed from a PGN file. Given no
+ * file, one is written with random games first.
+ */
+public class PgnBench {
+    private static final int ROUNDS = 5;
+    private static final int GAMES = 20_000;
+    private static final int MAX_PLIES = 200;
+
+    public static void main(String[] args) throws IOException {
+        final Path path;
+        if (args.length > 0) {
+            path = Paths.get(args[0]);
+        } else {
+            path = Files.createTempFile("bench", ".pgn");
+            path.toFile().deleteOnExit();
+            writeRandomGames(path, GAMES, new Random(0));
+        }
+        final long bytes = Files.size(path);
+
+        System.out.printf("%-6s %10s %12s %12s %8s\n", "Round", "Games", "Plies", "Plies/s", "MB/s");
+        for (int round = 1; round <= ROUNDS; round++) {
+            final long start = System.nanoTime();
+            final PgnReader reader;
+            try (InputStream in = Files.newInputStream(path)) {
+                reader = new PgnReader(in);
+                reader.readAll(new PgnVisitor() {
+                });
+            }
+            final double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%-6d %10d %12d %12.0f %8.1f\n", round, reader.games(), reader.plies(),
+                    reader.plies() / seconds, bytes / seconds / (1024 * 1024));
+        }
+    }
+
+    private static void writeRandomGames(Path path, int games, Random random) throws IOException {
+        final Bitboard board = new Bitboard();
+        final StringBuilder s = new StringBuilder();
+        try (Writer out = Files.newBufferedWriter(path, StandardCharsets.US_ASCII)) {
+            for (int game = 1; game <= games; game++) {
+                board.initStartingBoard();
+                s.setLength(0);
+                s.append("[Event \"Random game ").append(game).append("\"]\n\n");
+                for (int ply = 0; ply < MAX_PLIES; ply++) {
+                    final List<Move> moves = board.generateMoves();
+                    if (moves.isEmpty()) {
+                        break;
+                    }
+                    if ((ply & 1) == 0) {
+                        s.append(ply / 2 + 1).append(". ");
+                    }
+                    final Move move = moves.get(random.nextInt(moves.size()));
+                    San.append(board, move, s).append(' ');
+                    board.applyMove(move);
+                }
+                s.append("*\n\n");
+                out.write(s.toString());
+            }
+        }
+    }
+}
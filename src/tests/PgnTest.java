@@ -0,0 +1,189 @@
+package tests;
+
+import board.Bitboard;
+import board.Move;
+import org.junit.Test;
+import pgn.PgnReader;
+import pgn.PgnVisitor;
+import pgn.San;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks reading and writing moves in SAN and reading PGN files.
+ */
+public class PgnTest {
+    private static final String GAMES = ""
+            + "[Event \"Scholar's mate\"]\n"
+            + "[White \"A \\\"quoted\\\" name\"]\n"
+            + "\n"
+            + "1. e4 e5 2. Bc4 {a comment (with a parenthesis} Nc6 (2... Nf6 3. d3 (3. Ng5 ; nested\n"
+            + ") d5) 3.Qh5 $2 Nf6?? 4. Qxf7# 1-0\n"
+            + "\n"
+            + "[Event \"Illegal move\"]\n"
+            + "1. e4 e5 2. Ke5 Nc6 3. Nf3 0-1\n"
+            + "\n"
+            + "[Event \"From a position\"]\n"
+            + "[FEN \"r3k2r/1P6/8/3pP3/8/8/8/R3K2R w KQkq d6 0 1\"]\n"
+            + "\n"
+            + "1. exd6 O-O 2. bxa8=Q Rxa8 3. 0-0-0 1/2-1/2\n"
+            + "[Event \"No result\"]\n"
+            + "1. d4 d5\n";
+
+    @Test
+    public void skipsTextAfterResults() throws IOException {
+        final String games = ""
+                + "1. e4 e5 1-0 {a comment after the result} ) $1\n"
+                + "; a line comment\n"
+                + "(1. d4) }\n"
+                + "[Event \"Second\"]\n"
+                + "1. d4 * {trailing}\n";
+        final List<String> results = new ArrayList<>();
+        final PgnReader reader = new PgnReader(new ByteArrayInputStream(games.getBytes(StandardCharsets.UTF_8)));
+        reader.readAll(new PgnVisitor() {
+            @Override
+            public void endGame(Bitboard board, String result) {
+                results.add(result);
+            }
+        });
+
+        assertEquals(2, reader.games());
+        assertEquals(0, reader.errors());
+        assertEquals(3, reader.plies());
+        assertEquals(List.of("1-0", "*"), results);
+    }
+
+    @Test
+    public void readsGames() throws IOException {
+        final List<String> events = new ArrayList<>();
+        final PgnReader reader = new PgnReader(new ByteArrayInputStream(GAMES.getBytes(StandardCharsets.UTF_8)));
+        reader.readAll(new PgnVisitor() {
+            @Override
+            public void tag(String name, String value) {
+                events.add(name + "=" + value);
+            }
+
+            @Override
+            public void endGame(Bitboard board, String result) {
+                events.add(result + " " + board.fen());
+            }
+
+            @Override
+            public void error(long game, String message) {
+                events.add("error " + game + " " + message);
+            }
+        });
+
+        assertEquals(4, reader.games());
+        assertEquals(1, reader.errors());
+        assertEquals(7 + 2 + 5 + 2, reader.plies());
+
+        int i = 0;
+        assertEquals("Event=Scholar's mate", events.get(i++));
+        assertEquals("White=A \"quoted\" name", events.get(i++));
+        assertEquals("1-0 r1bqkb1r/pppp1Qpp/2n2n2/4p3/2B1P3/8/PPPP1PPP/RNB1K1NR b KQkq - 0 4", events.get(i++));
+        assertEquals("Event=Illegal move", events.get(i++));
+        assertEquals("error 2 line 8: Illegal move: Ke5", events.get(i++));
+        assertEquals("Event=From a position", events.get(i++));
+        assertEquals("FEN=r3k2r/1P6/8/3pP3/8/8/8/R3K2R w KQkq d6 0 1", events.get(i++));
+        assertEquals("1/2-1/2 r5k1/8/3P4/8/8/8/8/2KR3R b - - 1 3", events.get(i++));
+        assertEquals("Event=No result", events.get(i++));
+        assertEquals("* rnbqkbnr/ppp1pppp/8/3p4/3P4/8/PPP1PPPP/RNBQKBNR w KQkq d6 0 2", events.get(i++));
+        assertEquals(i, events.size());
+    }
+
+    @Test
+    public void writesSan() {
+        final Bitboard start = new Bitboard();
+        start.initStartingBoard();
+        assertEquals("Nf3", San.format(start, BitboardTest.find(start, "g1f3")));
+        assertEquals("e4", San.format(start, BitboardTest.find(start, "e2e4")));
+
+        final Bitboard special = new Bitboard("r3k2r/1P6/8/3pP3/8/8/8/R3K2R w KQkq d6 0 1");
+        assertEquals("exd6", San.format(special, BitboardTest.find(special, "e5d6")));
+        assertEquals("bxa8=Q+", San.format(special, BitboardTest.find(special, "b7a8Q")));
+        assertEquals("b8=N", San.format(special, BitboardTest.find(special, "b7b8N")));
+        assertEquals("O-O-O", San.format(special, BitboardTest.find(special, "e1c1")));
+        assertEquals("Rxa8+", San.format(special, BitboardTest.find(special, "a1a8")));
+
+        // Disambiguation by file, rank, or both
+        final Bitboard queens = new Bitboard("5k2/8/8/8/Q6Q/8/8/Q3K3 w - - 0 1");
+        assertEquals("Qa4d4", San.format(queens, BitboardTest.find(queens, "a4d4")));
+        assertEquals("Q1d4", San.format(queens, BitboardTest.find(queens, "a1d4")));
+        assertEquals("Qhd4", San.format(queens, BitboardTest.find(queens, "h4d4")));
+        assertEquals("Qa4d4", San.format(queens, San.parse(queens, "Qa4d4")));
+
+        // A pinned knight doesn't need to be told apart
+        final Bitboard pinned = new Bitboard("4k3/4r3/8/8/8/1N6/4N3/4K3 w - - 0 1");
+        assertEquals("Nd4", San.format(pinned, BitboardTest.find(pinned, "b3d4")));
+
+        final Bitboard mate = new Bitboard("6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1");
+        assertEquals("Ra8#", San.format(mate, BitboardTest.find(mate, "a1a8")));
+    }
+
+    @Test
+    public void parsesEveryLegalMove() {
+        final Random random = new Random(0);
+        final String[] fens = {
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+                "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+                "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+                "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+        };
+
+        for (String fen : fens) {
+            for (int game = 0; game < 20; game++) {
+                final Bitboard board = new Bitboard(fen);
+                for (int ply = 0; ply < 100; ply++) {
+                    final List<Move> moves = board.generateMoves();
+                    if (moves.isEmpty()) {
+                        break;
+                    }
+
+                    final Set<String> written = new HashSet<>();
+                    for (Move move : moves) {
+                        final String san = San.format(board, move);
+                        assertEquals(san, move, San.parse(board, san));
+                        assertEquals(san, true, written.add(san));
+
+                        board.applyMove(move);
+                        final boolean check = board.inCheck(board.whitesTurn() ? 0 : 1);
+                        final boolean noMoves = board.generateMoves().isEmpty();
+                        board.undoMove();
+                        assertEquals(san, check ? (noMoves ? "#" : "+") : "", san.replaceAll("[^+#]", ""));
+                    }
+                    board.applyMove(moves.get(random.nextInt(moves.size())));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void acceptsSanVariants() {
+        final Bitboard board = new Bitboard("r3k2r/1P6/8/3pP3/8/8/8/R3K2R w KQkq d6 0 1");
+        assertEquals("b7b8Q", San.parse(board, "b8Q").toString());
+        assertEquals("b7a8R", San.parse(board, "bxa8=R+!?").toString());
+        assertEquals("e1g1", San.parse(board, "0-0").toString());
+        assertEquals("e5d6", San.parse(board, "exd6").toString());
+        assertEquals("e5d6", San.parse(board, "ed6").toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAmbiguousMoves() {
+        San.parse(new Bitboard("5k2/8/8/8/Q6Q/8/8/Q3K3 w - - 0 1"), "Qd4");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMalformedMoves() {
+        San.parse(new Bitboard(), "Nz9");
+    }
+}
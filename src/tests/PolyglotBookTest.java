@@ -0,0 +1,85 @@
+package tests;
+
+import board.Bitboard;
+import board.Move;
+import book.PolyglotBook;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks looking up moves in Polyglot opening books.
+ */
+public class PolyglotBookTest {
+    @Test
+    public void findsBookMoves() throws IOException {
+        Bitboard start = new Bitboard();
+        start.initStartingBoard();
+        Bitboard castling = new Bitboard("r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1");
+
+        List<long[]> entries = new ArrayList<>();
+        entries.add(entry(start, "e2e4", 10));
+        entries.add(entry(start, "d2d4", 30));
+        entries.add(entry(start, "g1f3", 0));
+        entries.add(entry(castling, "e1g1", 5));
+        // Unrelated keys on both sides, in unsigned order
+        entries.add(new long[]{0x0000000000000001L, 0, 1});
+        entries.add(new long[]{0xFFFFFFFFFFFFFFFFL, 0, 1});
+        entries.sort((a, b) -> Long.compareUnsigned(a[0], b[0]));
+
+        Path path = write(entries);
+        try (PolyglotBook book = new PolyglotBook(path)) {
+            assertEquals(entries.size(), book.size());
+            assertEquals("d2d4", book.bestMove(start).toString());
+
+            Move castle = book.bestMove(castling);
+            assertEquals("e1g1", castle.toString());
+            assertEquals(1, castle.castleType());
+
+            // Moves are picked in proportion to their weight, and never with
+            // a weight of 0
+            Random random = new Random(0);
+            int e4 = 0;
+            for (int i = 0; i < 4000; i++) {
+                String move = book.randomMove(start, random).toString();
+                assertEquals(true, move.equals("e2e4") || move.equals("d2d4"));
+                if (move.equals("e2e4")) {
+                    e4++;
+                }
+            }
+            assertEquals(1000, e4, 100);
+
+            Bitboard other = new Bitboard("4k3/8/8/8/8/8/8/4K3 w - - 0 1");
+            assertEquals(-1, book.find(other.signature()));
+            assertNull(book.bestMove(other));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private static long[] entry(Bitboard board, String move, int weight) {
+        return new long[]{board.signature(), PolyglotBook.fromMove(BitboardTest.find(board, move)), weight};
+    }
+
+    private static Path write(List<long[]> entries) throws IOException {
+        Path path = Files.createTempFile("book", ".bin");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(path))) {
+            for (long[] entry : entries) {
+                out.writeLong(entry[0]);
+                out.writeShort((int) entry[1]);
+                out.writeShort((int) entry[2]);
+                out.writeInt(0);
+            }
+        }
+        return path;
+    }
+}
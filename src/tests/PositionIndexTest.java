@@ -0,0 +1,125 @@
+package tests;
+
+import board.Bitboard;
+import board.Move;
+import book.PositionIndex;
+import book.PositionIndexBuilder;
+import org.junit.Test;
+import pgn.San;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Checks building and searching position indexes.
+ */
+public class PositionIndexTest {
+    private static final int MAX_PLIES = 12;
+    private static final String[] RESULTS = {"1-0", "1/2-1/2", "0-1", "*"};
+
+    @Test
+    public void indexMatchesGames() throws IOException {
+        final Random random = new Random(0);
+        // For each position and move, the number of games with each result
+        final Map<Long, Map<Integer, long[]>> expected = new HashMap<>();
+        final Path directory = Files.createTempDirectory("index");
+        final List<Path> inputs = new ArrayList<>();
+        final Path output = directory.resolve("test.idx");
+
+        try {
+            for (int file = 0; file < 3; file++) {
+                final Path input = directory.resolve(file + ".pgn");
+                inputs.add(input);
+                try (Writer out = Files.newBufferedWriter(input, StandardCharsets.US_ASCII)) {
+                    for (int game = 0; game < 200; game++) {
+                        out.write(randomGame(random, expected));
+                    }
+                    // A malformed game is skipped
+                    out.write("[Event \"Bad\"]\n\n1. e4 e5 2. Ke3 1-0\n\n");
+                }
+            }
+
+            final PositionIndexBuilder builder = new PositionIndexBuilder(3, MAX_PLIES, 50, directory);
+            final long entries = builder.build(inputs, output);
+            assertEquals(603, builder.games());
+            assertEquals(3, builder.errors());
+
+            int size = 0;
+            for (Map<Integer, long[]> moves : expected.values()) {
+                size += moves.size();
+            }
+            assertEquals(size, entries);
+
+            try (PositionIndex index = new PositionIndex(output)) {
+                assertEquals(size, index.size());
+                for (long i = 0; i < index.size(); i++) {
+                    if (i > 0) {
+                        // Sorted by key, then by move
+                        final int order = Long.compareUnsigned(index.key(i - 1), index.key(i));
+                        assertEquals(true, order < 0 || (order == 0 && index.move(i - 1) < index.move(i)));
+                    }
+                    final long[] counts = expected.get(index.key(i)).get(index.move(i));
+                    assertEquals(counts[0], index.whiteWins(i));
+                    assertEquals(counts[1], index.draws(i));
+                    assertEquals(counts[2], index.blackWins(i));
+                    assertEquals(counts[0] + counts[1] + counts[2] + counts[3], index.games(i));
+                }
+
+                final Bitboard start = new Bitboard();
+                start.initStartingBoard();
+                long games = 0;
+                final long first = index.find(start.signature());
+                for (long i = first; i < index.size() && index.key(i) == start.signature(); i++) {
+                    assertNotNull(PositionIndex.toMove(start, index.move(i)));
+                    games += index.games(i);
+                }
+                long expectedGames = 0;
+                for (long[] counts : expected.get(start.signature()).values()) {
+                    expectedGames += counts[0] + counts[1] + counts[2] + counts[3];
+                }
+                assertEquals(expectedGames, games);
+                assertEquals(-1, index.find(new Bitboard("4k3/8/8/8/8/8/8/4K3 w - - 0 1").signature()));
+            }
+        } finally {
+            for (Path input : inputs) {
+                Files.deleteIfExists(input);
+            }
+            Files.deleteIfExists(output);
+            Files.delete(directory);
+        }
+    }
+
+    private static String randomGame(Random random, Map<Long, Map<Integer, long[]>> expected) {
+        final int result = random.nextInt(RESULTS.length);
+        final Bitboard board = new Bitboard();
+        board.initStartingBoard();
+        final StringBuilder s = new StringBuilder("[Event \"Random\"]\n\n");
+        final int plies = random.nextInt(2 * MAX_PLIES);
+        for (int ply = 0; ply < plies; ply++) {
+            final List<Move> moves = board.generateMoves();
+            if (moves.isEmpty()) {
+                break;
+            }
+            // Few choices early on, so that games share positions
+            final Move move = moves.get(random.nextInt(Math.min(moves.size(), 3)));
+            if (ply < MAX_PLIES) {
+                expected.computeIfAbsent(board.signature(), k -> new HashMap<>())
+                        .computeIfAbsent(move.encode(), k -> new long[4])[result]++;
+            }
+            San.append(board, move, s).append(' ');
+            board.applyMove(move);
+        }
+        return s.append(RESULTS[result]).append("\n\n").toString();
+    }
+}
@@ -0,0 +1,133 @@
+package tests;
+
+import org.junit.Test;
+import search.CacheStats;
+import search.FrequencySketch;
+import search.ResultCache;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the cache of finished analyses and the sketch that decides what it
+ * keeps.
+ */
+public class ResultCacheTest {
+    @Test
+    public void deeperResultsAnswerShallowerLookups() {
+        final ResultCache cache = new ResultCache(1024);
+        final long key = 0x123456789ABCDEFL;
+        assertEquals(0, cache.get(key, 1));
+
+        cache.put(key, 0x1234, -250, 6);
+        final long data = cache.get(key, 6);
+        assertEquals(0x1234, ResultCache.move(data));
+        assertEquals(-250, ResultCache.score(data));
+        assertEquals(6, ResultCache.depth(data));
+        assertEquals(data, cache.get(key, 3));
+        assertEquals(0, cache.get(key, 7));
+
+        // A shallower result doesn't replace a deeper one
+        cache.put(key, 0x4321, 10, 4);
+        assertEquals(0x1234, ResultCache.move(cache.get(key, 1)));
+        cache.put(key, 0x4321, 10, 8);
+        assertEquals(0x4321, ResultCache.move(cache.get(key, 8)));
+
+        final CacheStats stats = cache.stats();
+        assertEquals(4, stats.hits);
+        assertEquals(2, stats.misses);
+        assertEquals(1, stats.size);
+
+        cache.clear();
+        assertEquals(0, cache.get(key, 1));
+        assertEquals(0, cache.stats().size);
+    }
+
+    @Test
+    public void popularPositionsSurviveScans() {
+        final ResultCache cache = new ResultCache(4096);
+        final Random random = new Random(1);
+        final long[] popular = new long[cache.capacity() / 4];
+        for (int i = 0; i < popular.length; i++) {
+            popular[i] = random.nextLong();
+            for (int j = 0; j < 4; j++) {
+                cache.get(popular[i], 1);
+            }
+            cache.put(popular[i], i + 1, 0, 1);
+        }
+        // Many more positions than fit, each seen once
+        for (int i = 0; i < cache.capacity() * 8; i++) {
+            final long key = random.nextLong();
+            cache.get(key, 1);
+            cache.put(key, 1, 0, 1);
+        }
+
+        int kept = 0;
+        for (int i = 0; i < popular.length; i++) {
+            if (ResultCache.move(cache.get(popular[i], 1)) == i + 1) {
+                kept++;
+            }
+        }
+        assertTrue("Kept " + kept + " of " + popular.length, kept > popular.length * 9 / 10);
+        final CacheStats stats = cache.stats();
+        assertTrue(stats.toString(), stats.evictions > 0 && stats.rejections > 0);
+        assertTrue(stats.toString(), stats.size <= cache.capacity());
+    }
+
+    @Test
+    public void sketchCountsAndAges() {
+        final FrequencySketch sketch = new FrequencySketch(64);
+        for (int i = 0; i < 5; i++) {
+            sketch.increment(42);
+        }
+        assertTrue(sketch.frequency(42) >= 5);
+        for (int i = 0; i < 100; i++) {
+            sketch.increment(7);
+        }
+        assertEquals(FrequencySketch.MAX_FREQUENCY, sketch.frequency(7));
+        // Enough other increments to halve the counters
+        for (long key = 1000; key < 1000 + 64 * 10; key++) {
+            sketch.increment(key);
+        }
+        assertTrue(sketch.frequency(7) < FrequencySketch.MAX_FREQUENCY);
+    }
+
+    @Test
+    public void readersNeverSeeTornEntries() throws Exception {
+        final ResultCache cache = new ResultCache(256);
+        final int threads = 4;
+        final AtomicLong wrong = new AtomicLong();
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            final Future<?>[] futures = new Future<?>[threads];
+            for (int t = 0; t < threads; t++) {
+                final int seed = t;
+                futures[t] = pool.submit(() -> {
+                    final Random random = new Random(seed);
+                    for (int i = 0; i < 200_000; i++) {
+                        // Keys that collide often, with data derived from them
+                        final long key = random.nextInt(2048) * 0x9E3779B97F4A7C15L;
+                        final long data = cache.get(key, 1);
+                        if (data != 0 && ResultCache.score(data) != (int) (key >>> 40)) {
+                            wrong.incrementAndGet();
+                        }
+                        cache.put(key, (int) key & 0xFFFF, (int) (key >>> 40), 1 + random.nextInt(20));
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(0, wrong.get());
+        assertTrue(cache.stats().size <= cache.capacity());
+    }
+}
@@ -0,0 +1,150 @@
+package tests;
+
+import board.Bitboard;
+import search.Search;
+import search.SearchStats;
+import search.TimeManager;
+
+import java.util.Arrays;
+
+/**
+ * Measures the node count and time to depth of the search on a set of bench
+ * positions, with each search feature disabled in turn, and then how long
+ * searches take to return after their deadline or a stop.
+ */
+public class SearchBench {
+    private static final int DEPTH = 6;
+    private static final int WARMUP = 1;
+    // Searches timed for each latency, and how long each runs before it is
+    // stopped
+    private static final int LATENCY_TRIALS = 20;
+    private static final long LATENCY_SEARCH_MILLIS = 50;
+    private static final int LATENCY_THREADS = 4;
+
+    static final String[] POSITIONS = {
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+            "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+    };
+
+    private static final String[] FEATURE_NAMES = {"PVS", "Aspiration", "LMR", "Null move", "Futility", "Razoring"};
+    private static final int[] FEATURES = {
+            Search.PVS, Search.ASPIRATION, Search.LATE_MOVE_REDUCTIONS, Search.NULL_MOVE, Search.FUTILITY, Search.RAZORING
+    };
+
+    public static void main(String[] args) throws InterruptedException {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : DEPTH;
+
+        for (int i = 0; i < WARMUP; i++) {
+            run(Search.ALL_FEATURES, depth);
+        }
+
+        System.out.printf("%-22s %12s %10s %s\n", "Configuration", "Nodes", "Time", "Time to depth");
+        report("All features", run(Search.ALL_FEATURES, depth), depth);
+        for (int i = 0; i < FEATURES.length; i++) {
+            report("Without " + FEATURE_NAMES[i], run(Search.ALL_FEATURES & ~FEATURES[i], depth), depth);
+        }
+        for (int i = 0; i < FEATURES.length; i++) {
+            report("Only " + FEATURE_NAMES[i], run(FEATURES[i], depth), depth);
+        }
+        report("No features", run(Search.NO_FEATURES, depth), depth);
+
+        System.out.println();
+        System.out.printf("%-22s %9s %9s %9s\n", "Latency", "Min", "Median", "Max");
+        reportLatency("Hard deadline", deadlineLatencies());
+        reportLatency("Stop, " + LATENCY_THREADS + " threads", stopLatencies());
+    }
+
+    /**
+     * Times how long after its hard deadline a search returns, in
+     * milliseconds.
+     */
+    private static double[] deadlineLatencies() {
+        final double[] latencies = new double[LATENCY_TRIALS];
+        final Search search = new Search(new Bitboard(POSITIONS[1]));
+        for (int i = 0; i < LATENCY_TRIALS; i++) {
+            final TimeManager time = new TimeManager(-1, LATENCY_SEARCH_MILLIS);
+            // Started here, so the deadline counts the search's setup too
+            time.start();
+            final long start = System.nanoTime();
+            search.search(SearchStats.MAX_DEPTH, time);
+            latencies[i] = (System.nanoTime() - start) / 1e6 - LATENCY_SEARCH_MILLIS;
+        }
+        return latencies;
+    }
+
+    /**
+     * Times how long after a stop every search sharing the time manager has
+     * returned, in milliseconds.
+     */
+    private static double[] stopLatencies() throws InterruptedException {
+        final double[] latencies = new double[LATENCY_TRIALS];
+        for (int i = 0; i < LATENCY_TRIALS; i++) {
+            final TimeManager time = TimeManager.infinite();
+            final Thread[] workers = new Thread[LATENCY_THREADS];
+            for (int t = 0; t < workers.length; t++) {
+                final Search search = new Search(new Bitboard(POSITIONS[1]));
+                workers[t] = new Thread(() -> search.search(SearchStats.MAX_DEPTH, time));
+                workers[t].start();
+            }
+            Thread.sleep(LATENCY_SEARCH_MILLIS);
+            final long stop = System.nanoTime();
+            time.stop();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            latencies[i] = (System.nanoTime() - stop) / 1e6;
+        }
+        return latencies;
+    }
+
+    private static void reportLatency(String name, double[] latencies) {
+        Arrays.sort(latencies);
+        System.out.printf("%-22s %7.3fms %7.3fms %7.3fms\n", name, latencies[0], latencies[latencies.length / 2],
+                latencies[latencies.length - 1]);
+    }
+
+    /**
+     * Searches every bench position, returning the combined statistics.
+     */
+    private static SearchStats run(int features, int depth) {
+        SearchStats total = new SearchStats();
+        for (String fen : POSITIONS) {
+            Search search = new Search(new Bitboard(fen), features);
+            search.search(depth);
+
+            SearchStats stats = search.stats();
+            total.completedDepth = stats.completedDepth;
+            total.nodes += stats.nodes;
+            total.quiescenceNodes += stats.quiescenceNodes;
+            total.hashProbes += stats.hashProbes;
+            total.hashHits += stats.hashHits;
+            total.hashCutoffs += stats.hashCutoffs;
+            total.pvsResearches += stats.pvsResearches;
+            total.aspirationFailures += stats.aspirationFailures;
+            total.lateMoveReductions += stats.lateMoveReductions;
+            total.lateMoveResearches += stats.lateMoveResearches;
+            total.nullMoveCutoffs += stats.nullMoveCutoffs;
+            total.futilityPrunes += stats.futilityPrunes;
+            total.razorCutoffs += stats.razorCutoffs;
+            total.tablebaseHits += stats.tablebaseHits;
+            for (int d = 1; d <= depth; d++) {
+                total.depthNodes[d] += stats.depthNodes[d];
+                total.depthTimes[d] += stats.depthTimes[d];
+            }
+        }
+        return total;
+    }
+
+    private static void report(String name, SearchStats stats, int depth) {
+        StringBuilder times = new StringBuilder();
+        for (int d = 1; d <= depth; d++) {
+            times.append(String.format(" d%d=%.3fs", d, stats.depthTimes[d] / 1e9));
+        }
+        System.out.printf("%-22s %12d %9.3fs%s\n", name, stats.nodes, stats.depthTimes[depth] / 1e9, times);
+        System.out.println("    " + stats);
+    }
+}
@@ -0,0 +1,172 @@
+package tests;
+
+import board.Bitboard;
+import board.Move;
+import org.junit.Test;
+import search.Search;
+import search.SearchStats;
+import search.TimeManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks search results and how quickly searches stop.
+ */
+public class SearchTest {
+    private static final String KIWIPETE = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+    // Allowed delay between a deadline or stop and the search returning. The
+    // real latency is a fraction of a millisecond and is measured by
+    // SearchBench; this bound only catches a search that misses its deadline
+    // or a stop, and leaves room for a busy machine.
+    private static final double LATENCY_MILLIS = 50;
+    // Latencies are the best of a few runs, so that a garbage collection or
+    // the scheduler doesn't fail the test
+    private static final int TRIALS = 3;
+
+    @Test
+    public void findsMateInOne() {
+        Bitboard board = new Bitboard("6k1/5ppp/8/8/8/8/5PPP/R5K1 w - - 0 1");
+        String fen = board.fen();
+
+        Search search = new Search(board);
+        Move move = search.search(4);
+
+        assertEquals("a1a8", move.toString());
+        assertEquals(Search.MATE - 1, search.bestScore());
+        assertEquals(fen, board.fen());
+    }
+
+    @Test
+    public void everyFeatureFindsMate() {
+        int[] features = {Search.NO_FEATURES, Search.PVS, Search.ASPIRATION, Search.LATE_MOVE_REDUCTIONS,
+                Search.NULL_MOVE, Search.FUTILITY, Search.RAZORING, Search.ALL_FEATURES};
+        for (int feature : features) {
+            Search search = new Search(new Bitboard("6k1/5ppp/8/8/8/8/5PPP/R5K1 w - - 0 1"), feature);
+            assertEquals("a1a8", search.search(3).toString());
+        }
+    }
+
+    @Test
+    public void eachPruningWorksOnItsOwn() {
+        // Each feature is measured on its own, so none may depend on the
+        // zero windows that only PVS produces
+        Search search = new Search(new Bitboard(KIWIPETE), Search.NULL_MOVE);
+        search.search(5);
+        assertTrue(search.stats().nullMoveCutoffs > 0);
+
+        search = new Search(new Bitboard(KIWIPETE), Search.FUTILITY);
+        search.search(4);
+        assertTrue(search.stats().futilityPrunes > 0);
+
+        search = new Search(new Bitboard(KIWIPETE), Search.RAZORING);
+        search.search(4);
+        assertTrue(search.stats().razorCutoffs > 0);
+
+        search = new Search(new Bitboard(KIWIPETE), Search.NO_FEATURES);
+        search.search(4);
+        assertTrue(search.stats().hashCutoffs > 0);
+        assertEquals(0, search.stats().nullMoveCutoffs + search.stats().futilityPrunes + search.stats().razorCutoffs);
+    }
+
+    @Test
+    public void honoursHardDeadline() throws InterruptedException {
+        warmUp();
+        Bitboard board = new Bitboard(KIWIPETE);
+        String fen = board.fen();
+        Search search = new Search(board);
+
+        // The clock only starts when the search does
+        TimeManager time = new TimeManager(-1, 100);
+        Thread.sleep(50);
+        double latency = Double.MAX_VALUE;
+        for (int i = 0; i < TRIALS; i++) {
+            time.start();
+            long start = System.nanoTime();
+            assertNotNull(search.search(SearchStats.MAX_DEPTH, time));
+            latency = Math.min(latency, (System.nanoTime() - start) / 1e6 - 100);
+            assertEquals(fen, board.fen());
+        }
+        assertTrue(String.format("Returned %.2fms after the deadline", latency), latency < LATENCY_MILLIS);
+    }
+
+    @Test
+    public void clockStartsWithSearch() throws InterruptedException {
+        TimeManager time = new TimeManager(-1, 100);
+        Thread.sleep(150);
+        Search search = new Search(new Bitboard(KIWIPETE));
+        search.search(3, time);
+        assertEquals(3, search.stats().completedDepth);
+    }
+
+    @Test
+    public void stopReachesEveryThread() throws InterruptedException {
+        warmUp();
+        double latency = Double.MAX_VALUE;
+        for (int trial = 0; trial < TRIALS; trial++) {
+            final int threads = 4;
+            final TimeManager time = TimeManager.infinite();
+            final List<Search> searches = new ArrayList<>();
+            final List<Thread> workers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                final Search search = new Search(new Bitboard(KIWIPETE));
+                searches.add(search);
+                Thread worker = new Thread(() -> search.search(SearchStats.MAX_DEPTH, time));
+                workers.add(worker);
+                worker.start();
+            }
+
+            Thread.sleep(200);
+            // The best move so far is available while the search is running
+            for (Search search : searches) {
+                assertNotNull(search.bestMove());
+            }
+
+            long stop = System.nanoTime();
+            time.stop();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            latency = Math.min(latency, (System.nanoTime() - stop) / 1e6);
+        }
+        assertTrue(String.format("Took %.2fms to stop", latency), latency < LATENCY_MILLIS);
+    }
+
+    @Test
+    public void nodeLimitStopsEveryThread() throws InterruptedException {
+        final long limit = 200_000;
+        final TimeManager time = TimeManager.infinite().limitNodes(limit);
+        final Search first = new Search(new Bitboard(KIWIPETE));
+        final Search second = new Search(new Bitboard(KIWIPETE));
+        final Thread firstWorker = new Thread(() -> first.search(SearchStats.MAX_DEPTH, time));
+        final Thread secondWorker = new Thread(() -> second.search(SearchStats.MAX_DEPTH, time));
+
+        // The second search starts well behind, so only the first can reach
+        // the limit
+        firstWorker.start();
+        while (first.stats().nodes < limit / 2 && firstWorker.isAlive()) {
+            Thread.sleep(1);
+        }
+        secondWorker.start();
+        firstWorker.join();
+        secondWorker.join();
+
+        assertEquals(limit, first.stats().nodes);
+        assertTrue("Second search visited " + second.stats().nodes, second.stats().nodes < limit);
+        assertTrue(time.stopped());
+    }
+
+    /**
+     * Searches long enough for the search to be compiled, so that latencies
+     * measure the search rather than the JIT.
+     */
+    private static void warmUp() {
+        for (int i = 0; i < 3; i++) {
+            new Search(new Bitboard(KIWIPETE)).search(5);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package tests;
+
+import batch.SignatureSet;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Measures how fast signatures are added to and looked up in a
+ * {@link SignatureSet}, with and without a Bloom filter, and how much memory
+ * each entry takes compared with a {@code HashSet<Long>}.
+ */
+public class SignatureSetBench {
+    private static final long ENTRIES = 20_000_000;
+    private static final int HASH_SET_ENTRIES = 2_000_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        final long entries = args.length > 0 ? Long.parseLong(args[0]) : ENTRIES;
+        final int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        System.out.printf("%-14s %8s %14s %14s %14s %12s\n", "Set", "Threads", "Adds/s", "Hits/s", "Misses/s", "Bytes/entry");
+        for (int filterBits : new int[]{0, 10}) {
+            final SignatureSet set = new SignatureSet(entries, filterBits);
+            final double adds = run(threads, entries, 0, i -> set.add(key(i)));
+            final double hits = run(threads, entries, 0, i -> set.contains(key(i)));
+            final double misses = run(threads, entries, entries, i -> set.contains(key(i)));
+            if (set.size() != entries) {
+                throw new IllegalStateException("Expected " + entries + " entries but found " + set.size());
+            }
+            System.out.printf("%-14s %8d %14.0f %14.0f %14.0f %12.1f\n", filterBits == 0 ? "table" : "table+bloom" + filterBits,
+                    threads, adds, hits, misses, (double) set.bytes() / entries);
+        }
+
+        // A HashSet<Long> for comparison, on a single thread and far fewer
+        // entries
+        final Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        final long before = runtime.totalMemory() - runtime.freeMemory();
+        final Set<Long> hashSet = new HashSet<>();
+        final double adds = run(1, HASH_SET_ENTRIES, 0, i -> hashSet.add(key(i)));
+        final double hits = run(1, HASH_SET_ENTRIES, 0, i -> hashSet.contains(key(i)));
+        final double misses = run(1, HASH_SET_ENTRIES, HASH_SET_ENTRIES, i -> hashSet.contains(key(i)));
+        System.gc();
+        final long after = runtime.totalMemory() - runtime.freeMemory();
+        System.out.printf("%-14s %8d %14.0f %14.0f %14.0f %12.1f\n", "HashSet<Long>", 1, adds, hits, misses,
+                (double) (after - before) / hashSet.size());
+    }
+
+    /**
+     * Runs an operation on a range of keys, split between threads.
+     *
+     * @return The operations per second.
+     */
+    private static double run(int threads, long count, long first, KeyOperation operation) throws InterruptedException {
+        final Thread[] workers = new Thread[threads];
+        final long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            final long from = first + count * t / threads;
+            final long to = first + count * (t + 1) / threads;
+            workers[t] = new Thread(() -> {
+                for (long i = from; i < to; i++) {
+                    operation.run(i);
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return count / ((System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Returns a distinct random looking key for each number.
+     */
+    private static long key(long i) {
+        long z = (i + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private interface KeyOperation {
+        void run(long i);
+    }
+}
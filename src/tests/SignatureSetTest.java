@@ -0,0 +1,107 @@
+package tests;
+
+import batch.BlockedBloomFilter;
+import batch.SignatureSet;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the signature set and Bloom filter used to drop duplicate positions.
+ */
+public class SignatureSetTest {
+    @Test
+    public void addsEachSignatureOnce() {
+        for (int filterBits : new int[]{0, 10}) {
+            final Random random = new Random(0);
+            final SignatureSet set = new SignatureSet(10_000, filterBits);
+            final Set<Long> expected = new HashSet<>();
+            for (int i = 0; i < 10_000; i++) {
+                // Mostly repeated keys, and zero, which marks empty slots
+                final long key = i % 100 == 0 ? 0 : random.nextInt(5000) * 0x9E3779B97F4A7C15L;
+                assertEquals(expected.add(key), set.add(key));
+            }
+            assertEquals(expected.size(), set.size());
+            for (long key : expected) {
+                assertEquals(true, set.contains(key));
+            }
+            for (int i = 0; i < 10_000; i++) {
+                final long key = random.nextLong();
+                assertEquals(expected.contains(key), set.contains(key));
+            }
+        }
+    }
+
+    @Test
+    public void concurrentAddsCountEachSignatureOnce() throws InterruptedException {
+        final List<Long> keys = new ArrayList<>();
+        final Random random = new Random(0);
+        for (int i = 0; i < 100_000; i++) {
+            keys.add(random.nextLong());
+        }
+
+        final SignatureSet set = new SignatureSet(keys.size(), 8);
+        final AtomicLong added = new AtomicLong();
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            // Every thread adds every key, in its own order
+            final List<Long> order = new ArrayList<>(keys);
+            Collections.shuffle(order, new Random(t));
+            threads[t] = new Thread(() -> {
+                for (long key : order) {
+                    if (set.add(key)) {
+                        added.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(keys.size(), added.get());
+        assertEquals(keys.size(), set.size());
+        for (long key : keys) {
+            assertEquals(true, set.contains(key));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void fullSetRejectsSignatures() {
+        final SignatureSet set = new SignatureSet(10);
+        for (long i = 1; i <= set.capacity() + 1; i++) {
+            set.add(i);
+        }
+    }
+
+    @Test
+    public void bloomFilterHasFewFalsePositives() {
+        final Random random = new Random(0);
+        final BlockedBloomFilter filter = new BlockedBloomFilter(100_000, 10);
+        final long[] keys = new long[100_000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextLong();
+            filter.add(keys[i]);
+        }
+        for (long key : keys) {
+            assertEquals(true, filter.mightContain(key));
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain(random.nextLong())) {
+                falsePositives++;
+            }
+        }
+        assertEquals(true, falsePositives < 3000);
+    }
+}
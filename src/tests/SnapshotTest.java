@@ -0,0 +1,172 @@
+package tests;
+
+import board.Bitboard;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import search.ResultCache;
+import search.TranspositionTable;
+import server.AnalysisServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Saves transposition tables and result caches and loads them back.
+ */
+public class SnapshotTest {
+    // Offsets of the layout fingerprint and zobrist identity in a snapshot
+    private static final int LAYOUT_OFFSET = 8;
+    private static final int ZOBRIST_OFFSET = 16;
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        this.directory = Files.createTempDirectory("snapshots");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(this.directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void tablesSurviveRoundTrip() throws IOException {
+        final TranspositionTable table = new TranspositionTable(1);
+        final Random random = new Random(3);
+        final long[] keys = new long[1000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextLong();
+            table.store(keys[i], i + 1, i - 500, i % 30, TranspositionTable.EXACT);
+        }
+        final Path path = this.directory.resolve("table.snapshot");
+        table.save(path);
+
+        final TranspositionTable same = new TranspositionTable(1);
+        same.load(path);
+        // A larger table is loaded entry by entry
+        final TranspositionTable larger = new TranspositionTable(2);
+        larger.load(path);
+        for (TranspositionTable loaded : new TranspositionTable[]{same, larger}) {
+            for (int i = 0; i < keys.length; i++) {
+                final long expected = table.probe(keys[i]);
+                final long data = loaded.probe(keys[i]);
+                assertEquals(expected == 0, data == 0);
+                if (data != 0) {
+                    assertEquals(TranspositionTable.move(expected), TranspositionTable.move(data));
+                    assertEquals(TranspositionTable.score(expected), TranspositionTable.score(data));
+                    assertEquals(TranspositionTable.depth(expected), TranspositionTable.depth(data));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void cachesSurviveRoundTrip() throws IOException {
+        final ResultCache cache = new ResultCache(4096);
+        for (long key = 1; key <= 500; key++) {
+            cache.put(key * 0x9E3779B97F4A7C15L, (int) key, (int) -key, (int) (key % 20) + 1);
+        }
+        final Path path = this.directory.resolve("results.snapshot");
+        cache.save(path);
+
+        for (ResultCache loaded : new ResultCache[]{new ResultCache(4096), new ResultCache(8192)}) {
+            loaded.load(path);
+            assertEquals(cache.stats().size, loaded.stats().size);
+            for (long key = 1; key <= 500; key++) {
+                final long data = loaded.get(key * 0x9E3779B97F4A7C15L, 1);
+                assertEquals(key, ResultCache.move(data));
+                assertEquals(-key, ResultCache.score(data));
+                assertEquals(key % 20 + 1, ResultCache.depth(data));
+            }
+        }
+    }
+
+    @Test
+    public void refusesOtherLayoutsAndKeys() throws IOException {
+        assertEquals(Bitboard.zobristIdentity(), Bitboard.zobristIdentity());
+        final Path path = this.directory.resolve("table.snapshot");
+        new TranspositionTable(1).save(path);
+        // A result cache's entries aren't a transposition table's
+        try {
+            new ResultCache(1024).load(path);
+            fail("Loaded a transposition table as a result cache");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("layout"));
+        }
+
+        for (int offset : new int[]{LAYOUT_OFFSET, ZOBRIST_OFFSET}) {
+            new TranspositionTable(1).save(path);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3}), offset);
+            }
+            try {
+                new TranspositionTable(1).load(path);
+                fail("Loaded a snapshot with a changed header at " + offset);
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains(offset == LAYOUT_OFFSET ? "layout" : "zobrist"));
+            }
+        }
+
+        Files.write(path, new byte[100]);
+        try {
+            new TranspositionTable(1).load(path);
+            fail("Loaded a file that isn't a snapshot");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Not a table snapshot"));
+        }
+    }
+
+    @Test
+    public void serverRestartsWarm() throws Exception {
+        final HttpClient client = HttpClient.newHttpClient();
+        final String path = "/analyse?depth=4&fen=" + URLEncoder.encode("6k1/5ppp/8/8/8/8/5PPP/R5K1 w - - 0 1", StandardCharsets.UTF_8);
+
+        final AnalysisServer first = new AnalysisServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1, 4, 1);
+        first.start();
+        try {
+            assertEquals(5, get(client, first, path).lines().count());
+            first.save(this.directory);
+        } finally {
+            first.stop();
+        }
+
+        final AnalysisServer second = new AnalysisServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1, 4, 1);
+        second.load(this.directory);
+        second.start();
+        try {
+            final String body = get(client, second, path);
+            assertTrue(body, body.startsWith("{\"bestmove\":\"a1a8\",\"depth\":4,"));
+            assertEquals(1, second.stats().cached);
+        } finally {
+            second.stop();
+        }
+    }
+
+    private static String get(HttpClient client, AnalysisServer server, String path) throws Exception {
+        final HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.port() + path)).build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+    }
+}
@@ -0,0 +1,214 @@
+package tests;
+
+import board.Bitboard;
+import board.Move;
+import board.Piece.Player;
+import board.Piece.Type;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import search.Search;
+import tablebase.Material;
+import tablebase.Tablebase;
+import tablebase.Tablebases;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Checks generated tablebases against known results, and every value against
+ * the values of the position's moves.
+ */
+public class TablebaseTest {
+    private static Path directory;
+    private static Tablebases tables;
+
+    @BeforeClass
+    public static void generate() throws IOException {
+        directory = Files.createTempDirectory("tablebases");
+        tables = new Tablebases(directory);
+        // Also generates KQvK, KRvK, KBvK and KNvK, which the pawn promotes to
+        tables.generate(Material.parse("KPvK"), 2);
+    }
+
+    @AfterClass
+    public static void delete() throws IOException {
+        tables.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void longestMatesAreKnown() {
+        assertEquals(19, longestWin("KQvK"));
+        assertEquals(31, longestWin("KRvK"));
+        assertEquals(0, longestWin("KBvK"));
+        assertEquals(0, longestWin("KNvK"));
+    }
+
+    @Test
+    public void probesKnownPositions() {
+        // Mate in one, from either side
+        assertEquals(Tablebase.value(1), tables.probe(new Bitboard("k7/7Q/1K6/8/8/8/8/8 w - - 0 1")));
+        assertEquals(Tablebase.value(1), tables.probe(new Bitboard("8/8/8/8/8/1k6/7q/K7 b - - 0 1")));
+        // Already mated
+        assertEquals(Tablebase.value(0), tables.probe(new Bitboard("k6Q/8/1K6/8/8/8/8/8 b - - 0 1")));
+        // Stalemate, and the defending king taking the queen
+        assertEquals(Tablebase.DRAW, tables.probe(new Bitboard("k7/2Q5/1K6/8/8/8/8/8 b - - 0 1")));
+        assertEquals(Tablebase.DRAW, tables.probe(new Bitboard("8/8/8/8/8/2K5/8/kQ6 b - - 0 1")));
+        // A rook pawn with the defending king in front draws, a centre pawn
+        // with the king in front of it wins
+        assertEquals(Tablebase.DRAW, tables.probe(new Bitboard("k7/8/8/P7/8/8/8/K7 w - - 0 1")));
+        assertEquals(true, Tablebase.isWin(tables.probe(new Bitboard("4k3/8/4K3/4P3/8/8/8/8 w - - 0 1"))));
+        assertEquals(true, Tablebase.isLoss(tables.probe(new Bitboard("4k3/8/4K3/4P3/8/8/8/8 b - - 0 1"))));
+        // More pieces than any table
+        assertEquals(Tablebase.UNKNOWN, tables.probe(new Bitboard("4k3/8/4K3/4P3/8/8/8/7R w - - 0 1")));
+    }
+
+    @Test
+    public void valuesFollowFromMoves() {
+        final Random random = new Random(0);
+        for (String name : new String[]{"KQvK", "KRvK", "KPvK"}) {
+            final int piece = name.charAt(1) == 'Q' ? Type.QUEEN : name.charAt(1) == 'R' ? Type.ROOK : Type.PAWN;
+            final int[] colors = {Player.WHITE, Player.BLACK, Player.WHITE};
+            final int[] types = {Type.KING, Type.KING, piece};
+            final int[] squares = new int[3];
+            final Bitboard board = new Bitboard();
+            int checked = 0;
+            while (checked < 20_000) {
+                for (int i = 0; i < squares.length; i++) {
+                    squares[i] = random.nextInt(Bitboard.SQUARES);
+                }
+                final boolean whitesTurn = random.nextBoolean();
+                if (squares[0] == squares[1] || squares[0] == squares[2] || squares[1] == squares[2]
+                        || (piece == Type.PAWN && (squares[2] < 8 || squares[2] >= 56))) {
+                    continue;
+                }
+                board.initPieces(colors, types, squares, squares.length, whitesTurn);
+                if (board.inCheck(whitesTurn ? Player.BLACK : Player.WHITE)) {
+                    continue;
+                }
+                assertEquals(board.fen(), expected(board), tables.probe(board));
+                checked++;
+            }
+        }
+    }
+
+    @Test
+    public void mirroredPositionsProbeTheirMirror() {
+        final Random random = new Random(1);
+        final int[] colors = {Player.BLACK, Player.WHITE, Player.BLACK};
+        final int[] types = {Type.KING, Type.KING, Type.PAWN};
+        final int[] squares = new int[3];
+        final Bitboard board = new Bitboard();
+        int checked = 0;
+        while (checked < 5_000) {
+            for (int i = 0; i < squares.length; i++) {
+                squares[i] = random.nextInt(Bitboard.SQUARES);
+            }
+            if (squares[0] == squares[1] || squares[0] == squares[2] || squares[1] == squares[2]
+                    || squares[2] < 8 || squares[2] >= 56) {
+                continue;
+            }
+            final boolean whitesTurn = random.nextBoolean();
+            board.initPieces(colors, types, squares, squares.length, whitesTurn);
+            if (board.inCheck(whitesTurn ? Player.BLACK : Player.WHITE)) {
+                continue;
+            }
+            assertEquals(board.fen(), tables.probe(board.flipped()), tables.probe(board));
+            checked++;
+        }
+    }
+
+    @Test
+    public void searchPlaysFastestMate() {
+        final Bitboard board = new Bitboard("8/8/3k4/8/8/8/8/R3K3 w - - 0 1");
+        final int value = tables.probe(board);
+        final Search search = new Search(board);
+        search.setTablebases(tables);
+        final Move move = search.search(2);
+        assertEquals(Search.MATE - Tablebase.plies(value), search.bestScore());
+        board.applyMove(move);
+        assertEquals(Tablebase.value(Tablebase.plies(value) - 1), tables.probe(board));
+    }
+
+    @Test
+    public void searchDoesNotProbePastCastlingOrEnPassant() {
+        // White mates in 19 plies by castling, but in 23 without the right,
+        // which is all the table knows
+        final Bitboard board = new Bitboard("7k/8/8/8/8/8/8/4K2R b K - 0 1");
+        final Search search = new Search(board);
+        search.setTablebases(tables);
+        search.search(3);
+        assertEquals(-(Search.MATE - 20), search.bestScore());
+
+        // Nor past an en passant capture, right after a double push
+        assertEquals(true, new Bitboard("4k3/8/8/8/3pP3/8/8/4K3 b - e3 0 1").hasEnpassantCapture());
+        assertEquals(false, new Bitboard("4k3/8/8/8/2p1P3/8/8/4K3 b - e3 0 1").hasEnpassantCapture());
+    }
+
+    @Test
+    public void reopensWrittenTables() throws IOException {
+        try (Tablebases reopened = new Tablebases(directory)) {
+            final Bitboard board = new Bitboard("8/8/3k4/8/8/8/8/R3K3 w - - 0 1");
+            assertNotEquals(Tablebase.UNKNOWN, reopened.probe(board));
+            assertEquals(tables.probe(board), reopened.probe(board));
+        }
+    }
+
+    /**
+     * Returns the value a position must have given the values of the
+     * positions after its moves.
+     */
+    private static int expected(Bitboard board) {
+        final List<Move> moves = board.generateMoves();
+        if (moves.isEmpty()) {
+            return board.inCheck(board.whitesTurn() ? Player.WHITE : Player.BLACK) ? Tablebase.value(0) : Tablebase.DRAW;
+        }
+        int win = Integer.MAX_VALUE;
+        int loss = -1;
+        boolean draw = false;
+        for (Move move : moves) {
+            board.applyMove(move);
+            final int value = tables.probe(board);
+            board.undoMove();
+            if (value == Tablebase.DRAW) {
+                draw = true;
+            } else if (Tablebase.isLoss(value)) {
+                win = Math.min(win, Tablebase.plies(value) + 1);
+            } else {
+                loss = Math.max(loss, Tablebase.plies(value) + 1);
+            }
+        }
+        if (win != Integer.MAX_VALUE) {
+            return Tablebase.value(win);
+        }
+        return draw ? Tablebase.DRAW : Tablebase.value(loss);
+    }
+
+    /**
+     * Returns the longest forced mate in a table, in plies, with the winner
+     * to move.
+     */
+    private static int longestWin(String name) {
+        final Tablebase table = tables.table(Material.parse(name));
+        final Material material = table.material();
+        int longest = 0;
+        for (long index = 0; index < material.size(); index++) {
+            final int value = table.get(index);
+            if (Tablebase.isWin(value)) {
+                longest = Math.max(longest, Tablebase.plies(value));
+            }
+        }
+        return longest;
+    }
+}
@@ -0,0 +1,220 @@
+package tests;
+
+import board.Bitboard;
+import board.Piece.Type;
+import org.junit.Test;
+import uci.UciEngine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Talks to the UCI front end over a pair of pipes.
+ */
+public class UciTest {
+    // Allowed delay between a command and its reply while searching
+    private static final long LATENCY_MILLIS = 100;
+    private static final long TIMEOUT_SECONDS = 30;
+
+    @Test
+    public void answersHandshake() throws Exception {
+        try (Session session = new Session()) {
+            session.send("uci");
+            assertEquals("id name " + UciEngine.NAME, session.next());
+            session.await("uciok");
+            session.send("isready");
+            assertEquals("readyok", session.next());
+        }
+    }
+
+    @Test
+    public void positionsFollowMoves() throws Exception {
+        try (Session session = new Session()) {
+            final Bitboard expected = new Bitboard();
+            expected.initStartingBoard();
+            for (String move : new String[]{"e2e4", "e7e5", "g1f3"}) {
+                expected.applyMove(UciEngine.parseMove(expected, move));
+            }
+            session.send("position startpos moves e2e4 e7e5");
+            session.send("position startpos moves e2e4 e7e5 g1f3");
+            session.send("d");
+            assertEquals("info string fen " + expected.fen(), session.next());
+
+            // Taking moves back and playing others
+            session.send("position startpos moves d2d4");
+            session.send("d");
+            assertEquals("info string fen " + new Bitboard("rnbqkbnr/pppppppp/8/8/3P4/8/PPP1PPPP/RNBQKBNR b KQkq d3 0 1").fen(),
+                    session.next());
+
+            session.send("position fen 8/P6k/8/8/8/8/8/K7 w - - 0 1 moves a7a8q");
+            session.send("d");
+            assertEquals("info string fen " + new Bitboard("Q7/7k/8/8/8/8/8/K7 b - - 0 1").fen(), session.next());
+
+            session.send("position startpos moves e2e5");
+            assertEquals("info string Illegal move: e2e5", session.next());
+        }
+    }
+
+    @Test
+    public void rejectsUnknownPromotions() throws Exception {
+        final String fen = "8/4P2k/8/8/8/8/8/K7 w - - 0 1";
+        final Bitboard board = new Bitboard(fen);
+        for (String move : new String[]{"e7e8k", "e7e8x", "e7e8p", "e7e8"}) {
+            assertNull(move, UciEngine.parseMove(board, move));
+        }
+        assertEquals(Type.KNIGHT, UciEngine.parseMove(board, "e7e8n").promotionPiece());
+        assertEquals(Type.QUEEN, UciEngine.parseMove(board, "e7e8Q").promotionPiece());
+        // Not even an unchecked move can promote to a king or a pawn
+        assertNull(board.createMove(52, 60, Type.KING));
+        assertNull(board.createMove(52, 60, -1));
+
+        try (Session session = new Session()) {
+            session.send("position fen " + fen + " moves e7e8k");
+            assertEquals("info string Illegal move: e7e8k", session.next());
+            session.send("position fen " + fen + " moves e7e8x");
+            assertEquals("info string Illegal move: e7e8x", session.next());
+        }
+    }
+
+    @Test
+    public void searchesToDepthAndNodes() throws Exception {
+        try (Session session = new Session()) {
+            session.send("position fen 6k1/5ppp/8/8/8/8/5PPP/R5K1 w - - 0 1");
+            session.send("go depth 4");
+            final String info = session.await("info depth 4");
+            assertTrue(info, info.contains(" score mate 1 "));
+            assertEquals("bestmove a1a8", session.await("bestmove"));
+
+            session.send("setoption name Threads value 2");
+            session.send("setoption name Hash value 8");
+            session.send("position startpos");
+            session.send("go nodes 2000");
+            assertNotNull(UciEngine.parseMove(new Bitboard("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1"),
+                    session.await("bestmove").split(" ")[1]));
+        }
+    }
+
+    @Test
+    public void answersWhileSearching() throws Exception {
+        try (Session session = new Session()) {
+            session.send("setoption name Threads value 2");
+            session.send("position startpos moves e2e4");
+            session.send("go infinite");
+            Thread.sleep(200);
+
+            long start = System.nanoTime();
+            session.send("isready");
+            session.await("readyok");
+            long latency = (System.nanoTime() - start) / 1_000_000;
+            assertTrue("Took " + latency + "ms to answer", latency < LATENCY_MILLIS);
+
+            // The position as it was set, not as the search has it
+            final Bitboard board = new Bitboard("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1");
+            for (int i = 0; i < 20; i++) {
+                session.send("d");
+                assertEquals("info string fen " + board.fen(), session.await("info string fen"));
+            }
+
+            start = System.nanoTime();
+            session.send("stop");
+            final String best = session.await("bestmove");
+            latency = (System.nanoTime() - start) / 1_000_000;
+            assertTrue("Took " + latency + "ms to stop", latency < LATENCY_MILLIS);
+            assertNotNull(best, UciEngine.parseMove(board, best.split(" ")[1]));
+        }
+    }
+
+    /**
+     * An engine running on its own thread, fed commands through a pipe.
+     */
+    private static class Session implements AutoCloseable {
+        private final PrintStream commands;
+        private final BlockingQueue<String> replies = new LinkedBlockingQueue<>();
+        private final Thread engine;
+
+        Session() throws IOException {
+            final PipedInputStream in = new PipedInputStream();
+            this.commands = new PrintStream(new PipedOutputStream(in), true, StandardCharsets.US_ASCII);
+            final PrintStream out = new PrintStream(new LineCollector(this.replies), true, StandardCharsets.US_ASCII);
+            this.engine = new Thread(() -> {
+                try {
+                    new UciEngine(in, out).run();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            this.engine.start();
+        }
+
+        void send(String command) {
+            this.commands.println(command);
+        }
+
+        String next() throws InterruptedException {
+            final String line = this.replies.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertNotNull("No reply", line);
+            return line;
+        }
+
+        /**
+         * Skips replies until one starts with a prefix.
+         */
+        String await(String prefix) throws InterruptedException {
+            String line = next();
+            while (!line.startsWith(prefix)) {
+                line = next();
+            }
+            return line;
+        }
+
+        /**
+         * Quits the engine and waits for it to stop. If interrupted, stops
+         * waiting and leaves the interrupt set for the caller.
+         */
+        @Override
+        public void close() {
+            send("quit");
+            try {
+                this.engine.join(TIMEOUT_SECONDS * 1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                this.commands.close();
+            }
+        }
+    }
+
+    /**
+     * Splits what the engine writes into lines.
+     */
+    private static class LineCollector extends OutputStream {
+        private final BlockingQueue<String> lines;
+        private final StringBuilder line = new StringBuilder();
+
+        LineCollector(BlockingQueue<String> lines) {
+            this.lines = lines;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            if (b == '\n') {
+                this.lines.add(this.line.toString());
+                this.line.setLength(0);
+            } else if (b != '\r') {
+                this.line.append((char) b);
+            }
+        }
+    }
+}
@@ -0,0 +1,499 @@
+package uci;
+
+import board.Bitboard;
+import board.Move;
+import board.Piece.Type;
+import search.Search;
+import search.SearchMetrics;
+import search.SearchStats;
+import search.TimeManager;
+import search.TranspositionTable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plays through the Universal Chess Interface, so the engine can run behind
+ * GUIs and match runners.
+ * <p>
+ * Commands are read on the thread that calls {@link #run()}, and searches run
+ * on a thread of their own, so "stop", "isready" and "d" are answered at
+ * once while a search is running. Other commands wait for the search to
+ * finish first. The position is kept on one board: when a "position" command
+ * extends the moves of the last one, only the new moves are applied, and
+ * moves that were taken back are undone, instead of setting the board up
+ * again.
+ */
+public class UciEngine {
+    public static final String NAME = "JavaChessBitboard";
+    public static final int MAX_HASH_MEGABYTES = 4096;
+    public static final int MAX_THREADS = 256;
+
+    private static final String STARTPOS = "startpos";
+    // The pieces a pawn can promote to, in the order of their types from
+    // Type.KNIGHT
+    private static final String PROMOTIONS = "nbrq";
+
+    private final BufferedReader in;
+    private final PrintStream out;
+
+    // The current position, and the commands that set it up
+    private final Bitboard board;
+    private String base;
+    private final List<String> moves = new ArrayList<>();
+    // The board's FEN when it was last set up. "d" prints this rather than
+    // reading the board, which a running search is changing.
+    private String fen;
+
+    private TranspositionTable table;
+    private int threads;
+    private Search search;
+
+    // The running search, if any. Only the input thread changes these.
+    private Thread searchThread;
+    private volatile TimeManager timeManager;
+    // Whether the running search waits for "stop" before reporting its move
+    private volatile boolean infinite;
+
+    /**
+     * Creates an engine that talks over a pair of streams.
+     *
+     * @param in  The stream commands are read from.
+     * @param out The stream replies are written to.
+     */
+    public UciEngine(InputStream in, PrintStream out) {
+        this.in = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII));
+        this.out = out;
+        this.board = new Bitboard();
+        this.board.initStartingBoard();
+        this.base = STARTPOS;
+        this.fen = this.board.fen();
+        this.table = new TranspositionTable(TranspositionTable.DEFAULT_MEGABYTES);
+        this.threads = 1;
+        this.search = new Search(this.board, Search.ALL_FEATURES, this.table);
+        this.search.setListener(this::info);
+    }
+
+    /**
+     * Reads and carries out commands until "quit" or the end of the input.
+     *
+     * @throws IOException If the input can't be read.
+     */
+    public void run() throws IOException {
+        try {
+            for (String line = this.in.readLine(); line != null; line = this.in.readLine()) {
+                if (!execute(line.trim())) {
+                    break;
+                }
+            }
+        } finally {
+            stop();
+        }
+    }
+
+    /**
+     * Carries out one command.
+     *
+     * @return False iff the engine should quit.
+     */
+    private boolean execute(String line) {
+        final String[] tokens = line.split("\\s+");
+        switch (tokens[0]) {
+            case "uci":
+                send("id name " + NAME);
+                send("id author sparemind");
+                send("option name Hash type spin default " + TranspositionTable.DEFAULT_MEGABYTES + " min 1 max " + MAX_HASH_MEGABYTES);
+                send("option name Threads type spin default 1 min 1 max " + MAX_THREADS);
+                send("uciok");
+                break;
+            case "isready":
+                send("readyok");
+                break;
+            case "ucinewgame":
+                awaitSearch();
+                this.table.clear();
+                break;
+            case "setoption":
+                awaitSearch();
+                setOption(tokens);
+                break;
+            case "position":
+                awaitSearch();
+                try {
+                    position(line);
+                } catch (IllegalArgumentException e) {
+                    send("info string " + e.getMessage());
+                } finally {
+                    this.fen = this.board.fen();
+                }
+                break;
+            case "go":
+                awaitSearch();
+                go(tokens);
+                break;
+            case "stop":
+                stop();
+                break;
+            case "d":
+                send("info string fen " + this.fen);
+                break;
+            case "quit":
+                return false;
+            default:
+                if (!tokens[0].isEmpty()) {
+                    send("info string Unknown command: " + line);
+                }
+        }
+        return true;
+    }
+
+    /**
+     * Handles "setoption name NAME value VALUE".
+     */
+    private void setOption(String[] tokens) {
+        final int name = indexOf(tokens, "name");
+        final int value = indexOf(tokens, "value");
+        if (name < 0 || value < 0 || value + 1 >= tokens.length) {
+            send("info string Malformed option");
+            return;
+        }
+        final int number;
+        try {
+            number = Integer.parseInt(tokens[value + 1]);
+        } catch (NumberFormatException e) {
+            send("info string Not a number: " + tokens[value + 1]);
+            return;
+        }
+        switch (tokens[name + 1].toLowerCase()) {
+            case "hash":
+                this.table = new TranspositionTable(Math.max(1, Math.min(MAX_HASH_MEGABYTES, number)));
+                this.search = new Search(this.board, Search.ALL_FEATURES, this.table);
+                this.search.setListener(this::info);
+                break;
+            case "threads":
+                this.threads = Math.max(1, Math.min(MAX_THREADS, number));
+                break;
+            default:
+                send("info string Unknown option: " + tokens[name + 1]);
+        }
+    }
+
+    /**
+     * Handles "position [startpos | fen FEN] [moves MOVE...]".
+     *
+     * @throws IllegalArgumentException If the FEN or a move is invalid. The
+     *                                  moves before it are kept.
+     */
+    private void position(String line) {
+        final int index = skip(line, "position".length());
+        final int movesIndex = line.indexOf(" moves", index);
+        final String base = line.substring(index, movesIndex < 0 ? line.length() : movesIndex).trim();
+        final List<String> moves = new ArrayList<>();
+        if (movesIndex >= 0) {
+            for (String move : line.substring(movesIndex + " moves".length()).trim().split("\\s+")) {
+                if (!move.isEmpty()) {
+                    moves.add(move);
+                }
+            }
+        }
+
+        // Keep the moves both commands share, when they start from the same
+        // position
+        int shared = 0;
+        if (base.equals(this.base)) {
+            while (shared < moves.size() && shared < this.moves.size() && moves.get(shared).equals(this.moves.get(shared))) {
+                shared++;
+            }
+            while (this.moves.size() > shared) {
+                this.board.undoMove();
+                this.moves.remove(this.moves.size() - 1);
+            }
+        } else {
+            this.moves.clear();
+            // Don't keep a position half set up if the FEN is invalid
+            this.base = null;
+            if (base.equals(STARTPOS)) {
+                this.board.initStartingBoard();
+            } else if (base.startsWith("fen ")) {
+                this.board.initFen(base, skip(base, "fen".length()));
+            } else {
+                throw new IllegalArgumentException("Malformed position: " + line);
+            }
+            this.base = base;
+        }
+
+        for (int i = shared; i < moves.size(); i++) {
+            final Move move = parseMove(this.board, moves.get(i));
+            if (move == null) {
+                throw new IllegalArgumentException("Illegal move: " + moves.get(i));
+            }
+            this.board.applyMove(move);
+            this.moves.add(moves.get(i));
+        }
+    }
+
+    /**
+     * Handles "go" with its limits, starting a search on its own thread.
+     */
+    private void go(String[] tokens) {
+        int depth = SearchStats.MAX_DEPTH;
+        long nodes = -1;
+        long moveTime = -1;
+        long time = -1;
+        long increment = 0;
+        int movesToGo = 0;
+        boolean infinite = false;
+        final boolean white = this.board.whitesTurn();
+        for (int i = 1; i < tokens.length; i++) {
+            final String name = tokens[i];
+            if (name.equals("infinite")) {
+                infinite = true;
+                continue;
+            }
+            if (i + 1 >= tokens.length) {
+                break;
+            }
+            final long value;
+            try {
+                value = Long.parseLong(tokens[i + 1]);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            i++;
+            switch (name) {
+                case "depth":
+                    depth = (int) Math.max(1, Math.min(SearchStats.MAX_DEPTH, value));
+                    break;
+                case "nodes":
+                    nodes = value;
+                    break;
+                case "movetime":
+                    moveTime = value;
+                    break;
+                case "wtime":
+                    time = white ? value : time;
+                    break;
+                case "btime":
+                    time = white ? time : value;
+                    break;
+                case "winc":
+                    increment = white ? value : increment;
+                    break;
+                case "binc":
+                    increment = white ? increment : value;
+                    break;
+                case "movestogo":
+                    movesToGo = (int) value;
+                    break;
+                default:
+                    i--;
+            }
+        }
+
+        final TimeManager timeManager;
+        if (moveTime >= 0) {
+            timeManager = TimeManager.moveTime(moveTime);
+        } else if (time >= 0 && !infinite) {
+            timeManager = TimeManager.forClock(time, increment, movesToGo);
+        } else {
+            timeManager = TimeManager.infinite();
+        }
+        timeManager.limitNodes(nodes);
+        this.timeManager = timeManager;
+        this.infinite = infinite;
+
+        final int maxDepth = depth;
+        final Search[] helpers = new Search[this.threads - 1];
+        for (int i = 0; i < helpers.length; i++) {
+            helpers[i] = new Search(this.board.copy(), Search.ALL_FEATURES, this.table);
+        }
+        this.searchThread = new Thread(() -> search(maxDepth, timeManager, helpers), "search");
+        this.searchThread.start();
+    }
+
+    /**
+     * Runs a search, with helpers sharing the transposition table on threads
+     * of their own, and reports the best move.
+     */
+    private void search(int maxDepth, TimeManager timeManager, Search[] helpers) {
+        final Thread[] workers = new Thread[helpers.length];
+        for (int i = 0; i < helpers.length; i++) {
+            final Search helper = helpers[i];
+            workers[i] = new Thread(() -> helper.search(maxDepth, timeManager), "search-helper-" + i);
+            workers[i].start();
+        }
+        final Move best = this.search.search(maxDepth, timeManager);
+        // Helpers search the same position, and only stop on their own when
+        // they reach the same limits
+        timeManager.stop();
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (this.infinite) {
+            // The move must not be sent until the GUI asks for it
+            synchronized (this) {
+                while (this.infinite) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+        }
+        final Move[] pv = this.search.principalVariation();
+        if (best == null) {
+            send("bestmove 0000");
+        } else if (pv.length > 1 && pv[0].equals(best)) {
+            send("bestmove " + toUci(best) + " ponder " + toUci(pv[1]));
+        } else {
+            send("bestmove " + toUci(best));
+        }
+    }
+
+    /**
+     * Reports a completed iteration of the main search.
+     */
+    private void info(Search search, int depth) {
+        final SearchStats stats = search.stats();
+        final long nanos = stats.depthTimes[depth];
+        final int score = search.bestScore();
+        final StringBuilder s = new StringBuilder("info depth ").append(depth).append(" score ");
+        if (score >= Search.MATE_BOUND) {
+            s.append("mate ").append((Search.MATE - score + 1) / 2);
+        } else if (score <= -Search.MATE_BOUND) {
+            s.append("mate ").append(-(Search.MATE + score) / 2);
+        } else {
+            s.append("cp ").append(score);
+        }
+        s.append(" nodes ").append(stats.nodes)
+                .append(" nps ").append(nanos == 0 ? 0 : stats.nodes * 1_000_000_000L / nanos)
+                .append(" time ").append(nanos / 1_000_000)
+                .append(" hashfull ").append(this.table.fillPermille())
+                .append(" pv");
+        for (Move move : search.principalVariation()) {
+            s.append(' ').append(toUci(move));
+        }
+        send(s.toString());
+    }
+
+    /**
+     * Stops the running search, if any, and waits until it has reported its
+     * move.
+     */
+    private void stop() {
+        final TimeManager timeManager = this.timeManager;
+        if (timeManager != null) {
+            timeManager.stop();
+        }
+        synchronized (this) {
+            this.infinite = false;
+            notifyAll();
+        }
+        awaitSearch();
+    }
+
+    /**
+     * Waits for the running search, if any, to report its move.
+     */
+    private void awaitSearch() {
+        if (this.searchThread == null) {
+            return;
+        }
+        try {
+            this.searchThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.searchThread = null;
+        this.timeManager = null;
+    }
+
+    /**
+     * Finds the legal move written in coordinate notation, such as "e2e4" or
+     * "e7e8q".
+     *
+     * @param board The position the move is played in.
+     * @param text  The move.
+     * @return The move, or null if it is malformed or not legal.
+     */
+    public static Move parseMove(Bitboard board, String text) {
+        if (text.length() < 4 || text.length() > 5) {
+            return null;
+        }
+        final int src = square(text, 0);
+        final int dest = square(text, 2);
+        if (src < 0 || dest < 0) {
+            return null;
+        }
+        int promotion = 0;
+        if (text.length() == 5) {
+            final int index = PROMOTIONS.indexOf(Character.toLowerCase(text.charAt(4)));
+            if (index < 0) {
+                return null;
+            }
+            promotion = Type.KNIGHT + index;
+        }
+        final Move move = board.createMove(src, dest, promotion);
+        return move != null && board.isPseudoLegal(move) && board.isLegal(move) ? move : null;
+    }
+
+    /**
+     * Writes a move in coordinate notation, with a lowercase promotion.
+     *
+     * @param move The move.
+     * @return The move as UCI expects it.
+     */
+    public static String toUci(Move move) {
+        return move.toString().toLowerCase();
+    }
+
+    private static int square(String text, int index) {
+        final int file = text.charAt(index) - 'a';
+        final int rank = text.charAt(index + 1) - '1';
+        if (file < 0 || file >= Bitboard.SIZE || rank < 0 || rank >= Bitboard.SIZE) {
+            return -1;
+        }
+        return Bitboard.square(file, rank);
+    }
+
+    private static int indexOf(String[] tokens, String token) {
+        for (int i = 0; i < tokens.length - 1; i++) {
+            if (tokens[i].equals(token)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skip(String line, int index) {
+        while (index < line.length() && line.charAt(index) == ' ') {
+            index++;
+        }
+        return index;
+    }
+
+    private void send(String line) {
+        synchronized (this.out) {
+            this.out.println(line);
+            this.out.flush();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        SearchMetrics.register();
+        new UciEngine(System.in, System.out).run();
+    }
+}